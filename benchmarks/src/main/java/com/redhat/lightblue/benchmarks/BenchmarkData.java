@@ -0,0 +1,225 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.metadata.DataStore;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.parser.DataStoreParser;
+import com.redhat.lightblue.metadata.parser.Extensions;
+import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.parser.MetadataParser;
+import com.redhat.lightblue.metadata.types.DateType;
+import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.test.metadata.FakeMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * Fixtures shared by the benchmarks: entity metadata for the
+ * benchmark entities, and generated documents. The documents are
+ * deterministic for given parameters, so runs are comparable.
+ *
+ * The "bench" entity has simple fields with constraints, a string
+ * array "tags", an object array "items", and a reference "child" to
+ * the "benchChild" entity.
+ */
+public final class BenchmarkData {
+
+    public static final String ENTITY = "bench";
+    public static final String CHILD_ENTITY = "benchChild";
+    public static final String VERSION = "1.0.0";
+    public static final String BACKEND = "mem";
+
+    public static final JsonNodeFactory NODE_FACTORY = JsonNodeFactory.withExactBigDecimals(true);
+
+    private static final String[] STATUS = {"active", "inactive", "pending"};
+
+    private static final class MemDataStoreParser implements DataStoreParser<JsonNode> {
+        @Override
+        public DataStore parse(String name, MetadataParser<JsonNode> p, JsonNode node) {
+            return new DataStore() {
+                @Override
+                public String getBackend() {
+                    return BACKEND;
+                }
+            };
+        }
+
+        @Override
+        public void convert(MetadataParser<JsonNode> p, JsonNode emptyNode, DataStore object) {
+        }
+
+        @Override
+        public String getDefaultName() {
+            return BACKEND;
+        }
+    }
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Returns a metadata parser that knows about the benchmark backend
+     */
+    public static JSONMetadataParser getParser() {
+        Extensions<JsonNode> extensions = new Extensions<>();
+        extensions.addDefaultExtensions();
+        extensions.registerDataStoreParser(BACKEND, new MemDataStoreParser());
+        return new JSONMetadataParser(extensions, new DefaultTypes(), NODE_FACTORY);
+    }
+
+    /**
+     * Loads the metadata of the given benchmark entity
+     */
+    public static EntityMetadata getMetadata(String entityName) {
+        EntityMetadata md = getParser().parseEntityMetadata(resource(entityName + ".json"));
+        PredefinedFields.ensurePredefinedFields(md);
+        return md;
+    }
+
+    /**
+     * Returns a FakeMetadata containing the benchmark entities
+     */
+    public static FakeMetadata getFakeMetadata() {
+        FakeMetadata metadata = new FakeMetadata();
+        for (String entity : new String[]{ENTITY, CHILD_ENTITY}) {
+            EntityMetadata md = getMetadata(entity);
+            metadata.setEntityInfo(md.getEntityInfo());
+            metadata.setEntityMetadata(entity, VERSION, md);
+        }
+        return metadata;
+    }
+
+    /**
+     * Generates a "bench" document. The arrays "tags" and "items" have
+     * fanOut elements each.
+     *
+     * @param index Document index, used to generate distinct values
+     * @param fanOut Number of elements in the arrays
+     */
+    public static JsonDoc generateDoc(int index, int fanOut) {
+        ObjectNode root = NODE_FACTORY.objectNode();
+        root.put("_id", "bench-" + index);
+        root.put("objectType", ENTITY);
+        root.put("name", "child-" + (index % 100));
+        root.put("value", index % 1000);
+        root.put("status", STATUS[index % STATUS.length]);
+        root.put("created", DateType.formatDate(new Date(1400000000000l + index * 1000l)));
+        ArrayNode tags = root.putArray("tags");
+        for (int i = 0; i < fanOut; i++) {
+            tags.add("tag" + ((index + i) % 50));
+        }
+        ObjectNode nested = root.putObject("nested");
+        nested.put("a", "value" + index);
+        nested.put("b", index);
+        nested.put("c", index / 3.0);
+        ArrayNode items = root.putArray("items");
+        for (int i = 0; i < fanOut; i++) {
+            ObjectNode item = items.addObject();
+            item.put("id", i);
+            item.put("label", "label" + (i % 20));
+            item.put("score", (index * 31 + i) % 100 / 10.0);
+            item.put("child_ref", "child-" + (i % 100));
+        }
+        return new JsonDoc(root);
+    }
+
+    /**
+     * Generates n "bench" documents
+     */
+    public static List<JsonDoc> generateDocs(int n, int fanOut) {
+        List<JsonDoc> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(generateDoc(i, fanOut));
+        }
+        return list;
+    }
+
+    /**
+     * Generates 100 "benchChild" documents, with ids child-0 to child-99
+     */
+    public static List<JsonDoc> generateChildDocs() {
+        List<JsonDoc> list = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            ObjectNode root = NODE_FACTORY.objectNode();
+            root.put("_id", "child-" + i);
+            root.put("objectType", CHILD_ENTITY);
+            root.put("description", "Child " + i);
+            root.put("weight", i);
+            list.add(new JsonDoc(root));
+        }
+        return list;
+    }
+
+    /**
+     * Parses a query. Single quotes are replaced with double quotes.
+     */
+    public static QueryExpression query(String s) {
+        return QueryExpression.fromJson(json(s));
+    }
+
+    /**
+     * Parses a projection. Single quotes are replaced with double quotes.
+     */
+    public static Projection projection(String s) {
+        return Projection.fromJson(json(s));
+    }
+
+    /**
+     * Parses an update expression. Single quotes are replaced with double
+     * quotes.
+     */
+    public static UpdateExpression update(String s) {
+        return UpdateExpression.fromJson(json(s));
+    }
+
+    private static JsonNode json(String s) {
+        try {
+            return JsonUtils.json(s.replaceAll("'", "\""));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(s, e);
+        }
+    }
+
+    private static JsonNode resource(String name) {
+        try (InputStream in = BenchmarkData.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException(name);
+            }
+            return JsonUtils.json(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(name, e);
+        }
+    }
+}
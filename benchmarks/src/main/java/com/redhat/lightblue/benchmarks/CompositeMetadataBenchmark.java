@@ -0,0 +1,72 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.test.metadata.FakeMetadata;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Builds the composite metadata for the benchmark entity and its
+ * child entity
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CompositeMetadataBenchmark {
+
+    private EntityMetadata root;
+    private CompositeMetadata.GetMetadata gmd;
+
+    @Setup
+    public void setup() {
+        final FakeMetadata metadata = BenchmarkData.getFakeMetadata();
+        root = metadata.getEntityMetadata(BenchmarkData.ENTITY, BenchmarkData.VERSION);
+        gmd = new CompositeMetadata.GetMetadata() {
+            @Override
+            public EntityMetadata getMetadata(Path injectionField,
+                                              String entityName,
+                                              String version) {
+                return metadata.getEntityMetadata(entityName, version);
+            }
+        };
+    }
+
+    @Benchmark
+    public CompositeMetadata buildCompositeMetadata() {
+        return CompositeMetadata.buildCompositeMetadata(root, gmd);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.crud.ConstraintValidator;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
+import com.redhat.lightblue.crud.validator.EmptyEntityConstraintValidators;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Validates field and entity constraints of a batch of documents, the
+ * way the mediator does for insert and save requests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ConstraintValidatorBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int fanOut;
+
+    @Param({"100", "10000"})
+    public int docCount;
+
+    private List<JsonDoc> docs;
+    private EntityMetadata md;
+    private Factory factory;
+
+    @Setup
+    public void setup() {
+        md = BenchmarkData.getMetadata(BenchmarkData.ENTITY);
+        docs = BenchmarkData.generateDocs(docCount, fanOut);
+        factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+    }
+
+    @Benchmark
+    public boolean validateDocs() {
+        ConstraintValidator validator = factory.getConstraintValidator(md);
+        validator.validateDocs(docs);
+        return validator.hasErrors();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.lightblue.crud.CRUDController;
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDInsertionResponse;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDSaveResponse;
+import com.redhat.lightblue.crud.CRUDUpdateResponse;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.eval.QueryEvaluator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.MetadataListener;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * A CRUD controller that keeps documents in memory, and evaluates
+ * queries and projections using the core evaluators. Only find is
+ * supported, which is enough to measure the mediator overhead without
+ * a real backend.
+ */
+public class InMemoryCRUDController implements CRUDController {
+
+    private final Map<String, List<JsonDoc>> data = new HashMap<>();
+
+    /**
+     * Sets the documents of an entity
+     */
+    public void setData(String entityName, List<JsonDoc> docs) {
+        data.put(entityName, docs);
+    }
+
+    @Override
+    public CRUDFindResponse find(CRUDOperationContext ctx,
+                                 QueryExpression query,
+                                 Projection projection,
+                                 Sort sort,
+                                 Long from,
+                                 Long to) {
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        QueryEvaluator eval = query == null ? null : QueryEvaluator.getInstance(query, md);
+        Projector projector = projection == null ? null : Projector.getInstance(projection, md);
+        List<DocCtx> output = new ArrayList<>();
+        List<JsonDoc> docs = data.get(ctx.getEntityName());
+        if (docs != null) {
+            for (JsonDoc doc : docs) {
+                if (eval == null || eval.evaluate(doc).getResult()) {
+                    output.add(new DocCtx(projector == null ? doc.copy() : projector.project(doc, BenchmarkData.NODE_FACTORY)));
+                }
+            }
+        }
+        ctx.setDocuments(output);
+        CRUDFindResponse ret = new CRUDFindResponse();
+        ret.setSize(output.size());
+        return ret;
+    }
+
+    @Override
+    public CRUDInsertionResponse insert(CRUDOperationContext ctx,
+                                        Projection projection) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CRUDSaveResponse save(CRUDOperationContext ctx,
+                                 boolean upsert,
+                                 Projection projection) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CRUDUpdateResponse update(CRUDOperationContext ctx,
+                                     QueryExpression query,
+                                     UpdateExpression update,
+                                     Projection projection) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CRUDDeleteResponse delete(CRUDOperationContext ctx,
+                                     QueryExpression query) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MetadataListener getMetadataListener() {
+        return null;
+    }
+
+    @Override
+    public void updatePredefinedFields(CRUDOperationContext ctx, JsonDoc doc) {
+    }
+}
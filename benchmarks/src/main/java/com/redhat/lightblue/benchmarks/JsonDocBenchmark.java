@@ -0,0 +1,112 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.KeyValueCursor;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Path resolution in a single document
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class JsonDocBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int fanOut;
+
+    private JsonDoc doc;
+
+    private Path simple;
+    private Path nested;
+    private Path indexed;
+    private Path any;
+    private Path anyNested;
+
+    @Setup
+    public void setup() {
+        doc = BenchmarkData.generateDoc(1, fanOut);
+        simple = new Path("name");
+        nested = new Path("nested.a");
+        indexed = new Path("items." + (fanOut / 2) + ".label");
+        any = new Path("tags.*");
+        anyNested = new Path("items.*.label");
+    }
+
+    @Benchmark
+    public JsonNode getSimple() {
+        return doc.get(simple);
+    }
+
+    @Benchmark
+    public JsonNode getNested() {
+        return doc.get(nested);
+    }
+
+    @Benchmark
+    public JsonNode getIndexed() {
+        return doc.get(indexed);
+    }
+
+    @Benchmark
+    public JsonNode getParsed() {
+        return doc.get(new Path("items.0.label"));
+    }
+
+    private void all(Path p, Blackhole bh) {
+        KeyValueCursor<Path, JsonNode> cursor = doc.getAllNodes(p);
+        while (cursor.hasNext()) {
+            cursor.next();
+            bh.consume(cursor.getCurrentKey());
+            bh.consume(cursor.getCurrentValue());
+        }
+    }
+
+    @Benchmark
+    public void getAllNodes(Blackhole bh) {
+        all(any, bh);
+    }
+
+    @Benchmark
+    public void getAllNodesNested(Blackhole bh) {
+        all(anyNested, bh);
+    }
+}
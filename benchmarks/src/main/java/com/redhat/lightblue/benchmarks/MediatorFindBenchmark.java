@@ -0,0 +1,100 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.EntityVersion;
+import com.redhat.lightblue.Response;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
+import com.redhat.lightblue.crud.validator.EmptyEntityConstraintValidators;
+import com.redhat.lightblue.mediator.Mediator;
+
+/**
+ * End-to-end find requests through the mediator, using an in-memory
+ * CRUD controller. The simple find retrieves only the benchmark
+ * entity, the composite find also retrieves the referenced child
+ * entities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class MediatorFindBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int fanOut;
+
+    @Param({"100", "1000"})
+    public int docCount;
+
+    private Mediator mediator;
+
+    private FindRequest simpleFind;
+    private FindRequest compositeFind;
+
+    @Setup
+    public void setup() {
+        InMemoryCRUDController controller = new InMemoryCRUDController();
+        controller.setData(BenchmarkData.ENTITY, BenchmarkData.generateDocs(docCount, fanOut));
+        controller.setData(BenchmarkData.CHILD_ENTITY, BenchmarkData.generateChildDocs());
+
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+        factory.addCRUDController(BenchmarkData.BACKEND, controller);
+        mediator = new Mediator(BenchmarkData.getFakeMetadata(), factory);
+
+        simpleFind = new FindRequest();
+        simpleFind.setEntityVersion(new EntityVersion(BenchmarkData.ENTITY, BenchmarkData.VERSION));
+        simpleFind.setQuery(BenchmarkData.query("{'field':'status','op':'=','rvalue':'active'}"));
+        simpleFind.setProjection(BenchmarkData.projection("[{'field':'*','recursive':1},{'field':'child','include':false}]"));
+
+        compositeFind = new FindRequest();
+        compositeFind.setEntityVersion(new EntityVersion(BenchmarkData.ENTITY, BenchmarkData.VERSION));
+        compositeFind.setQuery(BenchmarkData.query("{'field':'status','op':'=','rvalue':'active'}"));
+        compositeFind.setProjection(BenchmarkData.projection("[{'field':'*','recursive':1},{'field':'child.*','recursive':1}]"));
+    }
+
+    @Benchmark
+    public Response find() {
+        return mediator.find(simpleFind);
+    }
+
+    @Benchmark
+    public Response compositeFind() {
+        return mediator.find(compositeFind);
+    }
+}
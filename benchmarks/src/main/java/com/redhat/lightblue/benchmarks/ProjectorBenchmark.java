@@ -0,0 +1,94 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Projects a set of documents using field, recursive and array
+ * projections
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ProjectorBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int fanOut;
+
+    @Param({"100"})
+    public int docCount;
+
+    private List<JsonDoc> docs;
+
+    private Projector all;
+    private Projector fields;
+    private Projector arrayMatch;
+
+    @Setup
+    public void setup() {
+        EntityMetadata md = BenchmarkData.getMetadata(BenchmarkData.ENTITY);
+        docs = BenchmarkData.generateDocs(docCount, fanOut);
+        all = Projector.getInstance(BenchmarkData.projection("{'field':'*','recursive':1}"), md);
+        fields = Projector.getInstance(BenchmarkData.projection("[{'field':'_id'},{'field':'name'},{'field':'nested.a'},{'field':'tags'}]"), md);
+        arrayMatch = Projector.getInstance(BenchmarkData.projection("[{'field':'_id'},{'field':'items','match':{'field':'score','op':'>','rvalue':5},'project':{'field':'label'}}]"), md);
+    }
+
+    private void project(Projector projector, Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            bh.consume(projector.project(doc, BenchmarkData.NODE_FACTORY));
+        }
+    }
+
+    @Benchmark
+    public void recursive(Blackhole bh) {
+        project(all, bh);
+    }
+
+    @Benchmark
+    public void fields(Blackhole bh) {
+        project(fields, bh);
+    }
+
+    @Benchmark
+    public void arrayMatch(Blackhole bh) {
+        project(arrayMatch, bh);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.eval.QueryEvaluator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Evaluates queries against a set of documents. Each benchmark
+ * evaluates the query for all documents, and returns the number of
+ * matching documents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class QueryEvaluatorBenchmark {
+
+    /**
+     * Number of elements in the document arrays
+     */
+    @Param({"1", "10", "100"})
+    public int fanOut;
+
+    /**
+     * Number of documents evaluated per invocation
+     */
+    @Param({"100"})
+    public int docCount;
+
+    private List<JsonDoc> docs;
+
+    private QueryEvaluator value;
+    private QueryEvaluator regex;
+    private QueryEvaluator in;
+    private QueryEvaluator elemMatch;
+    private QueryEvaluator and;
+
+    @Setup
+    public void setup() {
+        EntityMetadata md = BenchmarkData.getMetadata(BenchmarkData.ENTITY);
+        docs = BenchmarkData.generateDocs(docCount, fanOut);
+        value = QueryEvaluator.getInstance(BenchmarkData.query("{'field':'value','op':'>','rvalue':50}"), md);
+        regex = QueryEvaluator.getInstance(BenchmarkData.query("{'field':'nested.a','regex':'value1.*'}"), md);
+        in = QueryEvaluator.getInstance(BenchmarkData.query("{'field':'value','op':'$in','values':[1,3,5,7,11,13,17,19,23,29,31,37,41,43,47,53,59,61,67,71]}"), md);
+        elemMatch = QueryEvaluator.getInstance(BenchmarkData.query("{'array':'items','elemMatch':{'$and':[{'field':'label','op':'=','rvalue':'label5'},{'field':'score','op':'>','rvalue':5}]}}"), md);
+        and = QueryEvaluator.getInstance(BenchmarkData.query("{'$and':[{'field':'status','op':'=','rvalue':'active'},{'field':'nested.b','op':'<','rvalue':50},{'field':'name','regex':'child-[0-4].*'}]}"), md);
+    }
+
+    private int count(QueryEvaluator eval) {
+        int n = 0;
+        for (JsonDoc doc : docs) {
+            if (eval.evaluate(doc).getResult()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int valueComparison() {
+        return count(value);
+    }
+
+    @Benchmark
+    public int regex() {
+        return count(regex);
+    }
+
+    @Benchmark
+    public int in() {
+        return count(in);
+    }
+
+    @Benchmark
+    public int elemMatch() {
+        return count(elemMatch);
+    }
+
+    @Benchmark
+    public int and() {
+        return count(and);
+    }
+}
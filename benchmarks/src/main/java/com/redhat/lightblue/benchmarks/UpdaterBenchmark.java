@@ -0,0 +1,116 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.redhat.lightblue.eval.Updater;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Applies update expressions to a set of documents. Updates modify
+ * the documents, so every invocation updates fresh copies of the
+ * documents. The copy benchmark measures the cost of copying alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class UpdaterBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int fanOut;
+
+    @Param({"100"})
+    public int docCount;
+
+    private List<JsonDoc> docs;
+    private FieldTreeNode root;
+
+    private Updater set;
+    private Updater unset;
+    private Updater forEach;
+    private Updater append;
+
+    @Setup
+    public void setup() {
+        EntityMetadata md = BenchmarkData.getMetadata(BenchmarkData.ENTITY);
+        root = md.getFieldTreeRoot();
+        docs = BenchmarkData.generateDocs(docCount, fanOut);
+        set = Updater.getInstance(BenchmarkData.NODE_FACTORY, md, BenchmarkData.update("{'$set':{'nested.a':'updated','value':5,'status':'inactive'}}"));
+        unset = Updater.getInstance(BenchmarkData.NODE_FACTORY, md, BenchmarkData.update("{'$unset':['nested.b','status']}"));
+        forEach = Updater.getInstance(BenchmarkData.NODE_FACTORY, md, BenchmarkData.update("{'$foreach':{'items':{'field':'score','op':'>','rvalue':5},'$update':{'$set':{'label':'high'}}}}"));
+        append = Updater.getInstance(BenchmarkData.NODE_FACTORY, md, BenchmarkData.update("{'$append':{'tags':['x','y',{'$valueof':'name'}]}}"));
+    }
+
+    private void update(Updater updater, Blackhole bh) {
+        Path empty = new Path();
+        for (JsonDoc doc : docs) {
+            JsonDoc copy = doc.copy();
+            bh.consume(updater.update(copy, root, empty));
+            bh.consume(copy);
+        }
+    }
+
+    @Benchmark
+    public void copy(Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            bh.consume(doc.copy());
+        }
+    }
+
+    @Benchmark
+    public void set(Blackhole bh) {
+        update(set, bh);
+    }
+
+    @Benchmark
+    public void unset(Blackhole bh) {
+        update(unset, bh);
+    }
+
+    @Benchmark
+    public void forEach(Blackhole bh) {
+        update(forEach, bh);
+    }
+
+    @Benchmark
+    public void append(Blackhole bh) {
+        update(append, bh);
+    }
+}
@@ -27,6 +27,10 @@ import java.util.Iterator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.hooks.AsyncHookDispatcher;
+import com.redhat.lightblue.metadata.types.RandomUIDGenerator;
+import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonInitializable;
 
 /**
@@ -45,6 +49,18 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
 
     private ControllerConfiguration controllers[];
     private boolean validateRequests=false;
+    private int validationSampleRate=1;
+    private int compositeFindBatchSize=Factory.DEFAULT_COMPOSITE_FIND_BATCH_SIZE;
+    private long compositeMetadataCacheTTL=Factory.DEFAULT_COMPOSITE_METADATA_CACHE_TTL;
+    private int compositeFindThreads=Factory.DEFAULT_COMPOSITE_FIND_THREADS;
+    private int bulkParallelThreshold=Factory.DEFAULT_BULK_PARALLEL_THRESHOLD;
+    private int bulkParallelism=0;
+    private int asyncHookThreads=Factory.DEFAULT_ASYNC_HOOK_THREADS;
+    private int asyncHookQueueSize=Factory.DEFAULT_ASYNC_HOOK_QUEUE_SIZE;
+    private int asyncHookBatchSize=Factory.DEFAULT_ASYNC_HOOK_BATCH_SIZE;
+    private AsyncHookDispatcher.OverflowPolicy asyncHookOverflowPolicy=AsyncHookDispatcher.OverflowPolicy.BLOCK;
+    private Error.LogPolicy errorLogPolicy=Error.LogPolicy.ERROR;
+    private String uidGenerator=RandomUIDGenerator.NAME;
 
     public boolean isValidateRequests() {
         return validateRequests;
@@ -54,6 +70,156 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
         validateRequests=b;
     }
 
+    /**
+     * If validateRequests is set, only one in every
+     * validationSampleRate requests is validated
+     */
+    public int getValidationSampleRate() {
+        return validationSampleRate;
+    }
+
+    public void setValidationSampleRate(int n) {
+        validationSampleRate=n;
+    }
+
+    /**
+     * Returns the maximum number of distinct child queries combined
+     * into a single backend find during composite finds. Batching is
+     * disabled by default, set compositeFindBatchSize to a value
+     * greater than 1 to enable it.
+     */
+    public int getCompositeFindBatchSize() {
+        return compositeFindBatchSize;
+    }
+
+    public void setCompositeFindBatchSize(int n) {
+        compositeFindBatchSize=n;
+    }
+
+    /**
+     * Returns the time-to-live for cached composite metadata in
+     * msecs. A value less than or equal to 0 disables caching.
+     */
+    public long getCompositeMetadataCacheTTL() {
+        return compositeMetadataCacheTTL;
+    }
+
+    public void setCompositeMetadataCacheTTL(long ttl) {
+        compositeMetadataCacheTTL=ttl;
+    }
+
+    /**
+     * Returns the number of threads used to execute independent
+     * query plan nodes of composite finds in parallel. A value less
+     * than 2 disables parallel execution, which is the default. When
+     * enabled, CRUD controllers must be thread safe.
+     */
+    public int getCompositeFindThreads() {
+        return compositeFindThreads;
+    }
+
+    public void setCompositeFindThreads(int n) {
+        compositeFindThreads=n;
+    }
+
+    /**
+     * Returns the minimum number of documents in an insert or save
+     * request to validate and initialize them in parallel. 0 disables
+     * parallel processing.
+     */
+    public int getBulkParallelThreshold() {
+        return bulkParallelThreshold;
+    }
+
+    public void setBulkParallelThreshold(int n) {
+        bulkParallelThreshold=n;
+    }
+
+    /**
+     * Returns the number of threads used to process documents in
+     * parallel. 0 means the number of available processors.
+     */
+    public int getBulkParallelism() {
+        return bulkParallelism;
+    }
+
+    public void setBulkParallelism(int n) {
+        bulkParallelism=n;
+    }
+
+    /**
+     * Returns the number of threads calling hooks asynchronously. 0
+     * means the hooks are called in the request thread.
+     */
+    public int getAsyncHookThreads() {
+        return asyncHookThreads;
+    }
+
+    public void setAsyncHookThreads(int n) {
+        asyncHookThreads=n;
+    }
+
+    /**
+     * Returns the maximum number of pending asynchronous calls for
+     * each hook
+     */
+    public int getAsyncHookQueueSize() {
+        return asyncHookQueueSize;
+    }
+
+    public void setAsyncHookQueueSize(int n) {
+        asyncHookQueueSize=n;
+    }
+
+    /**
+     * Returns the maximum number of documents coalesced into a single
+     * asynchronous hook call
+     */
+    public int getAsyncHookBatchSize() {
+        return asyncHookBatchSize;
+    }
+
+    public void setAsyncHookBatchSize(int n) {
+        asyncHookBatchSize=n;
+    }
+
+    /**
+     * Returns what to do when the queue of an asynchronous hook is
+     * full. One of BLOCK, DROP, or CALLER_RUNS.
+     */
+    public AsyncHookDispatcher.OverflowPolicy getAsyncHookOverflowPolicy() {
+        return asyncHookOverflowPolicy;
+    }
+
+    public void setAsyncHookOverflowPolicy(AsyncHookDispatcher.OverflowPolicy p) {
+        asyncHookOverflowPolicy=p;
+    }
+
+    /**
+     * Returns how errors are logged when they are constructed. One of
+     * NONE, DEBUG, or ERROR.
+     */
+    public Error.LogPolicy getErrorLogPolicy() {
+        return errorLogPolicy;
+    }
+
+    public void setErrorLogPolicy(Error.LogPolicy p) {
+        errorLogPolicy=p;
+    }
+
+    /**
+     * The UID generator. Either one of the built-in generator names
+     * (random, threadLocalRandom, timeOrdered), or the name of a class
+     * implementing UIDGenerator.
+     */
+    public String getUidGenerator() {
+        return uidGenerator;
+    }
+
+    public void setUidGenerator(String s) {
+        uidGenerator=s;
+    }
+
     /**
      * @return the controllers
      */
@@ -103,6 +269,54 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
             x=node.get("validateRequests");
             if(x!=null)
                 validateRequests=x.booleanValue();
+
+            x=node.get("validationSampleRate");
+            if(x!=null)
+                validationSampleRate=x.intValue();
+
+            x=node.get("compositeFindBatchSize");
+            if(x!=null)
+                compositeFindBatchSize=x.intValue();
+
+            x=node.get("compositeMetadataCacheTTL");
+            if(x!=null)
+                compositeMetadataCacheTTL=x.longValue();
+
+            x=node.get("compositeFindThreads");
+            if(x!=null)
+                compositeFindThreads=x.intValue();
+
+            x=node.get("bulkParallelThreshold");
+            if(x!=null)
+                bulkParallelThreshold=x.intValue();
+
+            x=node.get("bulkParallelism");
+            if(x!=null)
+                bulkParallelism=x.intValue();
+
+            x=node.get("asyncHookThreads");
+            if(x!=null)
+                asyncHookThreads=x.intValue();
+
+            x=node.get("asyncHookQueueSize");
+            if(x!=null)
+                asyncHookQueueSize=x.intValue();
+
+            x=node.get("asyncHookBatchSize");
+            if(x!=null)
+                asyncHookBatchSize=x.intValue();
+
+            x=node.get("asyncHookOverflowPolicy");
+            if(x!=null)
+                asyncHookOverflowPolicy=AsyncHookDispatcher.OverflowPolicy.valueOf(x.asText().toUpperCase());
+
+            x=node.get("errorLogPolicy");
+            if(x!=null)
+                errorLogPolicy=Error.LogPolicy.valueOf(x.asText().toUpperCase());
+
+            x=node.get("uidGenerator");
+            if(x!=null)
+                uidGenerator=x.asText();
         }
     }
 }
@@ -18,16 +18,21 @@
  */
 package com.redhat.lightblue.config;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.fge.jsonschema.main.JsonSchema;
+import com.redhat.lightblue.util.CompiledJsonSchema;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonUtils;
 
@@ -36,6 +41,17 @@ import com.redhat.lightblue.util.JsonUtils;
  * optionally validating based on a schema. The POJO classes and their
  * correcponding schema must be registered before they're used to
  * parse json docs.
+ *
+ * If the schema can be compiled into a {@link CompiledJsonSchema},
+ * documents are first validated using the compiled schema, and the
+ * JsonSchema validator is only used to get the errors for documents
+ * failing that check. Validation can be limited to one in every N
+ * documents using {@link #setValidationSampleRate(int)}.
+ *
+ * A POJO may also have a {@link StreamingFromJson} registered. Such
+ * POJOs are decoded from the token stream when they are parsed from
+ * bytes or a byte stream and the document is not validated, so the
+ * document is never built as a json tree.
  */
 public class JsonTranslator {
 
@@ -43,6 +59,10 @@ public class JsonTranslator {
 
     private final Map<Class,TranslationInfo> translationMap=new HashMap<>();
 
+    private final AtomicLong parseCount=new AtomicLong();
+
+    private volatile int validationSampleRate=1;
+
     /**
      * An abstraction that defines how json document is parsed to a POJO
      */
@@ -53,6 +73,17 @@ public class JsonTranslator {
         Object fromJson(JsonNode node);
     }
 
+    /**
+     * An abstraction that defines how a json document is decoded to a
+     * POJO from its token stream
+     */
+    public interface StreamingFromJson {
+        /**
+         * Decode the json document read by the parser to a POJO
+         */
+        Object fromJson(JsonParser parser) throws IOException;
+    }
+
     /**
      * An implementation of FromJson that uses a static factory method
      * that gets a JsonNode object as argument, and returns a POJO
@@ -110,10 +141,13 @@ public class JsonTranslator {
         private final FromJson fromJson;
         private boolean validate;
         private final JsonSchema schema;
+        private final CompiledJsonSchema compiledSchema;
+        private StreamingFromJson streamingFromJson;
 
-        public TranslationInfo(FromJson fromJson,JsonSchema schema) {
+        public TranslationInfo(FromJson fromJson,JsonSchema schema,CompiledJsonSchema compiledSchema) {
             this.fromJson=fromJson;
             this.schema=schema;
+            this.compiledSchema=compiledSchema;
         }
 
         public JsonSchema getSchema() {
@@ -132,7 +166,7 @@ public class JsonTranslator {
      */
     public void registerTranslation(Class clazz,FromJson fromJson, String resource) {
         try {
-            registerTranslation(clazz,fromJson,JsonUtils.loadSchema(resource));
+            registerTranslation(clazz,fromJson,JsonUtils.loadSchema(resource),CompiledJsonSchema.compile(resource));
         } catch (Exception e) {
             throw new IllegalArgumentException(resource,e);
         }
@@ -148,10 +182,38 @@ public class JsonTranslator {
      * @param schema The JSON schema
      */
     public void registerTranslation(Class clazz,FromJson fromJson,JsonSchema schema) {
-        TranslationInfo ti=new TranslationInfo(fromJson,schema);
+        registerTranslation(clazz,fromJson,schema,null);
+    }
+
+    /**
+     * Registers a translation with the given schema, and the compiled
+     * version of the same schema
+     * 
+     * @param clazz The POJO class that will be returned when a JSON
+     * document of this type is parsed
+     * @param fromJson The implementation of FromJson interface that
+     * performs the actual parsing
+     * @param schema The JSON schema
+     * @param compiledSchema The compiled schema, or null if the
+     * schema cannot be compiled
+     */
+    public void registerTranslation(Class clazz,FromJson fromJson,JsonSchema schema,CompiledJsonSchema compiledSchema) {
+        TranslationInfo ti=new TranslationInfo(fromJson,schema,compiledSchema);
         translationMap.put(clazz,ti);
     }
 
+    /**
+     * Registers a streaming decoder for a POJO that already has a
+     * translation. The decoder is used to parse documents from bytes or
+     * byte streams when the document is not validated.
+     *
+     * @param clazz The POJO class
+     * @param streamingFromJson The decoder
+     */
+    public void registerStreamingTranslation(Class clazz,StreamingFromJson streamingFromJson) {
+        getTranslation(clazz).streamingFromJson=streamingFromJson;
+    }
+
     /**
      * Registers a translation with the given schema for a POJO with a
      * static factory method getting a JsonNode argument
@@ -186,6 +248,19 @@ public class JsonTranslator {
         setValidation(Object.class,validate);
     }
 
+    /**
+     * Sets the validation sample rate. If the rate is N, only one in
+     * every N parsed documents is validated. Rates less than 1 are
+     * treated as 1, meaning all documents are validated.
+     */
+    public void setValidationSampleRate(int rate) {
+        validationSampleRate=rate<1?1:rate;
+    }
+
+    public int getValidationSampleRate() {
+        return validationSampleRate;
+    }
+
     /**
      * Parses a json document, optionally validating it according to a
      * registered schema
@@ -200,22 +275,90 @@ public class JsonTranslator {
      */
     public <T> T parse(Class<T> clazz,JsonNode node) {
         LOGGER.debug("Parsing {}",clazz);
+        TranslationInfo t=getTranslation(clazz);
+        return parse(clazz,t,node,t.validate&&isSampled());
+    }
+
+    /**
+     * Parses a json document directly from its encoded bytes,
+     * optionally validating it according to a registered schema. The
+     * bytes are not copied into an intermediate string. If the
+     * document is not validated and a streaming decoder is registered,
+     * the document is decoded from the token stream.
+     *
+     * @param clazz The expected return POJO type
+     * @param bytes The JSON document
+     *
+     * @return The POJO
+     */
+    public <T> T parse(Class<T> clazz,byte[] bytes) throws IOException {
+        LOGGER.debug("Parsing {}",clazz);
+        TranslationInfo t=getTranslation(clazz);
+        boolean validate=t.validate&&isSampled();
+        if(!validate&&t.streamingFromJson!=null) {
+            return decode(t,JsonUtils.createParser(bytes));
+        }
+        return parse(clazz,t,JsonUtils.parse(bytes),validate);
+    }
+
+    /**
+     * Parses a json document directly from a byte stream, optionally
+     * validating it according to a registered schema. The stream is
+     * not copied into an intermediate string. If the document is not
+     * validated and a streaming decoder is registered, the document is
+     * decoded from the token stream.
+     *
+     * @param clazz The expected return POJO type
+     * @param stream The JSON document
+     *
+     * @return The POJO
+     */
+    public <T> T parse(Class<T> clazz,InputStream stream) throws IOException {
+        LOGGER.debug("Parsing {}",clazz);
+        TranslationInfo t=getTranslation(clazz);
+        boolean validate=t.validate&&isSampled();
+        if(!validate&&t.streamingFromJson!=null) {
+            return decode(t,JsonUtils.createParser(stream));
+        }
+        return parse(clazz,t,JsonUtils.parse(stream),validate);
+    }
+
+    private TranslationInfo getTranslation(Class clazz) {
         TranslationInfo t=translationMap.get(clazz);
         if(t==null)
             throw new IllegalArgumentException("No translation for "+clazz.getName());
-        if(t.validate) {
+        return t;
+    }
+
+    private <T> T parse(Class<T> clazz,TranslationInfo t,JsonNode node,boolean validate) {
+        if(validate) {
             LOGGER.debug("validating {}",clazz);
-            try {
-                String validationErrors=JsonUtils.jsonSchemaValidation(t.getSchema(),node);
-                if(validationErrors!=null) {
-                    throw Error.get(ConfigConstants.ERR_VALIDATION_FAILED,validationErrors);
+            // The JsonSchema validator is only used to get the errors
+            // for documents failing the compiled schema
+            if(t.compiledSchema==null||!t.compiledSchema.isValid(node)) {
+                try {
+                    String validationErrors=JsonUtils.jsonSchemaValidation(t.getSchema(),node);
+                    if(validationErrors!=null) {
+                        throw Error.get(ConfigConstants.ERR_VALIDATION_FAILED,validationErrors);
+                    }
+                } catch (RuntimeException re) {
+                    throw re;
+                } catch (Exception e) {
+                    throw new IllegalArgumentException(e);
                 }
-            } catch (RuntimeException re) {
-                throw re;
-            } catch (Exception e) {
-                throw new IllegalArgumentException(e);
             }
         }
         return (T)t.fromJson.fromJson(node);
     }
+
+    private <T> T decode(TranslationInfo t,JsonParser parser) throws IOException {
+        try (JsonParser p=parser) {
+            return (T)t.streamingFromJson.fromJson(p);
+        }
+    }
+
+    private boolean isSampled() {
+        int rate=validationSampleRate;
+        return rate==1||parseCount.getAndIncrement()%rate==0;
+    }
 }
@@ -27,6 +27,7 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -48,10 +49,17 @@ import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.EntitySchema;
 import com.redhat.lightblue.metadata.Metadata;
 import com.redhat.lightblue.metadata.MetadataConstants;
+import com.redhat.lightblue.metadata.NotifyingMetadata;
 import com.redhat.lightblue.metadata.parser.DataStoreParser;
 import com.redhat.lightblue.metadata.parser.Extensions;
 import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
 import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.metadata.types.RandomUIDGenerator;
+import com.redhat.lightblue.metadata.types.ThreadLocalRandomUIDGenerator;
+import com.redhat.lightblue.metadata.types.TimeOrderedUIDGenerator;
+import com.redhat.lightblue.metadata.types.UIDGenerator;
+import com.redhat.lightblue.metadata.types.UIDType;
+import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonUtils;
 
 /**
@@ -129,9 +137,22 @@ public final class LightblueFactory implements Serializable {
 
             // Set validation flag for all crud requests
             getJsonTranslator().setValidation(Request.class, configuration.isValidateRequests());
+            getJsonTranslator().setValidationSampleRate(configuration.getValidationSampleRate());
 
             Factory f = new Factory();
             f.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+            f.setCompositeFindBatchSize(configuration.getCompositeFindBatchSize());
+            f.setCompositeMetadataCacheTTL(configuration.getCompositeMetadataCacheTTL());
+            f.setCompositeFindThreads(configuration.getCompositeFindThreads());
+            f.setBulkParallelThreshold(configuration.getBulkParallelThreshold());
+            f.setBulkParallelism(configuration.getBulkParallelism());
+            f.setAsyncHookThreads(configuration.getAsyncHookThreads());
+            f.setAsyncHookQueueSize(configuration.getAsyncHookQueueSize());
+            f.setAsyncHookBatchSize(configuration.getAsyncHookBatchSize());
+            f.setAsyncHookOverflowPolicy(configuration.getAsyncHookOverflowPolicy());
+
+            Error.setLogPolicy(configuration.getErrorLogPolicy());
+            UIDType.setGenerator(getUIDGenerator(configuration.getUidGenerator()));
 
             // Add default interceptors
             new UIDInterceptor().register(f.getInterceptors());
@@ -154,6 +175,23 @@ public final class LightblueFactory implements Serializable {
         }
     }
 
+    /**
+     * Returns the UID generator for the given name. The name is either one of
+     * the built-in generator names, or a class name.
+     */
+    private static UIDGenerator getUIDGenerator(String name)
+            throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        if (name == null || RandomUIDGenerator.NAME.equals(name)) {
+            return new RandomUIDGenerator();
+        } else if (ThreadLocalRandomUIDGenerator.NAME.equals(name)) {
+            return new ThreadLocalRandomUIDGenerator();
+        } else if (TimeOrderedUIDGenerator.NAME.equals(name)) {
+            return new TimeOrderedUIDGenerator();
+        } else {
+            return (UIDGenerator) Class.forName(name).newInstance();
+        }
+    }
+
     private synchronized void initializeMetadata(Factory factory) throws IOException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
         if (metadata == null) {
             LOGGER.debug("Initializing metadata");
@@ -182,7 +220,9 @@ public final class LightblueFactory implements Serializable {
             getJsonTranslator().setValidation(EntitySchema.class, cfg.isValidateRequests());
             getJsonTranslator().setValidation(EntityInfo.class, cfg.isValidateRequests());
 
-            metadata = cfg.createMetadata(datasources, getJSONParser(), this);
+            // Notify the composite metadata cache about metadata changes
+            metadata = new NotifyingMetadata(cfg.createMetadata(datasources, getJSONParser(), this),
+                    factory.getMetadataListener());
 
             factory.setHookResolver(new SimpleHookResolver(cfg.getHookConfigurationParsers(), this));
         }
@@ -247,6 +287,21 @@ public final class LightblueFactory implements Serializable {
                 tx.registerTranslation(UpdateRequest.class,
                         new JsonTranslator.StaticFactoryMethod(UpdateRequest.class, "fromJson", ObjectNode.class),
                         "json-schema/updateRequest.json");
+
+                // Find and insert requests are decoded from the token
+                // stream when they are parsed from bytes without validation
+                tx.registerStreamingTranslation(FindRequest.class, new JsonTranslator.StreamingFromJson() {
+                    @Override
+                    public Object fromJson(JsonParser parser) throws IOException {
+                        return FindRequest.fromJson(parser);
+                    }
+                });
+                tx.registerStreamingTranslation(InsertionRequest.class, new JsonTranslator.StreamingFromJson() {
+                    @Override
+                    public Object fromJson(JsonParser parser) throws IOException {
+                        return InsertionRequest.fromJson(parser);
+                    }
+                });
             } catch (RuntimeException re) {
                 throw re;
             } catch (Exception e) {
@@ -257,6 +312,12 @@ public final class LightblueFactory implements Serializable {
         }
     }
 
+    /**
+     * Returns the metadata. The metadata created by the metadata
+     * configuration is wrapped in a NotifyingMetadata, so the caches
+     * of the CRUD factory are notified about metadata changes. Use
+     * NotifyingMetadata.unwrap to get the metadata implementation.
+     */
     public Metadata getMetadata()
             throws IOException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
         if (metadata == null) {
@@ -301,4 +362,16 @@ public final class LightblueFactory implements Serializable {
         }
         return jsonTranslator;
     }
+
+    /**
+     * Delivers the pending asynchronous hook calls, and shuts down the
+     * threads created by the CRUD factory. Call this when the
+     * application is undeployed.
+     */
+    public void shutdown() throws InterruptedException {
+        Factory f = factory;
+        if (f != null) {
+            f.shutdown(Factory.DEFAULT_SHUTDOWN_TIMEOUT);
+        }
+    }
 }
@@ -18,6 +18,8 @@
  */
 package com.redhat.lightblue.config;
 
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -25,6 +27,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import com.redhat.lightblue.Request;
 import com.redhat.lightblue.crud.DeleteRequest;
+import com.redhat.lightblue.crud.FindRequest;
 
 import com.redhat.lightblue.util.test.FileUtil;
 
@@ -91,4 +94,17 @@ public class CrudValidationTest {
             System.out.println(e);
         }
     }
+
+    @Test
+    public void testFindRequestFromBytesWithNonValidating() throws Exception {
+
+        LightblueFactory lbf=new LightblueFactory(new DataSourcesConfiguration());
+
+        lbf.getJsonTranslator().setValidation(Request.class,false);
+
+        String jsonString = "{\"entity\":\"a\",\"entityVersion\":\"1.0\",\"query\":{\"field\":\"x\",\"op\":\"=\",\"rvalue\":1},\"range\":[0,9]}";
+        FindRequest streamed=lbf.getJsonTranslator().parse(FindRequest.class,jsonString.getBytes(StandardCharsets.UTF_8));
+        FindRequest tree=lbf.getJsonTranslator().parse(FindRequest.class,json(jsonString));
+        Assert.assertEquals(tree.toJson(),streamed.toJson());
+    }
 }
@@ -18,6 +18,10 @@
  */
 package com.redhat.lightblue;
 
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.util.JsonObject;
@@ -119,4 +123,66 @@ public abstract class Request extends JsonObject {
             execution = ExecutionOptions.fromJson((ObjectNode) x);
         }
     }
+
+    /**
+     * Parses the request from the token stream of a json object. The
+     * parser is positioned either before the object, or at its start
+     * token. The request object itself is never built as a json tree:
+     * each field is passed to {@link #parseField(String,JsonParser)},
+     * and unrecognized fields are skipped. The parser must have a codec
+     * to read field values, such as the parsers returned by
+     * {@link com.redhat.lightblue.util.JsonUtils#createParser(byte[])}.
+     */
+    protected void parse(JsonParser parser) throws IOException {
+        entityVersion = new EntityVersion();
+        JsonToken tok = parser.getCurrentToken();
+        if (tok == null) {
+            tok = parser.nextToken();
+        }
+        if (tok != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Expected a json object, got " + tok);
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (!parseField(name, parser)) {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Parses a single field of the request. The parser is positioned at
+     * the first token of the field value. If the field is recognized, its
+     * value is consumed and this method returns true. Subclasses override
+     * this to parse their own fields.
+     */
+    protected boolean parseField(String name, JsonParser parser) throws IOException {
+        switch (name) {
+            case "entity":
+                entityVersion.setEntity(asText(parser));
+                return true;
+            case "entityVersion":
+                entityVersion.setVersion(asText(parser));
+                return true;
+            case "execution":
+                JsonNode x = parser.readValueAsTree();
+                execution = ExecutionOptions.fromJson((ObjectNode) x);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the text of the current value, the same way
+     * <code>JsonNode.asText()</code> would
+     */
+    private static String asText(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken().isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return "";
+    }
 }
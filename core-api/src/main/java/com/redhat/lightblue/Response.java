@@ -18,13 +18,19 @@
  */
 package com.redhat.lightblue;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonObject;
+import com.redhat.lightblue.util.JsonUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -45,6 +51,8 @@ public class Response extends JsonObject {
     private static final String PROPERTY_DATA_ERRORS = "dataErrors";
     private static final String PROPERTY_ERRORS = "errors";
 
+    private static final ObjectMapper MAPPER = JsonUtils.getObjectMapper();
+
     private OperationStatus status;
     private long modifiedCount;
     private long matchCount;
@@ -196,6 +204,125 @@ public class Response extends JsonObject {
         return builder.build();
     }
 
+    /**
+     * Writes the JSON representation of this response to the output
+     * stream as UTF-8. The output stream is not closed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, null);
+    }
+
+    /**
+     * Writes the JSON representation of this response to the output
+     * stream as UTF-8, using the given documents as the entity data. The
+     * output stream is not closed.
+     *
+     * @see #writeTo(JsonGenerator,Iterator)
+     */
+    public void writeTo(OutputStream out, Iterator<? extends JsonNode> documents) throws IOException {
+        JsonGenerator gen = MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            writeTo(gen, documents);
+        } finally {
+            gen.close();
+        }
+    }
+
+    /**
+     * Writes the JSON representation of this response using the
+     * generator. The output is the same as toJson(), but the JSON tree
+     * for the response is never built.
+     */
+    public void writeTo(JsonGenerator gen) throws IOException {
+        writeTo(gen, null);
+    }
+
+    /**
+     * Writes the JSON representation of this response using the
+     * generator.
+     *
+     * @param gen The generator
+     * @param documents If non-null, the entity data is read from this
+     * iterator one document at a time, and written as it is read. If
+     * null, the entity data of this response is written.
+     *
+     * The fields are written in the same order as toJson(). When the
+     * documents are produced lazily, the status and the counts must be
+     * set before calling this method, whereas the data errors and
+     * errors are written after the documents, so errors collected
+     * while iterating the documents are included.
+     */
+    public void writeTo(JsonGenerator gen, Iterator<? extends JsonNode> documents) throws IOException {
+        gen.writeStartObject();
+        writeStatusFields(gen);
+        if (documents != null) {
+            gen.writeArrayFieldStart(PROPERTY_PROCESSED);
+            while (documents.hasNext()) {
+                MAPPER.writeTree(gen, documents.next());
+            }
+            gen.writeEndArray();
+        } else {
+            writeEntityData(gen);
+        }
+        writeErrorFields(gen);
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the fields of this response using the generator, except
+     * the entity data. The enclosing object is not started or ended.
+     *
+     * This is for writers that emit the entity data of a find
+     * operation while the documents are produced, before the status,
+     * the counts, and the errors are known. Such a writer starts the
+     * object, writes the entity data field, and then calls this
+     * method after the operation completes.
+     */
+    public void writeFieldsTo(JsonGenerator gen) throws IOException {
+        writeStatusFields(gen);
+        writeErrorFields(gen);
+    }
+
+    private void writeStatusFields(JsonGenerator gen) throws IOException {
+        if (status != null) {
+            gen.writeStringField(PROPERTY_STATUS, status.name());
+        }
+        gen.writeNumberField(PROPERTY_MOD_COUNT, modifiedCount);
+        gen.writeNumberField(PROPERTY_MATCH_COUNT, matchCount);
+        if (taskHandle != null) {
+            gen.writeStringField(PROPERTY_TASK_HANDLE, taskHandle);
+        }
+        if (session != null) {
+            gen.writeFieldName(PROPERTY_SESSION);
+            MAPPER.writeTree(gen, session.toJson());
+        }
+    }
+
+    private void writeEntityData(JsonGenerator gen) throws IOException {
+        if (entityData != null) {
+            gen.writeFieldName(PROPERTY_PROCESSED);
+            MAPPER.writeTree(gen, entityData);
+        }
+    }
+
+    private void writeErrorFields(JsonGenerator gen) throws IOException {
+        if (!dataErrors.isEmpty()) {
+            gen.writeArrayFieldStart(PROPERTY_DATA_ERRORS);
+            for (DataError x : dataErrors) {
+                MAPPER.writeTree(gen, x.toJson());
+            }
+            gen.writeEndArray();
+        }
+        if (!errors.isEmpty()) {
+            gen.writeArrayFieldStart(PROPERTY_ERRORS);
+            for (Error x : errors) {
+                MAPPER.writeTree(gen, x.toJson());
+            }
+            gen.writeEndArray();
+        }
+    }
+
     public static class ResponseBuilder {
 
         private OperationStatus status;
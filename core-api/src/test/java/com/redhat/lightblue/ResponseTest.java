@@ -25,11 +25,14 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.Response.ResponseBuilder;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonObject;
+import com.redhat.lightblue.util.JsonUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -257,6 +260,68 @@ public class ResponseTest {
         assertTrue(response.toJson().equals(expectedNode));
     }
 
+    @Test
+    public void testWriteTo() throws Exception {
+        response.setStatus(OperationStatus.PARTIAL);
+        response.setMatchCount(2);
+        response.setTaskHandle("task");
+        ArrayNode data = JsonObject.getFactory().arrayNode();
+        data.add(JsonObject.getFactory().objectNode().put("a", 1));
+        data.add(JsonObject.getFactory().objectNode().put("a", 2));
+        response.setEntityData(data);
+        response.getErrors().addAll(getPopulatedErrors(2));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeTo(out);
+        assertEquals(response.toJson().toString(), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testWriteToNull() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeTo(out);
+        assertEquals(response.toJson().toString(), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testWriteToDocumentIterator() throws Exception {
+        response.setStatus(OperationStatus.COMPLETE);
+        final List<JsonNode> docs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            docs.add(JsonObject.getFactory().objectNode().put("a", i));
+        }
+        // Errors added while iterating must still be written
+        Iterator<JsonNode> itr = new Iterator<JsonNode>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < docs.size();
+            }
+
+            @Override
+            public JsonNode next() {
+                if (i == docs.size() - 1) {
+                    response.getErrors().add(Error.get("last"));
+                }
+                return docs.get(i++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeTo(out, itr);
+
+        JsonNode result = JsonUtils.json(out.toString("UTF-8"));
+        assertEquals("COMPLETE", result.get("status").asText());
+        assertEquals(3, result.get("processed").size());
+        assertEquals(2, result.get("processed").get(2).get("a").asInt());
+        assertEquals(1, result.get("errors").size());
+    }
+
     private List<DataError> getPopulatedDataErrors(int numberOfErrors) {
         List<DataError> dataErrors = new ArrayList<>();
 
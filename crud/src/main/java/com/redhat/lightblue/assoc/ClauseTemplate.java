@@ -0,0 +1,349 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.lightblue.query.ArrayContainsExpression;
+import com.redhat.lightblue.query.NaryValueRelationalExpression;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.QueryIterator;
+import com.redhat.lightblue.query.RegexMatchExpression;
+import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.ValueComparisonExpression;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A rewritten query clause assigned to a query plan node or edge, with
+ * the literal values coming from the request query replaced by
+ * references to the request query parameters, as extracted by
+ * QueryFingerprint. Binding the template to the parameters of another
+ * query of the same shape gives the clause the query plan chooser
+ * would have built for that query.
+ *
+ * The references are by position: the query plan is chosen for the
+ * parameterized request query, in which every literal is replaced by a
+ * placeholder giving the position of the literal among the query
+ * parameters. The placeholders are carried over to the rewritten
+ * clauses, so they do not depend on the identities of the values.
+ */
+final class ClauseTemplate {
+
+    /**
+     * Prefix of the regular expressions that are placeholders
+     */
+    private static final String REGEX_PLACEHOLDER = "\u0000?";
+
+    /**
+     * A reference to a query parameter. Used as the value of
+     * placeholder values in parameterized queries. A value list is
+     * replaced by a list containing a single placeholder, so the
+     * parameterized query does not depend on the size of the list.
+     */
+    static final class Ref implements Serializable {
+        private static final long serialVersionUID = 1l;
+
+        private final int param;
+
+        Ref(int param) {
+            this.param = param;
+        }
+
+        Object get(List<Object> params) {
+            return param < params.size() ? params.get(param) : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref && ((Ref) o).param == param;
+        }
+
+        @Override
+        public int hashCode() {
+            return param;
+        }
+
+        @Override
+        public String toString() {
+            return "?" + param;
+        }
+    }
+
+    private final QueryExpression clause;
+    private final Path[] target;
+    /**
+     * References for the literals of the clause, in iteration order.
+     * Scalar values and regular expressions have a Ref, or null if
+     * the literal is not a request value. Value lists have a list of
+     * Refs and Values. Null if the clause does not contain request
+     * values.
+     */
+    private final List<Object> refs;
+
+    private ClauseTemplate(QueryExpression clause, Path[] target, List<Object> refs) {
+        this.clause = clause;
+        this.target = target;
+        this.refs = refs;
+    }
+
+    /**
+     * Returns the entity paths of the query plan node, or the two nodes
+     * of the edge the clause is assigned to
+     */
+    Path[] getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the query with every literal replaced by a placeholder
+     * giving its position in the query parameters, or null if the
+     * literals cannot be located unambiguously.
+     *
+     * @param query The request query
+     * @param params The parameters of the query, as extracted by
+     * QueryFingerprint
+     */
+    static QueryExpression parameterize(QueryExpression query, List<Object> params) {
+        final Map<Object, Integer> index = new IdentityHashMap<>();
+        int n = params.size();
+        for (int i = 0; i < n; i++) {
+            if (index.put(params.get(i), i) != null) {
+                return null;
+            }
+        }
+        final boolean[] ok = new boolean[]{true};
+        QueryExpression q = new QueryIterator() {
+            @Override
+            protected QueryExpression itrValueComparisonExpression(ValueComparisonExpression q, Path context) {
+                Integer i = locate(q.getRvalue());
+                return i == null ? q : new ValueComparisonExpression(q.getField(), q.getOp(), new Value(new Ref(i)));
+            }
+
+            @Override
+            protected QueryExpression itrRegexMatchExpression(RegexMatchExpression q, Path context) {
+                Integer i = locate(q.getRegex());
+                return i == null ? q : new RegexMatchExpression(q.getField(), REGEX_PLACEHOLDER + i, q.isCaseInsensitive(),
+                        q.isMultiline(), q.isExtended(), q.isDotAll());
+            }
+
+            @Override
+            protected QueryExpression itrNaryValueRelationalExpression(NaryValueRelationalExpression q, Path context) {
+                Integer i = locate(q.getValues());
+                return i == null ? q : new NaryValueRelationalExpression(q.getField(), q.getOp(), placeholder(i));
+            }
+
+            @Override
+            protected QueryExpression itrArrayContainsExpression(ArrayContainsExpression q, Path context) {
+                Integer i = locate(q.getValues());
+                return i == null ? q : new ArrayContainsExpression(q.getArray(), q.getOp(), placeholder(i));
+            }
+
+            private Integer locate(Object literal) {
+                Integer i = index.get(literal);
+                if (i == null) {
+                    ok[0] = false;
+                }
+                return i;
+            }
+
+            private List<Value> placeholder(int param) {
+                List<Value> list = new ArrayList<>(1);
+                list.add(new Value(new Ref(param)));
+                return list;
+            }
+        }.iterate(query);
+        return ok[0] ? q : null;
+    }
+
+    /**
+     * Builds a template for a clause of the query plan chosen for a
+     * parameterized query.
+     *
+     * @param clause The rewritten clause
+     * @param seen Collects the references to the request literals
+     * contained in the clause
+     * @param target The entity paths of the node or edge
+     */
+    static ClauseTemplate create(QueryExpression clause,
+                                 final Set<Ref> seen,
+                                 Path[] target) {
+        final List<Object> refs = new ArrayList<>();
+        final boolean[] parameterized = new boolean[]{false};
+        new QueryIterator() {
+            @Override
+            protected QueryExpression itrValueComparisonExpression(ValueComparisonExpression q, Path context) {
+                refs.add(ref(q.getRvalue()));
+                return q;
+            }
+
+            @Override
+            protected QueryExpression itrRegexMatchExpression(RegexMatchExpression q, Path context) {
+                Ref ref = null;
+                String regex = q.getRegex();
+                if (regex != null && regex.startsWith(REGEX_PLACEHOLDER)) {
+                    ref = new Ref(Integer.parseInt(regex.substring(REGEX_PLACEHOLDER.length())));
+                    seen.add(ref);
+                    parameterized[0] = true;
+                }
+                refs.add(ref);
+                return q;
+            }
+
+            @Override
+            protected QueryExpression itrNaryValueRelationalExpression(NaryValueRelationalExpression q, Path context) {
+                refs.add(refList(q.getValues()));
+                return q;
+            }
+
+            @Override
+            protected QueryExpression itrArrayContainsExpression(ArrayContainsExpression q, Path context) {
+                refs.add(refList(q.getValues()));
+                return q;
+            }
+
+            private Ref ref(Value v) {
+                if (v != null && v.getValue() instanceof Ref) {
+                    Ref ref = (Ref) v.getValue();
+                    seen.add(ref);
+                    parameterized[0] = true;
+                    return ref;
+                }
+                return null;
+            }
+
+            private List<Object> refList(List<Value> values) {
+                List<Object> list = new ArrayList<>(values.size());
+                for (Value v : values) {
+                    Ref ref = ref(v);
+                    list.add(ref == null ? v : ref);
+                }
+                return list;
+            }
+        }.iterate(clause);
+        return new ClauseTemplate(clause, target, parameterized[0] ? refs : null);
+    }
+
+    /**
+     * Returns the references to all the given parameters
+     */
+    static Set<Ref> getRefs(List<Object> params) {
+        Set<Ref> set = new HashSet<>();
+        int n = params.size();
+        for (int i = 0; i < n; i++) {
+            set.add(new Ref(i));
+        }
+        return set;
+    }
+
+    /**
+     * Returns the clause with the literals of the given request
+     * parameters, or null if the parameters do not fit the template
+     */
+    QueryExpression bind(final List<Object> params) {
+        if (refs == null) {
+            return clause;
+        }
+        final int[] index = new int[]{0};
+        final boolean[] ok = new boolean[]{true};
+        QueryExpression q = new QueryIterator() {
+            @Override
+            protected QueryExpression itrValueComparisonExpression(ValueComparisonExpression q, Path context) {
+                Ref ref = (Ref) next();
+                if (ref == null) {
+                    return q;
+                }
+                Object v = ref.get(params);
+                if (v instanceof Value) {
+                    return new ValueComparisonExpression(q.getField(), q.getOp(), (Value) v);
+                }
+                ok[0] = false;
+                return q;
+            }
+
+            @Override
+            protected QueryExpression itrRegexMatchExpression(RegexMatchExpression q, Path context) {
+                Ref ref = (Ref) next();
+                if (ref == null) {
+                    return q;
+                }
+                Object v = ref.get(params);
+                if (v instanceof String) {
+                    return new RegexMatchExpression(q.getField(), (String) v, q.isCaseInsensitive(),
+                            q.isMultiline(), q.isExtended(), q.isDotAll());
+                }
+                ok[0] = false;
+                return q;
+            }
+
+            @Override
+            protected QueryExpression itrNaryValueRelationalExpression(NaryValueRelationalExpression q, Path context) {
+                List<Value> values = values((List<Object>) next());
+                if (values != null) {
+                    return new NaryValueRelationalExpression(q.getField(), q.getOp(), values);
+                }
+                ok[0] = false;
+                return q;
+            }
+
+            @Override
+            protected QueryExpression itrArrayContainsExpression(ArrayContainsExpression q, Path context) {
+                List<Value> values = values((List<Object>) next());
+                if (values != null) {
+                    return new ArrayContainsExpression(q.getArray(), q.getOp(), values);
+                }
+                ok[0] = false;
+                return q;
+            }
+
+            private Object next() {
+                return refs.get(index[0]++);
+            }
+
+            /**
+             * Builds the value list, expanding the references to list
+             * parameters
+             */
+            private List<Value> values(List<Object> list) {
+                List<Value> values = new ArrayList<>();
+                for (Object x : list) {
+                    if (x instanceof Value) {
+                        values.add((Value) x);
+                    } else {
+                        Object v = ((Ref) x).get(params);
+                        if (v instanceof Value) {
+                            values.add((Value) v);
+                        } else if (v instanceof List) {
+                            values.addAll((List<Value>) v);
+                        } else {
+                            return null;
+                        }
+                    }
+                }
+                return values;
+            }
+        }.iterate(clause);
+        return ok[0] ? q : null;
+    }
+}
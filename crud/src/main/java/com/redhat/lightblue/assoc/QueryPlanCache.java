@@ -0,0 +1,422 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.QueryFingerprint;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A bounded cache of query plan arrangements. The arrangement of the
+ * chosen query plan depends on the entity tree, and on the query
+ * clauses assigned to the plan nodes and edges, so queries of the same
+ * shape, differing only in values, for the same entity tree get the
+ * same plan. The cache key contains the entity tree, the parameterized
+ * query, and the sort and range of the request, so keys do not
+ * collide.
+ *
+ * The cache stores the directions of the plan edges, identified by
+ * the entity paths of the nodes, and the rewritten query clauses
+ * assigned to the nodes and edges, with the request values replaced
+ * by references to the positions of the query parameters. On a hit, the clauses are
+ * bound to the values of the current request, and the query plan is
+ * built without rewriting the query, assigning the clauses, or
+ * searching for the best plan. If the clauses of a query cannot be
+ * parameterized, only the edge directions are cached, and they are
+ * applied to the query plan built by the query plan chooser.
+ */
+public class QueryPlanCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryPlanCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * A directed edge from the node with entity path 'from' to the
+     * node with entity path 'to'
+     */
+    private static final class Edge {
+        private final Path from;
+        private final Path to;
+
+        Edge(Path from, Path to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private static final class CachedPlan {
+        private final List<Edge> edges;
+        private final List<ClauseTemplate> clauses;
+
+        CachedPlan(List<Edge> edges, List<ClauseTemplate> clauses) {
+            this.edges = edges;
+            this.clauses = clauses;
+        }
+    }
+
+    private final Map<String, CachedPlan> cache;
+
+    public QueryPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public QueryPlanCache(final int maxSize) {
+        cache = new LinkedHashMap<String, CachedPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * A request query, and its parameterized form. The parameterized
+     * query has every literal value replaced by a placeholder giving
+     * the position of the value among the query parameters, so
+     * queries that differ only in values have the same parameterized
+     * query.
+     */
+    public static final class ParameterizedQuery {
+        private final QueryExpression query;
+        private final QueryExpression parameterized;
+        private final List<Object> params;
+
+        private ParameterizedQuery(QueryExpression query, QueryExpression parameterized, List<Object> params) {
+            this.query = query;
+            this.parameterized = parameterized;
+            this.params = params;
+        }
+
+        /**
+         * Returns the request query
+         */
+        public QueryExpression getQuery() {
+            return query;
+        }
+
+        /**
+         * Returns the parameterized query, or null if the query cannot
+         * be parameterized
+         */
+        public QueryExpression getParameterizedQuery() {
+            return parameterized;
+        }
+
+        /**
+         * Returns the literal values of the request query, in the
+         * order of the placeholders
+         */
+        public List<Object> getParameters() {
+            return params;
+        }
+
+        public boolean isParameterized() {
+            return parameterized != null;
+        }
+
+        /**
+         * Returns the query shape: the parameterized query if there is
+         * one, and the request query otherwise
+         */
+        String getShape() {
+            if (parameterized != null) {
+                return "P" + parameterized.toString();
+            } else {
+                return "Q" + (query == null ? "" : query.toString());
+            }
+        }
+    }
+
+    /**
+     * Parameterizes the request query
+     */
+    public static ParameterizedQuery parameterize(QueryExpression query) {
+        if (query == null) {
+            return new ParameterizedQuery(null, null, Collections.<Object>emptyList());
+        }
+        List<Object> params = QueryFingerprint.of(query).getParameters();
+        return new ParameterizedQuery(query, ClauseTemplate.parameterize(query, params), params);
+    }
+
+    /**
+     * Returns the cache key for a query plan built from the given
+     * composite metadata, entity filter, and query, with no sort and
+     * range.
+     *
+     * @param root The root composite metadata
+     * @param filter The entities included in the query plan, or null
+     * if all entities are included
+     * @param query The request query
+     */
+    public static String getKey(CompositeMetadata root,
+                                Set<CompositeMetadata> filter,
+                                QueryExpression query) {
+        return getKey(root, filter, parameterize(query), null, false);
+    }
+
+    /**
+     * Returns the cache key for a query plan built from the given
+     * composite metadata, entity filter, and query, for a request with
+     * the given sort and range. The query contributes its shape, so
+     * queries that differ only in values have the same key.
+     *
+     * @param root The root composite metadata
+     * @param filter The entities included in the query plan, or null
+     * if all entities are included
+     * @param query The parameterized request query
+     * @param sort The request sort, or null
+     * @param range Whether the request has a range
+     */
+    public static String getKey(CompositeMetadata root,
+                                Set<CompositeMetadata> filter,
+                                ParameterizedQuery query,
+                                Sort sort,
+                                boolean range) {
+        StringBuilder bld = new StringBuilder(256);
+        appendTree(bld, root, filter);
+        bld.append('|').append(query.getShape()).
+                append('|').append(sort == null ? "" : sort.toString()).
+                append('|').append(range);
+        return bld.toString();
+    }
+
+    private static void appendTree(StringBuilder bld, CompositeMetadata md, Set<CompositeMetadata> filter) {
+        if (filter == null || filter.contains(md)) {
+            bld.append('(').append(md.getEntityPath()).append(':').
+                    append(md.getName()).append(':').
+                    append(md.getVersion() == null ? null : md.getVersion().getValue());
+            for (Path p : md.getChildPaths()) {
+                appendTree(bld, md.getChildMetadata(p), filter);
+            }
+            bld.append(')');
+        }
+    }
+
+    /**
+     * Stores the arrangement of the given query plan
+     */
+    public void put(String key, QueryPlan qp) {
+        put(key, new CachedPlan(getEdges(qp), null));
+    }
+
+    /**
+     * Stores the arrangement of the chosen query plan, and the query
+     * clauses assigned by the chooser. The chooser must be constructed
+     * for the parameterized query.
+     *
+     * @param key The cache key
+     * @param chooser The query plan chooser constructed for the
+     * parameterized query
+     * @param chosen The chosen query plan
+     * @param query The parameterized request query
+     */
+    public void put(String key, QueryPlanChooser chooser, QueryPlan chosen, ParameterizedQuery query) {
+        put(key, new CachedPlan(getEdges(chosen), query.isParameterized() ? getClauses(chooser, query.getParameters()) : null));
+    }
+
+    private void put(String key, CachedPlan entry) {
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+    }
+
+    /**
+     * Returns if there is an entry for the key
+     */
+    public boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    private CachedPlan get(String key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private static List<Edge> getEdges(QueryPlan qp) {
+        List<Edge> edges = new ArrayList<>();
+        for (QueryPlanNode node : qp.getAllNodes()) {
+            for (QueryPlanNode dest : node.getDestinations()) {
+                edges.add(new Edge(node.getMetadata().getEntityPath(), dest.getMetadata().getEntityPath()));
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Builds the clause templates for the clauses assigned to the
+     * nodes and edges of the query plan of the chooser. Returns null
+     * if the clauses cannot be parameterized.
+     */
+    private static List<ClauseTemplate> getClauses(QueryPlanChooser chooser, List<Object> params) {
+        QueryPlan qp = chooser.getQueryPlan();
+        if (!qp.getUnassignedClauses().isEmpty()) {
+            return null;
+        }
+        Set<ClauseTemplate.Ref> seen = new HashSet<>();
+        List<ClauseTemplate> clauses = new ArrayList<>();
+        QueryPlanNode[] nodes = qp.getAllNodes();
+        for (int i = 0; i < nodes.length; i++) {
+            Path[] target = new Path[]{nodes[i].getMetadata().getEntityPath()};
+            addClauses(clauses, nodes[i].getData(), seen, target);
+            for (int j = i + 1; j < nodes.length; j++) {
+                if (qp.isUndirectedConnected(nodes[i], nodes[j])) {
+                    target = new Path[]{nodes[i].getMetadata().getEntityPath(), nodes[j].getMetadata().getEntityPath()};
+                    addClauses(clauses, qp.getEdgeData(nodes[i], nodes[j]), seen, target);
+                }
+            }
+        }
+        if (!seen.equals(ClauseTemplate.getRefs(params))) {
+            // Some request values are not in the rewritten clauses, rewriting depended on the values
+            LOGGER.debug("Rewritten query does not contain all query parameters, clauses are not cached");
+            return null;
+        }
+        return clauses;
+    }
+
+    private static void addClauses(List<ClauseTemplate> clauses,
+                                   QueryPlanData data,
+                                   Set<ClauseTemplate.Ref> seen,
+                                   Path[] target) {
+        if (data != null && data.getConjuncts() != null) {
+            for (Conjunct c : data.getConjuncts()) {
+                clauses.add(ClauseTemplate.create(c.getClause(), seen, target));
+            }
+        }
+    }
+
+    /**
+     * If the clauses of the query are cached for the key, builds the
+     * query plan for the request by binding the cached clauses to the
+     * request values, and arranging the plan as cached. Returns null
+     * if there is no entry, or only the arrangement is cached.
+     *
+     * @param key The cache key
+     * @param root The root composite metadata
+     * @param scorer The query plan scorer
+     * @param filter The entities included in the query plan, or null
+     * if all entities are included
+     * @param query The parameterized request query
+     */
+    public QueryPlan getQueryPlan(String key,
+                                  CompositeMetadata root,
+                                  QueryPlanScorer scorer,
+                                  Set<CompositeMetadata> filter,
+                                  ParameterizedQuery query) {
+        CachedPlan entry = get(key);
+        if (entry == null || entry.clauses == null) {
+            return null;
+        }
+        List<Object> params = query.getParameters();
+        QueryPlan qp = new QueryPlan(root, scorer, filter);
+        QueryPlanNode[] nodes = qp.getAllNodes();
+        try {
+            for (ClauseTemplate t : entry.clauses) {
+                QueryExpression clause = t.bind(params);
+                if (clause == null) {
+                    LOGGER.debug("Query parameters do not match cached clauses, ignoring");
+                    return null;
+                }
+                Path[] target = t.getTarget();
+                QueryPlanNode node = find(nodes, target[0]);
+                QueryPlanNode other = target.length > 1 ? find(nodes, target[1]) : null;
+                if (node == null || (target.length > 1 && other == null)) {
+                    LOGGER.debug("Cached query plan does not match, ignoring");
+                    return null;
+                }
+                Conjunct c = new Conjunct(clause, root, qp);
+                if (other == null) {
+                    node.getData().getConjuncts().add(c);
+                } else {
+                    QueryPlanData data = qp.getEdgeData(node, other);
+                    if (data == null) {
+                        qp.setEdgeData(node, other, data = qp.newData());
+                    }
+                    data.getConjuncts().add(c);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.debug("Cannot bind cached clauses: {}", e.toString());
+            return null;
+        }
+        return arrange(entry.edges, qp) ? qp : null;
+    }
+
+    /**
+     * If there is an arrangement cached for the key, rearranges the
+     * query plan edges accordingly, and returns true. Otherwise,
+     * returns false, and the query plan is not modified.
+     */
+    public boolean apply(String key, QueryPlan qp) {
+        CachedPlan entry = get(key);
+        return entry != null && arrange(entry.edges, qp);
+    }
+
+    private static boolean arrange(List<Edge> edges, QueryPlan qp) {
+        QueryPlanNode[] nodes = qp.getAllNodes();
+        List<QueryPlanNode[]> flips = new ArrayList<>(edges.size());
+        for (Edge edge : edges) {
+            QueryPlanNode from = find(nodes, edge.from);
+            QueryPlanNode to = find(nodes, edge.to);
+            if (from == null || to == null || !qp.isUndirectedConnected(from, to)) {
+                LOGGER.debug("Cached query plan does not match, ignoring");
+                return false;
+            }
+            if (!qp.isDirectedConnected(from, to)) {
+                flips.add(new QueryPlanNode[]{to, from});
+            }
+        }
+        for (QueryPlanNode[] x : flips) {
+            qp.flip(x[0], x[1]);
+        }
+        return true;
+    }
+
+    private static QueryPlanNode find(QueryPlanNode[] nodes, Path entityPath) {
+        for (QueryPlanNode node : nodes) {
+            if (node.getMetadata().getEntityPath().equals(entityPath)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes all cached arrangements
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+}
@@ -44,7 +44,7 @@ public class QueryPlanChooser {
 
     private static final Logger LOGGER=LoggerFactory.getLogger(QueryPlanChooser.class);
 
-    private static final QueryRewriter qrewriter=new QueryRewriter(true);
+    private static final QueryRewriter qrewriter=new QueryRewriter(true,256);
 
     private final CompositeMetadata compositeMetadata;
     private final QueryExpression requestQuery;
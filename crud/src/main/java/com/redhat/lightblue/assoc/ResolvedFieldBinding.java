@@ -44,6 +44,12 @@ import com.redhat.lightblue.query.RelativeRewriteIterator;
 import com.redhat.lightblue.query.NaryLogicalExpression;
 import com.redhat.lightblue.query.NaryLogicalOperator;
 import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.BoundValue;
+import com.redhat.lightblue.query.BoundValueList;
+import com.redhat.lightblue.query.QueryIterator;
+import com.redhat.lightblue.query.ValueComparisonExpression;
+import com.redhat.lightblue.query.NaryValueRelationalExpression;
+import com.redhat.lightblue.query.ArrayContainsExpression;
 
 import com.redhat.lightblue.metadata.Type;
 import com.redhat.lightblue.metadata.CompositeMetadata;
@@ -109,6 +115,48 @@ public class ResolvedFieldBinding implements Serializable {
         }
     }
 
+    /**
+     * Rewrites a bound query by replacing the bound values with
+     * copies of their current values
+     */
+    private static final class SnapshotItr extends QueryIterator {
+        @Override
+        protected QueryExpression itrValueComparisonExpression(ValueComparisonExpression q, Path ctx) {
+            if(q.getRvalue() instanceof BoundValue) {
+                return new ValueComparisonExpression(q.getField(),q.getOp(),new Value(q.getRvalue().getValue()));
+            } else {
+                return q;
+            }
+        }
+
+        @Override
+        protected QueryExpression itrNaryValueRelationalExpression(NaryValueRelationalExpression q, Path ctx) {
+            if(q.getValues() instanceof BoundValueList) {
+                return new NaryValueRelationalExpression(q.getField(),q.getOp(),copyValues(q.getValues()));
+            } else {
+                return q;
+            }
+        }
+
+        @Override
+        protected QueryExpression itrArrayContainsExpression(ArrayContainsExpression q, Path ctx) {
+            for(Value v:q.getValues()) {
+                if(v instanceof BoundValue) {
+                    return new ArrayContainsExpression(q.getArray(),q.getOp(),copyValues(q.getValues()));
+                }
+            }
+            return q;
+        }
+
+        private static List<Value> copyValues(List<Value> values) {
+            List<Value> l=new ArrayList<>(values.size());
+            for(Value v:values) {
+                l.add(v instanceof BoundValue?new Value(v.getValue()):v);
+            }
+            return l;
+        }
+    }
+
     /**
      * Construct a resolved field binding using the given binding and the root composite metadata
      */
@@ -246,12 +294,39 @@ public class ResolvedFieldBinding implements Serializable {
         }
     }
 
+    /**
+     * Returns a copy of the given query with all the bound values
+     * replaced by their current values. The returned query is not
+     * affected by subsequent refreshes of the bindings.
+     */
+    public static QueryExpression snapshot(QueryExpression q) {
+        return q==null?null:new SnapshotItr().iterate(q);
+    }
+
     public static void refresh(List<ResolvedFieldBinding> bindings,ChildDocReference ref) {
         for(ResolvedFieldBinding binding:bindings) {
             binding.refresh(ref);
         }
     }
 
+    /**
+     * Returns the current value of the binding. For value bindings,
+     * this is the bound value. For list bindings, this is a new list
+     * containing the bound values.
+     */
+    public Object getBoundValue() {
+        if(binding instanceof ValueBinding) {
+            return ((ValueBinding)binding).getValue().getValue();
+        } else {
+            BoundValueList list=((ListBinding)binding).getList();
+            List<Object> ret=new ArrayList<>(list.size());
+            for(Value v:list) {
+                ret.add(v==null?null:v.getValue());
+            }
+            return ret;
+        }
+    }
+
     /**
      * Attempts to refresh this binding starting at the given parent document, and ascending to its parents
      */
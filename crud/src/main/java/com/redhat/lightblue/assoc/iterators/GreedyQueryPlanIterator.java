@@ -0,0 +1,221 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc.iterators;
+
+import java.io.Serializable;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.assoc.QueryPlanIterator;
+import com.redhat.lightblue.assoc.QueryPlanScorer;
+import com.redhat.lightblue.assoc.QueryPlan;
+import com.redhat.lightblue.assoc.QueryPlanNode;
+
+/**
+ * Iterates over query plans by searching for a low cost arrangement
+ * of the query plan graph, instead of enumerating all of them.
+ *
+ * If the query plan has at most <code>exhaustiveLimit</code> edges,
+ * all possible query plans are iterated, one edge flip at a time, so
+ * the chosen plan is the same as with {@link
+ * BruteForceQueryPlanIterator}. Otherwise, the iterator runs a local
+ * search using the scorer: starting from the initial plan and from
+ * the plan with all edges reversed, it flips one edge at a time and
+ * keeps the flip if the plan scores better, until no single flip
+ * improves the plan. Scores are memoized by edge configuration, so no
+ * configuration is scored twice. The best plan found is then returned
+ * as the only iterated plan.
+ *
+ * The scorer must be the one used by the query plan chooser, and it
+ * must be initialized before the first call to <code>next</code>.
+ */
+public class GreedyQueryPlanIterator implements QueryPlanIterator, Serializable {
+
+    private static final long serialVersionUID=1l;
+
+    private static final Logger LOGGER=LoggerFactory.getLogger(GreedyQueryPlanIterator.class);
+
+    /**
+     * Query plans with at most this many edges are enumerated exhaustively
+     */
+    public static final int DEFAULT_EXHAUSTIVE_LIMIT=10;
+
+    private final QueryPlanScorer scorer;
+    private final int exhaustiveLimit;
+
+    private QueryPlan qp;
+    private Edge[] edges;
+
+    /**
+     * Edge configuration of the exhaustive iteration
+     */
+    private long counter;
+
+    /**
+     * Set if the searched plan is returned
+     */
+    private boolean searched;
+
+    private final class Edge implements Serializable {
+        private final QueryPlanNode n1;
+        private final QueryPlanNode n2;
+        private boolean v = false;
+
+        public Edge(QueryPlanNode n1,
+                    QueryPlanNode n2) {
+            this.n1=n1;
+            this.n2=n2;
+        }
+
+        public void flip() {
+            v=!v;
+            qp.flip(n1,n2);
+        }
+    }
+
+    public GreedyQueryPlanIterator(QueryPlanScorer scorer) {
+        this(scorer,DEFAULT_EXHAUSTIVE_LIMIT);
+    }
+
+    public GreedyQueryPlanIterator(QueryPlanScorer scorer,int exhaustiveLimit) {
+        this.scorer=scorer;
+        this.exhaustiveLimit=Math.min(exhaustiveLimit,62);
+    }
+
+    private void findEdges(List<Edge> l,QueryPlanNode from) {
+        QueryPlanNode[] dests=from.getDestinations();
+        for(QueryPlanNode to:dests) {
+            l.add(new Edge(from,to));
+            findEdges(l,to);
+        }
+    }
+
+    @Override
+    public void reset(QueryPlan qp) {
+        this.qp=qp;
+        List<Edge> edgeList=new ArrayList<>(16);
+        QueryPlanNode[] sources=qp.getSources();
+        for(QueryPlanNode x:sources)
+            findEdges(edgeList,x);
+        edges=edgeList.toArray(new Edge[edgeList.size()]);
+        counter=0;
+        searched=false;
+    }
+
+    @Override
+    public boolean next() {
+        if(edges.length<=exhaustiveLimit) {
+            return nextExhaustive();
+        } else if(!searched) {
+            search();
+            searched=true;
+            return true;
+        } else {
+            // Return to the initial state
+            setConfiguration(new BitSet(edges.length));
+            return false;
+        }
+    }
+
+    /**
+     * Iterates the edge configurations in Gray code order, so every
+     * step flips exactly one edge
+     */
+    private boolean nextExhaustive() {
+        counter++;
+        if(counter>=(1l<<edges.length)) {
+            // Last configuration of the Gray code has only the last edge flipped
+            if(edges.length>0)
+                edges[edges.length-1].flip();
+            return false;
+        }
+        edges[Long.numberOfTrailingZeros(counter)].flip();
+        return true;
+    }
+
+    private void search() {
+        Map<BitSet,Comparable> scores=new HashMap<>();
+        BitSet all=new BitSet(edges.length);
+        all.set(0,edges.length);
+        BitSet best=descend(new BitSet(edges.length),scores);
+        BitSet alt=descend(all,scores);
+        if(better(scores.get(alt),scores.get(best)))
+            best=alt;
+        LOGGER.debug("Scored {} of 2^{} query plans",scores.size(),edges.length);
+        setConfiguration(best);
+    }
+
+    /**
+     * Starting from the given configuration, flips edges one at a
+     * time while the score improves. Returns the local minimum.
+     */
+    private BitSet descend(BitSet start,Map<BitSet,Comparable> scores) {
+        BitSet current=(BitSet)start.clone();
+        Comparable currentScore=score(current,scores);
+        boolean improved;
+        do {
+            improved=false;
+            for(int i=0;i<edges.length;i++) {
+                current.flip(i);
+                Comparable s=score(current,scores);
+                if(better(s,currentScore)) {
+                    currentScore=s;
+                    improved=true;
+                } else {
+                    current.flip(i);
+                }
+            }
+        } while(improved);
+        return current;
+    }
+
+    private Comparable score(BitSet config,Map<BitSet,Comparable> scores) {
+        if(scores.containsKey(config))
+            return scores.get(config);
+        setConfiguration(config);
+        Comparable s=scorer.score(qp);
+        scores.put((BitSet)config.clone(),s);
+        return s;
+    }
+
+    private static boolean better(Comparable s,Comparable than) {
+        return s!=null&&(than==null||s.compareTo(than)<0);
+    }
+
+    private void setConfiguration(BitSet config) {
+        for(int i=0;i<edges.length;i++)
+            if(edges[i].v!=config.get(i))
+                edges[i].flip();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder bld=new StringBuilder();
+        for(Edge e:edges)
+            bld.append(e.v?'0':'1');
+        return bld.toString();
+    }
+}
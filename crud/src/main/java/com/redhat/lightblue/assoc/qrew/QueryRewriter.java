@@ -18,8 +18,14 @@
  */
 package com.redhat.lightblue.assoc.qrew;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.HashSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,18 +41,63 @@ import com.redhat.lightblue.assoc.qrew.rules.*;
 
 /**
  * Implementation of Rewriter that orchestrates rewriting rules with registered Rewriter instances.
+ *
+ * The query is rewritten bottom-up: the nested queries of a node are
+ * rewritten first, and then the rules are applied to the node until
+ * none of them changes it. If a rule returns a new node, only the
+ * nested queries that are not already rewritten are processed
+ * again. Rules are applied in registration order.
+ *
+ * Each instance has its own immutable list of rules. Registering a
+ * rule replaces the list, so a rewriter can be shared between threads
+ * once it is configured. Optionally, the rewriter caches the rewritten
+ * forms of the most recently rewritten queries.
  */
 public final class QueryRewriter extends Rewriter {
 
     private static final Logger LOGGER=LoggerFactory.getLogger(QueryRewriter.class);
 
-    private static final Set<Rewriter> rewriteRules=new HashSet<>(16);
+    private static final List<Rewriter> DEFAULT_RULES=Collections.unmodifiableList(Arrays.<Rewriter>asList(
+        CombineANDsToNIN.INSTANCE,
+        CombineINsInOR.INSTANCE,
+        CombineNINsInAND.INSTANCE,
+        CombineORsToIN.INSTANCE,
+        EliminateNOT.INSTANCE,
+        EliminateNOTNOT.INSTANCE,
+        EliminateNOTOR.INSTANCE,
+        EliminateSingleANDOR.INSTANCE,
+        ExtendINsInOR.INSTANCE,
+        ExtendNINsInAND.INSTANCE,
+        PromoteNestedAND.INSTANCE));
+
+    private volatile List<Rewriter> rewriteRules=Collections.emptyList();
+
+    private final Map<String,QueryExpression> cache;
 
     public QueryRewriter() {
         this(true);
     }
 
     public QueryRewriter(boolean withDefaultRules) {
+        this(withDefaultRules,0);
+    }
+
+    /**
+     * @param withDefaultRules If true, the default rules are registered
+     * @param cacheSize The number of rewritten queries to cache. If
+     * 0, rewritten queries are not cached.
+     */
+    public QueryRewriter(boolean withDefaultRules,final int cacheSize) {
+        if(cacheSize>0) {
+            cache=new LinkedHashMap<String,QueryExpression>(16,0.75f,true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,QueryExpression> eldest) {
+                    return size()>cacheSize;
+                }
+            };
+        } else {
+            cache=null;
+        }
         if(withDefaultRules)
             registerDefaultRules();
     }
@@ -55,87 +106,122 @@ public final class QueryRewriter extends Rewriter {
      * Register a Rewriter instance.  If attempt to register QueryRewriter returns without doing anything.
      * @param rule the rewriter to register
      */
-    public void register(Rewriter rule) {
-        if (rule instanceof QueryRewriter) {
+    public synchronized void register(Rewriter rule) {
+        if (rule instanceof QueryRewriter || rewriteRules.contains(rule)) {
             return;
         }
-        rewriteRules.add(rule);
+        List<Rewriter> rules=new ArrayList<>(rewriteRules.size()+1);
+        rules.addAll(rewriteRules);
+        rules.add(rule);
+        rewriteRules=Collections.unmodifiableList(rules);
+        clearCache();
     }
 
     /**
      * Register default rules.
      */
     protected void registerDefaultRules() {
-        register(CombineANDsToNIN.INSTANCE);
-        register(CombineINsInOR.INSTANCE);
-        register(CombineNINsInAND.INSTANCE);
-        register(CombineORsToIN.INSTANCE);
-        register(EliminateNOT.INSTANCE);
-        register(EliminateNOTNOT.INSTANCE);
-        register(EliminateNOTOR.INSTANCE);
-        register(EliminateSingleANDOR.INSTANCE);
-        register(ExtendINsInOR.INSTANCE);
-        register(ExtendNINsInAND.INSTANCE);
-        register(PromoteNestedAND.INSTANCE);
+        for(Rewriter r:DEFAULT_RULES)
+            register(r);
+    }
+
+    /**
+     * Returns the registered rules, in the order they are applied
+     */
+    public List<Rewriter> getRules() {
+        return rewriteRules;
     }
 
-    protected QueryExpression rewriteIteration(QueryExpression q) {
-        LOGGER.debug("Rewrite iteration begins for q={}",q);
+    @Override
+    public QueryExpression rewrite(QueryExpression q) {
+        if(q==null)
+            return null;
+        String key=null;
+        if(cache!=null) {
+            key=q.toString();
+            synchronized(cache) {
+                QueryExpression cached=cache.get(key);
+                if(cached!=null) {
+                    LOGGER.debug("Rewritten query found in cache");
+                    return cached;
+                }
+            }
+        }
+        List<Rewriter> rules=rewriteRules;
+        Set<QueryExpression> rewritten=Collections.newSetFromMap(new IdentityHashMap<QueryExpression,Boolean>());
+        QueryExpression newq=rewrite(q,rules,rewritten);
+        LOGGER.debug("Rewrite pre={} post={}",q,newq);
+        if(cache!=null) {
+            synchronized(cache) {
+                cache.put(key,newq);
+            }
+        }
+        return newq;
+    }
+
+    /**
+     * Rewrites q bottom-up, until no rule changes it.
+     *
+     * @param q The query
+     * @param rules The rules to apply
+     * @param rewritten The query nodes that are already rewritten,
+     * and that no rule changes
+     */
+    private QueryExpression rewrite(QueryExpression q,List<Rewriter> rules,Set<QueryExpression> rewritten) {
+        QueryExpression trc=q;
+        while(!rewritten.contains(trc)) {
+            QueryExpression newq=rewriteNested(trc,rules,rewritten);
+            QueryExpression ruleq=applyRules(newq,rules);
+            if(ruleq==newq) {
+                rewritten.add(newq);
+            }
+            trc=ruleq;
+        }
+        return trc;
+    }
+
+    /**
+     * Rewrites the nested queries of q, and returns a new query if any
+     * of them changed
+     */
+    private QueryExpression rewriteNested(QueryExpression q,List<Rewriter> rules,Set<QueryExpression> rewritten) {
         QueryExpression newq=q;
         if (q instanceof UnaryLogicalExpression) {
-            LOGGER.debug("q is a unary logical expression, rewriting nested query");
             QueryExpression nestedq=((UnaryLogicalExpression)q).getQuery();
-            QueryExpression newNestedq=rewriteIteration(nestedq);
-            LOGGER.debug("Rewritten nested query={}",newNestedq);
+            QueryExpression newNestedq=rewrite(nestedq,rules,rewritten);
             if(newNestedq!=nestedq)
                 newq=new UnaryLogicalExpression( ((UnaryLogicalExpression)q).getOp(), newNestedq);
         } else if (q instanceof NaryLogicalExpression) {
-            LOGGER.debug("q is a n-ary logical expression, rewriting nested terms");
             CopyOnWriteIterator<QueryExpression> cowr=new CopyOnWriteIterator<>( ((NaryLogicalExpression)q).getQueries());
             while(cowr.hasNext()) {
                 QueryExpression nestedq=cowr.next();
-                QueryExpression newNestedq=rewriteIteration(nestedq);
+                QueryExpression newNestedq=rewrite(nestedq,rules,rewritten);
                 if(newNestedq!=nestedq)
                     cowr.set(newNestedq);
             }
             if(cowr.isCopied())
                 newq=new NaryLogicalExpression( ((NaryLogicalExpression)q).getOp(),cowr.getCopiedList());
         } else if (q instanceof ArrayMatchExpression) {
-            LOGGER.debug("q is an array match expression, rewriting nested query");
             QueryExpression nestedq=((ArrayMatchExpression)q).getElemMatch();
-            QueryExpression newNestedq=rewriteIteration(nestedq);
-            LOGGER.debug("Rewritten nested query={}",newNestedq);
+            QueryExpression newNestedq=rewrite(nestedq,rules,rewritten);
             if(newNestedq!=nestedq)
                 newq=new ArrayMatchExpression( ((ArrayMatchExpression)q).getArray(),newNestedq);
-        } 
-        LOGGER.debug("Applying rewrite rules to q");
-        newq=applyRules(newq);
-        LOGGER.debug("Rewritten q={}",newq);
-        
-        return newq;
-    }
-
-    @Override
-    public QueryExpression rewrite(QueryExpression q) {
-        QueryExpression trc=q;
-        QueryExpression newq;
-        boolean done=false;
-        do {
-            newq=rewriteIteration(trc);
-            LOGGER.debug("Rewrite iteration pre={}",trc);
-            LOGGER.debug("Rewrite iteration post={}",newq);
-            if(newq==trc)
-                done=true;
-            trc=newq;
-        } while(!done);
+        }
         return newq;
     }
 
-    private QueryExpression applyRules(QueryExpression q) {
+    private static QueryExpression applyRules(QueryExpression q,List<Rewriter> rules) {
         QueryExpression newq=q;
-        for(Rewriter r:rewriteRules)
+        for(Rewriter r:rules)
             newq=r.rewrite(newq);
         return newq;
     }
-}
 
+    private void clearCache() {
+        if(cache!=null) {
+            synchronized(cache) {
+                cache.clear();
+            }
+        }
+    }
+}
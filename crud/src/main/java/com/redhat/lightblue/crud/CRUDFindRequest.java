@@ -18,8 +18,10 @@
  */
 package com.redhat.lightblue.crud;
 
+import java.io.IOException;
 import java.io.Serializable;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -166,7 +168,40 @@ public class CRUDFindRequest implements Serializable {
         if (x != null) {
             sort = Sort.fromJson(x);
         }
-        x = node.get("range");
+        setRange(node.get("range"));
+    }
+
+    /**
+     * Parses one field of a find request from a json parser positioned at
+     * the field value. Returns true if the field is recognized and its
+     * value is consumed, false otherwise. Only the value of a recognized
+     * field is read as a json tree.
+     */
+    public boolean parseField(String name, JsonParser parser) throws IOException {
+        JsonNode x;
+        switch (name) {
+            case "query":
+                x = parser.readValueAsTree();
+                query = QueryExpression.fromJson(x);
+                return true;
+            case "projection":
+                x = parser.readValueAsTree();
+                projection = Projection.fromJson(x);
+                return true;
+            case "sort":
+                x = parser.readValueAsTree();
+                sort = Sort.fromJson(x);
+                return true;
+            case "range":
+                x = parser.readValueAsTree();
+                setRange(x);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void setRange(JsonNode x) {
         if (x instanceof ArrayNode && ((ArrayNode) x).size() == 2) {
             from = ((ArrayNode) x).get(0).asLong();
             to = ((ArrayNode) x).get(1).asLong();
@@ -63,7 +63,7 @@ public abstract class CRUDOperationContext implements MetadataResolver, Serializ
         this.factory = f;
         // can assume are adding to an empty DocCtx list
         addDocuments(docs);
-        this.hookManager = new HookManager(factory.getHookResolver(), factory.getNodeFactory());
+        this.hookManager = new HookManager(factory.getHookResolver(), factory.getNodeFactory(), factory.getHookDispatcher());
         this.callerRoles=new HashSet<>();
     }
 
@@ -0,0 +1,256 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.MutablePath;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.Registry;
+
+import com.redhat.lightblue.metadata.EntityConstraint;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Field;
+import com.redhat.lightblue.metadata.FieldConstraint;
+import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+
+/**
+ * Precompiled constraint validation plan for an entity. The plan
+ * contains the entity constraints, and only those fields that have
+ * constraints, with their constraint checkers resolved. The values of
+ * all constrained fields of a document are collected in a single pass
+ * over the document, following a tree built from the constrained field
+ * paths, instead of walking the whole metadata and resolving each field
+ * path from the document root.
+ *
+ * A plan is immutable once built, and can be shared between threads.
+ */
+public class ConstraintValidationPlan {
+
+    /**
+     * A constrained field
+     */
+    static final class FieldPlan {
+        final FieldTreeNode fieldNode;
+        final Path fieldPath;
+        final List<FieldConstraint> constraints;
+        /**
+         * Resolved checkers, in the same order as the constraints. An
+         * element is null if there is no checker for that constraint.
+         */
+        final FieldConstraintChecker[] checkers;
+        final boolean hasValueCheckers;
+        final int index;
+
+        FieldPlan(int index,
+                  FieldTreeNode fieldNode,
+                  Path fieldPath,
+                  List<FieldConstraint> constraints,
+                  FieldConstraintChecker[] checkers) {
+            this.index = index;
+            this.fieldNode = fieldNode;
+            this.fieldPath = fieldPath;
+            this.constraints = constraints;
+            this.checkers = checkers;
+            boolean v = false;
+            for (FieldConstraintChecker c : checkers) {
+                if (c instanceof FieldConstraintValueChecker) {
+                    v = true;
+                    break;
+                }
+            }
+            this.hasValueCheckers = v;
+        }
+    }
+
+    /**
+     * Values of constrained fields collected from a document. The values
+     * are in document order, the same order JsonDoc.getAllNodes returns
+     * them.
+     */
+    static final class FieldValues {
+        final List<Path> paths = new ArrayList<>();
+        final List<JsonNode> values = new ArrayList<>();
+    }
+
+    /**
+     * A node of the plan tree. Each node corresponds to a path
+     * segment. Only those paths leading to a constrained field are in
+     * the tree.
+     */
+    private static final class PlanNode {
+        private final String name;
+        private final boolean any;
+        private FieldPlan field;
+        private final Map<String, PlanNode> children = new LinkedHashMap<>();
+
+        PlanNode(String name, boolean any) {
+            this.name = name;
+            this.any = any;
+        }
+    }
+
+    private final List<EntityConstraint> entityConstraints;
+    private final EntityConstraintChecker[] entityCheckers;
+    private final List<FieldPlan> fields;
+    private final PlanNode root = new PlanNode(null, false);
+    private final boolean hasValueCheckers;
+
+    /**
+     * Builds a validation plan for the given entity metadata, resolving
+     * checkers using the given registries
+     */
+    public ConstraintValidationPlan(Registry<String, FieldConstraintChecker> fRegistry,
+                                    Registry<String, EntityConstraintChecker> eRegistry,
+                                    EntityMetadata md) {
+        List<EntityConstraint> ec = md.getConstraints();
+        entityConstraints = ec == null ? Collections.<EntityConstraint>emptyList() : Collections.unmodifiableList(ec);
+        entityCheckers = new EntityConstraintChecker[entityConstraints.size()];
+        int i = 0;
+        for (EntityConstraint x : entityConstraints) {
+            entityCheckers[i++] = eRegistry == null ? null : eRegistry.find(x.getType());
+        }
+
+        List<FieldPlan> list = new ArrayList<>();
+        boolean v = false;
+        FieldCursor cursor = md.getFieldCursor();
+        while (cursor.next()) {
+            FieldTreeNode node = cursor.getCurrentNode();
+            if (node instanceof Field) {
+                List<FieldConstraint> constraints = ((Field) node).getConstraints();
+                if (constraints != null && !constraints.isEmpty()) {
+                    constraints = Collections.unmodifiableList(new ArrayList<>(constraints));
+                    FieldConstraintChecker[] checkers = new FieldConstraintChecker[constraints.size()];
+                    i = 0;
+                    for (FieldConstraint x : constraints) {
+                        checkers[i++] = fRegistry == null ? null : fRegistry.find(x.getType());
+                    }
+                    FieldPlan fp = new FieldPlan(list.size(), node, cursor.getCurrentPath().immutableCopy(), constraints, checkers);
+                    list.add(fp);
+                    if (fp.hasValueCheckers) {
+                        v = true;
+                        addToTree(fp);
+                    }
+                }
+            }
+        }
+        fields = Collections.unmodifiableList(list);
+        hasValueCheckers = v;
+    }
+
+    /**
+     * Returns the entity constraints
+     */
+    public List<EntityConstraint> getEntityConstraints() {
+        return entityConstraints;
+    }
+
+    /**
+     * Returns the checker for the entity constraint at the given index,
+     * or null if there is no checker for it
+     */
+    EntityConstraintChecker getEntityChecker(int index) {
+        return entityCheckers[index];
+    }
+
+    /**
+     * Returns the constrained fields, in metadata order
+     */
+    List<FieldPlan> getFields() {
+        return fields;
+    }
+
+    /**
+     * Collects the values of all fields with value constraints in a
+     * single pass over the document. The returned array is indexed by
+     * FieldPlan.index, and an element is null if the field does not
+     * have value constraints.
+     */
+    FieldValues[] collectValues(JsonDoc doc) {
+        FieldValues[] ret = new FieldValues[fields.size()];
+        if (hasValueCheckers) {
+            for (FieldPlan fp : fields) {
+                if (fp.hasValueCheckers) {
+                    ret[fp.index] = new FieldValues();
+                }
+            }
+            collect(root, doc.getRoot(), new MutablePath(), ret);
+        }
+        return ret;
+    }
+
+    private void collect(PlanNode node, JsonNode docNode, MutablePath path, FieldValues[] values) {
+        for (PlanNode child : node.children.values()) {
+            if (child.any) {
+                if (docNode instanceof ArrayNode) {
+                    int index = 0;
+                    for (Iterator<JsonNode> itr = docNode.elements(); itr.hasNext(); index++) {
+                        path.push(index);
+                        visit(child, itr.next(), path, values);
+                        path.pop();
+                    }
+                }
+            } else if (docNode instanceof ObjectNode) {
+                JsonNode value = docNode.get(child.name);
+                if (value != null) {
+                    path.push(child.name);
+                    visit(child, value, path, values);
+                    path.pop();
+                }
+            }
+        }
+    }
+
+    private void visit(PlanNode node, JsonNode value, MutablePath path, FieldValues[] values) {
+        if (node.field != null) {
+            FieldValues fv = values[node.field.index];
+            fv.paths.add(path.immutableCopy());
+            fv.values.add(value);
+        }
+        if (!node.children.isEmpty()) {
+            collect(node, value, path, values);
+        }
+    }
+
+    private void addToTree(FieldPlan fp) {
+        PlanNode node = root;
+        int n = fp.fieldPath.numSegments();
+        for (int i = 0; i < n; i++) {
+            String name = fp.fieldPath.head(i);
+            PlanNode child = node.children.get(name);
+            if (child == null) {
+                child = new PlanNode(name, fp.fieldPath.isAny(i));
+                node.children.put(name, child);
+            }
+            node = child;
+        }
+        node.field = fp;
+    }
+}
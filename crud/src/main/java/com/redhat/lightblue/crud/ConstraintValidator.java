@@ -32,14 +32,11 @@ import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.Registry;
 import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.Error;
-import com.redhat.lightblue.util.KeyValueCursor;
 
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.FieldTreeNode;
 import com.redhat.lightblue.metadata.FieldConstraint;
 import com.redhat.lightblue.metadata.EntityConstraint;
-import com.redhat.lightblue.metadata.Field;
-import com.redhat.lightblue.metadata.FieldCursor;
 
 public class ConstraintValidator {
 
@@ -48,6 +45,7 @@ public class ConstraintValidator {
     private final Registry<String, FieldConstraintChecker> fRegistry;
     private final Registry<String, EntityConstraintChecker> eRegistry;
     private final EntityMetadata md;
+    private final ConstraintValidationPlan plan;
 
     private final Map<JsonDoc, List<Error>> docErrors = new HashMap<>();
     private final List<Error> errors = new ArrayList<>();
@@ -62,9 +60,21 @@ public class ConstraintValidator {
     protected ConstraintValidator(Registry<String, FieldConstraintChecker> r,
                                   Registry<String, EntityConstraintChecker> e,
                                   EntityMetadata md) {
+        this(r, e, md, new ConstraintValidationPlan(r, e, md));
+    }
+
+    /**
+     * Constructs a constraint validator using a precompiled validation
+     * plan. The plan must be built for the same metadata and registries.
+     */
+    protected ConstraintValidator(Registry<String, FieldConstraintChecker> r,
+                                  Registry<String, EntityConstraintChecker> e,
+                                  EntityMetadata md,
+                                  ConstraintValidationPlan plan) {
         this.fRegistry = r;
         this.eRegistry = e;
         this.md = md;
+        this.plan = plan;
     }
 
     public void clearErrors() {
@@ -164,11 +174,9 @@ public class ConstraintValidator {
             currentFieldConstraint = null;
             currentFieldNode = null;
             currentFieldPath = null;
-            Path currentValuePath = null;
-            JsonNode currentValue = null;
             checkEntityConstraints(doc);
             currentEntityConstraint = null;
-            checkConstraints(doc, currentValuePath, currentValue);
+            checkConstraints(doc);
         } catch (Error e) {
             // rethrow lightblue error
             throw e;
@@ -188,13 +196,15 @@ public class ConstraintValidator {
 
     private void checkEntityConstraints(JsonDoc doc) {
         LOGGER.debug("checking entity constraints");
-        for (EntityConstraint x : md.getConstraints()) {
-            currentEntityConstraint = x;
+        List<EntityConstraint> constraints = plan.getEntityConstraints();
+        int n = constraints.size();
+        for (int i = 0; i < n; i++) {
+            currentEntityConstraint = constraints.get(i);
             String constraintType = currentEntityConstraint.getType();
-            LOGGER.debug("checking entity constraint " + constraintType);
+            LOGGER.debug("checking entity constraint {}", constraintType);
             Error.push(constraintType);
             try {
-                EntityConstraintChecker checker = eRegistry.find(constraintType);
+                EntityConstraintChecker checker = plan.getEntityChecker(i);
                 if (checker == null) {
                     throw Error.get(CrudConstants.ERR_NO_CONSTRAINT);
                 }
@@ -212,22 +222,21 @@ public class ConstraintValidator {
         }
     }
 
-    private void checkConstraints(JsonDoc doc, Path currentValuePath, JsonNode currentValue) {
+    private void checkConstraints(JsonDoc doc) {
         LOGGER.debug("checking field constraints");
-        FieldCursor cursor = md.getFieldCursor();
-        while (cursor.next()) {
-            currentFieldNode = cursor.getCurrentNode();
-            currentFieldPath = cursor.getCurrentPath();
+        List<ConstraintValidationPlan.FieldPlan> fields = plan.getFields();
+        if (fields.isEmpty()) {
+            return;
+        }
+        // Collect the values of all constrained fields in one pass
+        ConstraintValidationPlan.FieldValues[] values = plan.collectValues(doc);
+        for (ConstraintValidationPlan.FieldPlan field : fields) {
+            currentFieldNode = field.fieldNode;
+            currentFieldPath = field.fieldPath;
             LOGGER.debug("checking field {}", currentFieldPath);
-            Error.push(currentFieldPath.toString());
+            Error.push(currentFieldPath);
             try {
-                List<FieldConstraint> constraints = null;
-                if (currentFieldNode instanceof Field) {
-                    constraints = ((Field) currentFieldNode).getConstraints();
-                }
-                if (constraints != null && !constraints.isEmpty()) {
-                    checkFieldConstraints(doc, constraints, currentValuePath, currentValue);
-                }
+                checkFieldConstraints(doc, field, values[field.index]);
             } catch (Error e) {
                 // rethrow lightblue error
                 throw e;
@@ -241,15 +250,17 @@ public class ConstraintValidator {
         }
     }
 
-    private void checkFieldConstraints(JsonDoc doc, List<FieldConstraint> constraints, Path currentValuePath, JsonNode currentValue) {
-
-        for (FieldConstraint x : constraints) {
-            currentFieldConstraint = x;
+    private void checkFieldConstraints(JsonDoc doc,
+                                       ConstraintValidationPlan.FieldPlan field,
+                                       ConstraintValidationPlan.FieldValues values) {
+        int n = field.constraints.size();
+        for (int i = 0; i < n; i++) {
+            currentFieldConstraint = field.constraints.get(i);
             String constraintType = currentFieldConstraint.getType();
-            LOGGER.debug("checking constraint " + constraintType);
+            LOGGER.debug("checking constraint {}", constraintType);
             Error.push(constraintType);
             try {
-                FieldConstraintChecker checker = fRegistry.find(constraintType);
+                FieldConstraintChecker checker = field.checkers[i];
                 if (checker == null) {
                     throw Error.get(CrudConstants.ERR_NO_CONSTRAINT);
                 }
@@ -258,7 +269,7 @@ public class ConstraintValidator {
                     checkFieldContraints(doc, (FieldConstraintDocChecker) checker);
                 } else if (checker instanceof FieldConstraintValueChecker) {
                     // Constraint needs to be checked for all the values in the doc
-                    checkValueContraints(doc, (FieldConstraintChecker) checker, currentValuePath, currentValue);
+                    checkValueContraints(doc, (FieldConstraintValueChecker) checker, values);
                 }
             } catch (Error e) {
                 // rethrow lightblue error
@@ -274,22 +285,23 @@ public class ConstraintValidator {
     }
 
     private void checkFieldContraints(JsonDoc doc, FieldConstraintDocChecker checker) {
-        ((FieldConstraintDocChecker) checker).checkConstraint(this,
+        checker.checkConstraint(this,
                 currentFieldNode,
                 currentFieldPath,
                 currentFieldConstraint,
                 doc);
     }
 
-    private void checkValueContraints(JsonDoc doc, FieldConstraintChecker checker, Path currentValuePath, JsonNode currentValue) {
-        KeyValueCursor<Path, JsonNode> fieldValues = doc.getAllNodes(currentFieldPath);
-        while (fieldValues.hasNext()) {
-            fieldValues.next();
-            currentValuePath = fieldValues.getCurrentKey();
-            currentValue = fieldValues.getCurrentValue();
-            Error.push(currentValuePath.toString());
+    private void checkValueContraints(JsonDoc doc,
+                                      FieldConstraintValueChecker checker,
+                                      ConstraintValidationPlan.FieldValues fieldValues) {
+        int n = fieldValues.paths.size();
+        for (int i = 0; i < n; i++) {
+            Path currentValuePath = fieldValues.paths.get(i);
+            JsonNode currentValue = fieldValues.values.get(i);
+            Error.push(currentValuePath);
             try {
-                ((FieldConstraintValueChecker) checker).checkConstraint(this,
+                checker.checkConstraint(this,
                         currentFieldNode,
                         currentFieldPath,
                         currentFieldConstraint,
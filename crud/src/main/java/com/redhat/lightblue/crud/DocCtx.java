@@ -26,6 +26,7 @@ import java.util.HashMap;
 
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonDocSnapshot;
 
 import com.redhat.lightblue.DataError;
 
@@ -56,7 +57,8 @@ public class DocCtx extends JsonDoc {
     private final Map<String, Object> propertyMap = new HashMap<>();
 
     public DocCtx(JsonDoc doc) {
-        super(doc.getRoot());
+        // The document is modified in place, so snapshots cannot be used directly
+        super(doc instanceof JsonDocSnapshot ? doc.getRoot().deepCopy() : doc.getRoot());
     }
 
     /**
@@ -109,10 +111,11 @@ public class DocCtx extends JsonDoc {
     }
 
     /**
-     * Sets the original document to a copy of this object reference
+     * Sets the original document to a read-only snapshot of this
+     * document
      */
     public void copyOriginalFromThis() {
-        originalDoc = copy();
+        originalDoc = snapshot();
     }
 
     /**
@@ -188,11 +191,14 @@ public class DocCtx extends JsonDoc {
     }
 
     /**
-     * Sets the unprojected output document to a copy of output document
+     * Sets the unprojected output document to a read-only snapshot of
+     * the output document. The parts of the document that are not
+     * changed since the original document snapshot are shared with the
+     * original document.
      */
     public void copyUpdatedDocFromOutputDoc() {
         if(outputDoc != null) {
-            updatedDoc = outputDoc.copy();
+            updatedDoc = outputDoc.snapshot(originalDoc);
         }
     }
 
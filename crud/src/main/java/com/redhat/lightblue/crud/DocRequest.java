@@ -18,6 +18,9 @@
  */
 package com.redhat.lightblue.crud;
 
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.Request;
@@ -67,4 +70,18 @@ public abstract class DocRequest extends Request {
         super.parse(node);
         entityData = node.get("data");
     }
+
+    /**
+     * Parses the entity data from the token stream. The documents are
+     * built directly from the tokens, without a tree for the enclosing
+     * request.
+     */
+    @Override
+    protected boolean parseField(String name, JsonParser parser) throws IOException {
+        if ("data".equals(name)) {
+            entityData = parser.readValueAsTree();
+            return true;
+        }
+        return super.parseField(name, parser);
+    }
 }
@@ -0,0 +1,37 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.Iterator;
+
+/**
+ * A cursor-style source of documents returned by a streaming find
+ * operation. Documents are produced one at a time, so the caller
+ * never needs to hold the complete result set. The stream must be
+ * closed once the caller is done with it, whether or not all the
+ * documents are consumed, so that the back end can release the
+ * underlying cursor.
+ */
+public interface DocumentStream<T> extends Iterator<T> {
+
+    /**
+     * Releases the resources held by this stream
+     */
+    void close();
+}
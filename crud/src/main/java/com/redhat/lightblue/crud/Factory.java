@@ -19,14 +19,37 @@
 package com.redhat.lightblue.crud;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import com.redhat.lightblue.util.DefaultRegistry;
 import com.redhat.lightblue.util.Resolver;
 
+import com.redhat.lightblue.metadata.CompositeMetadataCache;
+import com.redhat.lightblue.metadata.EntityInfo;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Metadata;
+import com.redhat.lightblue.metadata.MetadataListener;
+import com.redhat.lightblue.metadata.MetadataStatus;
+import com.redhat.lightblue.metadata.MetadataStatusListener;
 
+import com.redhat.lightblue.assoc.QueryPlanCache;
+
+import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
+
+import com.redhat.lightblue.hooks.AsyncHookDispatcher;
 import com.redhat.lightblue.hooks.HookResolver;
 import com.redhat.lightblue.hooks.CRUDHook;
 
@@ -41,6 +64,66 @@ public class Factory implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Default number of distinct child queries combined into a single
+     * backend find during composite find operations. Batching is off
+     * by default, and enabled by configuration.
+     */
+    public static final int DEFAULT_COMPOSITE_FIND_BATCH_SIZE = 0;
+
+    /**
+     * Default time-to-live for cached composite metadata, in msecs
+     */
+    public static final long DEFAULT_COMPOSITE_METADATA_CACHE_TTL = 60000l;
+
+    /**
+     * Default time-to-live for cached field access plans, in msecs
+     */
+    public static final long DEFAULT_ACCESS_PLAN_CACHE_TTL = 60000l;
+
+    /**
+     * Default maximum number of cached field access plans
+     */
+    public static final int DEFAULT_ACCESS_PLAN_CACHE_SIZE = 256;
+
+    /**
+     * Default time to wait for pending asynchronous hook calls when
+     * the VM exits, in msecs
+     */
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT = 10000l;
+
+    /**
+     * Default number of threads used to execute independent query
+     * plan nodes of composite find operations in parallel. Query plan
+     * nodes are executed sequentially by default, and parallel
+     * execution is enabled by configuration.
+     */
+    public static final int DEFAULT_COMPOSITE_FIND_THREADS = 0;
+
+    /**
+     * Default minimum number of documents in an insert or save request
+     * to validate and initialize documents in parallel. 0 disables
+     * parallel processing.
+     */
+    public static final int DEFAULT_BULK_PARALLEL_THRESHOLD = 0;
+
+    /**
+     * Default number of threads calling hooks asynchronously. 0 means
+     * hooks are called synchronously in the request thread.
+     */
+    public static final int DEFAULT_ASYNC_HOOK_THREADS = 0;
+
+    /**
+     * Default maximum number of pending asynchronous calls for a hook
+     */
+    public static final int DEFAULT_ASYNC_HOOK_QUEUE_SIZE = 1024;
+
+    /**
+     * Default maximum number of documents coalesced into a single
+     * asynchronous hook call
+     */
+    public static final int DEFAULT_ASYNC_HOOK_BATCH_SIZE = 256;
+
     private final DefaultRegistry<String, FieldConstraintChecker> fieldConstraintValidatorRegistry = new DefaultRegistry<>();
     private final DefaultRegistry<String, EntityConstraintChecker> entityConstraintValidatorRegistry = new DefaultRegistry<>();
 
@@ -51,6 +134,38 @@ public class Factory implements Serializable {
 
     private JsonNodeFactory nodeFactory;
 
+    /**
+     * Constraint validation plans, keyed by entity name and version
+     */
+    private transient volatile ConcurrentMap<String, ConstraintValidationPlan> validationPlans;
+
+    private int compositeFindBatchSize = DEFAULT_COMPOSITE_FIND_BATCH_SIZE;
+
+    private volatile CompositeMetadataCache compositeMetadataCache = new CompositeMetadataCache(DEFAULT_COMPOSITE_METADATA_CACHE_TTL);
+    private final MetadataListener metadataListener = new MetadataChangeListener();
+
+    private volatile long accessPlanCacheTTL = DEFAULT_ACCESS_PLAN_CACHE_TTL;
+    private transient volatile FieldAccessRoleEvaluator.PlanCache accessPlanCache;
+    private transient volatile QueryPlanCache queryPlanCache;
+
+    private volatile int compositeFindThreads = DEFAULT_COMPOSITE_FIND_THREADS;
+    private transient volatile ExecutorService compositeFindExecutor;
+
+    private int bulkParallelThreshold = DEFAULT_BULK_PARALLEL_THRESHOLD;
+    private int bulkParallelism = 0;
+    private transient volatile ExecutorService bulkExecutor;
+
+    private volatile int asyncHookThreads = DEFAULT_ASYNC_HOOK_THREADS;
+    private int asyncHookQueueSize = DEFAULT_ASYNC_HOOK_QUEUE_SIZE;
+    private int asyncHookBatchSize = DEFAULT_ASYNC_HOOK_BATCH_SIZE;
+    private AsyncHookDispatcher.OverflowPolicy asyncHookOverflowPolicy = AsyncHookDispatcher.OverflowPolicy.BLOCK;
+    private transient volatile AsyncHookDispatcher hookDispatcher;
+    /**
+     * The executors created by this factory, shut down by shutdown()
+     */
+    private transient List<ExecutorService> ownedExecutors;
+    private transient Thread hookShutdownHook;
+
     /**
      * Adds a field constraint validator
      *
@@ -59,6 +174,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addFieldConstraintValidator(String name, FieldConstraintChecker checker) {
         fieldConstraintValidatorRegistry.add(name, checker);
+        clearConstraintValidationPlans();
     }
 
     /**
@@ -69,6 +185,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addFieldConstraintValidators(Resolver<String, FieldConstraintChecker> r) {
         fieldConstraintValidatorRegistry.add(r);
+        clearConstraintValidationPlans();
     }
 
     /**
@@ -79,6 +196,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addEntityConstraintValidator(String name, EntityConstraintChecker checker) {
         entityConstraintValidatorRegistry.add(name, checker);
+        clearConstraintValidationPlans();
     }
 
     /**
@@ -89,6 +207,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addEntityConstraintValidators(Resolver<String, EntityConstraintChecker> r) {
         entityConstraintValidatorRegistry.add(r);
+        clearConstraintValidationPlans();
     }
 
     /**
@@ -98,7 +217,63 @@ public class Factory implements Serializable {
     public ConstraintValidator getConstraintValidator(EntityMetadata md) {
         return new ConstraintValidator(fieldConstraintValidatorRegistry,
                 entityConstraintValidatorRegistry,
-                md);
+                md,
+                getConstraintValidationPlan(md));
+    }
+
+    /**
+     * Returns the constraint validation plan for the given entity. Plans
+     * are cached by entity name and version. The plans of an entity
+     * are discarded when its metadata changes, and all plans are
+     * discarded when constraint checkers are added.
+     */
+    public ConstraintValidationPlan getConstraintValidationPlan(EntityMetadata md) {
+        ConcurrentMap<String, ConstraintValidationPlan> plans = getValidationPlans();
+        String key = md.getName() + ":" + (md.getVersion() == null ? null : md.getVersion().getValue());
+        ConstraintValidationPlan plan = plans.get(key);
+        if (plan == null) {
+            plan = new ConstraintValidationPlan(fieldConstraintValidatorRegistry,
+                    entityConstraintValidatorRegistry,
+                    md);
+            ConstraintValidationPlan old = plans.putIfAbsent(key, plan);
+            if (old != null) {
+                plan = old;
+            }
+        }
+        return plan;
+    }
+
+    private ConcurrentMap<String, ConstraintValidationPlan> getValidationPlans() {
+        ConcurrentMap<String, ConstraintValidationPlan> plans = validationPlans;
+        if (plans == null) {
+            synchronized (this) {
+                plans = validationPlans;
+                if (plans == null) {
+                    plans = new ConcurrentHashMap<>();
+                    validationPlans = plans;
+                }
+            }
+        }
+        return plans;
+    }
+
+    private void clearConstraintValidationPlans() {
+        ConcurrentMap<String, ConstraintValidationPlan> plans = validationPlans;
+        if (plans != null) {
+            plans.clear();
+        }
+    }
+
+    private void invalidateConstraintValidationPlans(String entityName) {
+        ConcurrentMap<String, ConstraintValidationPlan> plans = validationPlans;
+        if (plans != null) {
+            String prefix = entityName + ":";
+            for (Iterator<String> itr = plans.keySet().iterator(); itr.hasNext();) {
+                if (itr.next().startsWith(prefix)) {
+                    itr.remove();
+                }
+            }
+        }
     }
 
     /**
@@ -175,4 +350,465 @@ public class Factory implements Serializable {
         }
     }
 
+    /**
+     * Returns the maximum number of distinct child queries combined
+     * into a single backend find during composite find
+     * operations. Values less than 2 disable batching, and child
+     * documents are retrieved with a separate find for every parent
+     * document.
+     */
+    public int getCompositeFindBatchSize() {
+        return compositeFindBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of distinct child queries combined into
+     * a single backend find during composite find operations. Values
+     * less than 2 disable batching. When enabled, the backend must
+     * support the $or queries built from the child queries.
+     */
+    public void setCompositeFindBatchSize(int n) {
+        compositeFindBatchSize = n;
+    }
+
+    /**
+     * Returns the composite metadata cache shared between requests,
+     * or null if composite metadata caching is disabled. The cached
+     * composite metadata instances are used by concurrent requests
+     * without copying, so they must not be modified.
+     */
+    public CompositeMetadataCache getCompositeMetadataCache() {
+        return compositeMetadataCache;
+    }
+
+    /**
+     * Returns a metadata listener that invalidates the composite
+     * metadata cache entries and field access plans of modified
+     * entities. The metadata implementation should notify this
+     * listener about all metadata changes. The listener always uses
+     * the current cache, so it remains valid if the cache is disabled
+     * or re-created.
+     */
+    public MetadataListener getMetadataListener() {
+        return metadataListener;
+    }
+
+    /**
+     * Sets the time-to-live for cached composite metadata, in
+     * msecs. If ttl is less than or equal to 0, composite metadata
+     * caching is disabled, and composite metadata is built for every
+     * request.
+     */
+    public synchronized void setCompositeMetadataCacheTTL(long ttl) {
+        if (ttl <= 0) {
+            compositeMetadataCache = null;
+        } else if (compositeMetadataCache == null) {
+            compositeMetadataCache = new CompositeMetadataCache(ttl);
+        } else {
+            compositeMetadataCache.setTTL(ttl);
+        }
+    }
+
+    /**
+     * Returns the cache of field access plans used by the field access
+     * evaluators of this factory, or null if access plan caching is
+     * disabled. The cache is created on first call.
+     */
+    public FieldAccessRoleEvaluator.PlanCache getAccessPlanCache() {
+        FieldAccessRoleEvaluator.PlanCache cache = accessPlanCache;
+        if (cache == null && accessPlanCacheTTL > 0) {
+            synchronized (this) {
+                cache = accessPlanCache;
+                if (cache == null && accessPlanCacheTTL > 0) {
+                    cache = new FieldAccessRoleEvaluator.PlanCache(DEFAULT_ACCESS_PLAN_CACHE_SIZE, accessPlanCacheTTL);
+                    accessPlanCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Sets the time-to-live for cached field access plans, in
+     * msecs. Changes to access definitions that are not notified to
+     * the metadata listener are seen after this time. If ttl is less
+     * than or equal to 0, access plan caching is disabled.
+     */
+    public synchronized void setAccessPlanCacheTTL(long ttl) {
+        accessPlanCacheTTL = ttl;
+        accessPlanCache = null;
+    }
+
+    /**
+     * Returns the cache of the search query plans chosen for the
+     * composite find operations of this factory. The cache is created
+     * on first call, and cleared when metadata changes.
+     */
+    public QueryPlanCache getQueryPlanCache() {
+        QueryPlanCache cache = queryPlanCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = queryPlanCache;
+                if (cache == null) {
+                    cache = new QueryPlanCache();
+                    queryPlanCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the number of threads used to execute independent
+     * query plan nodes of composite find operations in parallel
+     */
+    public int getCompositeFindThreads() {
+        return compositeFindThreads;
+    }
+
+    /**
+     * Sets the number of threads used to execute independent query
+     * plan nodes of composite find operations in parallel. Values
+     * less than 2 disable parallel execution, and the query plan
+     * nodes are executed one by one in the request thread. This has
+     * to be called before the first composite find operation.
+     */
+    public synchronized void setCompositeFindThreads(int n) {
+        compositeFindThreads = n;
+    }
+
+    /**
+     * Sets the executor used to execute independent query plan nodes
+     * of composite find operations. This can be used to run the
+     * nodes using an executor managed by the container. If null,
+     * nodes are executed in the request thread.
+     */
+    public synchronized void setCompositeFindExecutor(ExecutorService executor) {
+        compositeFindExecutor = executor;
+        if (executor == null) {
+            compositeFindThreads = 0;
+        }
+    }
+
+    /**
+     * Returns the executor used to execute independent query plan
+     * nodes of composite find operations in parallel, or null if
+     * parallel execution is disabled. The executor is created on
+     * first call, with a fixed number of daemon threads.
+     */
+    public ExecutorService getCompositeFindExecutor() {
+        ExecutorService executor = compositeFindExecutor;
+        if (executor == null && compositeFindThreads > 1) {
+            synchronized (this) {
+                executor = compositeFindExecutor;
+                if (executor == null && compositeFindThreads > 1) {
+                    executor = newCompositeFindExecutor();
+                    compositeFindExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ExecutorService newCompositeFindExecutor() {
+        final AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(compositeFindThreads, compositeFindThreads,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "composite-find-" + threadIndex.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        own(executor);
+        return executor;
+    }
+
+    /**
+     * Returns the minimum number of documents in a request to validate
+     * and initialize the documents in parallel. 0 means parallel
+     * processing is disabled.
+     */
+    public int getBulkParallelThreshold() {
+        return bulkParallelThreshold;
+    }
+
+    /**
+     * Sets the minimum number of documents in a request to validate and
+     * initialize the documents in parallel. 0 or less disables parallel
+     * processing. When enabled, CRUD controllers and constraint
+     * checkers must be thread safe.
+     */
+    public void setBulkParallelThreshold(int n) {
+        bulkParallelThreshold = n;
+    }
+
+    /**
+     * Returns the number of threads used to process documents in
+     * parallel. If not set, the number of available processors is used.
+     */
+    public int getBulkParallelism() {
+        return bulkParallelism > 0 ? bulkParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets the number of threads used to process documents in
+     * parallel. This has to be called before the first bulk operation.
+     * 0 or less means the number of available processors.
+     */
+    public synchronized void setBulkParallelism(int n) {
+        bulkParallelism = n;
+    }
+
+    /**
+     * Sets the executor used to process documents in parallel. This can
+     * be used to run the document processing using an executor managed
+     * by the container.
+     */
+    public synchronized void setBulkExecutor(ExecutorService executor) {
+        bulkExecutor = executor;
+    }
+
+    /**
+     * Returns the executor used to process documents of large requests
+     * in parallel. By default, this is a fork-join pool created on first
+     * call.
+     */
+    public ExecutorService getBulkExecutor() {
+        ExecutorService executor = bulkExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = bulkExecutor;
+                if (executor == null) {
+                    executor = new ForkJoinPool(getBulkParallelism());
+                    own(executor);
+                    bulkExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the number of threads calling hooks asynchronously. 0
+     * means hooks are called synchronously.
+     */
+    public int getAsyncHookThreads() {
+        return asyncHookThreads;
+    }
+
+    /**
+     * Sets the number of threads calling hooks asynchronously. 0 or
+     * less means hooks are called synchronously in the request
+     * thread. This has to be called before the first operation.
+     */
+    public synchronized void setAsyncHookThreads(int n) {
+        asyncHookThreads = n;
+    }
+
+    public int getAsyncHookQueueSize() {
+        return asyncHookQueueSize;
+    }
+
+    /**
+     * Sets the maximum number of pending asynchronous calls for each
+     * hook
+     */
+    public synchronized void setAsyncHookQueueSize(int n) {
+        asyncHookQueueSize = n;
+    }
+
+    public int getAsyncHookBatchSize() {
+        return asyncHookBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of documents coalesced into a single
+     * asynchronous hook call
+     */
+    public synchronized void setAsyncHookBatchSize(int n) {
+        asyncHookBatchSize = n;
+    }
+
+    public AsyncHookDispatcher.OverflowPolicy getAsyncHookOverflowPolicy() {
+        return asyncHookOverflowPolicy;
+    }
+
+    /**
+     * Sets what to do when the queue of an asynchronous hook is full
+     */
+    public synchronized void setAsyncHookOverflowPolicy(AsyncHookDispatcher.OverflowPolicy p) {
+        asyncHookOverflowPolicy = p;
+    }
+
+    /**
+     * Sets the dispatcher used to call hooks asynchronously. If null,
+     * and the number of asynchronous hook threads is greater than
+     * 0, a dispatcher is created on next call to getHookDispatcher().
+     */
+    public synchronized void setHookDispatcher(AsyncHookDispatcher d) {
+        hookDispatcher = d;
+    }
+
+    /**
+     * Returns the dispatcher used to call hooks asynchronously, or null
+     * if hooks are called synchronously. The dispatcher is created on
+     * first call, with a fixed number of daemon threads.
+     */
+    public AsyncHookDispatcher getHookDispatcher() {
+        AsyncHookDispatcher dispatcher = hookDispatcher;
+        if (dispatcher == null && asyncHookThreads > 0) {
+            synchronized (this) {
+                dispatcher = hookDispatcher;
+                if (dispatcher == null && asyncHookThreads > 0) {
+                    dispatcher = newHookDispatcher();
+                    hookDispatcher = dispatcher;
+                }
+            }
+        }
+        return dispatcher;
+    }
+
+    private AsyncHookDispatcher newHookDispatcher() {
+        final AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(asyncHookThreads, asyncHookThreads,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "hook-dispatch-" + threadIndex.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        own(executor);
+        final AsyncHookDispatcher dispatcher = new AsyncHookDispatcher(executor, asyncHookQueueSize, asyncHookBatchSize, asyncHookOverflowPolicy);
+        // The threads are daemon threads, deliver the pending calls
+        // if the VM exits without shutting down the factory
+        hookShutdownHook = new Thread("hook-dispatch-shutdown") {
+            @Override
+            public void run() {
+                try {
+                    dispatcher.shutdown(DEFAULT_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(hookShutdownHook);
+        return dispatcher;
+    }
+
+    private synchronized void own(ExecutorService executor) {
+        if (ownedExecutors == null) {
+            ownedExecutors = new ArrayList<>();
+        }
+        ownedExecutors.add(executor);
+    }
+
+    /**
+     * Delivers the pending asynchronous hook calls, and shuts down the
+     * executors created by this factory. Executors set by the caller
+     * are not shut down. Waits at most timeout msecs for the hook
+     * calls. Hook calls dispatched after this are dropped.
+     *
+     * @return true if all pending hook calls are delivered
+     */
+    public boolean shutdown(long timeout) throws InterruptedException {
+        boolean delivered = true;
+        AsyncHookDispatcher dispatcher = hookDispatcher;
+        if (dispatcher != null) {
+            delivered = dispatcher.shutdown(timeout, TimeUnit.MILLISECONDS);
+        }
+        List<ExecutorService> executors;
+        synchronized (this) {
+            if (hookShutdownHook != null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(hookShutdownHook);
+                } catch (IllegalStateException e) {
+                    // VM is already shutting down
+                }
+                hookShutdownHook = null;
+            }
+            executors = ownedExecutors;
+            ownedExecutors = null;
+            if (executors != null) {
+                // Recreated if the factory is used again
+                if (executors.contains(compositeFindExecutor)) {
+                    compositeFindExecutor = null;
+                }
+                if (executors.contains(bulkExecutor)) {
+                    bulkExecutor = null;
+                }
+            }
+        }
+        if (executors != null) {
+            for (ExecutorService x : executors) {
+                x.shutdown();
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Discards the cached composite metadata, field access plans, and
+     * constraint validation plans of modified entities, and the cached
+     * query plans
+     */
+    private class MetadataChangeListener implements MetadataStatusListener, Serializable {
+
+        private static final long serialVersionUID = 1l;
+
+        @Override
+        public void beforeCreateNewSchema(Metadata m, EntityMetadata md) {
+        }
+
+        @Override
+        public void afterCreateNewSchema(Metadata m, EntityMetadata md) {
+            invalidate(md.getName());
+        }
+
+        @Override
+        public void beforeUpdateEntityInfo(Metadata m, EntityInfo ei, boolean newEntity) {
+        }
+
+        @Override
+        public void afterUpdateEntityInfo(Metadata m, EntityInfo ei, boolean newEntity) {
+            invalidate(ei.getName());
+        }
+
+        @Override
+        public void afterSetMetadataStatus(Metadata m, String entityName, String version, MetadataStatus newStatus) {
+            invalidate(entityName);
+        }
+
+        @Override
+        public void afterRemoveEntity(Metadata m, String entityName) {
+            invalidate(entityName);
+        }
+
+        private void invalidate(String entityName) {
+            CompositeMetadataCache cache = compositeMetadataCache;
+            if (cache != null) {
+                cache.invalidate(entityName);
+            }
+            FieldAccessRoleEvaluator.PlanCache plans = accessPlanCache;
+            if (plans != null) {
+                plans.invalidate(entityName);
+            }
+            invalidateConstraintValidationPlans(entityName);
+            // Cached query plans are keyed by entity trees that may
+            // contain the entity at any level, drop them all
+            QueryPlanCache qplans = queryPlanCache;
+            if (qplans != null) {
+                qplans.clear();
+            }
+        }
+    }
 }
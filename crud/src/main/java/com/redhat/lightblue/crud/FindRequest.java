@@ -18,6 +18,9 @@
  */
 package com.redhat.lightblue.crud;
 
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.Request;
@@ -138,4 +141,20 @@ public class FindRequest extends Request {
         req.getCRUDFindRequest().fromJson(node);
         return req;
     }
+
+    /**
+     * Parses a find request from the token stream of a json object without
+     * building the request as a json tree. Unrecognized elements are
+     * skipped.
+     */
+    public static FindRequest fromJson(JsonParser parser) throws IOException {
+        FindRequest req = new FindRequest();
+        req.parse(parser);
+        return req;
+    }
+
+    @Override
+    protected boolean parseField(String name, JsonParser parser) throws IOException {
+        return super.parseField(name, parser) || cfr.parseField(name, parser);
+    }
 }
@@ -18,7 +18,10 @@
  */
 package com.redhat.lightblue.crud;
 
+import java.io.IOException;
+
 import com.redhat.lightblue.crud.DocRequest;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
@@ -72,4 +75,26 @@ public class InsertionRequest extends DocRequest {
         }
         return req;
     }
+
+    /**
+     * Parses an insertion request from the token stream of a json object.
+     * Each document in the entity data is built directly from the tokens,
+     * and the request itself is never built as a json tree. Unrecognized
+     * elements are skipped.
+     */
+    public static InsertionRequest fromJson(JsonParser parser) throws IOException {
+        InsertionRequest req = new InsertionRequest();
+        req.parse(parser);
+        return req;
+    }
+
+    @Override
+    protected boolean parseField(String name, JsonParser parser) throws IOException {
+        if ("projection".equals(name)) {
+            JsonNode x = parser.readValueAsTree();
+            returnFields = Projection.fromJson(x);
+            return true;
+        }
+        return super.parseField(name, parser);
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.util.Error;
+
+/**
+ * Processes the documents of large requests in parallel. The document
+ * list is split into chunks, and each chunk is processed by a separate
+ * task on the bulk executor of the factory. If parallel processing is
+ * disabled, or if the number of documents is below the threshold, the
+ * documents are processed in the calling thread as a single chunk.
+ *
+ * The error context of the calling thread is carried over to the
+ * tasks, so errors created during processing have the same context
+ * they would have if they were processed sequentially.
+ */
+public final class ParallelDocProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelDocProcessor.class);
+
+    /**
+     * Number of chunks per thread. Having more chunks than threads
+     * balances the load when documents take different times to process.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Processes a chunk of documents
+     */
+    public interface ChunkProcessor<T, R> {
+        /**
+         * Processes the documents of a chunk, and returns the result for
+         * the chunk
+         */
+        R process(List<T> chunk);
+    }
+
+    private ParallelDocProcessor() {
+    }
+
+    /**
+     * Returns if a request with the given number of documents should be
+     * processed in parallel
+     */
+    public static boolean isParallel(Factory factory, int nDocs) {
+        int threshold = factory.getBulkParallelThreshold();
+        return threshold > 0 && nDocs >= threshold && nDocs > 1;
+    }
+
+    /**
+     * Processes the documents, possibly in parallel. Returns the chunk
+     * results in the order of chunks, so the results can be merged in
+     * document order.
+     */
+    public static <T, R> List<R> process(Factory factory, List<T> docs, ChunkProcessor<T, R> processor) {
+        List<R> results = new ArrayList<>();
+        if (!isParallel(factory, docs.size())) {
+            results.add(processor.process(docs));
+        } else {
+            List<List<T>> chunks = partition(docs, factory.getBulkParallelism() * CHUNKS_PER_THREAD);
+            LOGGER.debug("Processing {} docs in {} chunks", docs.size(), chunks.size());
+            List<Callable<R>> tasks = new ArrayList<>(chunks.size());
+            List<String> context = Error.getThreadContext();
+            for (List<T> chunk : chunks) {
+                tasks.add(new ChunkTask<>(chunk, processor, context));
+            }
+            List<Future<R>> futures;
+            try {
+                futures = factory.getBulkExecutor().invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Error.get(CrudConstants.ERR_CRUD, e);
+            }
+            for (Future<R> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw Error.get(CrudConstants.ERR_CRUD, e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw Error.get(CrudConstants.ERR_CRUD, cause);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Splits the list into at most n chunks of nearly equal size
+     */
+    static <T> List<List<T>> partition(List<T> docs, int n) {
+        int size = docs.size();
+        if (n > size) {
+            n = size;
+        }
+        if (n < 1) {
+            n = 1;
+        }
+        List<List<T>> chunks = new ArrayList<>(n);
+        int from = 0;
+        for (int i = 0; i < n; i++) {
+            int to = from + (size - from) / (n - i);
+            chunks.add(docs.subList(from, to));
+            from = to;
+        }
+        return chunks;
+    }
+
+    private static final class ChunkTask<T, R> implements Callable<R> {
+        private final List<T> chunk;
+        private final ChunkProcessor<T, R> processor;
+        private final List<String> context;
+        private final Thread caller;
+
+        ChunkTask(List<T> chunk, ChunkProcessor<T, R> processor, List<String> context) {
+            this.chunk = chunk;
+            this.processor = processor;
+            this.context = context;
+            this.caller = Thread.currentThread();
+        }
+
+        @Override
+        public R call() {
+            if (Thread.currentThread() == caller) {
+                // The executor ran the task in the calling thread, context is already there
+                return processor.process(chunk);
+            }
+            Error.reset();
+            for (String x : context) {
+                Error.push(x);
+            }
+            try {
+                return processor.process(chunk);
+            } finally {
+                Error.reset();
+            }
+        }
+    }
+}
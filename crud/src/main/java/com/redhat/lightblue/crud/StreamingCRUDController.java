@@ -0,0 +1,58 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+
+/**
+ * Optional extension of CRUDController for back ends that can return
+ * find results incrementally. The mediator uses this interface when
+ * the caller consumes the results as a stream, so a large result set
+ * does not have to be materialized in the operation context.
+ */
+public interface StreamingCRUDController extends CRUDController {
+
+    /**
+     * Searches for documents, and returns a stream of the matching
+     * documents instead of adding them to the operation context.
+     *
+     * @param ctx Operation context
+     * @param query The query. Cannot be null
+     * @param projection What fields to return. Cannot be null
+     * @param sort Sort keys. Can be null
+     * @param from starting index in the result set. Can be null.
+     * @param to end index in the result set. Starts from 0, and
+     * inclusive. Can be null.
+     * @param response The find response. The implementation sets the
+     * number of matching documents in this response.
+     *
+     * Each document returned by the stream is a separate DocCtx whose
+     * output document is already projected using the given
+     * projection. The caller closes the stream.
+     */
+    DocumentStream<DocCtx> findStream(CRUDOperationContext ctx,
+                                      QueryExpression query,
+                                      Projection projection,
+                                      Sort sort,
+                                      Long from,
+                                      Long to,
+                                      CRUDFindResponse response);
+}
@@ -0,0 +1,102 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.redhat.lightblue.Response;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * A document consumer that writes a find response using a JSON
+ * generator while the documents are produced. The documents are
+ * written as the entity data as they are received, and the status,
+ * counts, and errors of the response are written after the
+ * documents, once the operation is complete:
+ *
+ * <pre>
+ *   StreamingResponseWriter writer = new StreamingResponseWriter(gen);
+ *   Response response = mediator.find(request, writer);
+ *   writer.finish(response);
+ * </pre>
+ *
+ * The output contains the same fields as Response.toJson(), but the
+ * entity data is written first.
+ */
+public class StreamingResponseWriter implements DocumentConsumer {
+
+    private static final ObjectMapper MAPPER = JsonUtils.getObjectMapper();
+
+    private static final String PROPERTY_PROCESSED = "processed";
+
+    private final JsonGenerator gen;
+    private boolean started = false;
+    private boolean finished = false;
+
+    public StreamingResponseWriter(JsonGenerator gen) {
+        this.gen = gen;
+    }
+
+    @Override
+    public void accept(JsonDoc doc) {
+        try {
+            start();
+            MAPPER.writeTree(gen, doc.getRoot());
+        } catch (IOException e) {
+            throw Error.get(CrudConstants.ERR_CRUD, e);
+        }
+    }
+
+    /**
+     * Writes the remaining fields of the response and ends the
+     * response object. The generator is flushed, but not closed.
+     *
+     * @param response The response returned by the find operation
+     */
+    public void finish(Response response) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Response is already written");
+        }
+        if (started) {
+            gen.writeEndArray();
+        } else {
+            gen.writeStartObject();
+        }
+        response.writeFieldsTo(gen);
+        gen.writeEndObject();
+        gen.flush();
+        finished = true;
+    }
+
+    private void start() throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Response is already written");
+        }
+        if (!started) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart(PROPERTY_PROCESSED);
+            started = true;
+        }
+    }
+}
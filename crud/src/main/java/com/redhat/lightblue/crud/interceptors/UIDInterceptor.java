@@ -18,10 +18,13 @@
  */
 package com.redhat.lightblue.crud.interceptors;
 
+import java.util.List;
+
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import com.redhat.lightblue.crud.CRUDOperationContext;
 import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.ParallelDocProcessor;
 
 import com.redhat.lightblue.mediator.OperationContext;
 
@@ -46,11 +49,18 @@ public class UIDInterceptor implements CRUDDocInterceptor, MediatorInterceptor {
 
     @Override
     public void run(OperationContext ctx) {
-        JsonNodeFactory nodeFactory = ctx.getFactory().getNodeFactory();
-        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
-        for (DocCtx doc : ctx.getDocuments()) {
-            UIDFields.initializeUIDFields(nodeFactory, md, doc);
-        }
+        final JsonNodeFactory nodeFactory = ctx.getFactory().getNodeFactory();
+        final EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        ParallelDocProcessor.process(ctx.getFactory(), ctx.getDocuments(),
+                new ParallelDocProcessor.ChunkProcessor<DocCtx, Void>() {
+                    @Override
+                    public Void process(List<DocCtx> chunk) {
+                        for (DocCtx doc : chunk) {
+                            UIDFields.initializeUIDFields(nodeFactory, md, doc);
+                        }
+                        return null;
+                    }
+                });
     }
 
     @Override
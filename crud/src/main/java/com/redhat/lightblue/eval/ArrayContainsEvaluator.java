@@ -61,6 +61,11 @@ public class ArrayContainsEvaluator extends QueryEvaluator {
         }
     }
 
+    @Override
+    public int getCost() {
+        return 2;
+    }
+
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
         boolean ret = false;
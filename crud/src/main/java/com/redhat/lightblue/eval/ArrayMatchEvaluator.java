@@ -56,6 +56,12 @@ public class ArrayMatchEvaluator extends QueryEvaluator {
         }
     }
 
+    @Override
+    public int getCost() {
+        // Nested query is evaluated for every array element
+        return 4 * ev.getCost();
+    }
+
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
         boolean ret = false;
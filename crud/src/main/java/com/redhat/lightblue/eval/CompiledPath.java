@@ -0,0 +1,99 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.util.KeyValueCursor;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A field path analyzed once when an evaluator is constructed. A path
+ * without '*' matches at most one node, so it is resolved directly
+ * instead of creating a document cursor for every evaluation. Paths
+ * containing '*' are resolved using a cursor as before. Instances are
+ * immutable and can be shared between threads.
+ */
+final class CompiledPath {
+
+    private final Path path;
+    private final boolean multiValued;
+
+    CompiledPath(Path path) {
+        this.path = path;
+        this.multiValued = path.nAnys() > 0;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns a cursor over the nodes matching the path under the
+     * context root
+     */
+    KeyValueCursor<Path, JsonNode> getNodes(QueryEvaluationContext ctx) {
+        if (multiValued) {
+            return ctx.getNodes(path);
+        } else {
+            return new SingleNodeCursor(path, ctx.getNode(path));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+
+    /**
+     * A cursor that returns the node if it is not null, behaving the
+     * same way as a document cursor for a path without '*'
+     */
+    private static final class SingleNodeCursor implements KeyValueCursor<Path, JsonNode> {
+        private final Path path;
+        private JsonNode next;
+        private JsonNode current;
+
+        SingleNodeCursor(Path path, JsonNode node) {
+            this.path = path;
+            this.next = node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public void next() {
+            current = next;
+            next = null;
+        }
+
+        @Override
+        public JsonNode getCurrentValue() {
+            return current;
+        }
+
+        @Override
+        public Path getCurrentKey() {
+            return current == null ? null : path;
+        }
+    }
+}
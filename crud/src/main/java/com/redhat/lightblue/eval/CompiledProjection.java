@@ -0,0 +1,454 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ContainerNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.ObjectArrayElement;
+import com.redhat.lightblue.metadata.ObjectField;
+import com.redhat.lightblue.metadata.ResolvedReferenceField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.query.FieldProjection;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.ProjectionList;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.MutablePath;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A projection compiled against the field tree of an entity. The
+ * inclusion decision of the projection is evaluated once for every
+ * field of the metadata, and stored in a tree that mirrors the
+ * metadata. A document is then projected by walking the document and
+ * the compiled tree together, without resolving field names or
+ * matching projection patterns.
+ *
+ * Only projections whose decisions do not depend on the array indexes
+ * or the document contents can be compiled, that is, lists of field
+ * projections without array indexes. Array range and query
+ * projections, and field projections with array indexes, are
+ * evaluated by the Projector.
+ *
+ * Compiled projections are immutable, and cached for each entity
+ * metadata instance in a bounded cache. When the cache is full, the
+ * least recently used entries are evicted.
+ */
+public final class CompiledProjection {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledProjection.class);
+
+    private static final int MAX_CACHED = 1024;
+
+    private static final byte KIND_OBJECT = 0;
+    private static final byte KIND_OBJECT_ELEMENT = 1;
+    private static final byte KIND_ARRAY = 2;
+    private static final byte KIND_REFERENCE = 3;
+    private static final byte KIND_SIMPLE = 4;
+    private static final byte KIND_OTHER = 5;
+
+    /**
+     * Compiled projections, keyed by entity metadata instance and
+     * projection. The keys refer to the metadata weakly, and the
+     * compiled projections do not keep references to the metadata.
+     */
+    private static final ConcurrentMap<Key, Entry> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicLong CLOCK = new AtomicLong();
+    private static final AtomicBoolean EVICTING = new AtomicBoolean();
+
+    private static final class Key {
+        private final WeakReference<EntityMetadata> md;
+        private final String projection;
+        private final int hash;
+
+        Key(EntityMetadata md, String projection) {
+            this.md = new WeakReference<>(md);
+            this.projection = projection;
+            this.hash = System.identityHashCode(md) * 31 + projection.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof Key) {
+                Key k = (Key) o;
+                EntityMetadata x = md.get();
+                return x != null && x == k.md.get() && projection.equals(k.projection);
+            }
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final CompiledProjection compiled;
+        private volatile long lastUsed;
+
+        Entry(Key key, CompiledProjection compiled) {
+            this.key = key;
+            this.compiled = compiled;
+            this.lastUsed = CLOCK.incrementAndGet();
+        }
+    }
+
+    /**
+     * Thrown when a document does not fit the metadata. In that case
+     * the document is projected by the Projector, which reports the
+     * error the same way as before.
+     */
+    private static final class Mismatch extends RuntimeException {
+        private static final long serialVersionUID = 1l;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final Mismatch MISMATCH = new Mismatch();
+
+    private static final class Node {
+        private final byte kind;
+        private final Projection.Inclusion inclusion;
+        private final Map<String, Node> children;
+
+        Node(byte kind, Projection.Inclusion inclusion, Map<String, Node> children) {
+            this.kind = kind;
+            this.inclusion = inclusion;
+            this.children = children;
+        }
+
+        Node getChild(String name) {
+            Node n = children == null ? null : children.get(name);
+            if (n == null) {
+                throw MISMATCH;
+            }
+            return n;
+        }
+    }
+
+    private final Node root;
+
+    private CompiledProjection(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the compiled form of the projection for the entity, or
+     * null if the projection cannot be compiled.
+     *
+     * @param projection The projection
+     * @param md The entity metadata
+     */
+    public static CompiledProjection get(Projection projection, EntityMetadata md) {
+        return get(projection, md, null);
+    }
+
+    /**
+     * Returns the compiled form of the projection for the entity, or
+     * null if the projection cannot be compiled.
+     *
+     * @param projection The projection
+     * @param md The entity metadata
+     * @param projector A projector for the projection at the root of
+     * the entity, used to evaluate the projection for each field. If
+     * null, a projector is built if the projection needs to be
+     * compiled.
+     */
+    public static CompiledProjection get(Projection projection, EntityMetadata md, Projector projector) {
+        if (!isCompilable(projection)) {
+            return null;
+        }
+        Key key = new Key(md, projection.toString());
+        Entry entry = CACHE.get(key);
+        if (entry != null) {
+            entry.lastUsed = CLOCK.incrementAndGet();
+            return entry.compiled;
+        }
+        if (projector == null) {
+            projector = Projector.getInstance(projection, Path.EMPTY, md.getFieldTreeRoot());
+        }
+        entry = new Entry(key, compile(projector, md.getFieldTreeRoot()));
+        Entry old = CACHE.putIfAbsent(key, entry);
+        if (old != null) {
+            return old.compiled;
+        }
+        if (CACHE.size() > MAX_CACHED) {
+            evict();
+        }
+        return entry.compiled;
+    }
+
+    /**
+     * Removes the entries of collected metadata, and the least recently
+     * used entries until the cache is below its capacity. Only one
+     * thread evicts at a time, the others continue without waiting.
+     */
+    private static void evict() {
+        if (EVICTING.compareAndSet(false, true)) {
+            try {
+                List<Entry> entries = new ArrayList<>(CACHE.size());
+                for (Entry e : CACHE.values()) {
+                    if (e.key.md.get() == null) {
+                        CACHE.remove(e.key, e);
+                    } else {
+                        entries.add(e);
+                    }
+                }
+                int n = entries.size() - MAX_CACHED * 3 / 4;
+                if (n > 0) {
+                    Collections.sort(entries, new Comparator<Entry>() {
+                        @Override
+                        public int compare(Entry e1, Entry e2) {
+                            return Long.compare(e1.lastUsed, e2.lastUsed);
+                        }
+                    });
+                    for (int i = 0; i < n; i++) {
+                        CACHE.remove(entries.get(i).key, entries.get(i));
+                    }
+                }
+            } finally {
+                EVICTING.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns if the projection decisions depend only on the metadata
+     * field, and not on array indexes or document contents
+     */
+    public static boolean isCompilable(Projection projection) {
+        if (projection instanceof FieldProjection) {
+            Path field = ((FieldProjection) projection).getField();
+            int n = field.numSegments();
+            for (int i = 0; i < n; i++) {
+                String s = field.head(i);
+                if (field.isIndex(i) || Path.PARENT.equals(s) || Path.THIS.equals(s)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (projection instanceof ProjectionList) {
+            for (Projection x : ((ProjectionList) projection).getItems()) {
+                if (!isCompilable(x)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Compiles the projection evaluated by the projector for the field
+     * tree rooted at root
+     */
+    static CompiledProjection compile(Projector projector, FieldTreeNode root) {
+        LOGGER.debug("Compiling projection");
+        return new CompiledProjection(new Node(KIND_OTHER,
+                Projection.Inclusion.undecided,
+                compileChildren(projector, root, new MutablePath())));
+    }
+
+    private static Map<String, Node> compileChildren(Projector projector, FieldTreeNode node, MutablePath path) {
+        Iterator<? extends FieldTreeNode> itr = node.getChildren();
+        if (!itr.hasNext()) {
+            return null;
+        }
+        Map<String, Node> children = new HashMap<>();
+        while (itr.hasNext()) {
+            FieldTreeNode child = itr.next();
+            path.push(child.getName());
+            children.put(child.getName(), new Node(kindOf(child),
+                    projector.project(path.immutableCopy(), null),
+                    compileChildren(projector, child, path)));
+            path.pop();
+        }
+        return children;
+    }
+
+    private static byte kindOf(FieldTreeNode node) {
+        if (node instanceof ObjectField) {
+            return KIND_OBJECT;
+        } else if (node instanceof ObjectArrayElement) {
+            return KIND_OBJECT_ELEMENT;
+        } else if (node instanceof ResolvedReferenceField) {
+            return KIND_REFERENCE;
+        } else if (node instanceof ArrayField) {
+            return KIND_ARRAY;
+        } else if (node instanceof SimpleField || node instanceof SimpleArrayElement) {
+            return KIND_SIMPLE;
+        } else {
+            return KIND_OTHER;
+        }
+    }
+
+    /**
+     * Projects the document. Returns null if the document does not
+     * match the metadata, in which case the document should be
+     * projected using the Projector.
+     */
+    public JsonDoc project(JsonDoc doc, JsonNodeFactory factory) {
+        JsonNode docRoot = doc.getRoot();
+        if (!(docRoot instanceof ObjectNode) || docRoot.size() == 0) {
+            return null;
+        }
+        try {
+            JsonNode newRoot = project(factory, root, docRoot, false);
+            return new JsonDoc(newRoot == null ? factory.objectNode() : newRoot);
+        } catch (Mismatch m) {
+            LOGGER.debug("Document does not match compiled projection, using projector");
+            return null;
+        }
+    }
+
+    /**
+     * Projects the children of node, which is a container with at least
+     * one child
+     */
+    private static JsonNode project(JsonNodeFactory factory,
+                                    Node plan,
+                                    JsonNode node,
+                                    boolean processingArray) {
+        JsonNode parentNode = null;
+        if (node instanceof ArrayNode) {
+            Node elementPlan = plan.getChild(Path.ANY);
+            for (Iterator<JsonNode> itr = node.elements(); itr.hasNext();) {
+                parentNode = projectField(factory, elementPlan, null, itr.next(), parentNode, processingArray);
+            }
+        } else {
+            for (Iterator<Map.Entry<String, JsonNode>> itr = node.fields(); itr.hasNext();) {
+                Map.Entry<String, JsonNode> entry = itr.next();
+                parentNode = projectField(factory, plan.getChild(entry.getKey()), entry.getKey(), entry.getValue(), parentNode, processingArray);
+            }
+        }
+        return parentNode;
+    }
+
+    private static JsonNode projectField(JsonNodeFactory factory,
+                                         Node plan,
+                                         String name,
+                                         JsonNode fieldNode,
+                                         JsonNode parentNode,
+                                         boolean processingArray) {
+        JsonNode newNode = null;
+        switch (plan.inclusion) {
+            case undecided:
+                // Recurse into array/object/reference nodes and see if anything is projected there
+                if (!(fieldNode instanceof NullNode)) {
+                    switch (plan.kind) {
+                        case KIND_OBJECT:
+                        case KIND_OBJECT_ELEMENT:
+                        case KIND_ARRAY:
+                        case KIND_REFERENCE:
+                            if (hasChildren(fieldNode)) {
+                                newNode = project(factory, plan, fieldNode,
+                                        !(plan.kind == KIND_OBJECT || plan.kind == KIND_OBJECT_ELEMENT));
+                            } else if (plan.kind == KIND_OBJECT) {
+                                newNode = factory.objectNode();
+                            } else {
+                                newNode = factory.arrayNode();
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                break;
+            case implicit_inclusion:
+            case explicit_inclusion:
+                if (fieldNode instanceof NullNode) {
+                    newNode = fieldNode;
+                } else {
+                    switch (plan.kind) {
+                        case KIND_OBJECT:
+                        case KIND_OBJECT_ELEMENT:
+                            if (hasChildren(fieldNode)) {
+                                newNode = project(factory, plan, fieldNode, false);
+                            }
+                            break;
+                        case KIND_ARRAY:
+                        case KIND_REFERENCE:
+                            if (hasChildren(fieldNode)) {
+                                newNode = project(factory, plan, fieldNode, true);
+                            }
+                            break;
+                        case KIND_SIMPLE:
+                            newNode = fieldNode;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        if (newNode != null) {
+            if (parentNode == null) {
+                parentNode = processingArray ? factory.arrayNode() : factory.objectNode();
+            }
+            if (parentNode instanceof ArrayNode) {
+                ((ArrayNode) parentNode).add(newNode);
+            } else {
+                if (name == null) {
+                    // Array element in an object context
+                    throw MISMATCH;
+                }
+                ((ObjectNode) parentNode).set(name, newNode);
+            }
+        }
+        return parentNode;
+    }
+
+    private static boolean hasChildren(JsonNode node) {
+        return node instanceof ContainerNode && node.size() > 0;
+    }
+}
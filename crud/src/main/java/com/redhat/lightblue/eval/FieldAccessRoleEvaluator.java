@@ -20,11 +20,16 @@ package com.redhat.lightblue.eval;
 
 import java.util.Set;
 import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import com.redhat.lightblue.metadata.CompositeMetadata;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.FieldCursor;
 import com.redhat.lightblue.metadata.FieldTreeNode;
@@ -42,16 +47,263 @@ import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.KeyValueCursor;
 
 public final class FieldAccessRoleEvaluator {
+
+    private static final int MAX_ROLE_SETS_PER_ENTITY = 64;
+
+    /**
+     * Maximum number of field paths whose access is kept in a plan
+     */
+    private static final int MAX_PATHS_PER_PLAN = 1024;
+
+    /**
+     * Marks paths that resolve to a non-field node
+     */
+    private static final EffectiveAccess NOT_A_FIELD = new EffectiveAccess(null, null, null);
+
     private final EntityMetadata md;
     private final Set<String> roles;
+    private final PlanCache planCache;
+    private AccessPlan plan;
 
     public static enum Operation {
         insert, update, insert_and_update, find
     };
 
+    /**
+     * The effective access of a field for each operation, computed
+     * once from the field, its ancestors, and the entity access
+     */
+    private static final class EffectiveAccess {
+        private final Access insert;
+        private final Access update;
+        private final Access find;
+
+        EffectiveAccess(Access insert, Access update, Access find) {
+            this.insert = insert;
+            this.update = update;
+            this.find = find;
+        }
+    }
+
+    /**
+     * Access decisions of a role set
+     */
+    private static final class RoleAccess {
+        private final Map<Operation, Set<Path>> inaccessibleFields = new HashMap<>();
+        private final Map<Operation, Projection> excludedFields = new HashMap<>();
+    }
+
+    /**
+     * The effective access of the fields of an entity, and the access
+     * decisions for the role sets seen so far. The access of a field
+     * is computed when it is first asked for, and the access of all
+     * the fields is computed only when all the fields are needed.
+     */
+    private static final class AccessPlan {
+        private final Set<String> entityNames;
+        private final long created = System.currentTimeMillis();
+        private final Map<Path, EffectiveAccess> pathAccess = new HashMap<>();
+        private List<Path> fieldPaths;
+        private List<EffectiveAccess> fieldPathAccess;
+        private final Map<Set<String>, RoleAccess> roleAccess = new HashMap<>();
+
+        AccessPlan(Set<String> entityNames) {
+            this.entityNames = entityNames;
+        }
+
+        synchronized EffectiveAccess getPathAccess(Path p) {
+            return pathAccess.get(p);
+        }
+
+        synchronized void putPathAccess(Path p, EffectiveAccess access) {
+            if (pathAccess.size() >= MAX_PATHS_PER_PLAN) {
+                pathAccess.clear();
+            }
+            pathAccess.put(p, access);
+        }
+
+        synchronized void initFields(EntityMetadata md) {
+            if (fieldPaths == null) {
+                List<Path> paths = new ArrayList<>();
+                List<EffectiveAccess> access = new ArrayList<>();
+                FieldCursor cursor = md.getFieldCursor();
+                while (cursor.next()) {
+                    FieldTreeNode fn = cursor.getCurrentNode();
+                    if (fn instanceof Field) {
+                        paths.add(cursor.getCurrentPath());
+                        access.add(getEffAccess((Field) fn, md.getAccess()));
+                    }
+                }
+                fieldPaths = paths;
+                fieldPathAccess = access;
+            }
+        }
+
+        synchronized RoleAccess getRoleAccess(Set<String> roles) {
+            RoleAccess r = roleAccess.get(roles);
+            if (r == null) {
+                if (roleAccess.size() >= MAX_ROLE_SETS_PER_ENTITY) {
+                    roleAccess.clear();
+                }
+                r = new RoleAccess();
+                roleAccess.put(roles == null ? null : new HashSet<>(roles), r);
+            }
+            return r;
+        }
+    }
+
+    /**
+     * Access plans of metadata instances. A plan belongs to the metadata
+     * instance it is computed from, so a plan is never used for another
+     * version of the metadata, or for metadata loaded by another
+     * factory. Plans expire after a time limit, so changes made to the
+     * access definitions of a metadata instance in place, or changes
+     * made on other nodes that are not notified, are seen once the plan
+     * expires. The plans of an entity are also discarded when its
+     * metadata changes.
+     */
+    public static final class PlanCache {
+        private final ConcurrentHashMap<MetadataKey, AccessPlan> plans = new ConcurrentHashMap<>();
+        private final int maxPlans;
+        private final long ttlMillis;
+
+        /**
+         * @param maxPlans Maximum number of plans kept
+         * @param ttlMillis Time in milliseconds a plan is used after it is
+         * computed
+         */
+        public PlanCache(int maxPlans, long ttlMillis) {
+            this.maxPlans = maxPlans;
+            this.ttlMillis = ttlMillis;
+        }
+
+        private AccessPlan getPlan(EntityMetadata md) {
+            MetadataKey key = new MetadataKey(md);
+            long now = System.currentTimeMillis();
+            AccessPlan plan = plans.get(key);
+            if (plan == null || now - plan.created >= ttlMillis) {
+                if (plan != null) {
+                    plans.remove(key, plan);
+                }
+                plan = newPlan(md);
+                if (plans.size() >= maxPlans) {
+                    evict(now);
+                }
+                AccessPlan existing = plans.putIfAbsent(key, plan);
+                if (existing != null) {
+                    plan = existing;
+                }
+            }
+            return plan;
+        }
+
+        /**
+         * Removes expired plans. If there are still too many plans,
+         * removes the oldest ones.
+         */
+        private void evict(long now) {
+            AccessPlan oldest = null;
+            for (Iterator<AccessPlan> itr = plans.values().iterator(); itr.hasNext();) {
+                AccessPlan p = itr.next();
+                if (now - p.created >= ttlMillis) {
+                    itr.remove();
+                } else if (oldest == null || p.created < oldest.created) {
+                    oldest = p;
+                }
+            }
+            if (oldest != null && plans.size() >= maxPlans) {
+                plans.values().remove(oldest);
+            }
+        }
+
+        /**
+         * Discards the access plans containing the given entity. This is
+         * called when the metadata of the entity changes.
+         */
+        public void invalidate(String entityName) {
+            for (Iterator<AccessPlan> itr = plans.values().iterator(); itr.hasNext();) {
+                if (itr.next().entityNames.contains(entityName)) {
+                    itr.remove();
+                }
+            }
+        }
+
+        /**
+         * Discards all access plans
+         */
+        public void clear() {
+            plans.clear();
+        }
+    }
+
+    /**
+     * Identity of a metadata instance. The metadata classes do not
+     * define equality.
+     */
+    private static final class MetadataKey {
+        private final EntityMetadata md;
+
+        MetadataKey(EntityMetadata md) {
+            this.md = md;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(md);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MetadataKey && ((MetadataKey) o).md == md;
+        }
+    }
+
+    /**
+     * Constructs an evaluator that computes its own access plan
+     */
     public FieldAccessRoleEvaluator(EntityMetadata md, Set<String> callerRoles) {
+        this(md, callerRoles, null);
+    }
+
+    /**
+     * Constructs an evaluator that shares the access plan of the
+     * metadata in the given cache
+     *
+     * @param md The entity metadata
+     * @param callerRoles The caller roles
+     * @param planCache The plan cache, or null to compute the plan
+     */
+    public FieldAccessRoleEvaluator(EntityMetadata md, Set<String> callerRoles, PlanCache planCache) {
         this.md = md;
         this.roles = callerRoles;
+        this.planCache = planCache;
+    }
+
+    private AccessPlan getPlan() {
+        if (plan == null) {
+            plan = planCache == null ? newPlan(md) : planCache.getPlan(md);
+        }
+        return plan;
+    }
+
+    private static AccessPlan newPlan(EntityMetadata md) {
+        Set<String> entityNames = new HashSet<>();
+        addEntityNames(entityNames, md);
+        return new AccessPlan(entityNames);
+    }
+
+    /**
+     * Collects the names of the entity and, for composite metadata, the
+     * entities included at every reference
+     */
+    private static void addEntityNames(Set<String> entityNames, EntityMetadata md) {
+        entityNames.add(md.getName());
+        if (md instanceof CompositeMetadata) {
+            CompositeMetadata cmd = (CompositeMetadata) md;
+            for (Path child : cmd.getChildPaths()) {
+                addEntityNames(entityNames, cmd.getChildMetadata(child));
+            }
+        }
     }
 
     /**
@@ -72,16 +324,17 @@ public final class FieldAccessRoleEvaluator {
      * the operation
      */
     public boolean hasAccess(Path field, Operation op) {
-        FieldTreeNode fn = md.resolve(field);
-        if (fn != null) {
-            if (fn instanceof Field) {
-                return hasAccess((Field) fn, op);
-            } else {
-                return true;
+        AccessPlan p = getPlan();
+        EffectiveAccess access = p.getPathAccess(field);
+        if (access == null) {
+            FieldTreeNode fn = md.resolve(field);
+            if (fn == null) {
+                return false;
             }
-        } else {
-            return false;
+            access = fn instanceof Field ? getEffAccess((Field) fn, md.getAccess()) : NOT_A_FIELD;
+            p.putPathAccess(field, access);
         }
+        return access == NOT_A_FIELD || hasAccess(access, op);
     }
 
     /**
@@ -89,15 +342,31 @@ public final class FieldAccessRoleEvaluator {
      * operation
      */
     public Set<Path> getInaccessibleFields(Operation op) {
-        FieldCursor cursor = md.getFieldCursor();
-        Set<Path> fields = new HashSet<>();
-        while (cursor.next()) {
-            FieldTreeNode fn = cursor.getCurrentNode();
-            if (fn instanceof Field && !hasAccess((Field) fn, op)) {
-                fields.add(cursor.getCurrentPath());
+        return new HashSet<>(getCachedInaccessibleFields(op));
+    }
+
+    /**
+     * Returns the inaccessible fields for the operation from the
+     * cache. The returned set is shared, and must not be modified.
+     */
+    private Set<Path> getCachedInaccessibleFields(Operation op) {
+        AccessPlan p = getPlan();
+        RoleAccess r = p.getRoleAccess(roles);
+        synchronized (r) {
+            Set<Path> fields = r.inaccessibleFields.get(op);
+            if (fields == null) {
+                p.initFields(md);
+                fields = new HashSet<>();
+                int n = p.fieldPaths.size();
+                for (int i = 0; i < n; i++) {
+                    if (!hasAccess(p.fieldPathAccess.get(i), op)) {
+                        fields.add(p.fieldPaths.get(i));
+                    }
+                }
+                r.inaccessibleFields.put(op, fields);
             }
+            return fields;
         }
-        return fields;
     }
 
     /**
@@ -106,7 +375,7 @@ public final class FieldAccessRoleEvaluator {
      * doc.
      */
     public List<Path> getInaccessibleFields_Insert(JsonDoc doc) {
-        Set<Path> inaccessibleFields = getInaccessibleFields(Operation.insert);
+        Set<Path> inaccessibleFields = getCachedInaccessibleFields(Operation.insert);
         List<Path> ret = new ArrayList<>(inaccessibleFields.size());
         for (Path x : inaccessibleFields) {
             KeyValueCursor<Path, JsonNode> cursor = doc.getAllNodes(x);
@@ -125,7 +394,7 @@ public final class FieldAccessRoleEvaluator {
      * @param oldDoc The old version of the document
      */
     public List<Path> getInaccessibleFields_Update(JsonDoc newDoc, JsonDoc oldDoc) {
-        Set<Path> inaccessibleFields = getInaccessibleFields(Operation.update);
+        Set<Path> inaccessibleFields = getCachedInaccessibleFields(Operation.update);
         List<Path> ret = new ArrayList<>(inaccessibleFields.size());
         for (Path x : inaccessibleFields) {
             KeyValueCursor<Path, JsonNode> oldCursor = oldDoc.getAllNodes(x);
@@ -142,7 +411,13 @@ public final class FieldAccessRoleEvaluator {
      * access to based on the operation
      */
     public Projection getExcludedFields(Operation op) {
-        Set<Path> inaccessibleFields = getInaccessibleFields(op);
+        RoleAccess r = getPlan().getRoleAccess(roles);
+        synchronized (r) {
+            if (r.excludedFields.containsKey(op)) {
+                return r.excludedFields.get(op);
+            }
+        }
+        Set<Path> inaccessibleFields = getCachedInaccessibleFields(op);
         Projection ret;
         if (inaccessibleFields.isEmpty()) {
             ret = null;
@@ -157,6 +432,9 @@ public final class FieldAccessRoleEvaluator {
                 ret = new ProjectionList(list);
             }
         }
+        synchronized (r) {
+            r.excludedFields.put(op, ret);
+        }
         return ret;
     }
 
@@ -182,7 +460,13 @@ public final class FieldAccessRoleEvaluator {
         }
     };
 
-    private Access getEffAccess(Field f, AccAccessor acc, Access entityAccess) {
+    private static EffectiveAccess getEffAccess(Field f, EntityAccess eaccess) {
+        return new EffectiveAccess(getEffAccess(f, INS_ACC, eaccess.getInsert()),
+                getEffAccess(f, UPD_ACC, eaccess.getUpdate()),
+                getEffAccess(f, FIND_ACC, eaccess.getFind()));
+    }
+
+    private static Access getEffAccess(Field f, AccAccessor acc, Access entityAccess) {
         Access access = acc.getFieldAccess(f.getAccess());
         if (access.isEmpty()) {
             FieldTreeNode trc = f;
@@ -202,18 +486,16 @@ public final class FieldAccessRoleEvaluator {
         return access;
     }
 
-    private boolean hasAccess(Field f, Operation op) {
-        EntityAccess eaccess = md.getAccess();
+    private boolean hasAccess(EffectiveAccess access, Operation op) {
         switch (op) {
             case insert:
-                return getEffAccess(f, INS_ACC, eaccess.getInsert()).hasAccess(roles);
+                return access.insert.hasAccess(roles);
             case update:
-                return getEffAccess(f, UPD_ACC, eaccess.getUpdate()).hasAccess(roles);
+                return access.update.hasAccess(roles);
             case insert_and_update:
-                return getEffAccess(f, INS_ACC, eaccess.getInsert()).hasAccess(roles)
-                        && getEffAccess(f, UPD_ACC, eaccess.getUpdate()).hasAccess(roles);
+                return access.insert.hasAccess(roles) && access.update.hasAccess(roles);
             case find:
-                return getEffAccess(f, FIND_ACC, eaccess.getFind()).hasAccess(roles);
+                return access.find.hasAccess(roles);
         }
         return false;
     }
@@ -59,6 +59,8 @@ public class FieldComparisonEvaluator extends QueryEvaluator {
     private final FieldTreeNode rfieldMd;
     private final Path relativePath;
     private final Path rfieldRelativePath;
+    private final CompiledPath fieldPath;
+    private final CompiledPath rfieldPath;
     private final BinaryComparisonOperator operator;
 
     /**
@@ -90,14 +92,22 @@ public class FieldComparisonEvaluator extends QueryEvaluator {
             throw new EvaluationError(expr, CrudConstants.ERR_EXPECTED_SIMPLE_FIELD_OR_SIMPLE_ARRAY + " "+rfieldRelativePath);
         }
         operator = expr.getOp();
+        fieldPath = new CompiledPath(relativePath);
+        rfieldPath = new CompiledPath(rfieldRelativePath);
         LOGGER.debug("ctor {} {} {}", relativePath, operator, rfieldRelativePath);
     }
     
     
+    @Override
+    public int getCost() {
+        return 3;
+    }
+
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
         LOGGER.debug("evaluate {} {} {}", relativePath, operator, rfieldRelativePath);
-        KeyValueCursor<Path, JsonNode> lcursor = ctx.getNodes(relativePath);
+        ctx.setResult(false);
+        KeyValueCursor<Path, JsonNode> lcursor = fieldPath.getNodes(ctx);
         if (lcursor != null) {
             while (lcursor.hasNext()&&!ctx.getResult()) {
                 lcursor.next();
@@ -111,7 +121,7 @@ public class FieldComparisonEvaluator extends QueryEvaluator {
                         ldocValue = fieldMd.getType().fromJson(lvalueNode);
                     }
                 }
-                KeyValueCursor<Path, JsonNode> rcursor = ctx.getNodes(rfieldRelativePath);
+                KeyValueCursor<Path, JsonNode> rcursor = rfieldPath.getNodes(ctx);
                 if (rcursor != null) {
                     while (rcursor.hasNext()&&!ctx.getResult()) {
                         rcursor.next();
@@ -44,6 +44,8 @@ public class NaryFieldRelationalExpressionEvaluator extends QueryEvaluator {
     private final NaryRelationalOperator operator;
     private final Path rfield;
     private final ArrayField rfieldMd;
+    private final CompiledPath fieldPath;
+    private final CompiledPath rfieldPath;
 
     public NaryFieldRelationalExpressionEvaluator(NaryFieldRelationalExpression expr, FieldTreeNode context) {
         field = expr.getField();
@@ -62,13 +64,20 @@ public class NaryFieldRelationalExpressionEvaluator extends QueryEvaluator {
             throw new EvaluationError(expr,CrudConstants.ERR_REQUIRED_ARRAY + rfield);
         }
         operator = expr.getOp();
+        fieldPath = new CompiledPath(field);
+        rfieldPath = new CompiledPath(rfield);
         LOGGER.debug("ctor {} {} {}", field, operator, rfield);
     }
 
+    @Override
+    public int getCost() {
+        return 3;
+    }
+
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
         LOGGER.debug("evaluate {} {} {}", field, operator, rfield);
-        KeyValueCursor<Path, JsonNode> cursor = ctx.getNodes(field);
+        KeyValueCursor<Path, JsonNode> cursor = fieldPath.getNodes(ctx);
         boolean ret = false;
         while (cursor.hasNext()) {
             cursor.next();
@@ -80,7 +89,7 @@ public class NaryFieldRelationalExpressionEvaluator extends QueryEvaluator {
                 docValue = null;
             }
             boolean in = false;
-            KeyValueCursor<Path, JsonNode> rcursor = ctx.getNodes(rfield);
+            KeyValueCursor<Path, JsonNode> rcursor = rfieldPath.getNodes(ctx);
             while(rcursor.hasNext()) {
                 rcursor.next();
                 JsonNode lnode = rcursor.getCurrentValue();
@@ -20,6 +20,8 @@ package com.redhat.lightblue.eval;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +38,19 @@ public class NaryLogicalExpressionEvaluator extends QueryEvaluator {
 
     private final List<QueryEvaluator> evaluators;
     private final NaryLogicalOperator operator;
+    private final int cost;
+
+    /**
+     * Orders evaluators by their cost, so cheaper evaluators are
+     * evaluated first, and $and/$or can short-circuit without
+     * evaluating the expensive ones
+     */
+    private static final Comparator<QueryEvaluator> COST_ORDER = new Comparator<QueryEvaluator>() {
+        @Override
+        public int compare(QueryEvaluator e1, QueryEvaluator e2) {
+            return Integer.compare(e1.getCost(), e2.getCost());
+        }
+    };
 
     public NaryLogicalExpressionEvaluator(NaryLogicalExpression expr,
                                           FieldTreeNode context) {
@@ -45,6 +60,18 @@ public class NaryLogicalExpressionEvaluator extends QueryEvaluator {
             evaluators.add(QueryEvaluator.getInstance(q, context));
         }
         operator = expr.getOp();
+        // Sort is stable, evaluators with the same cost keep their order
+        Collections.sort(evaluators, COST_ORDER);
+        int c = 0;
+        for (QueryEvaluator e : evaluators) {
+            c += e.getCost();
+        }
+        cost = c;
+    }
+
+    @Override
+    public int getCost() {
+        return cost;
     }
 
     @Override
@@ -18,8 +18,13 @@
  */
 package com.redhat.lightblue.eval;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +32,15 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.redhat.lightblue.crud.CrudConstants;
 import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.metadata.types.BigDecimalType;
+import com.redhat.lightblue.metadata.types.BigIntegerType;
+import com.redhat.lightblue.metadata.types.BooleanType;
+import com.redhat.lightblue.metadata.types.DateType;
+import com.redhat.lightblue.metadata.types.DoubleType;
+import com.redhat.lightblue.metadata.types.IntegerType;
+import com.redhat.lightblue.metadata.types.StringType;
+import com.redhat.lightblue.metadata.types.UIDType;
 import com.redhat.lightblue.query.NaryValueRelationalExpression;
 import com.redhat.lightblue.query.NaryRelationalOperator;
 import com.redhat.lightblue.query.Value;
@@ -38,16 +52,38 @@ public class NaryValueRelationalExpressionEvaluator extends QueryEvaluator {
     private static final Logger LOGGER = LoggerFactory.getLogger(NaryValueRelationalExpressionEvaluator.class);
 
     private final Path field;
+    private final CompiledPath fieldPath;
     private final FieldTreeNode fieldMd;
     private final NaryRelationalOperator operator;
     private final List<Object> values;
 
+    /**
+     * Types whose compare is consistent with the equals/hashCode of
+     * the cast values, after they are normalized using hashKey
+     */
+    private static final Set<Type> HASHABLE_TYPES = new HashSet<>(Arrays.asList(StringType.TYPE,
+            IntegerType.TYPE,
+            BigIntegerType.TYPE,
+            DoubleType.TYPE,
+            BigDecimalType.TYPE,
+            BooleanType.TYPE,
+            DateType.TYPE,
+            UIDType.TYPE));
+
+    /**
+     * Normalized non-null values, or null if the values have to be
+     * scanned linearly
+     */
+    private final Set<Object> valueSet;
+    private final boolean containsNull;
+
     public NaryValueRelationalExpressionEvaluator(NaryValueRelationalExpression expr, FieldTreeNode context) {
         field = expr.getField();
         fieldMd = context.resolve(field);
         if (fieldMd == null) {
             throw new EvaluationError(expr, CrudConstants.ERR_FIELD_NOT_THERE + field);
         }
+        fieldPath = new CompiledPath(field);
         operator = expr.getOp();
         List<Value> l = expr.getValues();
         values = new ArrayList<>(l.size());
@@ -56,13 +92,53 @@ public class NaryValueRelationalExpressionEvaluator extends QueryEvaluator {
                 values.add(x.getValue());
             }
         }
+        containsNull = values.contains(null);
+        valueSet = buildValueSet(fieldMd.getType(), values);
         LOGGER.debug("ctor {} {} {}", expr.getField(), operator, values);
     }
 
+    /**
+     * Builds a hash set containing the normalized values if the type
+     * allows it. Returns null if the type does not support hashing,
+     * or if any of the values cannot be cast to the type. Then, the
+     * values are compared one by one using the type.
+     */
+    private static Set<Object> buildValueSet(Type type, List<Object> values) {
+        if (type.supportsEq() && HASHABLE_TYPES.contains(type)) {
+            try {
+                Set<Object> set = new HashSet<>(values.size() * 2);
+                for (Object x : values) {
+                    if (x != null) {
+                        set.add(hashKey(type.cast(x)));
+                    }
+                }
+                return set;
+            } catch (RuntimeException e) {
+                LOGGER.debug("Cannot hash values of type {}: {}", type, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Normalizes a value cast to one of the hashable types so that
+     * two values are equal if they compare equal
+     */
+    private static Object hashKey(Object value) {
+        if (value instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) value;
+            return d.signum() == 0 ? BigDecimal.ZERO : d.stripTrailingZeros();
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else {
+            return value;
+        }
+    }
+
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
         LOGGER.debug("evaluate {} {} {}", field, operator, values);
-        KeyValueCursor<Path, JsonNode> cursor = ctx.getNodes(field);
+        KeyValueCursor<Path, JsonNode> cursor = fieldPath.getNodes(ctx);
         boolean ret = false;
         while (cursor.hasNext()) {
             cursor.next();
@@ -75,15 +151,16 @@ public class NaryValueRelationalExpressionEvaluator extends QueryEvaluator {
             }
             LOGGER.debug(" value={}", valueNode);
             boolean in = false;
-            for (Object x : values) {
-                if (docValue == null) {
-                    if (x == null) {
+            if (docValue == null) {
+                in = containsNull;
+            } else if (valueSet != null) {
+                in = valueSet.contains(hashKey(fieldMd.getType().cast(docValue)));
+            } else {
+                for (Object x : values) {
+                    if (x != null && fieldMd.getType().compare(docValue, x) == 0) {
                         in = true;
                         break;
                     }
-                } else if (x != null && fieldMd.getType().compare(docValue, x) == 0) {
-                    in = true;
-                    break;
                 }
             }
             LOGGER.debug(" result={}", in);
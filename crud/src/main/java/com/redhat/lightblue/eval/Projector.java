@@ -101,6 +101,10 @@ public abstract class Projector {
      * Builds a projector using the given projection and entity metadata
      */
     public static Projector getInstance(Projection projection, EntityMetadata md) {
+        CompiledProjection compiled = CompiledProjection.get(projection, md);
+        if (compiled != null) {
+            return new CompiledProjector(projection, md.getFieldTreeRoot(), compiled);
+        }
         return getInstance(projection, Path.EMPTY, md.getFieldTreeRoot());
     }
 
@@ -271,4 +275,47 @@ public abstract class Projector {
         }
         return null;
     }
+
+    /**
+     * Projects documents using a compiled projection. The projector
+     * for the projection is built only if it is needed, that is, if a
+     * document does not match the metadata, or the projection is
+     * evaluated for a field.
+     */
+    private static final class CompiledProjector extends Projector {
+        private final Projection projection;
+        private final FieldTreeNode root;
+        private final CompiledProjection compiled;
+        private Projector projector;
+
+        CompiledProjector(Projection projection, FieldTreeNode root, CompiledProjection compiled) {
+            super(Path.EMPTY, root);
+            this.projection = projection;
+            this.root = root;
+            this.compiled = compiled;
+        }
+
+        private Projector getProjector() {
+            if (projector == null) {
+                projector = Projector.getInstance(projection, Path.EMPTY, root);
+            }
+            return projector;
+        }
+
+        @Override
+        public Projector getNestedProjector() {
+            return getProjector().getNestedProjector();
+        }
+
+        @Override
+        public Projection.Inclusion project(Path p, QueryEvaluationContext ctx) {
+            return getProjector().project(p, ctx);
+        }
+
+        @Override
+        public JsonDoc project(JsonDoc doc, JsonNodeFactory factory) {
+            JsonDoc result = compiled.project(doc, factory);
+            return result == null ? getProjector().project(doc, factory) : result;
+        }
+    }
 }
@@ -34,10 +34,43 @@ import com.redhat.lightblue.query.ArrayMatchExpression;
 import com.redhat.lightblue.query.NaryFieldRelationalExpression;
 import com.redhat.lightblue.query.NaryValueRelationalExpression;
 
+/**
+ * Base class for query evaluators. An evaluator is built once for a
+ * query, resolving field metadata and paths, and casting constant
+ * operands at construction. The evaluator keeps no evaluation state,
+ * all of which is kept in the QueryEvaluationContext, so an evaluator
+ * can be reused for many documents, and shared between threads.
+ */
 public abstract class QueryEvaluator {
 
     public abstract boolean evaluate(QueryEvaluationContext ctx);
 
+    /**
+     * Returns the estimated relative cost of evaluating this
+     * expression for a document. Logical expressions use this to
+     * evaluate the cheaper nested expressions first.
+     */
+    public int getCost() {
+        return 1;
+    }
+
+    /**
+     * Casts a constant operand to the type of the field, so that it
+     * is not converted for every document. Returns null if the value
+     * is null, or cannot be cast to the field type. Then the value is
+     * converted during evaluation, reporting errors as before.
+     */
+    protected static Object castConstant(FieldTreeNode fieldMd, Object value) {
+        if (value != null) {
+            try {
+                return fieldMd.getType().cast(value);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     public QueryEvaluationContext evaluate(JsonDoc doc) {
         QueryEvaluationContext ctx = new QueryEvaluationContext(doc.getRoot());
         evaluate(ctx);
@@ -37,6 +37,7 @@ public class RegexEvaluator extends QueryEvaluator {
     private final FieldTreeNode fieldMd;
     private final Pattern regex;
     private final Path relativePath;
+    private final CompiledPath fieldPath;
 
     /**
      * Constructs evaluator for {field op value} style comparison
@@ -66,13 +67,20 @@ public class RegexEvaluator extends QueryEvaluator {
             flags |= Pattern.DOTALL;
         }
         regex = Pattern.compile(expr.getRegex(), flags);
+        fieldPath = new CompiledPath(relativePath);
         LOGGER.debug("ctor {} {}", relativePath, regex);
     }
 
+    @Override
+    public int getCost() {
+        return 2;
+    }
+
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
         LOGGER.debug("evaluate {} {}", relativePath, regex);
-        KeyValueCursor<Path, JsonNode> cursor = ctx.getNodes(relativePath);
+        ctx.setResult(false);
+        KeyValueCursor<Path, JsonNode> cursor = fieldPath.getNodes(ctx);
         while (cursor.hasNext()) {
             cursor.next();
             JsonNode valueNode = cursor.getCurrentValue();
@@ -39,6 +39,11 @@ public class UnaryLogicalExpressionEvaluator extends QueryEvaluator {
         operator = expr.getOp();
     }
 
+    @Override
+    public int getCost() {
+        return evaluator.getCost();
+    }
+
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
         LOGGER.debug("evaluate {}", operator);
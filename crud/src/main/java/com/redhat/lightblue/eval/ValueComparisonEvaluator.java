@@ -26,6 +26,7 @@ import com.redhat.lightblue.crud.CrudConstants;
 import com.redhat.lightblue.metadata.FieldTreeNode;
 import com.redhat.lightblue.query.ValueComparisonExpression;
 import com.redhat.lightblue.query.BinaryComparisonOperator;
+import com.redhat.lightblue.query.BoundValue;
 import com.redhat.lightblue.query.Value;
 import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.KeyValueCursor;
@@ -36,8 +37,14 @@ public class ValueComparisonEvaluator extends QueryEvaluator {
 
     private final FieldTreeNode fieldMd;
     private final Path field;
+    private final CompiledPath fieldPath;
     private final BinaryComparisonOperator operator;
     private final Value rvalue;
+    /**
+     * The rvalue cast to the field type if the rvalue is a constant,
+     * or null if it has to be read at evaluation time
+     */
+    private final Object castRvalue;
 
     /**
      * Constructs evaluator for {field op value} style comparison
@@ -51,16 +58,19 @@ public class ValueComparisonEvaluator extends QueryEvaluator {
         if (fieldMd == null) {
             throw new EvaluationError(expr, CrudConstants.ERR_FIELD_NOT_THERE + field);
         }
+        fieldPath = new CompiledPath(field);
         operator = expr.getOp();
         rvalue = expr.getRvalue();
+        castRvalue = rvalue instanceof BoundValue ? null : castConstant(fieldMd, rvalue.getValue());
         LOGGER.debug("ctor {} {}", field, operator);
     }
 
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
-        Object value=rvalue.getValue();
+        Object value=castRvalue==null?rvalue.getValue():castRvalue;
         LOGGER.debug("evaluate {} {} {}", field, operator, value);
-        KeyValueCursor<Path, JsonNode> cursor = ctx.getNodes(field);
+        ctx.setResult(false);
+        KeyValueCursor<Path, JsonNode> cursor = fieldPath.getNodes(ctx);
         while (cursor.hasNext()) {
             cursor.next();
             JsonNode valueNode = cursor.getCurrentValue();
@@ -0,0 +1,370 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.hooks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Hook;
+import com.redhat.lightblue.util.Error;
+
+/**
+ * Calls hooks asynchronously, outside the request thread. Each hook has
+ * a bounded queue of pending calls, and the queues are drained by the
+ * threads of a shared executor. A hook is never called concurrently by
+ * the dispatcher, and it receives the documents in the order they are
+ * queued, including the calls made in the request thread when the
+ * queue is full. Consecutive calls for the same hook definition and entity
+ * metadata are coalesced into a single call with up to batchSize
+ * documents, so documents of many requests can be delivered together.
+ *
+ * When the queue of a hook is full, the overflow policy determines
+ * what happens to the new call. The hook is called with the error
+ * context of the request that queued the documents.
+ *
+ * The dispatcher does not own the executor. Call
+ * {@link #shutdown(long, TimeUnit)} to deliver the pending calls
+ * before the executor is shut down.
+ */
+public class AsyncHookDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncHookDispatcher.class);
+
+    /**
+     * What to do when the queue of a hook is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until there is space in the queue
+         */
+        BLOCK,
+        /**
+         * Drop the call, and log a warning
+         */
+        DROP,
+        /**
+         * Call the hook in the request thread, after the calls already
+         * in the queue, so the hook is still called by one thread at a
+         * time, in order
+         */
+        CALLER_RUNS
+    }
+
+    private static final class HookCall {
+        private final Hook hook;
+        private final CRUDHook crudHook;
+        private final EntityMetadata md;
+        private final List<HookDoc> docs;
+        private final JsonNodeFactory nodeFactory;
+        private final List<String> context;
+
+        public HookCall(Hook hook, CRUDHook crudHook, EntityMetadata md, List<HookDoc> docs, JsonNodeFactory nodeFactory) {
+            this.hook = hook;
+            this.crudHook = crudHook;
+            this.md = md;
+            this.docs = docs;
+            this.nodeFactory = nodeFactory;
+            this.context = Error.getThreadContext();
+        }
+
+        public boolean canCoalesce(HookCall c) {
+            return hook == c.hook && md == c.md && nodeFactory == c.nodeFactory;
+        }
+    }
+
+    private final class HookQueue implements Runnable {
+        private final BlockingQueue<HookCall> queue = new ArrayBlockingQueue<>(queueSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        /**
+         * Held while calling the hook, so the hook is called by one
+         * thread at a time
+         */
+        private final Object callLock = new Object();
+
+        public void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Processes one batch, and reschedules itself if there are more
+         * calls pending.
+         */
+        @Override
+        public void run() {
+            try {
+                synchronized (callLock) {
+                    callNextBatch();
+                }
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Calls the queued calls, and then the given call in the
+         * calling thread
+         */
+        public void callerRuns(HookCall call) {
+            synchronized (callLock) {
+                drain();
+                call(call, call.docs);
+            }
+        }
+
+        /**
+         * Calls all the queued calls in the calling thread
+         */
+        public void drain() {
+            synchronized (callLock) {
+                boolean more;
+                do {
+                    more = callNextBatch();
+                } while (more);
+            }
+        }
+
+        /**
+         * Removes the next batch of coalesced calls from the queue, and
+         * calls the hook. Must be called with callLock held. Returns
+         * false if the queue is empty.
+         */
+        private boolean callNextBatch() {
+            HookCall first = queue.poll();
+            if (first == null) {
+                return false;
+            }
+            int n = 1;
+            try {
+                List<HookDoc> docs = new ArrayList<>(first.docs);
+                HookCall next;
+                while (docs.size() < batchSize
+                        && (next = queue.peek()) != null
+                        && first.canCoalesce(next)) {
+                    queue.poll();
+                    n++;
+                    docs.addAll(next.docs);
+                }
+                LOGGER.debug("Calling hook {} with {} documents", first.hook.getName(), docs.size());
+                call(first, docs);
+            } finally {
+                done(n);
+            }
+            return true;
+        }
+    }
+
+    private final Executor executor;
+    private final int queueSize;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final ConcurrentMap<CRUDHook, HookQueue> queues = new ConcurrentHashMap<>();
+    /**
+     * Number of queued calls that are not processed yet
+     */
+    private int pending;
+    private volatile boolean stopped;
+
+    /**
+     * Constructs a dispatcher
+     *
+     * @param executor The executor running the hooks
+     * @param queueSize The maximum number of pending calls for each hook
+     * @param batchSize The maximum number of documents coalesced into a
+     * single hook call. Calls larger than this are not split.
+     * @param overflowPolicy What to do when the queue of a hook is full
+     */
+    public AsyncHookDispatcher(Executor executor,
+                               int queueSize,
+                               int batchSize,
+                               OverflowPolicy overflowPolicy) {
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize=" + queueSize);
+        }
+        this.executor = executor;
+        this.queueSize = queueSize;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Queues a hook call. The documents are projected using the hook
+     * projection when the hook is called.
+     */
+    public void dispatch(Hook hook,
+                         CRUDHook crudHook,
+                         EntityMetadata md,
+                         List<HookDoc> docs,
+                         JsonNodeFactory nodeFactory) {
+        if (stopped) {
+            LOGGER.warn("Dispatcher is shut down, dropped {} documents for hook {}", docs.size(), hook.getName());
+            return;
+        }
+        HookCall call = new HookCall(hook, crudHook, md, docs, nodeFactory);
+        HookQueue q = getQueue(crudHook);
+        queued(1);
+        boolean queued = q.queue.offer(call);
+        if (!queued) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    LOGGER.debug("Queue of hook {} is full, waiting", hook.getName());
+                    try {
+                        // Make sure the queue is being drained while we wait
+                        q.schedule();
+                        q.queue.put(call);
+                        queued = true;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        LOGGER.warn("Interrupted while queueing hook {}, dropped {} documents", hook.getName(), docs.size());
+                    }
+                    break;
+                case DROP:
+                    LOGGER.warn("Queue of hook {} is full, dropped {} documents", hook.getName(), docs.size());
+                    break;
+                case CALLER_RUNS:
+                    LOGGER.debug("Queue of hook {} is full, calling in request thread", hook.getName());
+                    try {
+                        q.callerRuns(call);
+                    } finally {
+                        done(1);
+                    }
+                    return;
+            }
+        }
+        if (queued) {
+            try {
+                q.schedule();
+            } catch (RejectedExecutionException e) {
+                // The executor is shut down, deliver in this thread
+                LOGGER.warn("Cannot schedule hook {}, calling in request thread: {}", hook.getName(), e.toString());
+                q.drain();
+            }
+        } else {
+            done(1);
+        }
+    }
+
+    /**
+     * Stops accepting new calls, and waits until the queued calls are
+     * delivered, or the timeout expires. Calls dispatched after this
+     * are dropped. The executor is not shut down.
+     *
+     * @return true if all queued calls are delivered
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        stopped = true;
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized (this) {
+            while (pending > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    LOGGER.warn("{} hook calls are not delivered on shutdown", pending);
+                    return false;
+                }
+                wait(wait);
+            }
+        }
+        return true;
+    }
+
+    public boolean isShutdown() {
+        return stopped;
+    }
+
+    private synchronized void queued(int n) {
+        pending += n;
+    }
+
+    private synchronized void done(int n) {
+        pending -= n;
+        if (pending <= 0) {
+            notifyAll();
+        }
+    }
+
+    private HookQueue getQueue(CRUDHook crudHook) {
+        HookQueue q = queues.get(crudHook);
+        if (q == null) {
+            q = new HookQueue();
+            HookQueue old = queues.putIfAbsent(crudHook, q);
+            if (old != null) {
+                q = old;
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Calls the hook with the error context of the request that queued
+     * the call, and restores the error context of the current thread
+     */
+    private static void call(HookCall call, List<HookDoc> docs) {
+        List<String> saved = Error.getThreadContext();
+        Error.reset();
+        for (String x : call.context) {
+            Error.push(x);
+        }
+        try {
+            HookManager.callHook(call.hook, call.crudHook, call.md, docs, call.nodeFactory);
+        } catch (RuntimeException e) {
+            // There is no request to stop, so a @StopHookProcessing
+            // exception only ends this call
+            LOGGER.error("Exception while processing hook of type: " + call.crudHook.getClass(), e);
+        } finally {
+            Error.reset();
+            for (String x : saved) {
+                Error.push(x);
+            }
+        }
+    }
+}
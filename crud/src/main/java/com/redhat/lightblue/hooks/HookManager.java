@@ -47,9 +47,11 @@ import com.redhat.lightblue.util.JsonDoc;
  * order.
  *
  * Each hook receives a list containing pre- and post- update versions of the
- * documents. If there are multiple hooks for the given operation, the hooks of
- * that operation share the document copies. Because of this, hooks must treat
- * documents as read-only.
+ * documents. These are read-only snapshots of the documents. If there are
+ * multiple hooks for the given operation, the hooks of that operation share
+ * the snapshots, and the pre- and post- versions of a document share the
+ * parts of the document that are not modified. Because of this, hooks must
+ * treat documents as read-only.
  *
  *
  */
@@ -58,6 +60,7 @@ public class HookManager {
 
     private final HookResolver resolver;
     private final JsonNodeFactory factory;
+    private final AsyncHookDispatcher dispatcher;
 
     private final List<HookDocs> queuedHooks = new ArrayList<>();
 
@@ -69,28 +72,31 @@ public class HookManager {
 
         public DocHooks(DocCtx doc, Map<Hook, CRUDHook> hooks) {
             op = doc.getCRUDOperationPerformed();
-            // Create a copy of the original version of the document, if non-null
+            // Take a snapshot of the original version of the document,
+            // if non-null. If the original is already a snapshot, it is
+            // shared.
             if (op == CRUDOperation.INSERT || op == CRUDOperation.FIND) {
                 pre = null;
             } else {
                 JsonDoc preDoc = doc.getOriginalDocument();
                 if (preDoc != null) {
-                    pre = preDoc.copy();
+                    pre = preDoc.snapshot();
                 } else {
                     pre = null;
                 }
             }
-            // If we're deleting, post copy is null
+            // If we're deleting, post copy is null. Otherwise, the
+            // post snapshot shares the unchanged parts with pre
             if (op == CRUDOperation.DELETE) {
                 post = null;
             } else {
                 if(doc.getUpdatedDocument() != null) {
-                    post = doc.getUpdatedDocument().copy();
+                    post = doc.getUpdatedDocument().snapshot(pre);
                 } else {
                     if (doc.getOriginalDocument() == doc && pre != null) {
                         post = pre;
                     } else {
-                        post = doc.copy();
+                        post = doc.snapshot(pre);
                     }
                 }
             }
@@ -120,14 +126,24 @@ public class HookManager {
      * Construct hooks with the given hook resolver
      */
     public HookManager(HookResolver r, JsonNodeFactory factory) {
+        this(r, factory, null);
+    }
+
+    /**
+     * Construct hooks with the given hook resolver. If the dispatcher is
+     * non-null, hooks that are not SynchronousHooks are passed to the
+     * dispatcher to be called asynchronously.
+     */
+    public HookManager(HookResolver r, JsonNodeFactory factory, AsyncHookDispatcher dispatcher) {
         resolver = r;
         this.factory = factory;
+        this.dispatcher = dispatcher;
     }
 
     /**
      * Clears all queued hooks
      */
-    public void clear() {
+    public synchronized void clear() {
         queuedHooks.clear();
     }
 
@@ -139,7 +155,7 @@ public class HookManager {
      * This will create copies of all the documents that has no errors in the
      * context, and save them for later hook execution.
      */
-    public void queueHooks(CRUDOperationContext ctx) {
+    public synchronized void queueHooks(CRUDOperationContext ctx) {
         queueHooks(ctx, false);
     }
 
@@ -153,7 +169,7 @@ public class HookManager {
      * all the documents that has no errors in the context, and save them for
      * later hook execution.
      */
-    public void queueMediatorHooks(CRUDOperationContext ctx) {
+    public synchronized void queueMediatorHooks(CRUDOperationContext ctx) {
         queueHooks(ctx, true);
     }
 
@@ -161,38 +177,60 @@ public class HookManager {
      * Calls all queued hooks, and then clears the queued hooks. Any hook that
      * failed will be logged, but hook execution will continue unless one of the
      * hooks throws an exception with @StopHookProcessing annotation.
+     *
+     * If there is an asynchronous hook dispatcher, only the SynchronousHooks
+     * are called here, and the rest are passed to the dispatcher. Exceptions
+     * thrown by asynchronous hooks are logged, and cannot stop hook
+     * processing.
      */
-    public void callQueuedHooks() {
+    public synchronized void callQueuedHooks() {
         for (HookDocs hd : queuedHooks) {
-            List<HookDoc> processedDocuments;
-            if (hd.hook.getProjection() != null) {
-                // Project the docs
-                processedDocuments = new ArrayList<>(hd.docs.size());
-                Projector projector = Projector.getInstance(hd.hook.getProjection(), hd.md);
-                for (HookDoc doc : hd.docs) {
-                    processedDocuments.add(new HookDoc(
-                            doc.getEntityMetadata(),
-                            project(doc.getPreDoc(), projector),
-                            project(doc.getPostDoc(), projector),
-                            doc.getCRUDOperation()));
-                }
+            if (dispatcher != null && !(hd.crudHook instanceof SynchronousHook)) {
+                dispatcher.dispatch(hd.hook, hd.crudHook, hd.md, hd.docs, factory);
             } else {
-                processedDocuments = hd.docs;
-            }
-            try {
-                hd.crudHook.processHook(hd.md, hd.hook.getConfiguration(), processedDocuments);
-            } catch (RuntimeException e) {
-                if (e.getClass().isAnnotationPresent(StopHookProcessing.class)) {
-                    throw e;
-                }
-                else {
-                    LOGGER.error("Exception while processing hook of type: " + hd.crudHook.getClass(), e);
-                }
+                callHook(hd.hook, hd.crudHook, hd.md, hd.docs, factory);
             }
         }
         clear();
     }
 
+    /**
+     * Projects the documents using the hook projection, if any, and calls
+     * the hook. Any exception thrown by the hook is logged, unless it is
+     * annotated with @StopHookProcessing, in which case it is rethrown.
+     */
+    static void callHook(Hook hook,
+                         CRUDHook crudHook,
+                         EntityMetadata md,
+                         List<HookDoc> docs,
+                         JsonNodeFactory factory) {
+        List<HookDoc> processedDocuments;
+        if (hook.getProjection() != null) {
+            // Project the docs
+            processedDocuments = new ArrayList<>(docs.size());
+            Projector projector = Projector.getInstance(hook.getProjection(), md);
+            for (HookDoc doc : docs) {
+                processedDocuments.add(new HookDoc(
+                        doc.getEntityMetadata(),
+                        project(doc.getPreDoc(), projector, factory),
+                        project(doc.getPostDoc(), projector, factory),
+                        doc.getCRUDOperation()));
+            }
+        } else {
+            processedDocuments = docs;
+        }
+        try {
+            crudHook.processHook(md, hook.getConfiguration(), processedDocuments);
+        } catch (RuntimeException e) {
+            if (e.getClass().isAnnotationPresent(StopHookProcessing.class)) {
+                throw e;
+            }
+            else {
+                LOGGER.error("Exception while processing hook of type: " + crudHook.getClass(), e);
+            }
+        }
+    }
+
     private void queueHooks(CRUDOperationContext ctx, boolean mediatorHooks) {
         LOGGER.debug("queueHooks start mediatorHooks={}", mediatorHooks);
         EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
@@ -289,7 +327,7 @@ public class HookManager {
         }
     }
 
-    private JsonDoc project(JsonDoc doc, Projector p) {
+    private static JsonDoc project(JsonDoc doc, Projector p, JsonNodeFactory factory) {
         if (doc == null) {
             return null;
         } else {
@@ -25,6 +25,13 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +58,7 @@ import com.redhat.lightblue.crud.CRUDFindResponse;
 import com.redhat.lightblue.crud.FindRequest;
 import com.redhat.lightblue.crud.Factory;
 import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.CrudConstants;
 
 import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
 import com.redhat.lightblue.eval.Projector;
@@ -60,13 +68,14 @@ import com.redhat.lightblue.assoc.QueryPlanNode;
 import com.redhat.lightblue.assoc.Conjunct;
 import com.redhat.lightblue.assoc.QueryPlanData;
 import com.redhat.lightblue.assoc.QueryPlanChooser;
+import com.redhat.lightblue.assoc.QueryPlanCache;
 import com.redhat.lightblue.assoc.ResultDoc;
 import com.redhat.lightblue.assoc.ChildDocReference;
 
 import com.redhat.lightblue.assoc.scorers.SimpleScorer;
 import com.redhat.lightblue.assoc.scorers.IndexedFieldScorer;
 import com.redhat.lightblue.assoc.iterators.First;
-import com.redhat.lightblue.assoc.iterators.BruteForceQueryPlanIterator;
+import com.redhat.lightblue.assoc.iterators.GreedyQueryPlanIterator;
 
 import com.redhat.lightblue.metadata.CompositeMetadata;
 import com.redhat.lightblue.metadata.DocId;
@@ -86,10 +95,22 @@ public class CompositeFindImpl implements Finder {
     private final CompositeMetadata root;
     private final Factory factory;
 
-    private final Map<DocId,JsonDoc> documentCache=new HashMap<>();
+    private final Map<DocId,JsonDoc> documentCache=new ConcurrentHashMap<>();
     
     private final List<Error> errors=new ArrayList<>();
 
+    private RetrievalProjections retrievalProjections;
+
+    private QueryPlanNode searchQPlanRoot;
+    private List<ResultDoc> rootDocs;
+
+    /**
+     * Executes a single query plan node
+     */
+    private interface NodeExecution {
+        void execute(QueryPlanNode node);
+    }
+
     public CompositeFindImpl(CompositeMetadata md,
                              Factory factory) {
         this.root=md;
@@ -104,8 +125,11 @@ public class CompositeFindImpl implements Finder {
         // edges requires all execution information readily available.
         
         //  Setup execution data for each node
-        for(QueryPlanNode x:qplan.getAllNodes())
-            x.setProperty(QueryPlanNodeExecutor.class,new QueryPlanNodeExecutor(x,factory,root,documentCache));
+        for(QueryPlanNode x:qplan.getAllNodes()) {
+            QueryPlanNodeExecutor exec=new QueryPlanNodeExecutor(x,factory,root,documentCache);
+            exec.setProjection(retrievalProjections.getProjection(x.getMetadata()));
+            x.setProperty(QueryPlanNodeExecutor.class,exec);
+        }
         
         // setup edges between execution data
         for(QueryPlanNode x:qplan.getAllNodes()) {
@@ -144,10 +168,17 @@ public class CompositeFindImpl implements Finder {
      * moves on by going to the destination nodes.
      */
     @Override
-    public CRUDFindResponse find(OperationContext ctx,
-                                 CRUDFindRequest req) {
+    public CRUDFindResponse find(final OperationContext ctx,
+                                 final CRUDFindRequest req) {
         LOGGER.debug("Composite find: start");
 
+        // Retrieve only the fields needed to evaluate the query, and
+        // build and project the result documents
+        retrievalProjections=new RetrievalProjections(root,
+                                                      req.getProjection(),
+                                                      ((FindRequest)ctx.getRequest()).getQuery(),
+                                                      req.getSort());
+
         // First: determine a minimal entity tree containing the nodes
         // sufficient to evaluate the query. Then, retrieve using the
         // complete set of entities.
@@ -155,38 +186,73 @@ public class CompositeFindImpl implements Finder {
                                                                          ctx.getTopLevelEntityMetadata());
 
         LOGGER.debug("Minimal find tree size={}",minimalTree.size());
-        QueryPlan searchQPlan=null;
-        QueryPlanNode searchQPlanRoot=null;
+        final QueryPlan searchQPlan;
         if(minimalTree.size()>1) {
             // The query depends on several entities. so, we query first, and then retrieve
-            QueryPlanChooser qpChooser=new QueryPlanChooser(root,
-                                                            new BruteForceQueryPlanIterator(),
-                                                            new IndexedFieldScorer(),
-                                                            ((FindRequest)ctx.getRequest()).getQuery(),
-                                                            minimalTree);
-            searchQPlan=qpChooser.choose();
-            LOGGER.debug("Chosen query plan:{}",searchQPlan);
+            QueryExpression query=((FindRequest)ctx.getRequest()).getQuery();
+            QueryPlanCache.ParameterizedQuery pquery=QueryPlanCache.parameterize(query);
+            String qplanKey=QueryPlanCache.getKey(root,minimalTree,pquery,req.getSort(),
+                                                  req.getFrom()!=null||req.getTo()!=null);
+            QueryPlanCache qplanCache=factory.getQueryPlanCache();
+            IndexedFieldScorer scorer=new IndexedFieldScorer();
+            // Same query shape for the same entity tree: bind the
+            // cached clauses to the request values
+            QueryPlan cachedQPlan=qplanCache.getQueryPlan(qplanKey,root,scorer,minimalTree,pquery);
+            if(cachedQPlan==null&&pquery.isParameterized()&&!qplanCache.contains(qplanKey)) {
+                // Choose the plan for the parameterized query, so the
+                // rewritten clauses refer to the query parameters by
+                // position, then bind them to the request values
+                QueryPlanChooser qpChooser=new QueryPlanChooser(root,
+                                                                new GreedyQueryPlanIterator(scorer),
+                                                                scorer,
+                                                                pquery.getParameterizedQuery(),
+                                                                minimalTree);
+                qplanCache.put(qplanKey,qpChooser,qpChooser.choose(),pquery);
+                cachedQPlan=qplanCache.getQueryPlan(qplanKey,root,scorer,minimalTree,pquery);
+            }
+            if(cachedQPlan!=null) {
+                searchQPlan=cachedQPlan;
+                LOGGER.debug("Using cached query plan:{}",searchQPlan);
+            } else {
+                QueryPlanChooser qpChooser=new QueryPlanChooser(root,
+                                                                new GreedyQueryPlanIterator(scorer),
+                                                                scorer,
+                                                                query,
+                                                                minimalTree);
+                if(qplanCache.apply(qplanKey,qpChooser.getQueryPlan())) {
+                    // Only the arrangement is cached, reuse it
+                    searchQPlan=qpChooser.getQueryPlan();
+                    LOGGER.debug("Using cached query plan arrangement:{}",searchQPlan);
+                } else {
+                    searchQPlan=qpChooser.choose();
+                    LOGGER.debug("Chosen query plan:{}",searchQPlan);
+                    qplanCache.put(qplanKey,searchQPlan);
+                }
+            }
             ctx.setProperty(Mediator.CTX_QPLAN,searchQPlan);
             init(searchQPlan);
             // At this stage, we have Execution objects assigned to query plan nodes
             
-            // Put the executions in order
-            QueryPlanNode[] nodeOrdering=searchQPlan.getBreadthFirstNodeOrdering();
             // Execute nodes.
-            for(QueryPlanNode node:nodeOrdering) {
-                LOGGER.debug("Composite find: {}",node.getName());
-                QueryPlanNodeExecutor exec=node.getProperty(QueryPlanNodeExecutor.class);
-                if(node.getMetadata().getParent()==null) {
-                    searchQPlanRoot=node;
-                    if (req.getTo() != null && req.getFrom() != null) {
-                        exec.setRange(req.getFrom(), req.getTo());
+            execute(searchQPlan,new NodeExecution() {
+                    @Override
+                    public void execute(QueryPlanNode node) {
+                        LOGGER.debug("Composite find: {}",node.getName());
+                        QueryPlanNodeExecutor exec=node.getProperty(QueryPlanNodeExecutor.class);
+                        if(node.getMetadata().getParent()==null) {
+                            searchQPlanRoot=node;
+                            if (req.getTo() != null && req.getFrom() != null) {
+                                exec.setRange(req.getFrom(), req.getTo());
+                            }
+                            exec.execute(ctx,req.getSort());
+                        } else {
+                            exec.execute(ctx,null);
+                        }
                     }
-                    exec.execute(ctx,req.getSort());
-                } else {
-                    exec.execute(ctx,null);
-                }
-            }
+                });
             LOGGER.debug("Composite find: search complete");
+        } else {
+            searchQPlan=null;
         }
 
         LOGGER.debug("Composite find: retrieving documents");
@@ -202,47 +268,45 @@ public class CompositeFindImpl implements Finder {
             retrievalQPlan=new QueryPlanChooser(root,new First(),new SimpleScorer(),null,null).choose();
         }
         init(retrievalQPlan);
-        // This query plan has only one source
-        QueryPlanNode retrievalQPlanRoot=retrievalQPlan.getSources()[0];
-        // Now execute rest of the retrieval plan
-        QueryPlanNode[] nodeOrdering=retrievalQPlan.getBreadthFirstNodeOrdering();
-
-        List<ResultDoc> rootDocs=null;
-        for(int i=0;i<nodeOrdering.length;i++) {
-            if(nodeOrdering[i].getMetadata().getParent()==null) {
-                // This is the root node. If we know the result docs, assign them, otherwise, search
-                LOGGER.debug("Retrieving root node documents");
-                if(searchQPlan!=null) {
-                    LOGGER.debug("Retrieving root node documents from previous search");
-                    rootDocs=searchQPlanRoot.getProperty(QueryPlanNodeExecutor.class).getDocs();
-                    // Filter duplicates, recreate ResultDoc objects
-                    Set<DocId> ids=new HashSet<>();
-                    List<ResultDoc> filteredDocs=new ArrayList<>(rootDocs.size());
-                    for(ResultDoc doc:rootDocs) {
-                        if(!ids.contains(doc.getId())) {
-                            ids.add(doc.getId());
-                            filteredDocs.add(new ResultDoc(doc.getDoc(),doc.getId(),nodeOrdering[i]));
+        // This query plan has only one source, the root
+        execute(retrievalQPlan,new NodeExecution() {
+                @Override
+                public void execute(QueryPlanNode node) {
+                    if(node.getMetadata().getParent()==null) {
+                        // This is the root node. If we know the result docs, assign them, otherwise, search
+                        LOGGER.debug("Retrieving root node documents");
+                        if(searchQPlan!=null) {
+                            LOGGER.debug("Retrieving root node documents from previous search");
+                            List<ResultDoc> docs=searchQPlanRoot.getProperty(QueryPlanNodeExecutor.class).getDocs();
+                            // Filter duplicates, recreate ResultDoc objects
+                            Set<DocId> ids=new HashSet<>();
+                            List<ResultDoc> filteredDocs=new ArrayList<>(docs.size());
+                            for(ResultDoc doc:docs) {
+                                if(!ids.contains(doc.getId())) {
+                                    ids.add(doc.getId());
+                                    filteredDocs.add(new ResultDoc(doc.getDoc(),doc.getId(),node));
+                                }
+                            }
+                            LOGGER.debug("Retrieving {} docs",filteredDocs.size());
+                            node.getProperty(QueryPlanNodeExecutor.class).setDocs(filteredDocs);
+                            rootDocs=filteredDocs;
+                        } else {
+                            LOGGER.debug("Performing search for retrieval");
+                            // Perform search
+                            QueryPlanNodeExecutor exec=node.getProperty(QueryPlanNodeExecutor.class);
+                            if (req.getTo() != null && req.getFrom() != null) {
+                                exec.setRange(req.getFrom(), req.getTo());
+                            }                    
+                            exec.execute(ctx,req.getSort());
+                            rootDocs=exec.getDocs();
                         }
+                    } else {
+                        LOGGER.debug("Composite retrieval: {}",node.getName());
+                        QueryPlanNodeExecutor exec=node.getProperty(QueryPlanNodeExecutor.class);
+                        exec.execute(ctx,null);
                     }
-                    LOGGER.debug("Retrieving {} docs",filteredDocs.size());
-                    nodeOrdering[i].getProperty(QueryPlanNodeExecutor.class).setDocs(filteredDocs);
-                    rootDocs=filteredDocs;
-                } else {
-                    LOGGER.debug("Performing search for retrieval");
-                    // Perform search
-                    QueryPlanNodeExecutor exec=nodeOrdering[i].getProperty(QueryPlanNodeExecutor.class);
-                    if (req.getTo() != null && req.getFrom() != null) {
-                        exec.setRange(req.getFrom(), req.getTo());
-                    }                    
-                    exec.execute(ctx,req.getSort());
-                    rootDocs=exec.getDocs();
                 }
-            } else {
-                LOGGER.debug("Composite retrieval: {}",nodeOrdering[i].getName());
-                QueryPlanNodeExecutor exec=nodeOrdering[i].getProperty(QueryPlanNodeExecutor.class);
-                exec.execute(ctx,null);
-            }
-        }
+            });
 
         LOGGER.debug("Root docs:{}",rootDocs.size());
         List<DocCtx> resultDocuments=new ArrayList<>(rootDocs.size());
@@ -263,12 +327,120 @@ public class CompositeFindImpl implements Finder {
         return response;
     }
 
+    /**
+     * Executes all the nodes of the query plan. A node is executed
+     * only after all its sources are executed. If the factory
+     * provides an executor, the nodes whose sources are all executed
+     * are submitted to the executor as soon as they become ready, so
+     * independent nodes run in parallel. Otherwise, the nodes are
+     * executed in breadth-first order in the calling thread.
+     */
+    private void execute(QueryPlan qplan,final NodeExecution execution) {
+        QueryPlanNode[] nodeOrdering=qplan.getBreadthFirstNodeOrdering();
+        ExecutorService executor=nodeOrdering.length>1?factory.getCompositeFindExecutor():null;
+        if(executor==null) {
+            for(QueryPlanNode node:nodeOrdering) {
+                execution.execute(node);
+            }
+            return;
+        }
+
+        // Number of sources not yet executed for every node
+        Map<QueryPlanNode,Integer> waitingFor=new HashMap<>();
+        List<QueryPlanNode> ready=new ArrayList<>();
+        for(QueryPlanNode node:nodeOrdering) {
+            int n=node.getSources().length;
+            if(n==0) {
+                ready.add(node);
+            } else {
+                waitingFor.put(node,n);
+            }
+        }
+
+        CompletionService<QueryPlanNode> completionService=new ExecutorCompletionService<>(executor);
+        List<Future<QueryPlanNode>> futures=new ArrayList<>(nodeOrdering.length);
+        int numRunning=0;
+        int numRemaining=nodeOrdering.length;
+        try {
+            while(numRemaining>0) {
+                QueryPlanNode executed;
+                if(numRunning==0&&ready.size()==1) {
+                    // Nothing else to do, execute in this thread
+                    executed=ready.remove(0);
+                    execution.execute(executed);
+                } else {
+                    // Error context of the caller, to be carried to the worker threads
+                    final List<String> context=Error.getThreadContext();
+                    final Thread caller=Thread.currentThread();
+                    for(final QueryPlanNode node:ready) {
+                        LOGGER.debug("Scheduling {}",node.getName());
+                        futures.add(completionService.submit(new Callable<QueryPlanNode>() {
+                                @Override
+                                public QueryPlanNode call() {
+                                    boolean worker=Thread.currentThread()!=caller;
+                                    if(worker) {
+                                        Error.reset();
+                                        for(String x:context) {
+                                            Error.push(x);
+                                        }
+                                    }
+                                    Error.push(node.getName());
+                                    try {
+                                        execution.execute(node);
+                                    } finally {
+                                        if(worker) {
+                                            Error.reset();
+                                        } else {
+                                            Error.pop();
+                                        }
+                                    }
+                                    return node;
+                                }
+                            }));
+                        numRunning++;
+                    }
+                    ready.clear();
+                    if(numRunning==0) {
+                        throw new IllegalStateException("Query plan has a cycle:"+qplan);
+                    }
+                    executed=completionService.take().get();
+                    numRunning--;
+                }
+                numRemaining--;
+                for(QueryPlanNode dest:executed.getDestinations()) {
+                    int n=waitingFor.get(dest)-1;
+                    waitingFor.put(dest,n);
+                    if(n==0) {
+                        ready.add(dest);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Error.get(CrudConstants.ERR_CRUD,e);
+        } catch (ExecutionException e) {
+            Throwable cause=e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if(cause instanceof java.lang.Error) {
+                throw (java.lang.Error)cause;
+            } else {
+                throw Error.get(CrudConstants.ERR_CRUD,cause);
+            }
+        } finally {
+            // If something failed, do not run the rest of the nodes
+            for(Future<QueryPlanNode> f:futures) {
+                f.cancel(false);
+            }
+        }
+    }
+
     private List<DocCtx> projectResults(OperationContext ctx,
                                 List<DocCtx> resultDocuments,
                                 Projection projection) {
         // Project results
         LOGGER.debug("Projecting association result using {}",projection.toString());
-        FieldAccessRoleEvaluator roleEval = new FieldAccessRoleEvaluator(root, ctx.getCallerRoles());
+        FieldAccessRoleEvaluator roleEval = new FieldAccessRoleEvaluator(root, ctx.getCallerRoles(), factory.getAccessPlanCache());
         Projector projector = Projector.getInstance(Projection.add(projection, 
                                                                    roleEval.getExcludedFields(FieldAccessRoleEvaluator.Operation.find)), root);
         for (DocCtx document : resultDocuments) {
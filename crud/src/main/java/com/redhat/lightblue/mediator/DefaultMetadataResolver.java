@@ -22,6 +22,7 @@ import java.io.Serializable;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -35,6 +36,7 @@ import com.redhat.lightblue.metadata.AbstractGetMetadata;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.MetadataStatus;
 import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.metadata.CompositeMetadataCache;
 import com.redhat.lightblue.metadata.Metadata;
 import com.redhat.lightblue.metadata.FieldTreeNode;
 import com.redhat.lightblue.metadata.Field;
@@ -62,16 +64,30 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
 
     private final Map<String,EntityMetadata> metadataMap=new HashMap<>();
     private final Metadata md;
+    private final CompositeMetadataCache cache;
 
     private CompositeMetadata cmd;
     private Set<String> roles;
 
     private final class Gmd extends AbstractGetMetadata {
+        /**
+         * The reference fields checked during composite metadata
+         * construction, and whether they are included
+         */
+        private final Map<Path,Boolean> references=new LinkedHashMap<>();
+
         public Gmd(Projection projection,
                    QueryExpression query) {
             super(projection,query);
         }
 
+        @Override
+        public boolean isRequired(Path injectionField) {
+            boolean ret=super.isRequired(injectionField);
+            references.put(injectionField,ret);
+            return ret;
+        }
+
         @Override
         protected EntityMetadata retrieveMetadata(Path injectionPath,
                                                   String entityName,
@@ -84,7 +100,18 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
      * Constructs the metadata resolver with the given metadata implementation
      */
     public DefaultMetadataResolver(Metadata metadata) {
+        this(metadata,null);
+    }
+
+    /**
+     * Constructs the metadata resolver with the given metadata
+     * implementation, and a composite metadata cache shared between
+     * resolvers. If cache is null, composite metadata is built for
+     * every request.
+     */
+    public DefaultMetadataResolver(Metadata metadata,CompositeMetadataCache cache) {
         this.md=metadata;
+        this.cache=cache;
     }
 
     /**
@@ -99,8 +126,25 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
             throw new IllegalStateException("Metadata resolver was already initialized");
         
         LOGGER.debug("Initializing with {}:{}",entityName,entityVersion);
+        Gmd gmd=new Gmd(projection,query);
+        if(cache!=null) {
+            CompositeMetadataCache.Entry entry=cache.get(entityName,entityVersion,gmd);
+            if(entry!=null&&isDisabled(entry)) {
+                // Status changed without notifying the cache. Evict,
+                // and rebuild so that the disabled entity is reported
+                LOGGER.debug("Cached composite metadata for {} contains disabled entities",entityName);
+                cache.invalidate(entityName);
+                entry=null;
+            }
+            if(entry!=null) {
+                cmd=entry.getMetadata();
+                metadataMap.putAll(entry.getEntityMetadata());
+                roles=entry.getRoles();
+                return;
+            }
+        }
         EntityMetadata emd=getMetadata(entityName,entityVersion);
-        cmd=CompositeMetadata.buildCompositeMetadata(emd,new Gmd(projection,query));
+        cmd=CompositeMetadata.buildCompositeMetadata(emd,gmd);
         LOGGER.debug("Composite metadata:{}",cmd);
          
         LOGGER.debug("Collecting metadata roles");
@@ -115,6 +159,19 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
             }
         }
         LOGGER.debug("Metadata roles:{}",roles);
+        if(cache!=null) {
+            cache.put(entityName,entityVersion,
+                      new CompositeMetadataCache.Entry(gmd.references,cmd,metadataMap,roles));
+        }
+    }
+    
+    private static boolean isDisabled(CompositeMetadataCache.Entry entry) {
+        for(EntityMetadata emd:entry.getEntityMetadata().values()) {
+            if(emd.getEntitySchema().getStatus()==MetadataStatus.DISABLED) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /**
@@ -31,22 +31,28 @@ import com.redhat.lightblue.Request;
 import com.redhat.lightblue.Response;
 import com.redhat.lightblue.crud.CRUDController;
 import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindRequest;
 import com.redhat.lightblue.crud.CRUDFindResponse;
 import com.redhat.lightblue.crud.CRUDUpdateResponse;
 import com.redhat.lightblue.crud.ConstraintValidator;
 import com.redhat.lightblue.crud.CrudConstants;
 import com.redhat.lightblue.crud.DeleteRequest;
 import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.DocumentConsumer;
+import com.redhat.lightblue.crud.DocumentStream;
 import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.ParallelDocProcessor;
 import com.redhat.lightblue.crud.FindRequest;
 import com.redhat.lightblue.crud.InsertionRequest;
 import com.redhat.lightblue.crud.CRUDOperation;
 import com.redhat.lightblue.crud.SaveRequest;
+import com.redhat.lightblue.crud.StreamingCRUDController;
 import com.redhat.lightblue.crud.UpdateRequest;
 import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
 import com.redhat.lightblue.interceptor.InterceptPoint;
 import com.redhat.lightblue.metadata.CompositeMetadata;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Hook;
 import com.redhat.lightblue.metadata.Metadata;
 import com.redhat.lightblue.metadata.PredefinedFields;
 import com.redhat.lightblue.query.FieldInfo;
@@ -323,6 +329,30 @@ public class Mediator {
      * The implementation passes the request to the back-end.
      */
     public Response find(FindRequest req) {
+        return find(req, null);
+    }
+
+    /**
+     * Finds documents, and passes the result documents to the given
+     * consumer one by one instead of setting them as the entity data
+     * of the response.
+     *
+     * @param req Find request
+     * @param consumer The consumer receiving the result documents. If
+     * null, the documents are returned in the response.
+     *
+     * If the entity is simple, has no find hooks, there are no
+     * POST_MEDIATOR_FIND interceptors, and its controller implements
+     * StreamingCRUDController, the results are streamed from the back
+     * end and never materialized in the operation context. Otherwise,
+     * the results are collected by the controller as usual, and
+     * passed to the consumer afterwards. Either way, the consumer
+     * receives all the documents before this method returns, and the
+     * returned response carries the status, the counts, and the
+     * errors. Use StreamingResponseWriter as the consumer to write the
+     * response while the documents are produced.
+     */
+    public Response find(FindRequest req, DocumentConsumer consumer) {
         LOGGER.debug("find {}", req.getEntityVersion());
         Error.push("find(" + req.getEntityVersion().toString() + ")");
         Response response = new Response(factory.getNodeFactory());
@@ -336,34 +366,14 @@ public class Mediator {
                 ctx.addError(Error.get(CrudConstants.ERR_NO_ACCESS, "find " + ctx.getTopLevelEntityName()));
             } else if(checkQueryAccess(ctx,req.getQuery())) {
                 factory.getInterceptors().callInterceptors(InterceptPoint.PRE_MEDIATOR_FIND, ctx);
-                Finder finder;
-                if(ctx.isSimple()) {
-                    LOGGER.debug("Simple entity");
-                    finder=new SimpleFindImpl(md,factory);
+                CRUDController controller = ctx.isSimple() ? factory.getCRUDController(md) : null;
+                // POST_MEDIATOR_FIND interceptors expect to see the documents in the context
+                if (consumer != null && controller instanceof StreamingCRUDController && !hasFindHooks(md)
+                        && !factory.getInterceptors().hasInterceptors(InterceptPoint.POST_MEDIATOR_FIND)) {
+                    LOGGER.debug("Streaming find");
+                    streamFind(ctx, req.getCRUDFindRequest(), (StreamingCRUDController) controller, consumer, response);
                 } else {
-                    LOGGER.debug("Composite entity");
-                    finder=new CompositeFindImpl(md,factory);
-                }
-
-                CRUDFindResponse result=finder.find(ctx,req.getCRUDFindRequest());
-
-                List<JsonDoc> foundDocuments = ctx.getOutputDocumentsWithoutErrors();
-                if (foundDocuments != null && foundDocuments.size() == ctx.getDocuments().size()) {
-                    ctx.setStatus(OperationStatus.COMPLETE);
-                } else if (foundDocuments != null && !foundDocuments.isEmpty()) {
-                    ctx.setStatus(OperationStatus.PARTIAL);
-                } else {
-                    ctx.setStatus(OperationStatus.ERROR);
-                }
-
-                response.setMatchCount(result.getSize());
-                List<DocCtx> documents = ctx.getDocuments();
-                if (documents != null) {
-                    List<JsonDoc> resultList = new ArrayList<>(documents.size());
-                    for (DocCtx doc : documents) {
-                        resultList.add(doc.getOutputDocument());
-                    }
-                    response.setEntityData(JsonDoc.listToDoc(resultList, factory.getNodeFactory()));
+                    materializedFind(ctx, md, req.getCRUDFindRequest(), consumer, response);
                 }
 
                 factory.getInterceptors().callInterceptors(InterceptPoint.POST_MEDIATOR_FIND, ctx);
@@ -390,45 +400,175 @@ public class Mediator {
     }
 
 
+    /**
+     * Runs a find operation by collecting the results in the
+     * operation context. If a consumer is given, the output documents
+     * are passed to it, otherwise they are set as the entity data of
+     * the response.
+     */
+    private void materializedFind(OperationContext ctx,
+                                  CompositeMetadata md,
+                                  CRUDFindRequest req,
+                                  DocumentConsumer consumer,
+                                  Response response) {
+        Finder finder;
+        if(ctx.isSimple()) {
+            LOGGER.debug("Simple entity");
+            finder=new SimpleFindImpl(md,factory);
+        } else {
+            LOGGER.debug("Composite entity");
+            finder=new CompositeFindImpl(md,factory);
+        }
+
+        CRUDFindResponse result=finder.find(ctx,req);
+
+        List<JsonDoc> foundDocuments = ctx.getOutputDocumentsWithoutErrors();
+        if (foundDocuments != null && foundDocuments.size() == ctx.getDocuments().size()) {
+            ctx.setStatus(OperationStatus.COMPLETE);
+        } else if (foundDocuments != null && !foundDocuments.isEmpty()) {
+            ctx.setStatus(OperationStatus.PARTIAL);
+        } else {
+            ctx.setStatus(OperationStatus.ERROR);
+        }
+
+        response.setMatchCount(result.getSize());
+        List<DocCtx> documents = ctx.getDocuments();
+        if (documents != null) {
+            if (consumer != null) {
+                for (DocCtx doc : documents) {
+                    if (doc.getOutputDocument() != null) {
+                        consumer.accept(doc.getOutputDocument());
+                    }
+                }
+            } else {
+                List<JsonDoc> resultList = new ArrayList<>(documents.size());
+                for (DocCtx doc : documents) {
+                    resultList.add(doc.getOutputDocument());
+                }
+                response.setEntityData(JsonDoc.listToDoc(resultList, factory.getNodeFactory()));
+            }
+        }
+    }
+
+    /**
+     * Runs a find operation using the streaming interface of the
+     * controller. Every document is passed to the consumer as soon as
+     * it is read, and only the per-document errors are retained.
+     */
+    private void streamFind(OperationContext ctx,
+                            CRUDFindRequest req,
+                            StreamingCRUDController controller,
+                            DocumentConsumer consumer,
+                            Response response) {
+        // Documents are not kept in the context
+        ctx.setDocuments(new ArrayList<DocCtx>());
+        CRUDFindResponse result = new CRUDFindResponse();
+        DocumentStream<DocCtx> stream = controller.findStream(ctx,
+                                                              req.getQuery(),
+                                                              req.getProjection(),
+                                                              req.getSort(),
+                                                              req.getFrom(),
+                                                              req.getTo(),
+                                                              result);
+        long numDocs = 0;
+        long numErrorDocs = 0;
+        try {
+            while (stream.hasNext()) {
+                DocCtx doc = stream.next();
+                numDocs++;
+                if (doc.hasErrors()) {
+                    numErrorDocs++;
+                    response.getDataErrors().add(doc.getDataError());
+                }
+                if (doc.getOutputDocument() != null) {
+                    consumer.accept(doc.getOutputDocument());
+                }
+            }
+        } finally {
+            stream.close();
+        }
+        LOGGER.debug("Streamed {} documents, {} with errors", numDocs, numErrorDocs);
+        if (numErrorDocs == 0) {
+            ctx.setStatus(OperationStatus.COMPLETE);
+        } else if (numErrorDocs < numDocs) {
+            ctx.setStatus(OperationStatus.PARTIAL);
+        } else {
+            ctx.setStatus(OperationStatus.ERROR);
+        }
+        response.setMatchCount(result.getSize());
+    }
+
+    /**
+     * Returns true if the entity has hooks called for find
+     * operations. Find hooks get the documents as they are retrieved by
+     * the controller, so those documents must not be narrowed.
+     */
+    static boolean hasFindHooks(EntityMetadata md) {
+        for (Hook h : md.getHooks().getHooks()) {
+            if (h.isFind()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected OperationContext newCtx(Request request,CRUDOperation CRUDOperation) {
         return new OperationContext(request, metadata, factory, CRUDOperation);
     }
 
     /**
-     * Runs constraint validation
+     * Runs constraint validation. If the request is large enough, the
+     * documents are validated in parallel in chunks, each with its own
+     * validator, and the errors are collected in document order.
      */
     private void runBulkConstraintValidation(OperationContext ctx) {
         LOGGER.debug("Bulk constraint validation");
-        EntityMetadata md = ctx.getTopLevelEntityMetadata();
-        ConstraintValidator constraintValidator = factory.getConstraintValidator(md);
+        final EntityMetadata md = ctx.getTopLevelEntityMetadata();
         List<DocCtx> docs = ctx.getDocumentsWithoutErrors();
-        constraintValidator.validateDocs(docs);
-        Map<JsonDoc, List<Error>> docErrors = constraintValidator.getDocErrors();
-        for (Map.Entry<JsonDoc, List<Error>> entry : docErrors.entrySet()) {
-            JsonDoc doc = entry.getKey();
-            List<Error> errors = entry.getValue();
+        List<ConstraintValidator> validators = ParallelDocProcessor.process(factory, docs,
+                new ParallelDocProcessor.ChunkProcessor<DocCtx, ConstraintValidator>() {
+                    @Override
+                    public ConstraintValidator process(List<DocCtx> chunk) {
+                        ConstraintValidator constraintValidator = factory.getConstraintValidator(md);
+                        constraintValidator.validateDocs(chunk);
+                        return constraintValidator;
+                    }
+                });
+        for (ConstraintValidator constraintValidator : validators) {
+            Map<JsonDoc, List<Error>> docErrors = constraintValidator.getDocErrors();
+            for (Map.Entry<JsonDoc, List<Error>> entry : docErrors.entrySet()) {
+                JsonDoc doc = entry.getKey();
+                List<Error> errors = entry.getValue();
+                if (errors != null && !errors.isEmpty()) {
+                    ((DocCtx) doc).addErrors(errors);
+                }
+            }
+            List<Error> errors = constraintValidator.getErrors();
             if (errors != null && !errors.isEmpty()) {
-                ((DocCtx) doc).addErrors(errors);
+                ctx.addErrors(errors);
             }
         }
-        List<Error> errors = constraintValidator.getErrors();
-        if (errors != null && !errors.isEmpty()) {
-            ctx.addErrors(errors);
-        }
         LOGGER.debug("Constraint validation complete");
     }
 
-    private void updatePredefinedFields(OperationContext ctx,CRUDController controller, String entity) {
-        for (JsonDoc doc : ctx.getDocuments()) {
-            PredefinedFields.updateArraySizes(factory.getNodeFactory(), doc);
-            JsonNode node = doc.get(OBJECT_TYPE_PATH);
-            if (node == null) {
-                doc.modify(OBJECT_TYPE_PATH, factory.getNodeFactory().textNode(entity), false);
-            } else if (!node.asText().equals(entity)) {
-                throw Error.get(CrudConstants.ERR_INVALID_ENTITY, node.asText());
-            }
-            controller.updatePredefinedFields(ctx,doc);
-        }
+    private void updatePredefinedFields(final OperationContext ctx, final CRUDController controller, final String entity) {
+        ParallelDocProcessor.process(factory, ctx.getDocuments(),
+                new ParallelDocProcessor.ChunkProcessor<DocCtx, Void>() {
+                    @Override
+                    public Void process(List<DocCtx> chunk) {
+                        for (JsonDoc doc : chunk) {
+                            PredefinedFields.updateArraySizes(factory.getNodeFactory(), doc);
+                            JsonNode node = doc.get(OBJECT_TYPE_PATH);
+                            if (node == null) {
+                                doc.modify(OBJECT_TYPE_PATH, factory.getNodeFactory().textNode(entity), false);
+                            } else if (!node.asText().equals(entity)) {
+                                throw Error.get(CrudConstants.ERR_INVALID_ENTITY, node.asText());
+                            }
+                            controller.updatePredefinedFields(ctx, doc);
+                        }
+                        return null;
+                    }
+                });
     }
 
     /**
@@ -438,7 +578,7 @@ public class Mediator {
         boolean ret=true;
         if(query!=null) {
             CompositeMetadata md=ctx.getTopLevelEntityMetadata();
-            FieldAccessRoleEvaluator eval=new FieldAccessRoleEvaluator(md,ctx.getCallerRoles());
+            FieldAccessRoleEvaluator eval=new FieldAccessRoleEvaluator(md,ctx.getCallerRoles(),factory.getAccessPlanCache());
             List<FieldInfo> fields=query.getQueryFields();
             LOGGER.debug("Checking access for query fields {}",fields);
             for(FieldInfo field:fields) {
@@ -70,7 +70,7 @@ public final class OperationContext extends CRUDOperationContext {
               request instanceof DocRequest ? JsonDoc.docList( ((DocRequest)request).getEntityData()):null );
         this.request = request;
         this.metadata = metadata;
-        this.resolver = new DefaultMetadataResolver(metadata);
+        this.resolver = new DefaultMetadataResolver(metadata, factory.getCompositeMetadataCache());
 
         if(request instanceof FindRequest) {
             // Setup composite metadata for find requests
@@ -21,7 +21,9 @@ package com.redhat.lightblue.mediator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
+import java.util.Collections;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +41,8 @@ import com.redhat.lightblue.crud.CRUDFindRequest;
 import com.redhat.lightblue.crud.CRUDFindResponse;
 import com.redhat.lightblue.crud.DocCtx;
 
+import com.redhat.lightblue.eval.QueryEvaluator;
+
 import com.redhat.lightblue.metadata.DocIdExtractor;
 import com.redhat.lightblue.metadata.CompositeMetadata;
 import com.redhat.lightblue.metadata.DocId;
@@ -49,7 +53,13 @@ import com.redhat.lightblue.query.NaryLogicalExpression;
 import com.redhat.lightblue.query.NaryLogicalOperator;
 import com.redhat.lightblue.query.RelativeRewriteIterator;
 import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.ValueComparisonExpression;
+import com.redhat.lightblue.query.BinaryComparisonOperator;
+import com.redhat.lightblue.query.NaryValueRelationalExpression;
+import com.redhat.lightblue.query.NaryRelationalOperator;
 import com.redhat.lightblue.query.FieldProjection;
+import com.redhat.lightblue.query.Projection;
 
 import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.JsonDoc;
@@ -77,6 +87,10 @@ public class QueryPlanNodeExecutor {
 
     private List<ResultDoc> docs=new ArrayList<>();
 
+    private final int batchSize;
+
+    private Projection projection=FieldProjection.ALL;
+
     public QueryPlanNodeExecutor(QueryPlanNode node,
                                  Factory factory,
                                  CompositeMetadata root,
@@ -87,6 +101,7 @@ public class QueryPlanNodeExecutor {
         docIdx=new DocIdExtractor(node.getMetadata());
         this.root=root;
         this.documentCache=documentCache;
+        this.batchSize=factory.getCompositeFindBatchSize();
 
         if(node.getMetadata().getParent()!=null) {
             resolvedReference=root.getResolvedReferenceOfField(node.getMetadata().getEntityPath());
@@ -104,6 +119,14 @@ public class QueryPlanNodeExecutor {
             throw new UnsupportedOperationException("Can set range for root node only");
     }
 
+    /**
+     * Sets the projection used to retrieve the documents of this
+     * node. By default, all fields are retrieved.
+     */
+    public void setProjection(Projection projection) {
+        this.projection=projection==null?FieldProjection.ALL:projection;
+    }
+
     public void init(QueryPlan qplan) {
         QueryPlanNode[] sourceNodes=node.getSources();
         for(QueryPlanNode s:sourceNodes)
@@ -154,8 +177,7 @@ public class QueryPlanNodeExecutor {
         
         CRUDFindRequest findRequest=new CRUDFindRequest();
         findRequest.setQuery(runExpression);
-        // TODO: Project only those fields we need
-        findRequest.setProjection(FieldProjection.ALL);
+        findRequest.setProjection(projection);
 
         if(sort!=null) {
             findRequest.setSort(sort);
@@ -182,25 +204,132 @@ public class QueryPlanNodeExecutor {
                 LOGGER.debug("Adding {} docs from node {} to node {}",list.size(),source.node.getName(),node.getName());
                 tuples.add(list);
             }
-           
-            // Iterate n-tuples
-            for(Iterator<List<ChildDocReference>> tupleItr=tuples.tuples();tupleItr.hasNext();) {
-                List<ChildDocReference> tuple=tupleItr.next();
-                LOGGER.debug("Processing an {}-tuple",tuple.size());
-                // Tuple elements are ordered the same way as the
-                // sources. tuple[i] is from sources[i]
-                
-                LOGGER.debug("execute {}: refreshing bindings",node.getName());
-                Iterator<ChildDocReference> qpdItr = tuple.iterator();
-                while(qpdItr.hasNext()) {
-                    ChildDocReference reference=qpdItr.next();
-                    ResolvedFieldBinding.refresh(sourceBindings,reference);
+
+            if(batchSize>1) {
+                executeBatched(ctx,findRequest,tuples);
+            } else {
+                // Iterate n-tuples
+                for(Iterator<List<ChildDocReference>> tupleItr=tuples.tuples();tupleItr.hasNext();) {
+                    List<ChildDocReference> tuple=tupleItr.next();
+                    LOGGER.debug("Processing an {}-tuple",tuple.size());
+                    // Tuple elements are ordered the same way as the
+                    // sources. tuple[i] is from sources[i]
+
+                    LOGGER.debug("execute {}: refreshing bindings",node.getName());
+                    refreshBindings(tuple);
+                    execute(ctx,findRequest,tuple);
                 }
-               execute(ctx,findRequest,tuple);
             }
        }
     }
 
+    /**
+     * Executes the node for all the n-tuples using as few backend
+     * calls as possible. The bindings are refreshed for every tuple,
+     * and a snapshot of the bound query is taken. Tuples with
+     * identical bound queries are grouped together, and up to
+     * batchSize distinct queries are combined into a single find
+     * call. The returned documents are then associated with the
+     * tuples whose query they match by evaluating the bound queries
+     * in memory.
+     */
+    private void executeBatched(OperationContext ctx,
+                                CRUDFindRequest findRequest,
+                                Tuples<ChildDocReference> tuples) {
+        Map<List<Object>,BoundQuery> queryMap=new LinkedHashMap<>();
+        for(Iterator<List<ChildDocReference>> tupleItr=tuples.tuples();tupleItr.hasNext();) {
+            // Tuples iterator reuses the list, so we copy it
+            List<ChildDocReference> tuple=new ArrayList<>(tupleItr.next());
+            refreshBindings(tuple);
+            // The bound values determine the query
+            List<Object> key=new ArrayList<>(sourceBindings.size());
+            for(ResolvedFieldBinding binding:sourceBindings) {
+                key.add(binding.getBoundValue());
+            }
+            BoundQuery bq=queryMap.get(key);
+            if(bq==null) {
+                queryMap.put(key,bq=new BoundQuery(ResolvedFieldBinding.snapshot(runExpression)));
+            }
+            bq.tuples.add(tuple);
+        }
+        List<BoundQuery> queries=new ArrayList<>(queryMap.values());
+        LOGGER.debug("execute {}: {} distinct queries, batch size {}",node.getName(),queries.size(),batchSize);
+        for(int i=0;i<queries.size();i+=batchSize) {
+            List<BoundQuery> batch=queries.subList(i,Math.min(queries.size(),i+batchSize));
+            if(batch.size()==1||initEvaluators(batch)) {
+                CRUDFindRequest batchRequest=new CRUDFindRequest();
+                batchRequest.shallowCopyFrom(findRequest);
+                batchRequest.setQuery(combine(batch));
+                executeBatch(ctx,batchRequest,batch);
+            } else {
+                // Cannot associate results in memory, run queries one by one
+                for(BoundQuery bq:batch) {
+                    CRUDFindRequest req=new CRUDFindRequest();
+                    req.shallowCopyFrom(findRequest);
+                    req.setQuery(bq.query);
+                    executeBatch(ctx,req,Collections.singletonList(bq));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds in-memory evaluators for the queries of the batch. Returns false if
+     * any of the queries cannot be evaluated in memory.
+     */
+    private boolean initEvaluators(List<BoundQuery> batch) {
+        try {
+            for(BoundQuery bq:batch) {
+                bq.evaluator=QueryEvaluator.getInstance(bq.query,node.getMetadata());
+                if(bq.evaluator==null) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            LOGGER.debug("execute {}: cannot evaluate bound queries in memory: {}",node.getName(),e);
+            return false;
+        }
+    }
+
+    /**
+     * Combines the queries of a batch into one query. If all queries
+     * are equality comparisons of the same field, an $in expression
+     * is built, otherwise, the queries are combined using $or.
+     */
+    private static QueryExpression combine(List<BoundQuery> batch) {
+        if(batch.size()==1) {
+            return batch.get(0).query;
+        }
+        Path field=null;
+        List<Value> values=new ArrayList<>(batch.size());
+        List<QueryExpression> list=new ArrayList<>(batch.size());
+        for(BoundQuery bq:batch) {
+            list.add(bq.query);
+            if(values!=null) {
+                if(bq.query instanceof ValueComparisonExpression&&
+                   ((ValueComparisonExpression)bq.query).getOp()==BinaryComparisonOperator._eq&&
+                   (field==null||field.equals(((ValueComparisonExpression)bq.query).getField()))) {
+                    field=((ValueComparisonExpression)bq.query).getField();
+                    values.add(((ValueComparisonExpression)bq.query).getRvalue());
+                } else {
+                    values=null;
+                }
+            }
+        }
+        if(values!=null) {
+            return new NaryValueRelationalExpression(field,NaryRelationalOperator._in,values);
+        } else {
+            return new NaryLogicalExpression(NaryLogicalOperator._or,list);
+        }
+    }
+
+    private void refreshBindings(List<ChildDocReference> tuple) {
+        for(ChildDocReference reference:tuple) {
+            ResolvedFieldBinding.refresh(sourceBindings,reference);
+        }
+    }
+
     public List<ResultDoc> getDocs() {
         return docs;
     }
@@ -216,6 +345,37 @@ public class QueryPlanNodeExecutor {
     private void execute(OperationContext ctx,
                          CRUDFindRequest findRequest,
                          List<ChildDocReference> parents) {
+        for(DocCtx doc:find(ctx,findRequest)) {
+            addResultDoc(doc.getOutputDocument(),parents);
+        }
+    }
+
+    /**
+     * Runs the batched find request, and associates every returned
+     * document with the tuples of all the bound queries it matches
+     */
+    private void executeBatch(OperationContext ctx,
+                              CRUDFindRequest findRequest,
+                              List<BoundQuery> batch) {
+        for(DocCtx doc:find(ctx,findRequest)) {
+            JsonDoc jdoc=doc.getOutputDocument();
+            boolean first=true;
+            for(BoundQuery bq:batch) {
+                if(bq.evaluator==null||bq.evaluator.evaluate(jdoc).getResult()) {
+                    for(List<ChildDocReference> tuple:bq.tuples) {
+                        // Every parent gets its own copy of the child
+                        // document, because the child documents are
+                        // later modified to include their own children
+                        addResultDoc(first?jdoc:jdoc.copy(),tuple);
+                        first=false;
+                    }
+                }
+            }
+        }
+    }
+
+    private List<DocCtx> find(OperationContext ctx,
+                              CRUDFindRequest findRequest) {
         OperationContext nodeCtx=ctx.getDerivedOperationContext(node.getMetadata().getName(),findRequest);
         LOGGER.debug("execute {}: entity={}, findRequest.query={}, projection={}, sort={}", node.getName(),
                      nodeCtx.getEntityName(),
@@ -223,24 +383,38 @@ public class QueryPlanNodeExecutor {
         // note the response is not used, but find method changes the supplied context.
         finder.find(nodeCtx,findRequest);
         LOGGER.debug("execute {}: storing {} documents", node.getName(),nodeCtx.getDocuments().size());
-        for(DocCtx doc:nodeCtx.getDocuments()) {
-            DocId id=docIdx.getDocId(doc.getOutputDocument());
-            if(documentCache!=null) {
-                JsonDoc jdoc=documentCache.get(id);
-                if(jdoc==null) {
-                    jdoc=doc.getOutputDocument();
-                    documentCache.put(id,jdoc);
-                }
+        return nodeCtx.getDocuments();
+    }
+
+    private void addResultDoc(JsonDoc doc,List<ChildDocReference> parents) {
+        DocId id=docIdx.getDocId(doc);
+        if(documentCache!=null) {
+            JsonDoc jdoc=documentCache.get(id);
+            if(jdoc==null) {
+                documentCache.put(id,doc);
             }
-            ResultDoc resultDoc=new ResultDoc(doc.getOutputDocument(),id,node);
-            if(parents!=null) {
-                for(ChildDocReference parent:parents) {
-                    resultDoc.setParentDoc(parent.getDocument().getQueryPlanNode(),parent);
-                    parent.getChildren().add(resultDoc);
-                }
+        }
+        ResultDoc resultDoc=new ResultDoc(doc,id,node);
+        if(parents!=null) {
+            for(ChildDocReference parent:parents) {
+                resultDoc.setParentDoc(parent.getDocument().getQueryPlanNode(),parent);
+                parent.getChildren().add(resultDoc);
             }
-            LOGGER.debug("Adding {}",id);
-            docs.add(resultDoc);
+        }
+        LOGGER.debug("Adding {}",id);
+        docs.add(resultDoc);
+    }
+
+    /**
+     * A query bound using the values from one or more n-tuples
+     */
+    private static final class BoundQuery {
+        private final QueryExpression query;
+        private final List<List<ChildDocReference>> tuples=new ArrayList<>();
+        private QueryEvaluator evaluator;
+
+        public BoundQuery(QueryExpression query) {
+            this.query=query;
         }
     }
 }
@@ -0,0 +1,236 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mediator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.assoc.ResolvedFieldInfo;
+
+import com.redhat.lightblue.eval.CompiledProjection;
+import com.redhat.lightblue.eval.Projector;
+
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.metadata.DocIdExtractor;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.ResolvedReferenceField;
+
+import com.redhat.lightblue.query.CompositeSortKey;
+import com.redhat.lightblue.query.FieldInfo;
+import com.redhat.lightblue.query.FieldProjection;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.ProjectionList;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.SortKey;
+
+import com.redhat.lightblue.util.MutablePath;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Computes the projections used to retrieve the documents of every
+ * entity of a composite find. The projection of an entity includes:
+ * <ul>
+ * <li>the fields of the entity included by the request projection,</li>
+ * <li>the fields of the entity used in the request query and
+ * reference queries, so the queries can be bound and evaluated,</li>
+ * <li>the identity fields of the entity,</li>
+ * <li>the sort keys of the reference field (or the request sort for
+ * the root entity),</li>
+ * <li>the fields containing references to child entities.</li>
+ * </ul>
+ *
+ * The projections do not depend on the query plan, because the root
+ * documents retrieved during search are reused during retrieval. If the
+ * projection of an entity cannot be determined, all fields of that
+ * entity are retrieved. All fields are also retrieved for entities with
+ * find hooks, because the hooks get the documents as retrieved.
+ */
+public class RetrievalProjections {
+
+    private static final Logger LOGGER=LoggerFactory.getLogger(RetrievalProjections.class);
+
+    private final CompositeMetadata root;
+    private final Map<CompositeMetadata,Set<Path>> requiredFields=new IdentityHashMap<>();
+    private final Map<CompositeMetadata,Projection> projections=new IdentityHashMap<>();
+
+    /**
+     * Computes the entity projections
+     *
+     * @param root The composite metadata
+     * @param projection The request projection
+     * @param query The request query, can be null
+     * @param sort The request sort, can be null
+     */
+    public RetrievalProjections(CompositeMetadata root,
+                                Projection projection,
+                                QueryExpression query,
+                                Sort sort) {
+        this.root=root;
+        try {
+            addSortFields(root,sort);
+            addQueryFields(query);
+            addEntityFields(root);
+            Projector projector=projection!=null&&CompiledProjection.isCompilable(projection)?
+                Projector.getInstance(projection,Path.EMPTY,root.getFieldTreeRoot()):null;
+            for(Map.Entry<CompositeMetadata,Set<Path>> entry:requiredFields.entrySet()) {
+                Projection p=Mediator.hasFindHooks(entry.getKey())?FieldProjection.ALL:
+                    buildProjection(entry.getKey(),projector,entry.getValue());
+                LOGGER.debug("Retrieval projection for {}: {}",entry.getKey().getEntityPath(),p);
+                projections.put(entry.getKey(),p);
+            }
+        } catch (RuntimeException e) {
+            // Retrieve everything, errors will be reported during query planning
+            LOGGER.debug("Cannot compute retrieval projections: {}",e);
+            projections.clear();
+        }
+    }
+
+    /**
+     * Returns the projection to retrieve documents of the given
+     * entity. If the projection cannot be determined, returns
+     * FieldProjection.ALL
+     */
+    public Projection getProjection(CompositeMetadata md) {
+        Projection p=projections.get(md);
+        return p==null?FieldProjection.ALL:p;
+    }
+
+    private Set<Path> getRequiredFields(CompositeMetadata md) {
+        Set<Path> set=requiredFields.get(md);
+        if(set==null) {
+            requiredFields.put(md,set=new LinkedHashSet<>());
+        }
+        return set;
+    }
+
+    /**
+     * Adds the entity-relative names of the fields used in the query
+     * to the required fields of their entities
+     */
+    private void addQueryFields(QueryExpression query) {
+        if(query!=null) {
+            for(FieldInfo fi:query.getQueryFields()) {
+                ResolvedFieldInfo rfi=new ResolvedFieldInfo(fi,root);
+                getRequiredFields(root.getEntityOfPath(rfi.getAbsFieldName())).add(rfi.getEntityRelativeFieldName());
+            }
+        }
+    }
+
+    private void addSortFields(CompositeMetadata md,Sort sort) {
+        if(sort instanceof SortKey) {
+            getRequiredFields(md).add(((SortKey)sort).getField());
+        } else if(sort instanceof CompositeSortKey) {
+            for(SortKey key:((CompositeSortKey)sort).getKeys()) {
+                getRequiredFields(md).add(key.getField());
+            }
+        }
+    }
+
+    /**
+     * Adds the identity fields, reference containers, reference
+     * queries and reference sorts of the entity and its descendants
+     */
+    private void addEntityFields(CompositeMetadata md) {
+        Set<Path> fields=getRequiredFields(md);
+        for(Path p:new DocIdExtractor(md).getIdentityFields()) {
+            fields.add(p);
+        }
+        for(Path childPath:md.getChildPaths()) {
+            ResolvedReferenceField rrf=md.getChildReference(childPath);
+            // The objects containing the reference field are needed
+            // to find where to insert the child documents
+            Path container=md.getEntityRelativeFieldName(rrf).prefix(-1);
+            if(!container.isEmpty()) {
+                fields.add(container);
+            }
+            addQueryFields(rrf.getAbsQuery());
+            addSortFields(rrf.getReferencedMetadata(),rrf.getReferenceField().getSort());
+            addEntityFields(rrf.getReferencedMetadata());
+        }
+    }
+
+    private Projection buildProjection(CompositeMetadata md,
+                                       Projector projector,
+                                       Set<Path> required) {
+        if(projector==null) {
+            return FieldProjection.ALL;
+        }
+        List<Projection> items=new ArrayList<>();
+        Path prefix=md.getParent()==null?Path.EMPTY:new Path(md.getEntityPath(),Path.ANYPATH);
+        if(addProjectedFields(projector,md.getFieldTreeRoot(),prefix,new MutablePath(),items)) {
+            // Request projection includes the whole entity
+            return FieldProjection.ALL;
+        }
+        for(Path p:required) {
+            items.add(new FieldProjection(p,true,true));
+        }
+        return new ProjectionList(items);
+    }
+
+    /**
+     * Adds the descendants of the field that are included by the
+     * request projection to items. Returns true if the request
+     * projection includes all descendants of the field.
+     */
+    private static boolean addProjectedFields(Projector projector,
+                                              FieldTreeNode field,
+                                              Path prefix,
+                                              MutablePath relativePath,
+                                              List<Projection> items) {
+        boolean all=true;
+        for(Iterator<? extends FieldTreeNode> itr=field.getChildren();itr.hasNext();) {
+            FieldTreeNode child=itr.next();
+            if(child instanceof ResolvedReferenceField) {
+                // Retrieved separately
+                continue;
+            }
+            relativePath.push(child.getName());
+            Path rel=relativePath.immutableCopy();
+            Projection.Inclusion inc=projector.project(prefix.isEmpty()?rel:new Path(prefix,rel),null);
+            if(inc!=Projection.Inclusion.explicit_exclusion&&
+               inc!=Projection.Inclusion.implicit_exclusion) {
+                boolean included=inc!=Projection.Inclusion.undecided;
+                List<Projection> childItems=new ArrayList<>();
+                boolean childAll=addProjectedFields(projector,child,prefix,relativePath,childItems);
+                if(included&&childAll) {
+                    items.add(new FieldProjection(rel,true,true));
+                } else {
+                    all=false;
+                    if(included) {
+                        items.add(new FieldProjection(rel,true,false));
+                    }
+                    items.addAll(childItems);
+                }
+            } else {
+                all=false;
+            }
+            relativePath.pop();
+        }
+        return all;
+    }
+}
@@ -18,6 +18,8 @@
  */
 package com.redhat.lightblue.assoc;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
@@ -38,6 +40,7 @@ import com.redhat.lightblue.metadata.parser.Extensions;
 import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
 import com.redhat.lightblue.query.QueryExpression;
 import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.Sort;
 import com.redhat.lightblue.TestDataStoreParser;
 import com.redhat.lightblue.assoc.iterators.*;
 import com.redhat.lightblue.assoc.scorers.*;
@@ -72,6 +75,10 @@ public class QueryPlanChooserTest extends AbstractJsonNodeTest {
         return Projection.fromJson(JsonUtils.json(s.replace('\'', '\"')));
     }
 
+    private Sort sort(String s) throws Exception {
+        return Sort.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
     private class GMD extends AbstractGetMetadata {
         public GMD(Projection p,QueryExpression q) {
             super(p,q);
@@ -156,4 +163,141 @@ public class QueryPlanChooserTest extends AbstractJsonNodeTest {
         Assert.assertEquals(1,chooser.getBestPlan().getSources().length);
         Assert.assertEquals("C",chooser.getBestPlan().getSources()[0].getMetadata().getName());
     }
+
+    @Test
+    public void greedySearchTest() throws Exception {
+        GMD gmd=new GMD(projection("[{'field':'obj1.c','include':1},{'field':'b','include':1}]"),null);
+        CompositeMetadata md=CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"),gmd);
+        for(String q:new String[] {"{'field':'field1','op':'=','rvalue':'s'}",
+                                   "{'field':'obj1.c.*.field1','op':'=','rvalue':'s'}"}) {
+            IndexedFieldScorer scorer=new IndexedFieldScorer();
+            QueryPlanChooser bruteForce=new QueryPlanChooser(md,
+                                                             new BruteForceQueryPlanIterator(),
+                                                             new IndexedFieldScorer(),
+                                                             query(q),
+                                                             null);
+            // Force the search for the small graph
+            QueryPlanChooser greedy=new QueryPlanChooser(md,
+                                                         new GreedyQueryPlanIterator(scorer,0),
+                                                         scorer,
+                                                         query(q),
+                                                         null);
+            Assert.assertEquals(bruteForce.choose().mxToString(),greedy.choose().mxToString());
+        }
+    }
+
+    @Test
+    public void cachedPlanTest() throws Exception {
+        GMD gmd=new GMD(projection("[{'field':'obj1.c','include':1},{'field':'b','include':1}]"),null);
+        CompositeMetadata md=CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"),gmd);
+        QueryExpression q=query("{'field':'obj1.c.*.field1','op':'=','rvalue':'s'}");
+        QueryPlanCache cache=new QueryPlanCache();
+        String key=QueryPlanCache.getKey(md,null,q);
+
+        QueryPlanChooser chooser=new QueryPlanChooser(md,new BruteForceQueryPlanIterator(),new IndexedFieldScorer(),q,null);
+        Assert.assertFalse(cache.apply(key,chooser.getQueryPlan()));
+        QueryPlan best=chooser.choose();
+        cache.put(key,best);
+
+        // A new composite metadata with the same structure gets the same plan
+        CompositeMetadata md2=CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"),gmd);
+        Assert.assertEquals(key,QueryPlanCache.getKey(md2,null,q));
+        QueryPlanChooser chooser2=new QueryPlanChooser(md2,new First(),new IndexedFieldScorer(),q,null);
+        Assert.assertTrue(cache.apply(key,chooser2.getQueryPlan()));
+        Assert.assertEquals(best.mxToString(),chooser2.getQueryPlan().mxToString());
+        Assert.assertEquals("C",chooser2.getQueryPlan().getSources()[0].getMetadata().getName());
+
+        // Queries differing only in values share the plan
+        Assert.assertEquals(key,QueryPlanCache.getKey(md2,null,query("{'field':'obj1.c.*.field1','op':'=','rvalue':'t'}")));
+    }
+
+    private static List<String> clauses(QueryPlan qp) {
+        List<String> list=new ArrayList<>();
+        for(QueryPlanNode node:qp.getAllNodes()) {
+            for(Conjunct c:node.getData().getConjuncts()) {
+                list.add(node.getMetadata().getName()+":"+c.getClause());
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    @Test
+    public void cachedClausesAreBoundToRequestValues() throws Exception {
+        GMD gmd=new GMD(projection("[{'field':'obj1.c','include':1},{'field':'b','include':1}]"),null);
+        CompositeMetadata md=CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"),gmd);
+        QueryExpression q1=query("{'$and':[{'field':'obj1.c.*.field1','op':'=','rvalue':'s'},"+
+                                 "{'field':'field1','op':'$in','values':['a','b']},"+
+                                 "{'field':'b.*.field1','op':'$regex','regex':'x.*'}]}");
+        QueryExpression q2=query("{'$and':[{'field':'obj1.c.*.field1','op':'=','rvalue':'t'},"+
+                                 "{'field':'field1','op':'$in','values':['c','d','e']},"+
+                                 "{'field':'b.*.field1','op':'$regex','regex':'y.*'}]}");
+        QueryPlanCache.ParameterizedQuery pq1=QueryPlanCache.parameterize(q1);
+        QueryPlanCache.ParameterizedQuery pq2=QueryPlanCache.parameterize(q2);
+        Assert.assertTrue(pq1.isParameterized());
+        String key=QueryPlanCache.getKey(md,null,pq1,null,false);
+        Assert.assertEquals(key,QueryPlanCache.getKey(md,null,pq2,null,false));
+
+        QueryPlanCache cache=new QueryPlanCache();
+        Assert.assertNull(cache.getQueryPlan(key,md,new IndexedFieldScorer(),null,pq1));
+        QueryPlanChooser chooser=new QueryPlanChooser(md,new BruteForceQueryPlanIterator(),new IndexedFieldScorer(),pq1.getParameterizedQuery(),null);
+        QueryPlan best=chooser.choose();
+        cache.put(key,chooser,best,pq1);
+
+        // The request gets its own values back
+        QueryPlan cached1=cache.getQueryPlan(key,md,new IndexedFieldScorer(),null,pq1);
+        Assert.assertNotNull(cached1);
+        Assert.assertEquals(clauses(new QueryPlanChooser(md,new First(),new IndexedFieldScorer(),q1,null).getQueryPlan()),
+                            clauses(cached1));
+
+        // A query with the same shape gets the plan without rewriting, with its own values
+        CompositeMetadata md2=CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"),gmd);
+        QueryPlan cached=cache.getQueryPlan(key,md2,new IndexedFieldScorer(),null,pq2);
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(best.mxToString(),cached.mxToString());
+        QueryPlanChooser chooser2=new QueryPlanChooser(md2,new First(),new IndexedFieldScorer(),q2,null);
+        Assert.assertEquals(3,clauses(cached).size());
+        Assert.assertEquals(clauses(chooser2.getQueryPlan()),clauses(cached));
+    }
+
+    @Test
+    public void cachedClausesDoNotDependOnRewrittenClauseIdentity() throws Exception {
+        GMD gmd=new GMD(projection("[{'field':'obj1.c','include':1},{'field':'b','include':1}]"),null);
+        CompositeMetadata md=CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"),gmd);
+        String q="{'$and':[{'field':'obj1.c.*.field1','op':'=','rvalue':'s'},{'field':'field1','op':'=','rvalue':'a'}]}";
+        // The query rewriter shares rewritten clauses between equal
+        // queries, so the clauses of the second chooser are those of
+        // the first request
+        new QueryPlanChooser(md,new First(),new IndexedFieldScorer(),
+                             QueryPlanCache.parameterize(query(q)).getParameterizedQuery(),null);
+        QueryPlanCache.ParameterizedQuery pq=QueryPlanCache.parameterize(query(q));
+        String key=QueryPlanCache.getKey(md,null,pq,null,false);
+        QueryPlanCache cache=new QueryPlanCache();
+        QueryPlanChooser chooser=new QueryPlanChooser(md,new First(),new IndexedFieldScorer(),pq.getParameterizedQuery(),null);
+        cache.put(key,chooser,chooser.choose(),pq);
+
+        QueryPlanCache.ParameterizedQuery pq2=QueryPlanCache.parameterize(query(q.replace("'a'","'b'")));
+        QueryPlan cached=cache.getQueryPlan(key,md,new IndexedFieldScorer(),null,pq2);
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(clauses(new QueryPlanChooser(md,new First(),new IndexedFieldScorer(),pq2.getQuery(),null).getQueryPlan()),
+                            clauses(cached));
+    }
+
+    @Test
+    public void cacheKeyTest() throws Exception {
+        GMD gmd=new GMD(projection("[{'field':'obj1.c','include':1},{'field':'b','include':1}]"),null);
+        CompositeMetadata md=CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"),gmd);
+        QueryPlanCache.ParameterizedQuery pq=QueryPlanCache.parameterize(query("{'field':'obj1.c.*.field1','op':'=','rvalue':'s'}"));
+        String key=QueryPlanCache.getKey(md,null,pq,null,false);
+        // Different shapes
+        Assert.assertNotEquals(key,QueryPlanCache.getKey(md,null,
+                                                         QueryPlanCache.parameterize(query("{'field':'obj1.c.*.field1','op':'!=','rvalue':'s'}")),null,false));
+        Assert.assertNotEquals(key,QueryPlanCache.getKey(md,null,
+                                                         QueryPlanCache.parameterize(query("{'field':'field1','op':'=','rvalue':'s'}")),null,false));
+        // Sort and range
+        Assert.assertNotEquals(key,QueryPlanCache.getKey(md,null,pq,sort("{'field1':'$asc'}"),false));
+        Assert.assertNotEquals(key,QueryPlanCache.getKey(md,null,pq,null,true));
+        Assert.assertNotEquals(QueryPlanCache.getKey(md,null,pq,sort("{'field1':'$asc'}"),false),
+                               QueryPlanCache.getKey(md,null,pq,sort("{'field1':'$desc'}"),false));
+    }
 }
@@ -18,6 +18,9 @@
  */
 package com.redhat.lightblue.assoc;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.junit.Test;
 import org.junit.Assert;
 
@@ -125,5 +128,25 @@ public class QueryPlanIteratorTest extends AbstractJsonNodeTest {
         }
         Assert.assertFalse(itr.next());
     }
-}
 
+    @Test
+    public void greedy_exhaustive_test() throws Exception {
+        GMD gmd=new GMD(projection("[{'field':'r.*.r.*','include':1},{'field':'b.*.','include':1}]"),null);
+        CompositeMetadata md=CompositeMetadata.buildCompositeMetadata(getMd("composite/R.json"),gmd);
+        QueryPlan qp=new QueryPlan(md,new IndexedFieldScorer());
+        String initial=qp.mxToString();
+        QueryPlanIterator itr=new GreedyQueryPlanIterator(new IndexedFieldScorer());
+        itr.reset(qp);
+
+        // 3 edges, 8 unique query plans, and back to the initial plan
+        Set<String> plans=new HashSet<>();
+        plans.add(qp.mxToString());
+        for(int i=0;i<7;i++) {
+            Assert.assertTrue(itr.next());
+            plans.add(qp.mxToString());
+        }
+        Assert.assertFalse(itr.next());
+        Assert.assertEquals(8,plans.size());
+        Assert.assertEquals(initial,qp.mxToString());
+    }
+}
@@ -258,6 +258,35 @@ public class QueryRewriterTest {
         Assert.assertTrue(exists(newq,vcmp("f2",">=","2")));
     }
 
+    @Test
+    public void testNestedRewriteIsStable() throws Exception {
+        QueryExpression v1=vcmp("f1","=","1");
+        QueryExpression q=_and(_not(_not(v1)),_or(_or(vcmp("f2","=","1"),vcmp("f2","=","2")),vcmp("f2","=","3")));
+        QueryExpression newq=rw.rewrite(q);
+        System.out.println(q+"  ->\n"+newq);
+        Assert.assertTrue(exists(newq,v1));
+        Assert.assertTrue(exists(newq,inq("f2","1","2","3")));
+        // Rewriting the rewritten query does not change it
+        Assert.assertSame(newq,rw.rewrite(newq));
+    }
+
+    @Test
+    public void testCachedRewrite() throws Exception {
+        QueryRewriter crw=new QueryRewriter(true,4);
+        QueryExpression newq=crw.rewrite(_or(vcmp("f2","=","1"),vcmp("f2","=","2")));
+        Assert.assertSame(newq,crw.rewrite(_or(vcmp("f2","=","1"),vcmp("f2","=","2"))));
+        Assert.assertTrue(exists(newq,inq("f2","1","2")));
+    }
+
+    @Test
+    public void testRulesArePerInstance() throws Exception {
+        QueryRewriter empty=new QueryRewriter(false);
+        Assert.assertTrue(empty.getRules().isEmpty());
+        QueryExpression q=_not(_not(vcmp("f1","=","1")));
+        Assert.assertSame(q,empty.rewrite(q));
+        Assert.assertFalse(rw.getRules().isEmpty());
+    }
+
     /**
      * Returns if w exists in q
      */
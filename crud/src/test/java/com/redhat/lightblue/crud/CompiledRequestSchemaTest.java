@@ -0,0 +1,90 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.util.CompiledJsonSchema;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+
+public class CompiledRequestSchemaTest extends AbstractJsonNodeTest {
+
+    private CompiledJsonSchema compile(String resource) throws IOException {
+        CompiledJsonSchema schema = CompiledJsonSchema.compile(resource);
+        Assert.assertNotNull(resource, schema);
+        return schema;
+    }
+
+    private void valid(String schema, String doc) throws IOException {
+        Assert.assertTrue(doc, compile(schema).isValid(loadJsonNode(doc)));
+    }
+
+    @Test
+    public void validRequests() throws IOException {
+        valid("json-schema/response.json", "crud/response/schema-test-response-simple.json");
+        valid("json-schema/deleteRequest.json", "crud/delete/schema-test-delete-simple.json");
+        valid("json-schema/insertRequest.json", "crud/insert/schema-test-insert-simple.json");
+        valid("json-schema/insertRequest.json", "crud/insert/schema-test-insert-many.json");
+        valid("json-schema/updateRequest.json", "crud/update/schema-test-update-simple.json");
+        valid("json-schema/updateRequest.json", "crud/update/schema-test-update-many.json");
+        valid("json-schema/saveRequest.json", "crud/save/schema-test-save-simple.json");
+        valid("json-schema/saveRequest.json", "crud/save/schema-test-save-many.json");
+        valid("json-schema/findRequest.json", "crud/find/schema-test-find-simple.json");
+    }
+
+    @Test
+    public void invalidFindRequests() throws Exception {
+        CompiledJsonSchema schema = compile("json-schema/findRequest.json");
+        JsonNode doc = loadJsonNode("crud/find/schema-test-find-simple.json");
+
+        ObjectNode x = (ObjectNode) doc.deepCopy();
+        x.put("unknown", 1);
+        Assert.assertFalse(schema.isValid(x));
+
+        x = (ObjectNode) doc.deepCopy();
+        x.set("range", JsonUtils.json("[0,1,2]"));
+        Assert.assertFalse(schema.isValid(x));
+
+        x = (ObjectNode) doc.deepCopy();
+        x.set("range", JsonUtils.json("[0,\"a\"]"));
+        Assert.assertFalse(schema.isValid(x));
+
+        x = (ObjectNode) doc.deepCopy();
+        x.set("sort", JsonUtils.json("{\"login\":\"$up\"}"));
+        Assert.assertFalse(schema.isValid(x));
+
+        x = (ObjectNode) doc.deepCopy();
+        x.set("query", JsonUtils.json("{\"field\":\"login\",\"op\":\"$xx\",\"rfield\":\"a\"}"));
+        Assert.assertFalse(schema.isValid(x));
+
+        x = (ObjectNode) doc.deepCopy();
+        x.set("query", JsonUtils.json("{\"$and\":[{\"field\":\"login\",\"op\":\"$eq\",\"rvalue\":\"a\"},{\"field\":\"x\",\"op\":\"$in\",\"values\":[\"1\",\"2\"]}]}"));
+        Assert.assertTrue(schema.isValid(x));
+
+        x = (ObjectNode) doc.deepCopy();
+        x.set("query", JsonUtils.json("{\"field\":\"x\",\"op\":\"$in\",\"values\":[\"1\",\"1\"]}"));
+        Assert.assertFalse(schema.isValid(x));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.TestDataStoreParser;
+import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
+import com.redhat.lightblue.crud.validator.EmptyEntityConstraintValidators;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Field;
+import com.redhat.lightblue.metadata.FieldConstraint;
+import com.redhat.lightblue.metadata.MetadataStatus;
+import com.redhat.lightblue.metadata.MetadataStatusListener;
+import com.redhat.lightblue.metadata.constraints.StringLengthConstraint;
+import com.redhat.lightblue.metadata.parser.Extensions;
+import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.util.DefaultRegistry;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.KeyValueCursor;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.Registry;
+
+public class ConstraintValidationPlanTest {
+
+    private EntityMetadata md;
+    private JsonDoc doc;
+    private Registry<String, FieldConstraintChecker> fRegistry;
+    private Registry<String, EntityConstraintChecker> eRegistry;
+
+    private EntityMetadata parseMetadata() throws IOException {
+        Extensions<JsonNode> extensions = new Extensions<>();
+        extensions.registerDataStoreParser("mongo", new TestDataStoreParser<JsonNode>());
+        extensions.addDefaultExtensions();
+        JSONMetadataParser parser = new JSONMetadataParser(extensions, new DefaultTypes(), JsonNodeFactory.instance);
+        return parser.parseEntityMetadata(JsonUtils.json(getClass().getResourceAsStream("/usermd.json")));
+    }
+
+    @Before
+    public void setup() throws IOException {
+        md = parseMetadata();
+        doc = new JsonDoc(JsonUtils.json(getClass().getResourceAsStream("/userdata.json")));
+        // Add value constraints to fields nested in arrays
+        ((Field) md.resolve(new Path("sites.*.usages.*.usage"))).
+                setConstraints(Arrays.<FieldConstraint>asList(new StringLengthConstraint(StringLengthConstraint.MAXLENGTH, 10)));
+        ((Field) md.resolve(new Path("sites.*.siteType"))).
+                setConstraints(Arrays.<FieldConstraint>asList(new StringLengthConstraint(StringLengthConstraint.MINLENGTH, 1)));
+
+        fRegistry = new DefaultRegistry<>();
+        fRegistry.add(new DefaultFieldConstraintValidators());
+        eRegistry = new DefaultRegistry<>();
+        eRegistry.add(new EmptyEntityConstraintValidators());
+    }
+
+    /**
+     * The validation plan should collect the same values, in the same
+     * order, as resolving each constrained field path separately.
+     */
+    @Test
+    public void collectsSameValuesAsGetAllNodes() {
+        ConstraintValidationPlan plan = new ConstraintValidationPlan(fRegistry, eRegistry, md);
+
+        ConstraintValidationPlan.FieldValues[] values = plan.collectValues(doc);
+        int nChecked = 0;
+        for (ConstraintValidationPlan.FieldPlan field : plan.getFields()) {
+            if (field.hasValueCheckers) {
+                List<Path> expectedPaths = new ArrayList<>();
+                List<JsonNode> expectedValues = new ArrayList<>();
+                KeyValueCursor<Path, JsonNode> cursor = doc.getAllNodes(field.fieldPath);
+                while (cursor.hasNext()) {
+                    cursor.next();
+                    expectedPaths.add(cursor.getCurrentKey());
+                    expectedValues.add(cursor.getCurrentValue());
+                }
+                assertEquals(field.fieldPath.toString(), expectedPaths, values[field.index].paths);
+                assertEquals(field.fieldPath.toString(), expectedValues, values[field.index].values);
+                nChecked += expectedPaths.size();
+            } else {
+                assertNull(values[field.index]);
+            }
+        }
+        // login, 2 site types, 5 usages
+        assertEquals(8, nChecked);
+    }
+
+    @Test
+    public void nestedArrayValueError() {
+        doc.modify(new Path("sites.1.usages.1.usage"), JsonNodeFactory.instance.textNode("too long to be valid"), false);
+
+        ConstraintValidator validator = new ConstraintValidator(fRegistry, eRegistry, md);
+        validator.validateDocs(Arrays.asList(doc));
+
+        // Only the modified value violates the length constraint
+        List<Error> lengthErrors = new ArrayList<>();
+        for (Error x : validator.getDocErrors().get(doc)) {
+            if (x.getContext().contains("sites.*.usages.*.usage/maxLength")) {
+                lengthErrors.add(x);
+            }
+        }
+        assertEquals(1, lengthErrors.size());
+        assertTrue(lengthErrors.get(0).getContext().endsWith("sites.1.usages.1.usage"));
+    }
+
+    @Test
+    public void factoryCachesPlansByEntityVersion() throws IOException {
+        Factory factory = new Factory();
+        ConstraintValidationPlan plan = factory.getConstraintValidationPlan(md);
+        // Another instance of the same entity version gets the same plan
+        assertSame(plan, factory.getConstraintValidationPlan(parseMetadata()));
+
+        // Metadata changes discard the plan
+        ((MetadataStatusListener) factory.getMetadataListener()).
+                afterSetMetadataStatus(null, md.getName(), md.getVersion().getValue(), MetadataStatus.DEPRECATED);
+        assertNotSame(plan, factory.getConstraintValidationPlan(md));
+    }
+}
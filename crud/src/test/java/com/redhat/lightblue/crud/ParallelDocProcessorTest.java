@@ -0,0 +1,116 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.lightblue.util.Error;
+
+public class ParallelDocProcessorTest {
+
+    private static List<Integer> docs(int n) {
+        List<Integer> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    @Test
+    public void partitionTest() {
+        List<List<Integer>> chunks = ParallelDocProcessor.partition(docs(10), 3);
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(3, chunks.get(0).size());
+        Assert.assertEquals(3, chunks.get(1).size());
+        Assert.assertEquals(4, chunks.get(2).size());
+
+        chunks = ParallelDocProcessor.partition(docs(2), 8);
+        Assert.assertEquals(2, chunks.size());
+
+        chunks = ParallelDocProcessor.partition(docs(0), 8);
+        Assert.assertEquals(1, chunks.size());
+        Assert.assertTrue(chunks.get(0).isEmpty());
+    }
+
+    @Test
+    public void sequentialBelowThreshold() {
+        Factory factory = new Factory();
+        factory.setBulkParallelThreshold(100);
+        final Thread caller = Thread.currentThread();
+        List<Integer> results = ParallelDocProcessor.process(factory, docs(99), new ParallelDocProcessor.ChunkProcessor<Integer, Integer>() {
+            @Override
+            public Integer process(List<Integer> chunk) {
+                Assert.assertSame(caller, Thread.currentThread());
+                return chunk.size();
+            }
+        });
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(99, results.get(0).intValue());
+    }
+
+    @Test
+    public void parallelResultsInOrder() {
+        Factory factory = new Factory();
+        factory.setBulkParallelThreshold(10);
+        factory.setBulkParallelism(3);
+        List<Integer> docs = docs(1000);
+        List<List<Integer>> results = ParallelDocProcessor.process(factory, docs, new ParallelDocProcessor.ChunkProcessor<Integer, List<Integer>>() {
+            @Override
+            public List<Integer> process(List<Integer> chunk) {
+                return new ArrayList<>(chunk);
+            }
+        });
+        Assert.assertEquals(12, results.size());
+        List<Integer> merged = new ArrayList<>();
+        for (List<Integer> x : results) {
+            merged.addAll(x);
+        }
+        Assert.assertEquals(docs, merged);
+    }
+
+    @Test
+    public void errorContextIsCarriedOver() {
+        Factory factory = new Factory();
+        factory.setBulkParallelThreshold(2);
+        factory.setBulkParallelism(2);
+        Error.push("outer");
+        try {
+            ParallelDocProcessor.process(factory, docs(10), new ParallelDocProcessor.ChunkProcessor<Integer, Void>() {
+                @Override
+                public Void process(List<Integer> chunk) {
+                    if (chunk.contains(7)) {
+                        Error.push("inner");
+                        throw Error.get("test");
+                    }
+                    return null;
+                }
+            });
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals("test", e.getErrorCode());
+            Assert.assertEquals("outer/inner", e.getContext());
+        } finally {
+            Error.reset();
+        }
+    }
+}
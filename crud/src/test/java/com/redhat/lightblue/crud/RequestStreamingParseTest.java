@@ -0,0 +1,73 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.util.JsonUtils;
+
+public class RequestStreamingParseTest {
+
+    private static String esc(String s) {
+        return s.replaceAll("'", "\"");
+    }
+
+    private static JsonParser parser(String s) throws Exception {
+        return JsonUtils.createParser(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void findRequest_sameAsTree() throws Exception {
+        String s = esc("{'entity':'a','entityVersion':'1.0','client':{'x':[1,2]},"
+                + "'query':{'$and':[{'field':'x','op':'=','rvalue':1},{'field':'y','op':'$in','values':[1,2]}]},"
+                + "'unknown':{'a':[{'b':1}]},"
+                + "'projection':{'field':'*','recursive':true},"
+                + "'sort':{'x':'$asc'},'range':[1,5],"
+                + "'execution':{'timeLimit':10}}");
+        FindRequest tree = FindRequest.fromJson((ObjectNode) JsonUtils.json(s));
+        FindRequest streamed = FindRequest.fromJson(parser(s));
+        Assert.assertEquals(tree.toJson(), streamed.toJson());
+        Assert.assertEquals("a", streamed.getEntityVersion().getEntity());
+        Assert.assertEquals(1l, streamed.getFrom().longValue());
+        Assert.assertEquals(5l, streamed.getTo().longValue());
+        Assert.assertEquals(10l, streamed.getExecution().getTimeLimit());
+    }
+
+    @Test
+    public void insertionRequest_sameAsTree() throws Exception {
+        String s = esc("{'entity':'a','entityVersion':'1.0',"
+                + "'data':[{'_id':1,'x':{'y':[1,2,3]},'d':1.5},{'_id':2,'x':null}],"
+                + "'projection':{'field':'_id'}}");
+        InsertionRequest tree = InsertionRequest.fromJson((ObjectNode) JsonUtils.json(s));
+        InsertionRequest streamed = InsertionRequest.fromJson(parser(s));
+        Assert.assertEquals(tree.toJson(), streamed.toJson());
+        Assert.assertEquals(2, streamed.getEntityData().size());
+        Assert.assertNotNull(streamed.getReturnFields());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAnObject() throws Exception {
+        FindRequest.fromJson(parser("[1,2]"));
+    }
+}
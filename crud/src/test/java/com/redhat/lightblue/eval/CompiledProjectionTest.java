@@ -0,0 +1,93 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+
+public class CompiledProjectionTest extends AbstractJsonNodeTest {
+
+    EntityMetadata md;
+
+    @Before
+    public void setUp() throws Exception {
+        jsonDoc = EvalTestContext.getDoc("./sample1.json");
+        md = EvalTestContext.getMd("./testMetadata.json");
+    }
+
+    /**
+     * Projects the document using the compiled projection, and the
+     * projector, and checks if the results are the same
+     */
+    private void check(String projection) throws Exception {
+        Projection p = EvalTestContext.projectionFromJson(projection);
+        Projector projector = Projector.getInstance(p, Path.EMPTY, md.getFieldTreeRoot());
+        CompiledProjection compiled = CompiledProjection.get(p, md, projector);
+        Assert.assertNotNull(compiled);
+        JsonDoc expected = projector.project(jsonDoc, JSON_NODE_FACTORY);
+        JsonDoc actual = compiled.project(jsonDoc, JSON_NODE_FACTORY);
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void compiled_matches_projector() throws Exception {
+        check("{'field':'*','recursive':true}");
+        check("{'field':'field2'}");
+        check("[{'field':'field2'},{'field':'field6.*'}]");
+        check("[{'field':'field2'},{'field':'field6.*','recursive':true}]");
+        check("[{'field':'*','recursive':true},{'field':'field6','include':false}]");
+        check("[{'field':'field7.*.elemf1'},{'field':'field6.nf7.nnf1'}]");
+        check("{'field':'field7','recursive':true}");
+        check("{'field':'field6.nf5','recursive':true}");
+        check("[{'field':'field7.$parent.field2'},{'field':'field7.$parent.field6.*'}]");
+    }
+
+    @Test
+    public void compiled_projection_is_cached() throws Exception {
+        Projection p = EvalTestContext.projectionFromJson("[{'field':'field2'},{'field':'field6.*'}]");
+        Projector projector = Projector.getInstance(p, Path.EMPTY, md.getFieldTreeRoot());
+        Assert.assertSame(CompiledProjection.get(p, md, projector),
+                CompiledProjection.get(EvalTestContext.projectionFromJson("[{'field':'field2'},{'field':'field6.*'}]"), md, projector));
+    }
+
+    @Test
+    public void projector_for_entity_uses_compiled_projection() throws Exception {
+        Projection p = EvalTestContext.projectionFromJson("[{'field':'field2'},{'field':'field6.*'}]");
+        Projector projector = Projector.getInstance(p, md);
+        Assert.assertEquals(Projector.getInstance(p, Path.EMPTY, md.getFieldTreeRoot()).project(jsonDoc, JSON_NODE_FACTORY).toString(),
+                projector.project(jsonDoc, JSON_NODE_FACTORY).toString());
+        Assert.assertEquals(Projection.Inclusion.explicit_inclusion, projector.project(new Path("field2"), null));
+    }
+
+    @Test
+    public void array_projections_are_not_compiled() throws Exception {
+        Assert.assertFalse(CompiledProjection.isCompilable(EvalTestContext.projectionFromJson("{'field':'field7','range':[1,2],'project':{'field':'*'}}")));
+        Assert.assertFalse(CompiledProjection.isCompilable(EvalTestContext.projectionFromJson("[{'field':'field2'},{'field':'field7','match':{'field':'elemf1','op':'=','rvalue':'elvalue0_1'},'project':{'field':'*'}}]")));
+        Assert.assertFalse(CompiledProjection.isCompilable(EvalTestContext.projectionFromJson("{'field':'field7.1.elemf1'}")));
+        Assert.assertTrue(CompiledProjection.isCompilable(EvalTestContext.projectionFromJson("[{'field':'field2'},{'field':'field7.*.elemf1'}]")));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Field;
+import com.redhat.lightblue.util.Path;
+
+public class FieldAccessRoleEvaluatorTest {
+
+    EntityMetadata md;
+
+    @Before
+    public void setUp() throws Exception {
+        md = EvalTestContext.getMd("./testMetadata.json");
+    }
+
+    private static Set<String> roles(String... r) {
+        return new HashSet<>(Arrays.asList(r));
+    }
+
+    @Test
+    public void field_access() throws Exception {
+        FieldAccessRoleEvaluator eval = new FieldAccessRoleEvaluator(md, roles("test-find"));
+        Assert.assertFalse(eval.hasAccess(new Path("field1"), FieldAccessRoleEvaluator.Operation.find));
+        Assert.assertTrue(eval.hasAccess(new Path("field3"), FieldAccessRoleEvaluator.Operation.find));
+        Assert.assertFalse(eval.hasAccess(new Path("field3"), FieldAccessRoleEvaluator.Operation.insert));
+        Assert.assertTrue(eval.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find).contains(new Path("field1")));
+        Assert.assertFalse(eval.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find).contains(new Path("field3")));
+
+        eval = new FieldAccessRoleEvaluator(md, roles("test-find", "test.field1-find"));
+        Assert.assertTrue(eval.hasAccess(new Path("field1"), FieldAccessRoleEvaluator.Operation.find));
+        Assert.assertFalse(eval.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find).contains(new Path("field1")));
+    }
+
+    @Test
+    public void decisions_are_shared_between_evaluators_with_same_roles() throws Exception {
+        FieldAccessRoleEvaluator.PlanCache cache = new FieldAccessRoleEvaluator.PlanCache(16, 60000);
+        FieldAccessRoleEvaluator eval1 = new FieldAccessRoleEvaluator(md, roles("test-find"), cache);
+        FieldAccessRoleEvaluator eval2 = new FieldAccessRoleEvaluator(md, roles("test-find"), cache);
+        Assert.assertSame(eval1.getExcludedFields(FieldAccessRoleEvaluator.Operation.find),
+                eval2.getExcludedFields(FieldAccessRoleEvaluator.Operation.find));
+        Assert.assertEquals(eval1.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find),
+                eval2.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find));
+    }
+
+    @Test
+    public void returned_fields_can_be_modified() throws Exception {
+        FieldAccessRoleEvaluator eval = new FieldAccessRoleEvaluator(md, roles("test-find"));
+        Set<Path> fields = eval.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find);
+        fields.clear();
+        Assert.assertFalse(eval.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find).isEmpty());
+    }
+
+    @Test
+    public void plans_are_not_shared_between_metadata_instances() throws Exception {
+        FieldAccessRoleEvaluator.PlanCache cache = new FieldAccessRoleEvaluator.PlanCache(16, 60000);
+        FieldAccessRoleEvaluator eval = new FieldAccessRoleEvaluator(md, roles("test-find"), cache);
+        Assert.assertTrue(eval.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find).contains(new Path("field1")));
+
+        // Same entity version, field1 readable by anyone
+        EntityMetadata changed = EvalTestContext.getMd("./testMetadata.json");
+        ((Field) changed.resolve(new Path("field1"))).getAccess().getFind().setRoles("anyone");
+
+        eval = new FieldAccessRoleEvaluator(changed, roles("test-find"), cache);
+        Assert.assertTrue(eval.hasAccess(new Path("field1"), FieldAccessRoleEvaluator.Operation.find));
+        Assert.assertFalse(eval.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find).contains(new Path("field1")));
+    }
+
+    @Test
+    public void plans_expire() throws Exception {
+        FieldAccessRoleEvaluator.PlanCache cache = new FieldAccessRoleEvaluator.PlanCache(16, 1);
+        FieldAccessRoleEvaluator eval = new FieldAccessRoleEvaluator(md, roles("test-find"), cache);
+        Assert.assertFalse(eval.hasAccess(new Path("field1"), FieldAccessRoleEvaluator.Operation.find));
+
+        // Access changed in place, without notification
+        ((Field) md.resolve(new Path("field1"))).getAccess().getFind().setRoles("anyone");
+        Thread.sleep(5);
+
+        eval = new FieldAccessRoleEvaluator(md, roles("test-find"), cache);
+        Assert.assertTrue(eval.hasAccess(new Path("field1"), FieldAccessRoleEvaluator.Operation.find));
+    }
+
+    @Test
+    public void plans_are_discarded_when_metadata_changes() throws Exception {
+        FieldAccessRoleEvaluator.PlanCache cache = new FieldAccessRoleEvaluator.PlanCache(16, 60000);
+        FieldAccessRoleEvaluator eval = new FieldAccessRoleEvaluator(md, roles("test-find"), cache);
+        Assert.assertFalse(eval.hasAccess(new Path("field1"), FieldAccessRoleEvaluator.Operation.find));
+
+        ((Field) md.resolve(new Path("field1"))).getAccess().getFind().setRoles("anyone");
+        cache.invalidate(md.getName());
+
+        eval = new FieldAccessRoleEvaluator(md, roles("test-find"), cache);
+        Assert.assertTrue(eval.hasAccess(new Path("field1"), FieldAccessRoleEvaluator.Operation.find));
+    }
+}
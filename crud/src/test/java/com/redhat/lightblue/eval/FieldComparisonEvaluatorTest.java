@@ -18,12 +18,16 @@
  */
 package com.redhat.lightblue.eval;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.test.AbstractJsonSchemaTest;
 
 public class FieldComparisonEvaluatorTest extends AbstractJsonSchemaTest {
@@ -46,6 +50,29 @@ public class FieldComparisonEvaluatorTest extends AbstractJsonSchemaTest {
         Assert.assertTrue(ctx.getResult());
     }
 
+    @Test
+    public void field_comparison_in_and_returns_false_when_expression_false() throws Exception {
+        // The field comparison must not reuse the result of the value comparison
+        QueryExpression q = EvalTestContext.queryExpressionFromJson("{'$and':[{'field':'field3','op':'=','rvalue':3},{'field':'field4','op':'<','rfield':'field3'}]}");
+        QueryEvaluator qe = QueryEvaluator.getInstance(q, md);
+
+        QueryEvaluationContext ctx = qe.evaluate(jsonDoc);
+
+        Assert.assertFalse(ctx.getResult());
+    }
+
+    @Test
+    public void evaluator_is_reusable() throws Exception {
+        QueryExpression q = EvalTestContext.queryExpressionFromJson("{'$or':[{'field':'field4','op':'<','rfield':'field3'},{'field':'field6.nf3','op':'=','rvalue':'4'}]}");
+        QueryEvaluator qe = QueryEvaluator.getInstance(q, md);
+
+        Assert.assertTrue(qe.evaluate(jsonDoc).getResult());
+        Assert.assertTrue(qe.evaluate(jsonDoc).getResult());
+        JsonDoc doc = jsonDoc.copy();
+        doc.modify(new Path("field6.nf3"), JsonNodeFactory.instance.numberNode(5), false);
+        Assert.assertFalse(qe.evaluate(doc).getResult());
+    }
+
     @Test
     public void field_comparison_returns_false_when_expression_false() throws Exception {
         QueryExpression q = EvalTestContext.queryExpressionFromJson("{'field':'field4','op':'<','rfield':'field3'}");
@@ -76,6 +76,32 @@ public class NaryRelationalExpressionEvaluatorTest extends AbstractJsonNodeTest
         Assert.assertFalse(ctx.getResult());
     }
 
+    @Test
+    public void nary_in_int_returns_true_when_value_of_different_type_matches() throws Exception {
+        QueryExpression q = EvalTestContext.queryExpressionFromJson("{'field':'field3','op':'$in','values':[1,'3',7.0]}");
+        QueryEvaluator qe = QueryEvaluator.getInstance(q, md);
+
+        Assert.assertTrue(qe.evaluate(jsonDoc).getResult());
+
+        q = EvalTestContext.queryExpressionFromJson("{'field':'field3','op':'$nin','values':[1,'5',7.0]}");
+        qe = QueryEvaluator.getInstance(q, md);
+
+        Assert.assertTrue(qe.evaluate(jsonDoc).getResult());
+    }
+
+    @Test
+    public void nary_in_bigdecimal_ignores_scale() throws Exception {
+        QueryExpression q = EvalTestContext.queryExpressionFromJson("{'field':'field4','op':'$in','values':['1.5','4.00']}");
+        QueryEvaluator qe = QueryEvaluator.getInstance(q, md);
+
+        Assert.assertTrue(qe.evaluate(jsonDoc).getResult());
+
+        q = EvalTestContext.queryExpressionFromJson("{'field':'field4','op':'$in','values':['1.5','4.01']}");
+        qe = QueryEvaluator.getInstance(q, md);
+
+        Assert.assertFalse(qe.evaluate(jsonDoc).getResult());
+    }
+
     @Test
     public void one_$parent_nary_in_int_array_returns_true_when_field_value_matches_expression() throws Exception {
         QueryExpression q = EvalTestContext.queryExpressionFromJson("{'field':'field2.$parent.field6.nf3','op':'$in','values':[1,2,3,4]}");
@@ -18,10 +18,15 @@
  */
 package com.redhat.lightblue.hooks;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -50,6 +55,7 @@ import com.redhat.lightblue.crud.Factory;
 import com.redhat.lightblue.crud.DocCtx;
 
 import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.Path;
 
@@ -85,6 +91,8 @@ public class HookManagerTest extends AbstractJsonNodeTest {
         EntityMetadata md;
         HookConfiguration cfg;
         List<HookDoc> processed;
+        List<String> context;
+        int numCalls;
 
         public AbstractHook(String n) {
             name = n;
@@ -102,6 +110,8 @@ public class HookManagerTest extends AbstractJsonNodeTest {
             this.md = md;
             this.cfg = cfg;
             this.processed = processedDocuments;
+            this.context = Error.getThreadContext();
+            numCalls++;
         }
     }
 
@@ -132,6 +142,30 @@ public class HookManagerTest extends AbstractJsonNodeTest {
         }
     }
 
+    public static class TestSyncHook extends AbstractHook implements SynchronousHook {
+        public TestSyncHook() {
+            super("hook1");
+        }
+    }
+
+    /**
+     * Executor that runs the submitted tasks only when asked to
+     */
+    private static class ManualExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable r) {
+            tasks.add(r);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
     private TestHook1 hook1;
     private TestHook2 hook2;
     private TestMediatorHook mediatorHook;
@@ -405,4 +439,140 @@ public class HookManagerTest extends AbstractJsonNodeTest {
         }
     }
 
+    @Test
+    public void asyncCoalesceTest() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        HookManager hooks = new HookManager(resolver, nodeFactory,
+                new AsyncHookDispatcher(executor, 16, 100, AsyncHookDispatcher.OverflowPolicy.BLOCK));
+        TestOperationContext ctx = setupContext(CRUDOperation.INSERT);
+
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+        // Nothing is called in the request thread
+        Assert.assertNull(hook1.processed);
+
+        executor.runAll();
+        // Both calls are delivered together
+        Assert.assertEquals(1, hook1.numCalls);
+        Assert.assertEquals(2 * ctx.getDocuments().size(), hook1.processed.size());
+    }
+
+    @Test
+    public void asyncBatchSizeTest() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        HookManager hooks = new HookManager(resolver, nodeFactory,
+                new AsyncHookDispatcher(executor, 16, 10, AsyncHookDispatcher.OverflowPolicy.BLOCK));
+        TestOperationContext ctx = setupContext(CRUDOperation.INSERT);
+
+        for (int i = 0; i < 3; i++) {
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+        }
+        executor.runAll();
+        Assert.assertEquals(3, hook1.numCalls);
+        Assert.assertEquals(ctx.getDocuments().size(), hook1.processed.size());
+    }
+
+    @Test
+    public void asyncSynchronousHookTest() throws Exception {
+        TestSyncHook syncHook = new TestSyncHook();
+        ManualExecutor executor = new ManualExecutor();
+        HookManager hooks = new HookManager(new TestHookResolver(syncHook, hook2, mediatorHook), nodeFactory,
+                new AsyncHookDispatcher(executor, 16, 100, AsyncHookDispatcher.OverflowPolicy.BLOCK));
+        TestOperationContext ctx = setupContext(CRUDOperation.UPDATE);
+
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+        // Synchronous hook is called right away, hook2 is queued
+        Assert.assertEquals(ctx.getDocuments().size(), syncHook.processed.size());
+        Assert.assertNull(hook2.processed);
+        executor.runAll();
+        Assert.assertEquals(ctx.getDocuments().size(), hook2.processed.size());
+    }
+
+    @Test
+    public void asyncDropTest() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        HookManager hooks = new HookManager(resolver, nodeFactory,
+                new AsyncHookDispatcher(executor, 1, 100, AsyncHookDispatcher.OverflowPolicy.DROP));
+        TestOperationContext ctx = setupContext(CRUDOperation.INSERT);
+
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+        executor.runAll();
+        Assert.assertEquals(1, hook1.numCalls);
+        Assert.assertEquals(ctx.getDocuments().size(), hook1.processed.size());
+    }
+
+    @Test
+    public void asyncCallerRunsTest() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        HookManager hooks = new HookManager(resolver, nodeFactory,
+                new AsyncHookDispatcher(executor, 1, 100, AsyncHookDispatcher.OverflowPolicy.CALLER_RUNS));
+        TestOperationContext ctx = setupContext(CRUDOperation.INSERT);
+
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+        Assert.assertEquals(0, hook1.numCalls);
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+        // Queue is full, the queued call and the second call run in
+        // this thread, in order
+        Assert.assertEquals(2, hook1.numCalls);
+        executor.runAll();
+        Assert.assertEquals(2, hook1.numCalls);
+    }
+
+    @Test
+    public void asyncErrorContextTest() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        HookManager hooks = new HookManager(resolver, nodeFactory,
+                new AsyncHookDispatcher(executor, 16, 100, AsyncHookDispatcher.OverflowPolicy.BLOCK));
+        TestOperationContext ctx = setupContext(CRUDOperation.INSERT);
+
+        Error.push("request");
+        try {
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+        } finally {
+            Error.reset();
+        }
+        Error.push("worker");
+        try {
+            executor.runAll();
+            // The hook sees the context of the request, and the context
+            // of the worker is restored
+            Assert.assertEquals("request", hook1.context.get(0));
+            Assert.assertEquals(Arrays.asList("worker"), Error.getThreadContext());
+        } finally {
+            Error.reset();
+        }
+    }
+
+    @Test
+    public void asyncShutdownTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AsyncHookDispatcher dispatcher = new AsyncHookDispatcher(executor, 16, 100, AsyncHookDispatcher.OverflowPolicy.BLOCK);
+            HookManager hooks = new HookManager(resolver, nodeFactory, dispatcher);
+            TestOperationContext ctx = setupContext(CRUDOperation.INSERT);
+
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            Assert.assertTrue(dispatcher.shutdown(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, hook1.numCalls);
+
+            // Calls after shutdown are dropped
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            Assert.assertTrue(dispatcher.shutdown(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, hook1.numCalls);
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -18,10 +18,17 @@
  */
 package com.redhat.lightblue.mediator;
 
+import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Arrays;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -32,6 +39,7 @@ import org.junit.Test;
 
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.Hook;
 import com.redhat.lightblue.metadata.parser.Extensions;
 import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
 import com.redhat.lightblue.metadata.TypeResolver;
@@ -42,16 +50,23 @@ import com.redhat.lightblue.metadata.test.DatabaseMetadata;
 import com.redhat.lightblue.crud.Factory;
 import com.redhat.lightblue.crud.FindRequest;
 import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.DocumentConsumer;
+import com.redhat.lightblue.crud.StreamingResponseWriter;
 import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
 import com.redhat.lightblue.crud.validator.EmptyEntityConstraintValidators;
 
 import com.redhat.lightblue.assoc.QueryPlan;
 
+import com.redhat.lightblue.interceptor.InterceptPoint;
+import com.redhat.lightblue.interceptor.MediatorInterceptor;
+
 import com.redhat.lightblue.query.QueryExpression;
 import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.FieldProjection;
 import com.redhat.lightblue.query.Sort;
 
 import com.redhat.lightblue.util.test.AbstractJsonSchemaTest;
+import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.JsonUtils;
 import com.redhat.lightblue.util.Path;
@@ -61,15 +76,27 @@ import com.redhat.lightblue.TestDataStoreParser;
 import com.redhat.lightblue.Response;
 import com.redhat.lightblue.Request;
 import com.redhat.lightblue.EntityVersion;
+import com.redhat.lightblue.OperationStatus;
 
 public class CompositeFinderTest extends AbstractJsonSchemaTest {
 
     private Mediator mediator;
+    private Factory factory;
+    private TestCrudController controller;
+    private final Map<String,Integer> findCount=new HashMap<>();
+    private final Map<String,List<String>> findContext=new HashMap<>();
+    private final Set<String> findHookEntities=new HashSet<>();
     private static final JsonNodeFactory nodeFactory = JsonNodeFactory.withExactBigDecimals(false);
 
     private class TestMetadata extends DatabaseMetadata {
         public EntityMetadata getEntityMetadata(String entityName, String version) {
-            return getMd("composite/"+entityName+".json");
+            EntityMetadata md=getMd("composite/"+entityName+".json");
+            if(findHookEntities.contains(entityName)) {
+                Hook hook=new Hook("findHook");
+                hook.setFind(true);
+                md.getHooks().setHooks(Arrays.asList(hook));
+            }
+            return md;
         }
     }
 
@@ -109,11 +136,17 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
 
     @Before
     public void initMediator() throws Exception {
-        Factory factory = new Factory();
+        factory = new Factory();
+        findCount.clear();
         factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
         factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
-        factory.addCRUDController("mongo", new TestCrudController(new TestCrudController.GetData() {
+        factory.addCRUDController("mongo", controller=new TestCrudController(new TestCrudController.GetData() {
                 public List<JsonDoc> getData(String entityName) {
+                    synchronized(findCount) {
+                        Integer n=findCount.get(entityName);
+                        findCount.put(entityName,n==null?1:n+1);
+                        findContext.put(entityName,Error.getThreadContext());
+                    }
                     try {
                         List<JsonDoc> docs=new ArrayList<JsonDoc>();
                         JsonNode node=loadJsonNode("composite/"+entityName+"_data.json");
@@ -143,6 +176,88 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
         return Sort.fromJson(JsonUtils.json(s.replaceAll("\'","\"")));
     }
 
+    @Test
+    public void streamingFind() throws Exception {
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'$in','values':['B01','B02','B03']}"));
+        fr.setProjection(projection("{'field':'field1'}"));
+        fr.setEntityVersion(new EntityVersion("B","1.0.0"));
+        final List<JsonDoc> docs=new ArrayList<>();
+        Response response=mediator.find(fr,new DocumentConsumer() {
+                public void accept(JsonDoc doc) {
+                    docs.add(doc);
+                }
+            });
+        Assert.assertEquals(OperationStatus.COMPLETE,response.getStatus());
+        Assert.assertNull(response.getEntityData());
+        Assert.assertEquals(3,response.getMatchCount());
+        Assert.assertEquals(3,docs.size());
+        Assert.assertNotNull(docs.get(0).get(new Path("field1")));
+        Assert.assertNull(docs.get(0).get(new Path("field2")));
+        Assert.assertEquals(0,getLastContext(mediator).getDocuments().size());
+        Assert.assertEquals(1,controller.streamsClosed);
+    }
+
+    @Test
+    public void streamingFind_writer() throws Exception {
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'$in','values':['B01','B02','B03']}"));
+        fr.setProjection(projection("{'field':'field1'}"));
+        fr.setEntityVersion(new EntityVersion("B","1.0.0"));
+        ByteArrayOutputStream out=new ByteArrayOutputStream();
+        JsonGenerator gen=JsonUtils.getObjectMapper().getFactory().createGenerator(out);
+        StreamingResponseWriter writer=new StreamingResponseWriter(gen);
+        writer.finish(mediator.find(fr,writer));
+        gen.close();
+
+        JsonNode result=JsonUtils.json(out.toString("UTF-8"));
+        Assert.assertEquals("COMPLETE",result.get("status").asText());
+        Assert.assertEquals(3,result.get("matchCount").asInt());
+        Assert.assertEquals(3,result.get("processed").size());
+        Assert.assertEquals(1,controller.streamsClosed);
+    }
+
+    @Test
+    public void streamingFind_postFindInterceptor() throws Exception {
+        final List<Integer> seen=new ArrayList<>();
+        factory.getInterceptors().registerInterceptor(1,new MediatorInterceptor() {
+                public void run(OperationContext ctx) {
+                    seen.add(ctx.getDocuments().size());
+                }
+            },InterceptPoint.POST_MEDIATOR_FIND);
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'$in','values':['B01','B02','B03']}"));
+        fr.setProjection(projection("{'field':'field1'}"));
+        fr.setEntityVersion(new EntityVersion("B","1.0.0"));
+        final List<JsonDoc> docs=new ArrayList<>();
+        mediator.find(fr,new DocumentConsumer() {
+                public void accept(JsonDoc doc) {
+                    docs.add(doc);
+                }
+            });
+        // The interceptor sees the documents, so the results are not streamed
+        Assert.assertEquals(3,docs.size());
+        Assert.assertEquals(3,seen.get(0).intValue());
+        Assert.assertEquals(0,controller.streamsClosed);
+    }
+
+    @Test
+    public void streamingFind_composite() throws Exception {
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'$in','values':['A01','A02','A03']}"));
+        fr.setProjection(projection("[{'field':'*','recursive':1},{'field':'b'}]"));
+        fr.setEntityVersion(new EntityVersion("A","1.0.0"));
+        final List<JsonDoc> docs=new ArrayList<>();
+        Response response=mediator.find(fr,new DocumentConsumer() {
+                public void accept(JsonDoc doc) {
+                    docs.add(doc);
+                }
+            });
+        Assert.assertNull(response.getEntityData());
+        Assert.assertEquals(3,docs.size());
+        Assert.assertEquals(0,controller.streamsClosed);
+    }
+
    @Test
     public void sanityCheck() throws Exception {
         FindRequest fr=new FindRequest();
@@ -169,6 +284,50 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
         Assert.assertEquals("A",qplan.getSources()[0].getMetadata().getName());
     }
 
+    @Test
+    public void retrieveOnlyProjectedChildFields() throws Exception {
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'=','rvalue':'A01'}"));
+        fr.setProjection(projection("[{'field':'_id'},{'field':'b.*.field1'}]"));
+        fr.setEntityVersion(new EntityVersion("A","1.0.0"));
+        Response response=mediator.find(fr);
+        Assert.assertEquals(1,response.getEntityData().size());
+        JsonNode b=response.getEntityData().get(0).get("b").get(0);
+        Assert.assertNotNull(b.get("field1"));
+        Assert.assertNull(b.get("field2"));
+        Assert.assertNull(response.getEntityData().get(0).get("field1"));
+
+        // A: projected fields, identity, and the fields used in reference queries
+        String a=controller.projections.get("A").toString();
+        Assert.assertTrue(a.contains("\"b_ref\""));
+        Assert.assertTrue(a.contains("\"objectType\""));
+        Assert.assertFalse(a.contains("\"field1\""));
+        // B: projected fields, and identity
+        String bp=controller.projections.get("B").toString();
+        Assert.assertTrue(bp.contains("\"field1\""));
+        Assert.assertTrue(bp.contains("\"_id\""));
+        Assert.assertFalse(bp.contains("\"field2\""));
+    }
+
+    @Test
+    public void retrieveAllFieldsOfEntitiesWithFindHooks() throws Exception {
+        findHookEntities.add("B");
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'=','rvalue':'A01'}"));
+        fr.setProjection(projection("[{'field':'_id'},{'field':'b.*.field1'}]"));
+        fr.setEntityVersion(new EntityVersion("A","1.0.0"));
+        Response response=mediator.find(fr);
+        Assert.assertEquals(1,response.getEntityData().size());
+        JsonNode b=response.getEntityData().get(0).get("b").get(0);
+        Assert.assertNotNull(b.get("field1"));
+        Assert.assertNull(b.get("field2"));
+
+        // A has no find hooks, so it is still narrowed
+        Assert.assertFalse(controller.projections.get("A").toString().contains("\"field1\""));
+        // B is retrieved as a whole for its find hook
+        Assert.assertEquals(FieldProjection.ALL.toString(),controller.projections.get("B").toString());
+    }
+
     @Test
     public void retrieveAandBonly_manyA() throws Exception {
         FindRequest fr=new FindRequest();
@@ -186,6 +345,54 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
         Assert.assertEquals(1,response.getEntityData().get(2).get("b").size());
     }
 
+    @Test
+    public void retrieveAandBonly_manyA_batched() throws Exception {
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'$in','values':['A01','A02','A03']}"));
+        fr.setProjection(projection("[{'field':'*','recursive':1},{'field':'b'}]"));
+        fr.setSort(sort("{'_id':'$asc'}"));
+        fr.setEntityVersion(new EntityVersion("A","1.0.0"));
+        factory.setCompositeFindBatchSize(64);
+        Response response=mediator.find(fr);
+        Assert.assertEquals(3,response.getEntityData().size());
+        // All B docs are retrieved with one call
+        Assert.assertEquals(1,findCount.get("B").intValue());
+
+        factory.setCompositeFindBatchSize(1);
+        findCount.clear();
+        Response unbatched=mediator.find(fr);
+        Assert.assertEquals(3,findCount.get("B").intValue());
+        Assert.assertEquals(unbatched.getEntityData(),response.getEntityData());
+    }
+
+    @Test
+    public void retrieveAandBandC_parallel() throws Exception {
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'$in','values':['A01','A02','A03']}"));
+        fr.setProjection(projection("[{'field':'*','recursive':1},{'field':'b'},{'field':'obj1.c'}]"));
+        fr.setSort(sort("{'_id':'$asc'}"));
+        fr.setEntityVersion(new EntityVersion("A","1.0.0"));
+
+        factory.setCompositeFindBatchSize(64);
+        factory.setCompositeFindThreads(0);
+        Response sequential=mediator.find(fr);
+        Assert.assertNull(factory.getCompositeFindExecutor());
+
+        factory.setCompositeFindThreads(4);
+        findCount.clear();
+        Response parallel=mediator.find(fr);
+        Assert.assertNotNull(factory.getCompositeFindExecutor());
+        Assert.assertEquals(1,findCount.get("B").intValue());
+        Assert.assertEquals(1,findCount.get("C").intValue());
+        Assert.assertEquals(3,parallel.getEntityData().size());
+        Assert.assertEquals(sequential.getEntityData(),parallel.getEntityData());
+        // Nodes executed by the worker threads carry the error context of the caller
+        List<String> callerContext=findContext.get("A");
+        Assert.assertFalse(callerContext.isEmpty());
+        Assert.assertEquals(callerContext.get(0),findContext.get("B").get(0));
+        Assert.assertEquals(callerContext.get(0),findContext.get("C").get(0));
+    }
+
     @Test
     public void retrieveAandBonly_manyB() throws Exception {
         FindRequest fr=new FindRequest();
@@ -18,6 +18,9 @@
  */
 package com.redhat.lightblue.mediator;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -34,6 +37,8 @@ import com.redhat.lightblue.crud.CRUDUpdateResponse;
 import com.redhat.lightblue.crud.CRUDDeleteResponse;
 import com.redhat.lightblue.crud.CRUDFindResponse;
 import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.DocumentStream;
+import com.redhat.lightblue.crud.StreamingCRUDController;
 
 import com.redhat.lightblue.eval.QueryEvaluator;
 import com.redhat.lightblue.eval.Projector;
@@ -52,7 +57,7 @@ import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.util.JsonDoc;
 
 
-public class TestCrudController implements CRUDController {
+public class TestCrudController implements StreamingCRUDController {
 
     private static final JsonNodeFactory nodeFactory=JsonNodeFactory.withExactBigDecimals(true);
 
@@ -62,6 +67,10 @@ public class TestCrudController implements CRUDController {
 
     private final GetData gd;
 
+    public int streamsClosed;
+
+    public final Map<String,Projection> projections=new ConcurrentHashMap<>();
+
     public TestCrudController(GetData gd) {
         this.gd=gd;
     }
@@ -92,6 +101,7 @@ public class TestCrudController implements CRUDController {
                                  Sort sort,
                                  Long from,
                                  Long to) {
+        projections.put(ctx.getEntityName(),projection);
         QueryEvaluator eval=QueryEvaluator.getInstance(query,ctx.getEntityMetadata(ctx.getEntityName()));
         Projector projector=Projector.getInstance(projection,ctx.getEntityMetadata(ctx.getEntityName()));
         List<DocCtx> output=new ArrayList<>();
@@ -107,6 +117,61 @@ public class TestCrudController implements CRUDController {
         return ret;
     }
 
+    @Override
+    public DocumentStream<DocCtx> findStream(CRUDOperationContext ctx,
+                                             QueryExpression query,
+                                             Projection projection,
+                                             Sort sort,
+                                             Long from,
+                                             Long to,
+                                             CRUDFindResponse response) {
+        final QueryEvaluator eval=QueryEvaluator.getInstance(query,ctx.getEntityMetadata(ctx.getEntityName()));
+        final Projector projector=Projector.getInstance(projection,ctx.getEntityMetadata(ctx.getEntityName()));
+        final List<JsonDoc> data=gd.getData(ctx.getEntityName());
+        int n=0;
+        for(JsonDoc doc:data) {
+            if(eval.evaluate(doc).getResult()) {
+                n++;
+            }
+        }
+        response.setSize(n);
+        return new DocumentStream<DocCtx>() {
+            private final Iterator<JsonDoc> itr=data.iterator();
+            private JsonDoc next;
+
+            @Override
+            public boolean hasNext() {
+                while(next==null&&itr.hasNext()) {
+                    JsonDoc doc=itr.next();
+                    if(eval.evaluate(doc).getResult()) {
+                        next=doc;
+                    }
+                }
+                return next!=null;
+            }
+
+            @Override
+            public DocCtx next() {
+                if(!hasNext()) {
+                    throw new java.util.NoSuchElementException();
+                }
+                DocCtx ret=new DocCtx(projector.project(next,nodeFactory));
+                next=null;
+                return ret;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                streamsClosed++;
+            }
+        };
+    }
+
     @Override
     public MetadataListener getMetadataListener() {
         return null;
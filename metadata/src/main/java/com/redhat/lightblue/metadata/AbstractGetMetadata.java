@@ -90,13 +90,21 @@ public abstract class AbstractGetMetadata implements CompositeMetadata.GetMetada
                                       String entityName,
                                       String version) {
         // See if injectionField is projected or used in a query
-        if (isProjected(injectionField)
-                || isQueried(injectionField)) {
+        if (isRequired(injectionField)) {
             return retrieveMetadata(injectionField, entityName, version);
         }
         return null;
     }
 
+    /**
+     * Returns true if the reference field is explicitly projected, or
+     * used in one of the queries, that is, if the metadata for the
+     * referenced entity will be retrieved.
+     */
+    public boolean isRequired(Path injectionField) {
+        return isProjected(injectionField) || isQueried(injectionField);
+    }
+
     /**
      * The implementation should retrieve and return the metadata for the given
      * version of the given entity
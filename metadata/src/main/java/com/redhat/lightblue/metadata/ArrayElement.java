@@ -92,7 +92,7 @@ public abstract class ArrayElement implements FieldTreeNode, Serializable {
 
     @Override
     public Path getFullPath() {
-        return getFullPath(new MutablePath()).immutableCopy();
+        return Path.intern(getFullPath(new MutablePath()));
     }
 
 }
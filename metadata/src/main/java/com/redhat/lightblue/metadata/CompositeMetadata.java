@@ -40,9 +40,13 @@ import java.util.*;
  * associated entities</li>
  * </ul>
  *
- * Composite metadata needs to be computed for every request. The computation
- * takes into account the request queries and projections to determine how deep
- * the reference tree needs to be traversed.
+ * Composite metadata depends on the request. The computation takes into
+ * account the request queries and projections to determine how deep the
+ * reference tree needs to be traversed. Composite metadata instances can be
+ * cached and shared between requests by {@link CompositeMetadataCache}, so
+ * once built, a composite metadata and the entity metadata it contains must
+ * be treated as immutable. Code that needs to modify metadata during a
+ * request must work on a copy.
  */
 public class CompositeMetadata extends EntityMetadata {
 
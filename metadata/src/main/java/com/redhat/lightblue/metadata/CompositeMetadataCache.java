@@ -0,0 +1,272 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A cache of composite metadata instances shared between requests.
+ *
+ * The composite metadata built for an entity depends on the entity
+ * name and version, and on the reference fields that are required by
+ * the query and projection of the request. During the construction of
+ * the composite metadata, every reference field is checked to see if
+ * the referenced entity is needed. The cache records these decisions
+ * along with the composite metadata. A subsequent request for the same
+ * entity version reuses the cached composite metadata if it makes the
+ * same decisions for all the recorded reference fields, because then
+ * building the composite metadata would produce the same result.
+ *
+ * The cached instances are shared between threads, so they must not
+ * be modified. Cache entries are invalidated when the metadata for
+ * any of the entities in the composite metadata changes, or when they
+ * get older than the configured time-to-live.
+ */
+public class CompositeMetadataCache implements MetadataStatusListener, Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompositeMetadataCache.class);
+
+    /**
+     * Default maximum number of composite metadata variants kept for
+     * an entity version
+     */
+    public static final int DEFAULT_MAX_VARIANTS = 16;
+
+    private final Map<String, List<Entry>> entries = new ConcurrentHashMap<>();
+
+    private volatile long ttl;
+    private volatile int maxVariants = DEFAULT_MAX_VARIANTS;
+
+    /**
+     * A cached composite metadata, along with the reference field
+     * decisions that resulted in it
+     */
+    public static final class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1l;
+
+        private final Map<Path, Boolean> references;
+        private final CompositeMetadata metadata;
+        private final Map<String, EntityMetadata> entityMetadata;
+        private final Set<String> roles;
+        private final long created = System.currentTimeMillis();
+
+        /**
+         * Constructs a cache entry
+         *
+         * @param references The reference fields checked during the
+         * construction of the composite metadata, and whether they were
+         * included or not
+         * @param metadata The composite metadata
+         * @param entityMetadata The metadata for all the entities in
+         * the composite metadata, keyed by entity name
+         * @param roles The roles referenced in the metadata
+         */
+        public Entry(Map<Path, Boolean> references,
+                     CompositeMetadata metadata,
+                     Map<String, EntityMetadata> entityMetadata,
+                     Set<String> roles) {
+            this.references = Collections.unmodifiableMap(new LinkedHashMap<>(references));
+            this.metadata = metadata;
+            this.entityMetadata = Collections.unmodifiableMap(new LinkedHashMap<>(entityMetadata));
+            this.roles = roles == null ? null : Collections.unmodifiableSet(roles);
+        }
+
+        public CompositeMetadata getMetadata() {
+            return metadata;
+        }
+
+        public Map<String, EntityMetadata> getEntityMetadata() {
+            return entityMetadata;
+        }
+
+        public Set<String> getRoles() {
+            return roles;
+        }
+
+        /**
+         * Returns true if the given reference filter makes the same
+         * decisions as the ones recorded in this entry
+         */
+        private boolean matches(AbstractGetMetadata gmd) {
+            for (Map.Entry<Path, Boolean> ref : references.entrySet()) {
+                if (gmd.isRequired(ref.getKey()) != ref.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isExpired(long ttl, long now) {
+            return ttl > 0 && now - created > ttl;
+        }
+    }
+
+    /**
+     * Constructs a cache whose entries never expire
+     */
+    public CompositeMetadataCache() {
+        this(0);
+    }
+
+    /**
+     * Constructs a cache with the given time-to-live in milliseconds.
+     * If ttl is less than or equal to 0, the entries never expire.
+     */
+    public CompositeMetadataCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public long getTTL() {
+        return ttl;
+    }
+
+    public void setTTL(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public int getMaxVariants() {
+        return maxVariants;
+    }
+
+    /**
+     * Sets the maximum number of composite metadata variants kept
+     * for an entity version. When the limit is exceeded, the oldest
+     * variant is dropped.
+     */
+    public void setMaxVariants(int n) {
+        maxVariants = n;
+    }
+
+    /**
+     * Returns the cache entry for the given entity version that was
+     * built using the same reference field decisions the given gmd
+     * makes. Returns null if there is no such entry.
+     *
+     * @param entityName Entity name
+     * @param version Entity version, can be null for the default version
+     * @param gmd The metadata filter of the current request
+     */
+    public Entry get(String entityName, String version, AbstractGetMetadata gmd) {
+        List<Entry> list = entries.get(key(entityName, version));
+        if (list != null) {
+            long now = System.currentTimeMillis();
+            for (Entry entry : list) {
+                if (!entry.isExpired(ttl, now) && entry.matches(gmd)) {
+                    LOGGER.debug("Composite metadata cache hit for {}:{}", entityName, version);
+                    return entry;
+                }
+            }
+        }
+        LOGGER.debug("Composite metadata cache miss for {}:{}", entityName, version);
+        return null;
+    }
+
+    /**
+     * Adds a new entry to the cache for the given entity version
+     */
+    public synchronized void put(String entityName, String version, Entry entry) {
+        String key = key(entityName, version);
+        List<Entry> list = entries.get(key);
+        long now = System.currentTimeMillis();
+        List<Entry> newList = new ArrayList<>(list == null ? 1 : list.size() + 1);
+        newList.add(entry);
+        if (list != null) {
+            for (Entry x : list) {
+                if (newList.size() >= maxVariants) {
+                    break;
+                }
+                if (!x.isExpired(ttl, now)) {
+                    newList.add(x);
+                }
+            }
+        }
+        // Lists are never modified once they are in the map
+        entries.put(key, Collections.unmodifiableList(newList));
+    }
+
+    /**
+     * Removes all the cached composite metadata containing the given
+     * entity
+     */
+    public synchronized void invalidate(String entityName) {
+        LOGGER.debug("Invalidating composite metadata containing {}", entityName);
+        for (Map.Entry<String, List<Entry>> mapEntry : entries.entrySet()) {
+            for (Entry entry : mapEntry.getValue()) {
+                if (entry.getEntityMetadata().containsKey(entityName)) {
+                    entries.remove(mapEntry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached composite metadata
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    @Override
+    public void beforeCreateNewSchema(Metadata m, EntityMetadata md) {
+    }
+
+    @Override
+    public void afterCreateNewSchema(Metadata m, EntityMetadata md) {
+        invalidate(md.getName());
+    }
+
+    @Override
+    public void beforeUpdateEntityInfo(Metadata m, EntityInfo ei, boolean newEntity) {
+    }
+
+    @Override
+    public void afterUpdateEntityInfo(Metadata m, EntityInfo ei, boolean newEntity) {
+        invalidate(ei.getName());
+    }
+
+    @Override
+    public void afterSetMetadataStatus(Metadata m, String entityName, String version, MetadataStatus newStatus) {
+        invalidate(entityName);
+    }
+
+    @Override
+    public void afterRemoveEntity(Metadata m, String entityName) {
+        invalidate(entityName);
+    }
+
+    private static String key(String entityName, String version) {
+        return version == null ? entityName : entityName + ":" + version;
+    }
+}
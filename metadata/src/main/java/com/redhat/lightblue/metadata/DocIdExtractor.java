@@ -80,6 +80,14 @@ public final class DocIdExtractor implements Serializable {
         return new DocId(values, objectTypeIx);
     }
 
+    /**
+     * Returns the fields read to build the document ID, including the
+     * object type
+     */
+    public Path[] getIdentityFields() {
+        return identityFields.clone();
+    }
+
     private void init(Path[] f) {
         if (f == null || f.length == 0) {
             throw new IllegalArgumentException("Empty identity fields");
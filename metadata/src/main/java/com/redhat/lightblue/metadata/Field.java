@@ -113,7 +113,7 @@ public abstract class Field implements FieldTreeNode, Serializable {
     }
 
     public Path getFullPath() {
-        return getFullPath(new MutablePath()).immutableCopy();
+        return Path.intern(getFullPath(new MutablePath()));
     }
 
     public Map<String, Object> getProperties() {
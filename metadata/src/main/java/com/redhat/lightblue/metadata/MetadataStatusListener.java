@@ -0,0 +1,45 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata;
+
+/**
+ * A metadata listener that is also notified when the status of an
+ * entity version changes, or when an entity is removed. Listeners
+ * caching metadata derived objects use these to evict stale entries.
+ */
+public interface MetadataStatusListener extends MetadataListener {
+
+    /**
+     * Called after the status of an entity version is changed
+     *
+     * @param m The metadata implementation
+     * @param entityName The entity name
+     * @param version The entity version
+     * @param newStatus The new status of the entity version
+     */
+    void afterSetMetadataStatus(Metadata m, String entityName, String version, MetadataStatus newStatus);
+
+    /**
+     * Called after an entity is removed
+     *
+     * @param m The metadata implementation
+     * @param entityName The removed entity name
+     */
+    void afterRemoveEntity(Metadata m, String entityName);
+}
@@ -0,0 +1,146 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata;
+
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.lightblue.Response;
+
+/**
+ * A metadata implementation that delegates to another metadata
+ * implementation, and notifies a listener about the operations that
+ * modify metadata. If the listener is a {@link MetadataStatusListener},
+ * it is also notified about status changes and entity removals.
+ *
+ * Code that needs the concrete metadata implementation should use
+ * {@link #unwrap(Metadata, Class)} instead of casting the metadata.
+ */
+public class NotifyingMetadata implements Metadata {
+
+    private static final long serialVersionUID = 1l;
+
+    private final Metadata delegate;
+    private final MetadataListener listener;
+
+    public NotifyingMetadata(Metadata delegate, MetadataListener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the underlying metadata implementation
+     */
+    public Metadata getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the given metadata, or the first metadata it wraps, that
+     * is an instance of the given type. Returns null if there is no
+     * such metadata.
+     */
+    public static <T extends Metadata> T unwrap(Metadata md, Class<T> type) {
+        Metadata x = md;
+        while (x != null) {
+            if (type.isInstance(x)) {
+                return type.cast(x);
+            }
+            x = x instanceof NotifyingMetadata ? ((NotifyingMetadata) x).getDelegate() : null;
+        }
+        return null;
+    }
+
+    @Override
+    public Response getDependencies(String entityName, String version) {
+        return delegate.getDependencies(entityName, version);
+    }
+
+    @Override
+    public Response getAccess(String entityName, String version) {
+        return delegate.getAccess(entityName, version);
+    }
+
+    @Override
+    public EntityMetadata getEntityMetadata(String entityName, String version) {
+        return delegate.getEntityMetadata(entityName, version);
+    }
+
+    @Override
+    public EntityInfo getEntityInfo(String entityName) {
+        return delegate.getEntityInfo(entityName);
+    }
+
+    @Override
+    public String[] getEntityNames(MetadataStatus... statuses) {
+        return delegate.getEntityNames(statuses);
+    }
+
+    @Override
+    public VersionInfo[] getEntityVersions(String entityName) {
+        return delegate.getEntityVersions(entityName);
+    }
+
+    @Override
+    public void createNewMetadata(EntityMetadata md) {
+        listener.beforeUpdateEntityInfo(this, md.getEntityInfo(), true);
+        listener.beforeCreateNewSchema(this, md);
+        delegate.createNewMetadata(md);
+        listener.afterUpdateEntityInfo(this, md.getEntityInfo(), true);
+        listener.afterCreateNewSchema(this, md);
+    }
+
+    @Override
+    public void createNewSchema(EntityMetadata md) {
+        listener.beforeCreateNewSchema(this, md);
+        delegate.createNewSchema(md);
+        listener.afterCreateNewSchema(this, md);
+    }
+
+    @Override
+    public void updateEntityInfo(EntityInfo ei) {
+        listener.beforeUpdateEntityInfo(this, ei, false);
+        delegate.updateEntityInfo(ei);
+        listener.afterUpdateEntityInfo(this, ei, false);
+    }
+
+    @Override
+    public void setMetadataStatus(String entityName,
+                                  String version,
+                                  MetadataStatus newStatus,
+                                  String comment) {
+        delegate.setMetadataStatus(entityName, version, newStatus, comment);
+        if (listener instanceof MetadataStatusListener) {
+            ((MetadataStatusListener) listener).afterSetMetadataStatus(this, entityName, version, newStatus);
+        }
+    }
+
+    @Override
+    public void removeEntity(String entityName) {
+        delegate.removeEntity(entityName);
+        if (listener instanceof MetadataStatusListener) {
+            ((MetadataStatusListener) listener).afterRemoveEntity(this, entityName);
+        }
+    }
+
+    @Override
+    public Map<MetadataRole, List<String>> getMappedRoles() {
+        return delegate.getMappedRoles();
+    }
+}
@@ -520,7 +520,7 @@ public abstract class MetadataParser<T> {
                     StatusChange item = new StatusChange();
                     String d = getRequiredStringProperty(log, STR_DATE);
                     try {
-                        item.setDate(DateType.getDateFormat().parse(d));
+                        item.setDate(DateType.parseDate(d));
                     } catch (ParseException e) {
                         throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, d);
                     }
@@ -1008,7 +1008,7 @@ public abstract class MetadataParser<T> {
                     for (StatusChange x : changeLog) {
                         T log = newNode();
                         if (x.getDate() != null) {
-                            putString(log, STR_DATE, DateType.getDateFormat().format(x.getDate()));
+                            putString(log, STR_DATE, DateType.formatDate(x.getDate()));
                         }
                         if (x.getStatus() != null) {
                             putString(log, STR_VALUE, toString(x.getStatus()));
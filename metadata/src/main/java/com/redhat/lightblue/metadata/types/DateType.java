@@ -47,6 +47,31 @@ public final class DateType implements Type, Serializable {
         DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT"));
     }
 
+    /**
+     * Per-thread formatters used when a date cannot be handled by
+     * the fast parser and formatter
+     */
+    private static final ThreadLocal<DateFormat> THREAD_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return getDateFormat();
+        }
+    };
+
+    /**
+     * Length of a date string in DATE_FORMAT_STR layout, with a 4
+     * digit year and a numeric time zone, e.g. 20150101T10:20:30.123+0000
+     */
+    private static final int DATE_STR_LENGTH = 26;
+
+    private static final long MILLIS_PER_DAY = 24l * 60 * 60 * 1000;
+
+    /**
+     * Dates before the Gregorian calendar cutover are handled by
+     * SimpleDateFormat, which uses the Julian calendar for them
+     */
+    private static final int MIN_FAST_YEAR = 1583;
+
     /**
      * Returns a DateFormat instance using the DATE_FORMAT_STR in GMT. Clone of
      * the static internal variable, because SimpleDateFormat is not thread safe
@@ -55,6 +80,157 @@ public final class DateType implements Type, Serializable {
         return (DateFormat) DATE_FORMAT.clone();
     }
 
+    /**
+     * Formats the date using DATE_FORMAT_STR in GMT. This is thread
+     * safe, and does not create a DateFormat instance.
+     */
+    public static String formatDate(Date date) {
+        long millis = date.getTime();
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int millisOfDay = (int) (millis - days * MILLIS_PER_DAY);
+        // civil date from days since epoch
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        if (year < MIN_FAST_YEAR || year > 9999) {
+            return THREAD_FORMAT.get().format(date);
+        }
+        char[] buf = new char[DATE_STR_LENGTH];
+        put(buf, 0, year, 4);
+        put(buf, 4, month, 2);
+        put(buf, 6, day, 2);
+        buf[8] = 'T';
+        put(buf, 9, millisOfDay / 3600000, 2);
+        buf[11] = ':';
+        put(buf, 12, (millisOfDay / 60000) % 60, 2);
+        buf[14] = ':';
+        put(buf, 15, (millisOfDay / 1000) % 60, 2);
+        buf[17] = '.';
+        put(buf, 18, millisOfDay % 1000, 3);
+        buf[21] = '+';
+        put(buf, 22, 0, 4);
+        return new String(buf);
+    }
+
+    /**
+     * Parses a date in DATE_FORMAT_STR layout. This is thread safe. A
+     * string with exactly the DATE_FORMAT_STR layout is parsed
+     * without creating a DateFormat instance, anything else is parsed
+     * using SimpleDateFormat, so the accepted inputs are unchanged.
+     */
+    public static Date parseDate(String str) throws ParseException {
+        Date d = fastParse(str);
+        if (d == null) {
+            d = THREAD_FORMAT.get().parse(str);
+        }
+        return d;
+    }
+
+    /**
+     * Parses yyyyMMdd'T'HH:mm:ss.SSS+hhmm. Returns null if the string
+     * does not have exactly that layout, or if any of the fields is
+     * out of range, in which case the lenient SimpleDateFormat
+     * behavior is required.
+     */
+    private static Date fastParse(String s) {
+        if (s.length() != DATE_STR_LENGTH
+                || s.charAt(8) != 'T'
+                || s.charAt(11) != ':'
+                || s.charAt(14) != ':'
+                || s.charAt(17) != '.') {
+            return null;
+        }
+        char sign = s.charAt(21);
+        if (sign != '+' && sign != '-') {
+            return null;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 4, 2);
+        int day = digits(s, 6, 2);
+        int hour = digits(s, 9, 2);
+        int minute = digits(s, 12, 2);
+        int second = digits(s, 15, 2);
+        int millis = digits(s, 18, 3);
+        int tzHour = digits(s, 22, 2);
+        int tzMinute = digits(s, 24, 2);
+        if (year < MIN_FAST_YEAR || month < 1 || month > 12
+                || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23
+                || minute < 0 || minute > 59
+                || second < 0 || second > 59
+                || millis < 0
+                || tzHour < 0 || tzHour > 23
+                || tzMinute < 0 || tzMinute > 59) {
+            return null;
+        }
+        // days since epoch from civil date
+        int y = month <= 2 ? year - 1 : year;
+        long era = y / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097 + doe - 719468;
+        long offset = (tzHour * 60l + tzMinute) * 60000l;
+        if (sign == '-') {
+            offset = -offset;
+        }
+        return new Date(days * MILLIS_PER_DAY
+                + ((hour * 60l + minute) * 60l + second) * 1000l
+                + millis
+                - offset);
+    }
+
+    /**
+     * Returns the decimal value of n digits starting at index, or -1
+     * if any of the characters is not a digit
+     */
+    private static int digits(String s, int index, int n) {
+        int value = 0;
+        for (int i = index; i < index + n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void put(char[] buf, int index, int value, int n) {
+        for (int i = index + n - 1; i >= index; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            q--;
+        }
+        return q;
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -72,7 +248,7 @@ public final class DateType implements Type, Serializable {
 
     @Override
     public JsonNode toJson(JsonNodeFactory factory, Object obj) {
-        return factory.textNode(getDateFormat().format((Date) cast(obj)));
+        return factory.textNode(formatDate((Date) cast(obj)));
     }
 
     @Override
@@ -81,7 +257,7 @@ public final class DateType implements Type, Serializable {
             return null;
         } else  if (node.isValueNode()) {
             try {
-                return getDateFormat().parse(node.asText());
+                return parseDate(node.asText());
             } catch (ParseException e) {
                 throw Error.get(NAME, MetadataConstants.ERR_INCOMPATIBLE_VALUE, node.toString());
             }
@@ -94,12 +270,11 @@ public final class DateType implements Type, Serializable {
     public Object cast(Object obj) {
         Date value = null;
         if (obj != null) {
-            DateFormat fmt = getDateFormat();
             if (obj instanceof Date) {
                 value = (Date) obj;
             } else if (obj instanceof String) {
                 try {
-                    value = fmt.parse((String) obj);
+                    value = parseDate((String) obj);
                 } catch (ParseException e) {
                     throw Error.get(NAME, MetadataConstants.ERR_INCOMPATIBLE_VALUE, obj.toString());
                 }
@@ -121,6 +296,9 @@ public final class DateType implements Type, Serializable {
             }
         } else if (v2 == null) {
             return 1;
+        } else if (v1 instanceof Date && v2 instanceof Date) {
+            // Already parsed, no need to cast
+            return ((Date) v1).compareTo((Date) v2);
         } else {
             return ((Comparable) cast(v1)).compareTo(cast(v2));
         }
@@ -0,0 +1,38 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.types;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Generates random (version 4) UUIDs using the shared secure random number
+ * generator of {@link UUID}. This is the default UID generator.
+ */
+public class RandomUIDGenerator implements UIDGenerator, Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    public static final String NAME = "random";
+
+    @Override
+    public String newValue() {
+        return UUID.randomUUID().toString();
+    }
+}
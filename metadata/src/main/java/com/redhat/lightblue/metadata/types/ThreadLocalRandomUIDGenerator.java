@@ -0,0 +1,48 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.types;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Generates random (version 4) UUIDs using a SecureRandom per thread.
+ * Threads do not contend on the shared generator used by
+ * <code>UUID.randomUUID()</code>, and all 122 random bits of the value
+ * come from a generator with enough state to produce them.
+ */
+public class ThreadLocalRandomUIDGenerator implements UIDGenerator, Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    public static final String NAME = "threadLocalRandom";
+
+    @Override
+    public String newValue() {
+        SecureRandom rnd = ThreadLocalSecureRandom.current();
+        long msb = rnd.nextLong();
+        long lsb = rnd.nextLong();
+        // Version 4
+        msb = (msb & 0xffffffffffff0fffl) | 0x0000000000004000l;
+        // IETF variant
+        lsb = (lsb & 0x3fffffffffffffffl) | 0x8000000000000000l;
+        return new UUID(msb, lsb).toString();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.types;
+
+import java.security.SecureRandom;
+
+/**
+ * Per-thread SecureRandom instances. Each thread has its own
+ * generator, so threads do not contend on a shared one, and every
+ * generator has enough state to produce 128 bits of randomness.
+ */
+final class ThreadLocalSecureRandom {
+
+    private static final ThreadLocal<SecureRandom> RANDOM = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    private ThreadLocalSecureRandom() {
+    }
+
+    /**
+     * Returns the generator of the current thread
+     */
+    static SecureRandom current() {
+        return RANDOM.get();
+    }
+}
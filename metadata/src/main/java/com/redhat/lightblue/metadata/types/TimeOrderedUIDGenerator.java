@@ -0,0 +1,66 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.types;
+
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered identifiers in UUID format. The first 48 bits are
+ * the time in milliseconds, followed by a 12 bit sequence number, and 62
+ * random bits from a SecureRandom per thread. Values generated by the same generator are strictly increasing
+ * in string order, so new documents are inserted at the end of the indexes
+ * on UID fields.
+ *
+ * If more than 4096 values are requested in the same millisecond, the
+ * generator moves its clock forward, so the values stay unique and ordered.
+ */
+public class TimeOrderedUIDGenerator implements UIDGenerator, Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    public static final String NAME = "timeOrdered";
+
+    private static final int SEQUENCE_BITS = 12;
+
+    /**
+     * Time in milliseconds shifted left by SEQUENCE_BITS, plus the sequence
+     * number of the last generated value
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    @Override
+    public String newValue() {
+        long now = System.currentTimeMillis() << SEQUENCE_BITS;
+        long prev;
+        long next;
+        do {
+            prev = last.get();
+            next = now > prev ? now : prev + 1;
+        } while (!last.compareAndSet(prev, next));
+        // 48 bits of time, 4 bits of version (7), 12 bits of sequence
+        long msb = ((next >>> SEQUENCE_BITS) << 16)
+                | 0x7000l
+                | (next & ((1l << SEQUENCE_BITS) - 1));
+        // IETF variant, followed by random bits
+        long lsb = (ThreadLocalSecureRandom.current().nextLong() & 0x3fffffffffffffffl) | 0x8000000000000000l;
+        return new UUID(msb, lsb).toString();
+    }
+}
@@ -26,7 +26,6 @@ import com.redhat.lightblue.metadata.Type;
 import com.redhat.lightblue.util.Error;
 
 import java.io.Serializable;
-import java.util.UUID;
 
 public final class UIDType implements Type, Serializable {
 
@@ -35,6 +34,8 @@ public final class UIDType implements Type, Serializable {
     public static final Type TYPE = new UIDType();
     public static final String NAME = "uid";
 
+    private static volatile UIDGenerator generator = new RandomUIDGenerator();
+
     @Override
     public String getName() {
         return NAME;
@@ -107,8 +108,26 @@ public final class UIDType implements Type, Serializable {
         return NAME;
     }
 
+    /**
+     * Returns a new UID value using the current UID generator
+     */
     public static String newValue() {
-        return UUID.randomUUID().toString();
+        return generator.newValue();
+    }
+
+    /**
+     * Sets the generator used for new UID values. If null, the default random
+     * UUID generator is used.
+     */
+    public static void setGenerator(UIDGenerator g) {
+        generator = g == null ? new RandomUIDGenerator() : g;
+    }
+
+    /**
+     * Returns the generator used for new UID values
+     */
+    public static UIDGenerator getGenerator() {
+        return generator;
     }
 
     private UIDType() {
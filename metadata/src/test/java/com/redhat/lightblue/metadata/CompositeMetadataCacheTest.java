@@ -0,0 +1,183 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.metadata.parser.DataStoreParser;
+import com.redhat.lightblue.metadata.parser.Extensions;
+import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.parser.MetadataParser;
+import com.redhat.lightblue.metadata.test.DatabaseMetadata;
+import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+
+public class CompositeMetadataCacheTest extends AbstractJsonNodeTest {
+
+    private static final JsonNodeFactory factory = JsonNodeFactory.withExactBigDecimals(true);
+
+    public class TestDataStoreParser<T> implements DataStoreParser<T> {
+
+        @Override
+        public DataStore parse(String name, MetadataParser<T> p, T node) {
+            return new DataStore() {
+                public String getBackend() {
+                    return "mongo";
+                }
+            };
+        }
+
+        @Override
+        public void convert(MetadataParser<T> p, T emptyNode, DataStore object) {
+        }
+
+        @Override
+        public String getDefaultName() {
+            return "mongo";
+        }
+    }
+
+    private EntityMetadata getMd(String fname) {
+        try {
+            JsonNode node = loadJsonNode(fname);
+            Extensions<JsonNode> extensions = new Extensions<>();
+            extensions.addDefaultExtensions();
+            extensions.registerDataStoreParser("mongo", new TestDataStoreParser<JsonNode>());
+            JSONMetadataParser parser = new JSONMetadataParser(extensions, new DefaultTypes(), factory);
+            return parser.parseEntityMetadata(node);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Records the reference decisions, and the retrieved metadata
+     */
+    public class GMD extends AbstractGetMetadata {
+        final Map<Path, Boolean> references = new LinkedHashMap<>();
+        final Map<String, EntityMetadata> metadata = new HashMap<>();
+
+        public GMD(String query) throws Exception {
+            if (query != null) {
+                add(QueryExpression.fromJson(JsonUtils.json(query.replace('\'', '\"'))));
+            }
+        }
+
+        @Override
+        public boolean isRequired(Path injectionField) {
+            boolean ret = super.isRequired(injectionField);
+            references.put(injectionField, ret);
+            return ret;
+        }
+
+        @Override
+        protected EntityMetadata retrieveMetadata(Path injectionField,
+                                                  String entityName,
+                                                  String version) {
+            EntityMetadata md = getMd("composite/" + entityName + ".json");
+            metadata.put(entityName, md);
+            return md;
+        }
+    }
+
+    private CompositeMetadataCache.Entry build(CompositeMetadataCache cache, String query) throws Exception {
+        GMD gmd = new GMD(query);
+        EntityMetadata md = getMd("composite/A.json");
+        gmd.metadata.put("A", md);
+        CompositeMetadata cmd = CompositeMetadata.buildCompositeMetadata(md, gmd);
+        CompositeMetadataCache.Entry entry = new CompositeMetadataCache.Entry(gmd.references, cmd, gmd.metadata, null);
+        cache.put("A", "1.0.0", entry);
+        return entry;
+    }
+
+    @Test
+    public void hit_with_same_references() throws Exception {
+        CompositeMetadataCache cache = new CompositeMetadataCache();
+        CompositeMetadataCache.Entry entry = build(cache, "{'field':'b.0.field1','op':'=','rvalue':'x'}");
+        Assert.assertNotNull(entry.getMetadata().getChildMetadata(new Path("b")));
+
+        // Different query, but requires the same references
+        Assert.assertSame(entry, cache.get("A", "1.0.0", new GMD("{'field':'b.0.field1','op':'=','rvalue':'y'}")));
+        Assert.assertNull(cache.get("A", "2.0.0", new GMD("{'field':'b.0.field1','op':'=','rvalue':'y'}")));
+    }
+
+    @Test
+    public void miss_with_different_references() throws Exception {
+        CompositeMetadataCache cache = new CompositeMetadataCache();
+        CompositeMetadataCache.Entry withB = build(cache, "{'field':'b.0.field1','op':'=','rvalue':'x'}");
+        Assert.assertNull(cache.get("A", "1.0.0", new GMD(null)));
+
+        CompositeMetadataCache.Entry withoutB = build(cache, null);
+        Assert.assertNull(withoutB.getMetadata().getChildMetadata(new Path("b")));
+        Assert.assertSame(withoutB, cache.get("A", "1.0.0", new GMD(null)));
+        Assert.assertSame(withB, cache.get("A", "1.0.0", new GMD("{'field':'b.0.field1','op':'=','rvalue':'z'}")));
+    }
+
+    @Test
+    public void invalidate_referenced_entity() throws Exception {
+        CompositeMetadataCache cache = new CompositeMetadataCache();
+        build(cache, "{'field':'b.0.field1','op':'=','rvalue':'x'}");
+        cache.invalidate("C");
+        Assert.assertNotNull(cache.get("A", "1.0.0", new GMD("{'field':'b.0.field1','op':'=','rvalue':'x'}")));
+        cache.invalidate("B");
+        Assert.assertNull(cache.get("A", "1.0.0", new GMD("{'field':'b.0.field1','op':'=','rvalue':'x'}")));
+    }
+
+    @Test
+    public void expired_entries_are_not_returned() throws Exception {
+        CompositeMetadataCache cache = new CompositeMetadataCache(1);
+        build(cache, null);
+        Thread.sleep(10);
+        Assert.assertNull(cache.get("A", "1.0.0", new GMD(null)));
+    }
+
+    @Test
+    public void status_change_through_notifying_metadata_invalidates() throws Exception {
+        CompositeMetadataCache cache = new CompositeMetadataCache();
+        Metadata md = new NotifyingMetadata(new DatabaseMetadata() {
+            @Override
+            public void setMetadataStatus(String entityName, String version, MetadataStatus newStatus, String comment) {
+            }
+
+            @Override
+            public void removeEntity(String entityName) {
+            }
+        }, cache);
+        String q = "{'field':'b.0.field1','op':'=','rvalue':'x'}";
+        build(cache, q);
+        md.setMetadataStatus("C", "1.0.0", MetadataStatus.DISABLED, null);
+        Assert.assertNotNull(cache.get("A", "1.0.0", new GMD(q)));
+        md.setMetadataStatus("B", "1.0.0", MetadataStatus.DISABLED, null);
+        Assert.assertNull(cache.get("A", "1.0.0", new GMD(q)));
+
+        build(cache, q);
+        md.removeEntity("A");
+        Assert.assertNull(cache.get("A", "1.0.0", new GMD(q)));
+    }
+}
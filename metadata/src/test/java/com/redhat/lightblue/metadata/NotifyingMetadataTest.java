@@ -0,0 +1,37 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.test.DatabaseMetadata;
+
+public class NotifyingMetadataTest {
+
+    @Test
+    public void unwrap_returns_the_wrapped_implementation() {
+        DatabaseMetadata db = new DatabaseMetadata();
+        Metadata md = new NotifyingMetadata(new NotifyingMetadata(db, null), null);
+        Assert.assertSame(db, NotifyingMetadata.unwrap(md, DatabaseMetadata.class));
+        Assert.assertSame(md, NotifyingMetadata.unwrap(md, Metadata.class));
+        Assert.assertSame(db, NotifyingMetadata.unwrap(db, DatabaseMetadata.class));
+        Assert.assertNull(NotifyingMetadata.unwrap(md, AbstractMetadata.class));
+    }
+}
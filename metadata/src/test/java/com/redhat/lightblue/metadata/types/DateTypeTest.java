@@ -171,4 +171,39 @@ public class DateTypeTest {
         assertEquals(dateType.toString(), DateType.NAME);
     }
 
+    @Test
+    public void testFormatAndParseMatchSimpleDateFormat() throws Exception {
+        DateFormat gmt = DateType.getDateFormat();
+        DateFormat local = new SimpleDateFormat(DateType.DATE_FORMAT_STR);
+        local.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+        java.util.Random rnd = new java.util.Random(1);
+        long[] fixed = {0l, -1l, 1l, 951782400000l, 951868799999l, -12219292800000l, 253402300799999l};
+        for (int i = 0; i < 10000; i++) {
+            Date d = new Date(i < fixed.length ? fixed[i] : Math.abs(rnd.nextLong() % 253402300799999l) - 62135596800000l);
+            String s = gmt.format(d);
+            assertEquals(s, DateType.formatDate(d));
+            assertEquals(d, DateType.parseDate(s));
+            if (d.getTime() >= 0) {
+                // Older dates use local mean time, which has second offsets
+                assertEquals(d, DateType.parseDate(local.format(d)));
+            }
+        }
+    }
+
+    @Test
+    public void testParseLenientDate() throws Exception {
+        // Not handled by the fast parser, must be the same as SimpleDateFormat
+        String s = "20150230T25:00:00.000+0000";
+        assertEquals(DateType.getDateFormat().parse(s), DateType.parseDate(s));
+    }
+
+    @Test
+    public void testCompareDates() {
+        Date d1 = new Date(1000);
+        Date d2 = new Date(2000);
+        assertTrue(dateType.compare(d1, d2) < 0);
+        assertTrue(dateType.compare(d2, DateType.formatDate(d1)) > 0);
+        assertEquals(0, dateType.compare(DateType.formatDate(d1), d1));
+    }
+
 }
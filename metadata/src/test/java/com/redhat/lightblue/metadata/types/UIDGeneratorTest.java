@@ -0,0 +1,83 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.types;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UIDGeneratorTest {
+
+    @After
+    public void tearDown() {
+        UIDType.setGenerator(null);
+    }
+
+    private void checkUnique(UIDGenerator g, int version) {
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            String s = g.newValue();
+            UUID u = UUID.fromString(s);
+            Assert.assertEquals(s, u.toString());
+            Assert.assertEquals(version, u.version());
+            Assert.assertEquals(2, u.variant());
+            Assert.assertTrue(values.add(s));
+        }
+    }
+
+    @Test
+    public void randomTest() {
+        checkUnique(new RandomUIDGenerator(), 4);
+    }
+
+    @Test
+    public void threadLocalRandomTest() {
+        checkUnique(new ThreadLocalRandomUIDGenerator(), 4);
+    }
+
+    @Test
+    public void timeOrderedTest() {
+        checkUnique(new TimeOrderedUIDGenerator(), 7);
+    }
+
+    @Test
+    public void timeOrderedIsMonotonicTest() {
+        UIDGenerator g = new TimeOrderedUIDGenerator();
+        String prev = g.newValue();
+        // More than 4096 values per millisecond overflows into the next millisecond
+        for (int i = 0; i < 20000; i++) {
+            String s = g.newValue();
+            Assert.assertTrue(prev.compareTo(s) < 0);
+            prev = s;
+        }
+    }
+
+    @Test
+    public void setGeneratorTest() {
+        Assert.assertTrue(UIDType.getGenerator() instanceof RandomUIDGenerator);
+        UIDType.setGenerator(new TimeOrderedUIDGenerator());
+        Assert.assertEquals(7, UUID.fromString(UIDType.newValue()).version());
+        UIDType.setGenerator(null);
+        Assert.assertTrue(UIDType.getGenerator() instanceof RandomUIDGenerator);
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.query;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A canonical fingerprint of a query, projection, sort, or update
+ * expression. The fingerprint identifies the shape of the expression:
+ * two expressions that differ only in the literal values they contain
+ * have the same fingerprint. The literal values are extracted as
+ * positional parameters.
+ *
+ * The operands of <code>$and</code> and <code>$or</code> are
+ * order-normalized, so <code>{$and:[A,B]}</code> and
+ * <code>{$and:[B,A]}</code> have the same fingerprint, and their
+ * parameters are listed in the same order. The order of projection
+ * lists, sort keys and update lists is significant, and is preserved.
+ *
+ * The parameters are {@link Value} instances for single values, lists
+ * of {@link Value} for list operators (so <code>$in</code> lists of
+ * different lengths have the same shape), regular expression strings,
+ * and integers for array range projections.
+ *
+ * The shape is hashed into 64 bits without building an intermediate
+ * representation, so fingerprints are cheap enough to compute for
+ * every request. Fingerprints are compared by hash.
+ */
+public final class QueryFingerprint implements Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325l;
+    private static final long FNV_PRIME = 0x100000001b3l;
+
+    private static final int T_NULL = 1;
+    private static final int T_VALUE_CMP = 2;
+    private static final int T_FIELD_CMP = 3;
+    private static final int T_REGEX = 4;
+    private static final int T_NARY_VALUE = 5;
+    private static final int T_NARY_FIELD = 6;
+    private static final int T_ARRAY_CONTAINS = 7;
+    private static final int T_UNARY = 8;
+    private static final int T_NARY_LOGICAL = 9;
+    private static final int T_ARRAY_MATCH = 10;
+    private static final int T_ALL_MATCH = 11;
+    private static final int T_FIELD_PROJECTION = 12;
+    private static final int T_RANGE_PROJECTION = 13;
+    private static final int T_MATCH_PROJECTION = 14;
+    private static final int T_PROJECTION_LIST = 15;
+    private static final int T_SORT_KEY = 16;
+    private static final int T_COMPOSITE_SORT = 17;
+    private static final int T_UPDATE_LIST = 18;
+    private static final int T_SET = 19;
+    private static final int T_UNSET = 20;
+    private static final int T_ARRAY_ADD = 21;
+    private static final int T_FOREACH = 22;
+    private static final int T_REMOVE_ELEMENT = 23;
+    private static final int T_RVALUE = 24;
+
+    private final long hash;
+    private final List<Object> parameters;
+
+    private QueryFingerprint(long hash, List<Object> parameters) {
+        this.hash = hash;
+        this.parameters = Collections.unmodifiableList(parameters);
+    }
+
+    /**
+     * Returns the fingerprint of a query. The query can be null.
+     */
+    public static QueryFingerprint of(QueryExpression q) {
+        Fingerprinter f = new Fingerprinter();
+        f.query(q);
+        return f.get();
+    }
+
+    /**
+     * Returns the fingerprint of a projection. The projection can be null.
+     */
+    public static QueryFingerprint of(Projection p) {
+        Fingerprinter f = new Fingerprinter();
+        f.projection(p);
+        return f.get();
+    }
+
+    /**
+     * Returns the fingerprint of a sort. The sort can be null.
+     */
+    public static QueryFingerprint of(Sort s) {
+        Fingerprinter f = new Fingerprinter();
+        f.sort(s);
+        return f.get();
+    }
+
+    /**
+     * Returns the fingerprint of an update expression. The update
+     * expression can be null.
+     */
+    public static QueryFingerprint of(UpdateExpression u) {
+        Fingerprinter f = new Fingerprinter();
+        f.update(u);
+        return f.get();
+    }
+
+    /**
+     * Returns the 64-bit hash of the expression shape
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the literal values of the expression, in canonical order
+     */
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof QueryFingerprint && ((QueryFingerprint) o).hash == hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Returns the hash as a hexadecimal string
+     */
+    @Override
+    public String toString() {
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * Walks the expression, accumulating the shape hash in
+     * <code>h</code>, and the literal values in <code>params</code>
+     */
+    private static final class Fingerprinter extends QueryIteratorSkeleton<Void> {
+        private long h = FNV_OFFSET;
+        private final List<Object> params = new ArrayList<>();
+
+        QueryFingerprint get() {
+            return new QueryFingerprint(h, params);
+        }
+
+        private void mix(long v) {
+            h = (h ^ v) * FNV_PRIME;
+        }
+
+        private void mix(String s) {
+            if (s == null) {
+                mix(0);
+            } else {
+                int n = s.length();
+                for (int i = 0; i < n; i++) {
+                    mix(s.charAt(i));
+                }
+                mix(n);
+            }
+        }
+
+        private void mix(Path p) {
+            if (p == null) {
+                mix(0);
+            } else {
+                int n = p.numSegments();
+                for (int i = 0; i < n; i++) {
+                    mix(p.head(i));
+                }
+                mix(n);
+            }
+        }
+
+        private void mix(Object op) {
+            mix(op == null ? null : op.toString());
+        }
+
+        void query(QueryExpression q) {
+            if (q == null) {
+                mix(T_NULL);
+            } else {
+                iterate(q);
+            }
+        }
+
+        @Override
+        protected Void itrAllMatchExpression(AllMatchExpression q, Path context) {
+            mix(T_ALL_MATCH);
+            return null;
+        }
+
+        @Override
+        protected Void itrValueComparisonExpression(ValueComparisonExpression q, Path context) {
+            mix(T_VALUE_CMP);
+            mix(q.getField());
+            mix((Object) q.getOp());
+            params.add(q.getRvalue());
+            return null;
+        }
+
+        @Override
+        protected Void itrFieldComparisonExpression(FieldComparisonExpression q, Path context) {
+            mix(T_FIELD_CMP);
+            mix(q.getField());
+            mix((Object) q.getOp());
+            mix(q.getRfield());
+            return null;
+        }
+
+        @Override
+        protected Void itrRegexMatchExpression(RegexMatchExpression q, Path context) {
+            mix(T_REGEX);
+            mix(q.getField());
+            mix((q.isCaseInsensitive() ? 1 : 0)
+                    | (q.isMultiline() ? 2 : 0)
+                    | (q.isExtended() ? 4 : 0)
+                    | (q.isDotAll() ? 8 : 0));
+            params.add(q.getRegex());
+            return null;
+        }
+
+        @Override
+        protected Void itrNaryValueRelationalExpression(NaryValueRelationalExpression q, Path context) {
+            mix(T_NARY_VALUE);
+            mix(q.getField());
+            mix((Object) q.getOp());
+            params.add(q.getValues());
+            return null;
+        }
+
+        @Override
+        protected Void itrNaryFieldRelationalExpression(NaryFieldRelationalExpression q, Path context) {
+            mix(T_NARY_FIELD);
+            mix(q.getField());
+            mix((Object) q.getOp());
+            mix(q.getRfield());
+            return null;
+        }
+
+        @Override
+        protected Void itrArrayContainsExpression(ArrayContainsExpression q, Path context) {
+            mix(T_ARRAY_CONTAINS);
+            mix(q.getArray());
+            mix((Object) q.getOp());
+            params.add(q.getValues());
+            return null;
+        }
+
+        @Override
+        protected Void itrUnaryLogicalExpression(UnaryLogicalExpression q, Path context) {
+            mix(T_UNARY);
+            mix((Object) q.getOp());
+            iterate(q.getQuery(), context);
+            return null;
+        }
+
+        @Override
+        protected Void itrNaryLogicalExpression(NaryLogicalExpression q, Path context) {
+            List<QueryExpression> queries = q.getQueries();
+            int n = queries.size();
+            long saved = h;
+            // Fingerprint each operand separately, then combine them in hash order
+            long[] hashes = new long[n];
+            int[] paramStart = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                paramStart[i] = params.size();
+                h = FNV_OFFSET;
+                iterate(queries.get(i), context);
+                hashes[i] = h;
+            }
+            paramStart[n] = params.size();
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            sort(order, hashes);
+            h = saved;
+            mix(T_NARY_LOGICAL);
+            mix((Object) q.getOp());
+            mix(n);
+            List<Object> reordered = new ArrayList<>(paramStart[n] - paramStart[0]);
+            for (Integer i : order) {
+                mix(hashes[i]);
+                reordered.addAll(params.subList(paramStart[i], paramStart[i + 1]));
+            }
+            for (int i = 0; i < reordered.size(); i++) {
+                params.set(paramStart[0] + i, reordered.get(i));
+            }
+            return null;
+        }
+
+        /**
+         * Insertion sort of operand indexes by hash. The number of
+         * operands is usually small. Operands with the same hash keep
+         * their order.
+         */
+        private static void sort(Integer[] order, long[] hashes) {
+            for (int i = 1; i < order.length; i++) {
+                Integer x = order[i];
+                int j = i - 1;
+                while (j >= 0 && hashes[order[j]] > hashes[x]) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = x;
+            }
+        }
+
+        @Override
+        protected Void itrArrayMatchExpression(ArrayMatchExpression q, Path context) {
+            mix(T_ARRAY_MATCH);
+            mix(q.getArray());
+            iterate(q.getElemMatch(), context);
+            return null;
+        }
+
+        void projection(Projection p) {
+            if (p == null) {
+                mix(T_NULL);
+            } else if (p instanceof FieldProjection) {
+                FieldProjection x = (FieldProjection) p;
+                mix(T_FIELD_PROJECTION);
+                mix(x.getField());
+                mix((x.isInclude() ? 1 : 0) | (x.isRecursive() ? 2 : 0));
+            } else if (p instanceof ArrayProjection) {
+                ArrayProjection x = (ArrayProjection) p;
+                if (x instanceof ArrayRangeProjection) {
+                    mix(T_RANGE_PROJECTION);
+                    params.add(((ArrayRangeProjection) x).getFrom());
+                    params.add(((ArrayRangeProjection) x).getTo());
+                } else {
+                    mix(T_MATCH_PROJECTION);
+                    query(((ArrayQueryMatchProjection) x).getMatch());
+                }
+                mix(x.getField());
+                mix(x.isInclude() ? 1 : 0);
+                projection(x.getProject());
+                sort(x.getSort());
+            } else if (p instanceof ProjectionList) {
+                List<Projection> items = ((ProjectionList) p).getItems();
+                mix(T_PROJECTION_LIST);
+                mix(items.size());
+                for (Projection x : items) {
+                    projection(x);
+                }
+            } else {
+                throw new IllegalArgumentException("Unrecognized projection subclass:" + p.getClass().getName());
+            }
+        }
+
+        void sort(Sort s) {
+            if (s == null) {
+                mix(T_NULL);
+            } else if (s instanceof SortKey) {
+                mix(T_SORT_KEY);
+                mix(((SortKey) s).getField());
+                mix(((SortKey) s).isDesc() ? 1 : 0);
+            } else if (s instanceof CompositeSortKey) {
+                List<SortKey> keys = ((CompositeSortKey) s).getKeys();
+                mix(T_COMPOSITE_SORT);
+                mix(keys.size());
+                for (SortKey k : keys) {
+                    sort(k);
+                }
+            } else {
+                throw new IllegalArgumentException("Unrecognized sort subclass:" + s.getClass().getName());
+            }
+        }
+
+        void update(UpdateExpression u) {
+            if (u == null) {
+                mix(T_NULL);
+            } else if (u instanceof UpdateExpressionList) {
+                List<PartialUpdateExpression> list = ((UpdateExpressionList) u).getList();
+                mix(T_UPDATE_LIST);
+                mix(list.size());
+                for (PartialUpdateExpression x : list) {
+                    update(x);
+                }
+            } else if (u instanceof SetExpression) {
+                List<FieldAndRValue> fields = ((SetExpression) u).getFields();
+                mix(T_SET);
+                mix((Object) ((SetExpression) u).getOp());
+                mix(fields.size());
+                for (FieldAndRValue x : fields) {
+                    mix(x.getField());
+                    rvalue(x.getRValue());
+                }
+            } else if (u instanceof UnsetExpression) {
+                List<Path> fields = ((UnsetExpression) u).getFields();
+                mix(T_UNSET);
+                mix(fields.size());
+                for (Path x : fields) {
+                    mix(x);
+                }
+            } else if (u instanceof ArrayAddExpression) {
+                List<RValueExpression> values = ((ArrayAddExpression) u).getValues();
+                mix(T_ARRAY_ADD);
+                mix((Object) ((ArrayAddExpression) u).getOp());
+                mix(((ArrayAddExpression) u).getField());
+                mix(values.size());
+                for (RValueExpression x : values) {
+                    rvalue(x);
+                }
+            } else if (u instanceof ForEachExpression) {
+                ForEachExpression x = (ForEachExpression) u;
+                mix(T_FOREACH);
+                mix(x.getField());
+                query(x.getQuery());
+                update(x.getUpdate());
+            } else if (u instanceof RemoveElementExpression) {
+                mix(T_REMOVE_ELEMENT);
+            } else {
+                throw new IllegalArgumentException("Unrecognized update subclass:" + u.getClass().getName());
+            }
+        }
+
+        private void rvalue(RValueExpression r) {
+            mix(T_RVALUE);
+            if (r == null) {
+                mix(T_NULL);
+            } else {
+                mix((Object) r.getType());
+                switch (r.getType()) {
+                    case _value:
+                        params.add(r.getValue());
+                        break;
+                    case _dereference:
+                        mix(r.getPath());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+}
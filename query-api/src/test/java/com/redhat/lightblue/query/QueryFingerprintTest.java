@@ -0,0 +1,112 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.query;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.lightblue.util.JsonUtils;
+
+public class QueryFingerprintTest {
+
+    private static QueryExpression q(String s) throws Exception {
+        return QueryExpression.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    private static Projection p(String s) throws Exception {
+        return Projection.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    private static Sort s(String s) throws Exception {
+        return Sort.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    private static UpdateExpression u(String s) throws Exception {
+        return UpdateExpression.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    @Test
+    public void values_are_parameters() throws Exception {
+        QueryFingerprint f1 = QueryFingerprint.of(q("{'field':'x','op':'=','rvalue':1}"));
+        QueryFingerprint f2 = QueryFingerprint.of(q("{'field':'x','op':'=','rvalue':'abc'}"));
+        Assert.assertEquals(f1, f2);
+        Assert.assertEquals(f1.toString(), f2.toString());
+        Assert.assertEquals(1, f1.getParameters().size());
+        Assert.assertEquals("abc", ((Value) f2.getParameters().get(0)).getValue());
+
+        Assert.assertNotEquals(f1, QueryFingerprint.of(q("{'field':'y','op':'=','rvalue':1}")));
+        Assert.assertNotEquals(f1, QueryFingerprint.of(q("{'field':'x','op':'!=','rvalue':1}")));
+        Assert.assertNotEquals(f1, QueryFingerprint.of(q("{'field':'x','op':'=','rfield':'y'}")));
+    }
+
+    @Test
+    public void in_lists_of_different_lengths() throws Exception {
+        Assert.assertEquals(QueryFingerprint.of(q("{'field':'x','op':'$in','values':[1,2]}")),
+                QueryFingerprint.of(q("{'field':'x','op':'$in','values':[1,2,3,4]}")));
+    }
+
+    @Test
+    public void logical_operands_are_order_normalized() throws Exception {
+        QueryFingerprint f1 = QueryFingerprint.of(q("{'$and':[{'field':'x','op':'=','rvalue':1},{'field':'y','op':'$in','values':[2,3]}]}"));
+        QueryFingerprint f2 = QueryFingerprint.of(q("{'$and':[{'field':'y','op':'$in','values':[2,3]},{'field':'x','op':'=','rvalue':1}]}"));
+        Assert.assertEquals(f1, f2);
+        Assert.assertEquals(f1.getParameters().toString(), f2.getParameters().toString());
+        Assert.assertNotEquals(f1, QueryFingerprint.of(q("{'$or':[{'field':'y','op':'$in','values':[2,3]},{'field':'x','op':'=','rvalue':1}]}")));
+    }
+
+    @Test
+    public void nested_queries() throws Exception {
+        QueryFingerprint f1 = QueryFingerprint.of(q("{'array':'arr','elemMatch':{'$not':{'field':'x','op':'=','rvalue':1}}}"));
+        QueryFingerprint f2 = QueryFingerprint.of(q("{'array':'arr','elemMatch':{'$not':{'field':'x','op':'=','rvalue':5}}}"));
+        Assert.assertEquals(f1, f2);
+        Assert.assertNotEquals(f1, QueryFingerprint.of(q("{'array':'arr','elemMatch':{'field':'x','op':'=','rvalue':1}}")));
+        Assert.assertEquals(QueryFingerprint.of(q("{'field':'x','regex':'a.*'}")), QueryFingerprint.of(q("{'field':'x','regex':'b'}")));
+        Assert.assertNotEquals(QueryFingerprint.of(q("{'field':'x','regex':'a.*'}")), QueryFingerprint.of(q("{'field':'x','regex':'a.*','caseInsensitive':true}")));
+        Assert.assertEquals(QueryFingerprint.of((QueryExpression) null), QueryFingerprint.of((QueryExpression) null));
+    }
+
+    @Test
+    public void projections() throws Exception {
+        Assert.assertEquals(QueryFingerprint.of(p("{'field':'arr','range':[1,2],'project':{'field':'*'}}")),
+                QueryFingerprint.of(p("{'field':'arr','range':[5,8],'project':{'field':'*'}}")));
+        Assert.assertNotEquals(QueryFingerprint.of(p("[{'field':'a'},{'field':'b','include':false}]")),
+                QueryFingerprint.of(p("[{'field':'b','include':false},{'field':'a'}]")));
+        Assert.assertNotEquals(QueryFingerprint.of(p("{'field':'a','recursive':true}")),
+                QueryFingerprint.of(p("{'field':'a'}")));
+    }
+
+    @Test
+    public void sorts() throws Exception {
+        Assert.assertEquals(QueryFingerprint.of(s("[{'a':'$asc'},{'b':'$desc'}]")), QueryFingerprint.of(s("[{'a':'$asc'},{'b':'$desc'}]")));
+        Assert.assertNotEquals(QueryFingerprint.of(s("[{'a':'$asc'},{'b':'$desc'}]")), QueryFingerprint.of(s("[{'b':'$desc'},{'a':'$asc'}]")));
+        Assert.assertNotEquals(QueryFingerprint.of(s("{'a':'$asc'}")), QueryFingerprint.of(s("{'a':'$desc'}")));
+    }
+
+    @Test
+    public void updates() throws Exception {
+        QueryFingerprint f1 = QueryFingerprint.of(u("{'$set':{'a':1,'b':{'$valueof':'c'}}}"));
+        QueryFingerprint f2 = QueryFingerprint.of(u("{'$set':{'a':2,'b':{'$valueof':'c'}}}"));
+        Assert.assertEquals(f1, f2);
+        Assert.assertEquals(1, f1.getParameters().size());
+        Assert.assertNotEquals(f1, QueryFingerprint.of(u("{'$set':{'a':1,'b':{'$valueof':'d'}}}")));
+        Assert.assertNotEquals(f1, QueryFingerprint.of(u("{'$add':{'a':1,'b':{'$valueof':'c'}}}")));
+        Assert.assertEquals(QueryFingerprint.of(u("{'$foreach':{'arr':{'field':'x','op':'=','rvalue':1},'$update':'$remove'}}")),
+                QueryFingerprint.of(u("{'$foreach':{'arr':{'field':'x','op':'=','rvalue':2},'$update':'$remove'}}")));
+    }
+}
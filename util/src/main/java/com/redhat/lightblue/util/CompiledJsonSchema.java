@@ -0,0 +1,696 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
+
+/**
+ * A JSON schema compiled into a tree of structural checks. The compiled
+ * schema only tells whether a document is valid, it doesn't produce
+ * diagnostics. Use the JsonSchema validator to get the validation errors for
+ * an invalid document.
+ *
+ * Only a subset of JSON schema draft-04 is supported: type, properties,
+ * patternProperties, additionalProperties, required, min/maxProperties,
+ * items, min/maxItems, uniqueItems, min/maxLength, pattern, regex format,
+ * minimum, maximum, enum, allOf, anyOf, oneOf, not, and $ref to classpath
+ * resources. If a schema, or any schema it references, uses anything else,
+ * {@link #compile(String)} returns null. References that cannot be resolved
+ * fail every document reaching them.
+ */
+public final class CompiledJsonSchema {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledJsonSchema.class);
+
+    private static final String RESOURCE_SCHEME = "resource";
+
+    private static final Set<String> ANNOTATIONS = new HashSet<>(Arrays.asList("$schema", "id", "description", "title", "default", "definitions", "copyright"));
+
+    private static final Set<String> TYPES = new HashSet<>(Arrays.asList("null", "boolean", "object", "array", "number", "integer", "string"));
+
+    private final Check root;
+
+    private CompiledJsonSchema(Check root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns true if the document is valid according to the schema
+     */
+    public boolean isValid(JsonNode doc) {
+        return root.check(doc);
+    }
+
+    /**
+     * Compiles the schema in the given classpath resource. Returns null if
+     * the schema uses a feature that is not supported.
+     */
+    public static CompiledJsonSchema compile(String resourceName) throws IOException {
+        try {
+            Compiler c = new Compiler();
+            return new CompiledJsonSchema(c.ref(new URI(RESOURCE_SCHEME, null, "/" + resourceName, null)));
+        } catch (UnsupportedSchemaException e) {
+            LOGGER.debug("Cannot compile {}: {}", resourceName, e.getMessage());
+            return null;
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(resourceName, e);
+        }
+    }
+
+    /**
+     * Thrown when the schema contains something the compiler doesn't support
+     */
+    private static final class UnsupportedSchemaException extends Exception {
+        private static final long serialVersionUID = 1l;
+
+        public UnsupportedSchemaException(String msg) {
+            super(msg);
+        }
+    }
+
+    private interface Check {
+        boolean check(JsonNode node);
+    }
+
+    private static final Check TRUE = new Check() {
+        @Override
+        public boolean check(JsonNode node) {
+            return true;
+        }
+    };
+
+    private static final Check FALSE = new Check() {
+        @Override
+        public boolean check(JsonNode node) {
+            return false;
+        }
+    };
+
+    /**
+     * A reference to another schema. The target is set after the referenced
+     * schema is compiled, so recursive schemas are supported.
+     */
+    private static final class RefCheck implements Check {
+        private Check target;
+
+        @Override
+        public boolean check(JsonNode node) {
+            return target.check(node);
+        }
+    }
+
+    private static final class AllOf implements Check {
+        private final Check[] checks;
+
+        public AllOf(List<Check> checks) {
+            this.checks = checks.toArray(new Check[checks.size()]);
+        }
+
+        @Override
+        public boolean check(JsonNode node) {
+            for (Check c : checks) {
+                if (!c.check(node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class AnyOf implements Check {
+        private final Check[] checks;
+
+        public AnyOf(List<Check> checks) {
+            this.checks = checks.toArray(new Check[checks.size()]);
+        }
+
+        @Override
+        public boolean check(JsonNode node) {
+            for (Check c : checks) {
+                if (c.check(node)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class OneOf implements Check {
+        private final Check[] checks;
+
+        public OneOf(List<Check> checks) {
+            this.checks = checks.toArray(new Check[checks.size()]);
+        }
+
+        @Override
+        public boolean check(JsonNode node) {
+            int n = 0;
+            for (Check c : checks) {
+                if (c.check(node) && ++n > 1) {
+                    return false;
+                }
+            }
+            return n == 1;
+        }
+    }
+
+    private static final class Not implements Check {
+        private final Check check;
+
+        public Not(Check check) {
+            this.check = check;
+        }
+
+        @Override
+        public boolean check(JsonNode node) {
+            return !check.check(node);
+        }
+    }
+
+    private static final class TypeCheck implements Check {
+        private final Set<String> types;
+
+        public TypeCheck(Set<String> types) {
+            this.types = types;
+        }
+
+        @Override
+        public boolean check(JsonNode node) {
+            switch (node.getNodeType()) {
+                case NULL:
+                    return types.contains("null");
+                case BOOLEAN:
+                    return types.contains("boolean");
+                case OBJECT:
+                    return types.contains("object");
+                case ARRAY:
+                    return types.contains("array");
+                case STRING:
+                    return types.contains("string");
+                case NUMBER:
+                    return types.contains("number") || (node.isIntegralNumber() && types.contains("integer"));
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class EnumCheck implements Check {
+        private final List<JsonNode> values = new ArrayList<>();
+
+        @Override
+        public boolean check(JsonNode node) {
+            for (JsonNode v : values) {
+                if (jsonEquals(v, node)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class ObjectCheck implements Check {
+        private final Map<String, Check> properties = new HashMap<>();
+        private final List<Pattern> patterns = new ArrayList<>();
+        private final List<Check> patternChecks = new ArrayList<>();
+        private Check additional = TRUE;
+        private final List<String> required = new ArrayList<>();
+        private int minProperties = 0;
+        private int maxProperties = Integer.MAX_VALUE;
+
+        @Override
+        public boolean check(JsonNode node) {
+            if (!node.isObject()) {
+                return true;
+            }
+            int n = node.size();
+            if (n < minProperties || n > maxProperties) {
+                return false;
+            }
+            for (String r : required) {
+                if (!node.has(r)) {
+                    return false;
+                }
+            }
+            for (Iterator<Map.Entry<String, JsonNode>> itr = node.fields(); itr.hasNext();) {
+                Map.Entry<String, JsonNode> entry = itr.next();
+                boolean matched = false;
+                Check c = properties.get(entry.getKey());
+                if (c != null) {
+                    matched = true;
+                    if (!c.check(entry.getValue())) {
+                        return false;
+                    }
+                }
+                for (int i = 0; i < patterns.size(); i++) {
+                    if (patterns.get(i).matcher(entry.getKey()).find()) {
+                        matched = true;
+                        if (!patternChecks.get(i).check(entry.getValue())) {
+                            return false;
+                        }
+                    }
+                }
+                if (!matched && !additional.check(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class ArrayCheck implements Check {
+        private Check items = TRUE;
+        private List<Check> tuple;
+        private int minItems = 0;
+        private int maxItems = Integer.MAX_VALUE;
+        private boolean uniqueItems = false;
+
+        @Override
+        public boolean check(JsonNode node) {
+            if (!node.isArray()) {
+                return true;
+            }
+            int n = node.size();
+            if (n < minItems || n > maxItems) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                Check c = tuple == null ? items : i < tuple.size() ? tuple.get(i) : TRUE;
+                if (!c.check(node.get(i))) {
+                    return false;
+                }
+            }
+            if (uniqueItems) {
+                for (int i = 0; i < n; i++) {
+                    for (int j = i + 1; j < n; j++) {
+                        if (jsonEquals(node.get(i), node.get(j))) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class StringCheck implements Check {
+        private int minLength = 0;
+        private int maxLength = Integer.MAX_VALUE;
+        private Pattern pattern;
+        private boolean regex = false;
+
+        @Override
+        public boolean check(JsonNode node) {
+            if (!node.isTextual()) {
+                return true;
+            }
+            String s = node.textValue();
+            int n = s.codePointCount(0, s.length());
+            if (n < minLength || n > maxLength) {
+                return false;
+            }
+            if (pattern != null && !pattern.matcher(s).find()) {
+                return false;
+            }
+            if (regex) {
+                try {
+                    Pattern.compile(s);
+                } catch (PatternSyntaxException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class NumberCheck implements Check {
+        private JsonNode minimum;
+        private boolean exclusiveMinimum = false;
+        private JsonNode maximum;
+        private boolean exclusiveMaximum = false;
+
+        @Override
+        public boolean check(JsonNode node) {
+            if (!node.isNumber()) {
+                return true;
+            }
+            if (minimum != null) {
+                int c = node.decimalValue().compareTo(minimum.decimalValue());
+                if (c < 0 || (c == 0 && exclusiveMinimum)) {
+                    return false;
+                }
+            }
+            if (maximum != null) {
+                int c = node.decimalValue().compareTo(maximum.decimalValue());
+                if (c > 0 || (c == 0 && exclusiveMaximum)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * JSON schema equality: numbers are compared by value, containers are
+     * compared element by element
+     */
+    private static boolean jsonEquals(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber()) {
+            return a.decimalValue().compareTo(b.decimalValue()) == 0;
+        } else if (a.isArray() && b.isArray()) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!jsonEquals(a.get(i), b.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (a.isObject() && b.isObject()) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (Iterator<Map.Entry<String, JsonNode>> itr = a.fields(); itr.hasNext();) {
+                Map.Entry<String, JsonNode> entry = itr.next();
+                JsonNode x = b.get(entry.getKey());
+                if (x == null || !jsonEquals(entry.getValue(), x)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return a.equals(b);
+        }
+    }
+
+    private static final class Compiler {
+        private final Map<URI, JsonNode> documents = new HashMap<>();
+        private final Map<URI, RefCheck> refs = new HashMap<>();
+
+        /**
+         * Returns a check for the schema at the given absolute URI, compiling
+         * it if it is not already compiled
+         */
+        public RefCheck ref(URI uri) throws IOException, UnsupportedSchemaException {
+            RefCheck ref = refs.get(uri);
+            if (ref == null) {
+                ref = new RefCheck();
+                refs.put(uri, ref);
+                URI doc = documentUri(uri);
+                JsonNode schema = resolvePointer(loadDocument(doc), uri.getFragment());
+                // A dangling reference only fails validation if a document
+                // reaches it, so let the JsonSchema validator report it
+                ref.target = schema == null ? FALSE : compile(doc, schema);
+            }
+            return ref;
+        }
+
+        private URI documentUri(URI uri) throws UnsupportedSchemaException {
+            if (!RESOURCE_SCHEME.equals(uri.getScheme())) {
+                throw new UnsupportedSchemaException("Unsupported reference " + uri);
+            }
+            try {
+                return new URI(uri.getScheme(), null, uri.getPath(), null);
+            } catch (URISyntaxException e) {
+                throw new UnsupportedSchemaException(e.getMessage());
+            }
+        }
+
+        private JsonNode loadDocument(URI doc) throws IOException, UnsupportedSchemaException {
+            JsonNode node = documents.get(doc);
+            if (node == null) {
+                String resource = doc.getPath().substring(1);
+                if (Thread.currentThread().getContextClassLoader().getResource(resource) == null) {
+                    throw new UnsupportedSchemaException("Cannot find " + doc);
+                }
+                node = loadJsonNode(resource);
+                documents.put(doc, node);
+            }
+            return node;
+        }
+
+        /**
+         * Returns the node the JSON pointer points to, or null if the pointer
+         * cannot be resolved
+         */
+        private JsonNode resolvePointer(JsonNode root, String pointer) throws UnsupportedSchemaException {
+            if (pointer == null || pointer.length() == 0) {
+                return root;
+            }
+            if (pointer.charAt(0) != '/') {
+                throw new UnsupportedSchemaException("Unsupported fragment " + pointer);
+            }
+            JsonNode node = root;
+            for (String token : pointer.substring(1).split("/", -1)) {
+                token = token.replace("~1", "/").replace("~0", "~");
+                if (node.isArray()) {
+                    try {
+                        node = node.get(Integer.parseInt(token));
+                    } catch (NumberFormatException e) {
+                        node = null;
+                    }
+                } else {
+                    node = node.get(token);
+                }
+                if (node == null) {
+                    return null;
+                }
+            }
+            return node;
+        }
+
+        private Check compile(URI base, JsonNode schema) throws IOException, UnsupportedSchemaException {
+            if (!schema.isObject()) {
+                throw new UnsupportedSchemaException("Schema is not an object:" + schema);
+            }
+            JsonNode x = schema.get("$ref");
+            if (x != null) {
+                return ref(base.resolve(x.asText()));
+            }
+            List<Check> checks = new ArrayList<>();
+            ObjectCheck obj = null;
+            ArrayCheck arr = null;
+            StringCheck str = null;
+            NumberCheck num = null;
+            for (Iterator<Map.Entry<String, JsonNode>> itr = schema.fields(); itr.hasNext();) {
+                Map.Entry<String, JsonNode> entry = itr.next();
+                String key = entry.getKey();
+                JsonNode value = entry.getValue();
+                switch (key) {
+                    case "id":
+                        if (!value.asText().startsWith("#")) {
+                            throw new UnsupportedSchemaException("Unsupported id " + value);
+                        }
+                        break;
+                    case "type":
+                        checks.add(new TypeCheck(typeSet(value)));
+                        break;
+                    case "enum":
+                        EnumCheck e = new EnumCheck();
+                        for (JsonNode v : value) {
+                            e.values.add(v);
+                        }
+                        checks.add(e);
+                        break;
+                    case "allOf":
+                        checks.add(new AllOf(compileList(base, value)));
+                        break;
+                    case "anyOf":
+                        checks.add(new AnyOf(compileList(base, value)));
+                        break;
+                    case "oneOf":
+                        checks.add(new OneOf(compileList(base, value)));
+                        break;
+                    case "not":
+                        checks.add(new Not(compile(base, value)));
+                        break;
+                    case "properties":
+                        obj = obj == null ? new ObjectCheck() : obj;
+                        for (Iterator<Map.Entry<String, JsonNode>> p = value.fields(); p.hasNext();) {
+                            Map.Entry<String, JsonNode> prop = p.next();
+                            obj.properties.put(prop.getKey(), compile(base, prop.getValue()));
+                        }
+                        break;
+                    case "patternProperties":
+                        obj = obj == null ? new ObjectCheck() : obj;
+                        for (Iterator<Map.Entry<String, JsonNode>> p = value.fields(); p.hasNext();) {
+                            Map.Entry<String, JsonNode> prop = p.next();
+                            obj.patterns.add(pattern(prop.getKey()));
+                            obj.patternChecks.add(compile(base, prop.getValue()));
+                        }
+                        break;
+                    case "additionalProperties":
+                        obj = obj == null ? new ObjectCheck() : obj;
+                        obj.additional = value.isBoolean() ? (value.booleanValue() ? TRUE : FALSE) : compile(base, value);
+                        break;
+                    case "required":
+                        if (!value.isArray()) {
+                            throw new UnsupportedSchemaException("Unsupported required " + value);
+                        }
+                        obj = obj == null ? new ObjectCheck() : obj;
+                        for (JsonNode r : value) {
+                            obj.required.add(r.asText());
+                        }
+                        break;
+                    case "minProperties":
+                        obj = obj == null ? new ObjectCheck() : obj;
+                        obj.minProperties = value.intValue();
+                        break;
+                    case "maxProperties":
+                        obj = obj == null ? new ObjectCheck() : obj;
+                        obj.maxProperties = value.intValue();
+                        break;
+                    case "items":
+                        arr = arr == null ? new ArrayCheck() : arr;
+                        if (value.isArray()) {
+                            arr.tuple = compileList(base, value);
+                        } else {
+                            arr.items = compile(base, value);
+                        }
+                        break;
+                    case "minItems":
+                        arr = arr == null ? new ArrayCheck() : arr;
+                        arr.minItems = value.intValue();
+                        break;
+                    case "maxItems":
+                        arr = arr == null ? new ArrayCheck() : arr;
+                        arr.maxItems = value.intValue();
+                        break;
+                    case "uniqueItems":
+                        arr = arr == null ? new ArrayCheck() : arr;
+                        arr.uniqueItems = value.booleanValue();
+                        break;
+                    case "minLength":
+                        str = str == null ? new StringCheck() : str;
+                        str.minLength = value.intValue();
+                        break;
+                    case "maxLength":
+                        str = str == null ? new StringCheck() : str;
+                        str.maxLength = value.intValue();
+                        break;
+                    case "pattern":
+                        str = str == null ? new StringCheck() : str;
+                        str.pattern = pattern(value.asText());
+                        break;
+                    case "format":
+                        if (!"regex".equals(value.asText())) {
+                            throw new UnsupportedSchemaException("Unsupported format " + value);
+                        }
+                        str = str == null ? new StringCheck() : str;
+                        str.regex = true;
+                        break;
+                    case "minimum":
+                        num = num == null ? new NumberCheck() : num;
+                        num.minimum = value;
+                        break;
+                    case "exclusiveMinimum":
+                        num = num == null ? new NumberCheck() : num;
+                        num.exclusiveMinimum = value.booleanValue();
+                        break;
+                    case "maximum":
+                        num = num == null ? new NumberCheck() : num;
+                        num.maximum = value;
+                        break;
+                    case "exclusiveMaximum":
+                        num = num == null ? new NumberCheck() : num;
+                        num.exclusiveMaximum = value.booleanValue();
+                        break;
+                    default:
+                        if (!ANNOTATIONS.contains(key)) {
+                            throw new UnsupportedSchemaException("Unsupported keyword " + key);
+                        }
+                }
+            }
+            if (obj != null) {
+                checks.add(obj);
+            }
+            if (arr != null) {
+                checks.add(arr);
+            }
+            if (str != null) {
+                checks.add(str);
+            }
+            if (num != null) {
+                checks.add(num);
+            }
+            switch (checks.size()) {
+                case 0:
+                    return TRUE;
+                case 1:
+                    return checks.get(0);
+                default:
+                    return new AllOf(checks);
+            }
+        }
+
+        private List<Check> compileList(URI base, JsonNode list) throws IOException, UnsupportedSchemaException {
+            if (!list.isArray()) {
+                throw new UnsupportedSchemaException("Expected array:" + list);
+            }
+            List<Check> checks = new ArrayList<>(list.size());
+            for (JsonNode x : list) {
+                checks.add(compile(base, x));
+            }
+            return checks;
+        }
+
+        private Set<String> typeSet(JsonNode value) throws UnsupportedSchemaException {
+            Set<String> types = new HashSet<>();
+            if (value.isArray()) {
+                for (JsonNode x : value) {
+                    types.add(x.asText());
+                }
+            } else {
+                types.add(value.asText());
+            }
+            if (!TYPES.containsAll(types)) {
+                throw new UnsupportedSchemaException("Unsupported type " + value);
+            }
+            return types;
+        }
+
+        private Pattern pattern(String s) throws UnsupportedSchemaException {
+            try {
+                return Pattern.compile(s);
+            } catch (PatternSyntaxException e) {
+                throw new UnsupportedSchemaException(e.getMessage());
+            }
+        }
+    }
+}
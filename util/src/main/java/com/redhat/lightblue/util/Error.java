@@ -19,6 +19,8 @@
 package com.redhat.lightblue.util;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
 
 import org.slf4j.Logger;
@@ -34,7 +36,13 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * client as an indicator of where the error happened.
  *
  * The error object also provides static APIs that keep the execution context
- * for the current thread.
+ * for the current thread. The context frames are kept as object references,
+ * and converted to strings only when an error is constructed, so pushing
+ * context in loops is cheap. Frame objects must not change while they are in
+ * the context stack.
+ *
+ * Errors are logged when they are constructed based on the current
+ * {@link LogPolicy}.
  */
 public final class Error extends RuntimeException {
     private static final Logger LOGGER = LoggerFactory.getLogger(Error.class);
@@ -43,13 +51,35 @@ public final class Error extends RuntimeException {
 
     private static final JsonNodeFactory FACTORY = JsonNodeFactory.withExactBigDecimals(true);
 
-    private static final ThreadLocal<ArrayDeque<String>> THREAD_CONTEXT = new ThreadLocal< ArrayDeque<String>>() {
+    private static final String NULL_FRAME = "null";
+
+    private static final ThreadLocal<ArrayDeque<Object>> THREAD_CONTEXT = new ThreadLocal< ArrayDeque<Object>>() {
         @Override
-        protected ArrayDeque<String> initialValue() {
+        protected ArrayDeque<Object> initialValue() {
             return new ArrayDeque<>();
         }
     };
 
+    /**
+     * Determines how errors are logged when they are constructed
+     */
+    public static enum LogPolicy {
+        /**
+         * Errors are not logged
+         */
+        NONE,
+        /**
+         * Errors are logged at debug level
+         */
+        DEBUG,
+        /**
+         * Errors are logged at error level
+         */
+        ERROR
+    }
+
+    private static volatile LogPolicy logPolicy = LogPolicy.ERROR;
+
     public static final char DELIMITER = '/';
 
     private final ArrayDeque<String> context;
@@ -60,10 +90,21 @@ public final class Error extends RuntimeException {
      * Pushes the given context information to the current thread stack
      */
     public static void push(String context) {
+        push((Object) context);
+    }
+
+    /**
+     * Pushes the given context information to the current thread stack. The
+     * string value of the object is used as the context information if an
+     * error is constructed while it is in the stack.
+     */
+    public static void push(Object context) {
         if (null == context) {
-            context = "null";
+            context = NULL_FRAME;
+        }
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("push: {}", context);
         }
-        LOGGER.debug("push: {}", context);
         THREAD_CONTEXT.get().addLast(context);
     }
 
@@ -71,14 +112,41 @@ public final class Error extends RuntimeException {
      * Pops the context information from current thread stack
      */
     public static void pop() {
-        ArrayDeque<String> c = THREAD_CONTEXT.get();
+        ArrayDeque<Object> c = THREAD_CONTEXT.get();
         if (!c.isEmpty()) {
-            String context = c.removeLast();
-            LOGGER.debug("pop: {}", context);
+            Object context = c.removeLast();
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("pop: {}", context);
+            }
         }
-        if (c.isEmpty()) {
-            reset();
+    }
+
+    /**
+     * Returns a copy of the context information of the current thread. The
+     * returned list can be pushed in another thread to continue the same
+     * context there.
+     */
+    public static List<String> getThreadContext() {
+        ArrayDeque<Object> c = THREAD_CONTEXT.get();
+        List<String> ret = new ArrayList<>(c.size());
+        for (Object x : c) {
+            ret.add(x.toString());
         }
+        return ret;
+    }
+
+    /**
+     * Sets how errors are logged when they are constructed
+     */
+    public static void setLogPolicy(LogPolicy policy) {
+        logPolicy = policy == null ? LogPolicy.ERROR : policy;
+    }
+
+    /**
+     * Returns how errors are logged when they are constructed
+     */
+    public static LogPolicy getLogPolicy() {
+        return logPolicy;
     }
 
     /**
@@ -99,7 +167,7 @@ public final class Error extends RuntimeException {
      * Throwable.
      */
     public static Error get(String ctx, String errorCode, Throwable e) {
-        LOGGER.error(e.getMessage(), e);
+        log(e);
         return get(ctx, errorCode, e.getMessage());
     }
 
@@ -115,7 +183,7 @@ public final class Error extends RuntimeException {
      * Throwable.
      */
     public static Error get(String errorCode, Throwable e) {
-        LOGGER.error(e.getMessage(), e);
+        log(e);
         return get(errorCode, e.getMessage());
     }
 
@@ -138,22 +206,51 @@ public final class Error extends RuntimeException {
      * Resets the stack thread context
      */
     public static void reset() {
-        LOGGER.debug("reset");
+        LOGGER.trace("reset");
         THREAD_CONTEXT.remove();
     }
 
+    private static void log(Throwable e) {
+        switch (logPolicy) {
+            case ERROR:
+                LOGGER.error(e.getMessage(), e);
+                break;
+            case DEBUG:
+                LOGGER.debug(e.getMessage(), e);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void log() {
+        switch (logPolicy) {
+            case ERROR:
+                LOGGER.error("{}", this);
+                break;
+            case DEBUG:
+                LOGGER.debug("{}", this);
+                break;
+            default:
+                break;
+        }
+    }
+
     private Error(String errorCode, String msg) {
         this.context = new ArrayDeque<>();
         this.errorCode = errorCode;
         this.msg = msg;
-        LOGGER.error(this.toString());
+        log();
     }
 
-    private Error(ArrayDeque<String> context, String errorCode, String msg) {
-        this.context = context.clone();
+    private Error(ArrayDeque<Object> context, String errorCode, String msg) {
+        this.context = new ArrayDeque<>(context.size() + 1);
+        for (Object x : context) {
+            this.context.addLast(x.toString());
+        }
         this.errorCode = errorCode;
         this.msg = msg;
-        LOGGER.error(this.toString());
+        log();
     }
 
     public void pushContext(String context) {
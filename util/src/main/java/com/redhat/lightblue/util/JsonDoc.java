@@ -127,26 +127,27 @@ public class JsonDoc implements Serializable {
         public JsonNode resolve(Path p, final JsonNode node, int level) {
             JsonNode output = node;
 
-            int n = p.numSegments();
+            PathRep data = p.getData();
+            int n = data.size();
             for (int l = level; l < n; l++) {
-                String name = p.head(l);
+                byte kind = data.kind(l);
                 JsonNode newOutput;
-                if (name.equals(Path.ANY)) {
+                if (kind == PathRep.KIND_ANY) {
                     newOutput = handleAny(p, output, l);
-                } else if (name.equals(Path.THIS)) {
+                } else if (kind == PathRep.KIND_THIS) {
                     continue;
-                } else if (name.equals(Path.PARENT)) {
+                } else if (kind == PathRep.KIND_PARENT) {
                     output = node.findParent(p.head(findNextNonRealtiveSegment(p, l)));
                     continue;
                 } else if (output instanceof ArrayNode) {
-                    int index = Integer.valueOf(name);
+                    int index = data.index(l);
                     if (index < 0) {
                         newOutput = ((ArrayNode) output).get(((ArrayNode) output).size() + index);
                     } else {
                         newOutput = ((ArrayNode) output).get(index);
                     }
                 } else if (output instanceof ObjectNode) {
-                    newOutput = output.get(name);
+                    newOutput = output.get(data.get(l));
                 } else {
                     newOutput = null;
                 }
@@ -531,6 +532,31 @@ public class JsonDoc implements Serializable {
         return new JsonDoc(docRoot.deepCopy());
     }
 
+    /**
+     * Returns a read-only snapshot of the current state of this
+     * document. Later modifications to this document are not reflected
+     * in the snapshot.
+     */
+    public JsonDocSnapshot snapshot() {
+        return new JsonDocSnapshot(docRoot.deepCopy());
+    }
+
+    /**
+     * Returns a read-only snapshot of the current state of this
+     * document, sharing the subtrees that are unchanged since the base
+     * snapshot was taken. If base is not a snapshot, this is the same
+     * as snapshot().
+     *
+     * @param base An earlier snapshot of this document, or null
+     */
+    public JsonDocSnapshot snapshot(JsonDoc base) {
+        if (base instanceof JsonDocSnapshot) {
+            return new JsonDocSnapshot(JsonDocSnapshot.share(docRoot, base.getRoot()));
+        } else {
+            return snapshot();
+        }
+    }
+
     private static JsonNode getParentNode(JsonNode docRoot, Path parent, boolean createPath, Path p) {
         JsonNode parentNode = DEFAULT_RESOLVER.resolve(parent, docRoot, 0);
         if (parentNode == null && createPath) {
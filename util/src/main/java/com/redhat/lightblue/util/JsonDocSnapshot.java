@@ -0,0 +1,160 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A read-only snapshot of a JSON document. The nodes of a snapshot are
+ * never modified, so a snapshot can be shared by any number of readers
+ * without copying it. Taking a snapshot of a snapshot returns the same
+ * instance.
+ *
+ * When a snapshot of a modified document is taken based on an earlier
+ * snapshot of the same document, the subtrees that did not change are
+ * shared between the two snapshots, and only the containers that
+ * differ are copied. Value nodes are immutable, so they are always
+ * shared.
+ *
+ * Only modifications through modify() are rejected. getRoot() and
+ * get() return the shared nodes themselves, not read-only copies, so
+ * the read-only guarantee depends on the callers: nodes returned from
+ * a snapshot must not be modified, because the change would be seen
+ * by every snapshot sharing them. Use copy() to get a modifiable
+ * document.
+ */
+public class JsonDocSnapshot extends JsonDoc {
+
+    private static final long serialVersionUID = 1l;
+
+    JsonDocSnapshot(JsonNode root) {
+        super(root);
+    }
+
+    /**
+     * Returns this snapshot
+     */
+    @Override
+    public JsonDocSnapshot snapshot() {
+        return this;
+    }
+
+    /**
+     * Returns this snapshot
+     */
+    @Override
+    public JsonDocSnapshot snapshot(JsonDoc base) {
+        return this;
+    }
+
+    /**
+     * Snapshots are read-only, this throws UnsupportedOperationException
+     * with the error code and the path
+     */
+    @Override
+    public JsonNode modify(Path p, JsonNode newValue, boolean createPath) {
+        throw new UnsupportedOperationException(UtilConstants.ERR_READ_ONLY_DOC + ": " + p);
+    }
+
+    /**
+     * Returns a read-only copy of node. Subtrees of node that are equal
+     * to the corresponding subtrees of base are not copied, the base
+     * subtrees are used instead. If node is equal to base, base is
+     * returned.
+     *
+     * @param node The node to copy
+     * @param base A node of a snapshot, or null
+     */
+    static JsonNode share(JsonNode node, JsonNode base) {
+        if (node == null || node == base) {
+            return base;
+        } else if (node instanceof ObjectNode) {
+            if (base instanceof ObjectNode) {
+                return shareObject((ObjectNode) node, (ObjectNode) base);
+            } else {
+                return node.deepCopy();
+            }
+        } else if (node instanceof ArrayNode) {
+            if (base instanceof ArrayNode) {
+                return shareArray((ArrayNode) node, (ArrayNode) base);
+            } else {
+                return node.deepCopy();
+            }
+        } else if (base != null && node.equals(base)) {
+            return base;
+        } else {
+            // Value nodes are immutable
+            return node;
+        }
+    }
+
+    private static JsonNode shareObject(ObjectNode node, ObjectNode base) {
+        int n = node.size();
+        List<String> names = new ArrayList<>(n);
+        List<JsonNode> values = new ArrayList<>(n);
+        boolean same = n == base.size();
+        for (Iterator<Map.Entry<String, JsonNode>> itr = node.fields(); itr.hasNext();) {
+            Map.Entry<String, JsonNode> entry = itr.next();
+            JsonNode baseValue = base.get(entry.getKey());
+            JsonNode value = share(entry.getValue(), baseValue);
+            if (value != baseValue) {
+                same = false;
+            }
+            names.add(entry.getKey());
+            values.add(value);
+        }
+        if (same) {
+            return base;
+        }
+        ObjectNode ret = node.objectNode();
+        for (int i = 0; i < n; i++) {
+            ret.set(names.get(i), values.get(i));
+        }
+        return ret;
+    }
+
+    private static JsonNode shareArray(ArrayNode node, ArrayNode base) {
+        int n = node.size();
+        int baseSize = base.size();
+        JsonNode[] values = new JsonNode[n];
+        boolean same = n == baseSize;
+        for (int i = 0; i < n; i++) {
+            JsonNode baseValue = i < baseSize ? base.get(i) : null;
+            values[i] = share(node.get(i), baseValue);
+            if (values[i] != baseValue) {
+                same = false;
+            }
+        }
+        if (same) {
+            return base;
+        }
+        ArrayNode ret = node.arrayNode();
+        for (JsonNode x : values) {
+            ret.add(x);
+        }
+        return ret;
+    }
+}
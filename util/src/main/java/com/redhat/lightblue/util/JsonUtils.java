@@ -18,10 +18,12 @@
  */
 package com.redhat.lightblue.util;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
@@ -47,6 +49,14 @@ import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
  */
 public final class JsonUtils {
 
+    private static final ObjectWriter PRETTY_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+    /**
+     * Shared mapper used to parse JSON text. It is never reconfigured
+     * after initialization, so it is safe to use from multiple threads.
+     */
+    private static final ObjectMapper MAPPER = getObjectMapper();
+
     /**
      * Returns an object mapper to parse JSON text
      */
@@ -63,7 +73,43 @@ public final class JsonUtils {
             throws IOException {
         // do system property expansion
         String jsonString = StrSubstitutor.replaceSystemProperties(s);
-        return getObjectMapper().readTree(jsonString);
+        return MAPPER.readTree(jsonString);
+    }
+
+    /**
+     * Parses a JSON document directly from its encoded bytes, without
+     * system property expansion. The encoding is detected from the
+     * input. Use this for request bodies.
+     */
+    public static JsonNode parse(byte[] bytes) throws IOException {
+        return MAPPER.readTree(bytes);
+    }
+
+    /**
+     * Parses a JSON document directly from a byte stream, without
+     * system property expansion. The encoding is detected from the
+     * input. Use this for request bodies.
+     */
+    public static JsonNode parse(InputStream stream) throws IOException {
+        return MAPPER.readTree(stream);
+    }
+
+    /**
+     * Returns a streaming parser reading a JSON document from its encoded
+     * bytes. The parser uses the shared mapper as its codec, so values can
+     * be read as trees from it.
+     */
+    public static JsonParser createParser(byte[] bytes) throws IOException {
+        return MAPPER.getFactory().createParser(bytes);
+    }
+
+    /**
+     * Returns a streaming parser reading a JSON document from a byte
+     * stream. The parser uses the shared mapper as its codec, so values
+     * can be read as trees from it. Closing the parser closes the stream.
+     */
+    public static JsonParser createParser(InputStream stream) throws IOException {
+        return MAPPER.getFactory().createParser(stream);
     }
 
     /**
@@ -78,9 +124,10 @@ public final class JsonUtils {
      */
     public static JsonNode json(Reader reader) throws IOException {
         StringBuilder bld = new StringBuilder(512);
-        int c;
-        while ((c = reader.read()) >= 0) {
-            bld.append((char) c);
+        char[] buf = new char[4096];
+        int n;
+        while ((n = reader.read(buf)) >= 0) {
+            bld.append(buf, 0, n);
         }
         return json(bld.toString());
     }
@@ -156,8 +203,7 @@ public final class JsonUtils {
             ProcessingMessage pm = i.next();
 
             // attempting to pretty print the json
-            ObjectMapper mapper = new ObjectMapper();
-            String prettyPrintJson = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(pm.asJson());
+            String prettyPrintJson = PRETTY_WRITER.writeValueAsString(pm.asJson());
 
             buff.append(prettyPrintJson).append("\n\n");
         }
@@ -122,7 +122,9 @@ public class MutablePath extends Path {
      * @return the updated path
      */
     public MutablePath push(int x) {
-        return push(Integer.toString(x));
+        own();
+        getData().append(x);
+        return this;
     }
 
     /**
@@ -164,7 +166,13 @@ public class MutablePath extends Path {
      * @return the updated path
      */
     public Path setLast(int x) {
-        return setLast(String.valueOf(x));
+        try {
+            own();
+            getData().set(getData().size() - 1, x);
+            return this;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalStateException(UtilConstants.ERR_CANT_SET_LAST_SEGMENT_ON_EMPTY_PATH);
+        }
     }
 
     public Path set(int i, String x) {
@@ -174,7 +182,9 @@ public class MutablePath extends Path {
     }
 
     public Path set(int i, int value) {
-        return set(i, Integer.toString(value));
+        own();
+        getData().set(i, value);
+        return this;
     }
 
     /**
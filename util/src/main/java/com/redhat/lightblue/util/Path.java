@@ -22,6 +22,8 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Represents a path in a tree, of the form
@@ -66,7 +68,7 @@ import java.util.List;
  */
 public class Path implements Comparable<Path>, Serializable {
 
-    private static final long serialVersionUID = 1l;
+    private static final long serialVersionUID = 2l;
 
     public static final String ANY = "*";
 
@@ -76,6 +78,12 @@ public class Path implements Comparable<Path>, Serializable {
     public static final Path EMPTY = new Path();
     public static final Path ANYPATH = new Path(ANY);
 
+    /**
+     * Maximum number of paths kept in the global intern cache
+     */
+    private static final int MAX_INTERNED_PATHS = 16384;
+    private static final ConcurrentMap<Path, Path> INTERNED = new ConcurrentHashMap<>();
+
     private PathRep data;
 
     /**
@@ -144,6 +152,32 @@ public class Path implements Comparable<Path>, Serializable {
         return this;
     }
 
+    /**
+     * Returns a canonical immutable instance of the given path. Paths
+     * that are built repeatedly, such as the paths derived from
+     * metadata, can be interned to share a single instance, along with
+     * the segment strings. Paths containing request data should not be
+     * interned. The intern cache is bounded; if it is full, an
+     * immutable copy of the path is returned without caching it.
+     *
+     * @param p The path
+     * @return An immutable path equal to p
+     */
+    public static Path intern(Path p) {
+        Path x = INTERNED.get(p);
+        if (x == null) {
+            x = new Path(p);
+            x.data.internSegments();
+            if (INTERNED.size() < MAX_INTERNED_PATHS) {
+                Path old = INTERNED.putIfAbsent(x, x);
+                if (old != null) {
+                    x = old;
+                }
+            }
+        }
+        return x;
+    }
+
     /**
      * Create a mutable shallow copy of this path.
      *
@@ -208,7 +242,7 @@ public class Path implements Comparable<Path>, Serializable {
      * @return
      */
     public int getIndex(int i) {
-        return Integer.valueOf(data.get(i));
+        return data.index(i);
     }
 
     /**
@@ -219,7 +253,17 @@ public class Path implements Comparable<Path>, Serializable {
      * @return
      */
     public boolean isIndex(int i) {
-        return Util.isNumber(data.get(i));
+        return data.kind(i) == PathRep.KIND_INDEX;
+    }
+
+    /**
+     * Check if path segment at given index (relative to head) is ANY
+     *
+     * @param i
+     * @return
+     */
+    public boolean isAny(int i) {
+        return data.kind(i) == PathRep.KIND_ANY;
     }
 
     /**
@@ -227,8 +271,9 @@ public class Path implements Comparable<Path>, Serializable {
      */
     public int nAnys() {
         int n = 0;
-        for (Iterator<String> itr = data.iterator(); itr.hasNext();) {
-            if (ANY.equals(itr.next())) {
+        int k = data.size();
+        for (int i = 0; i < k; i++) {
+            if (data.kind(i) == PathRep.KIND_ANY) {
                 n++;
             }
         }
@@ -299,7 +344,7 @@ public class Path implements Comparable<Path>, Serializable {
             while (patternDataItr.hasNext() && dataItr.hasNext()) {
                 String pat = patternDataItr.next();
                 String val = dataItr.next();
-                if (!(val.equals(pat) || pat.equals(ANY))) {
+                if (!(val == pat || val.equals(pat) || pat.equals(ANY))) {
                     return false;
                 }
             }
@@ -18,18 +18,56 @@
  */
 package com.redhat.lightblue.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Internal representation of Path
+ * Internal representation of Path. Segments are kept in an array,
+ * along with the kind of each segment, and the integer value of index
+ * segments, so they are not parsed again every time they are
+ * accessed. The segment strings of interned paths are interned using
+ * a bounded global cache, so paths built from metadata share segment
+ * strings. Paths built from request data are not interned.
  */
 class PathRep implements Serializable, Comparable<PathRep> {
-    private static final long serialVersionUID = 1l;
+    // The segments are serialized as a count followed by the strings
+    private static final long serialVersionUID = 2l;
 
-    private final List<String> segments;
+    static final byte KIND_NAME = 0;
+    static final byte KIND_INDEX = 1;
+    static final byte KIND_ANY = 2;
+    static final byte KIND_THIS = 3;
+    static final byte KIND_PARENT = 4;
+
+    private static final String[] EMPTY_SEGMENTS = new String[0];
+    private static final byte[] EMPTY_KINDS = new byte[0];
+    private static final int[] EMPTY_INDEXES = new int[0];
+
+    /**
+     * Maximum number of segment strings kept in the intern cache
+     */
+    private static final int MAX_INTERNED_SEGMENTS = 65536;
+    private static final ConcurrentMap<String, String> SEGMENTS = new ConcurrentHashMap<>();
+
+    private static final String[] INDEX_STRINGS = new String[256];
+
+    static {
+        for (int i = 0; i < INDEX_STRINGS.length; i++) {
+            INDEX_STRINGS[i] = Integer.toString(i);
+        }
+    }
+
+    private transient String[] segments;
+    private transient byte[] kinds;
+    private transient int[] indexes;
+    private transient int size;
 
     private transient String stringValue = null;
     private transient int hashValue = 0;
@@ -38,14 +76,19 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Creates an empty path
      */
     public PathRep() {
-        segments = new ArrayList<>(10);
+        segments = EMPTY_SEGMENTS;
+        kinds = EMPTY_KINDS;
+        indexes = EMPTY_INDEXES;
     }
 
     /**
      * Copy ctor
      */
     public PathRep(PathRep data) {
-        segments = new ArrayList<>(data.segments);
+        size = data.size;
+        segments = Arrays.copyOf(data.segments, size);
+        kinds = Arrays.copyOf(data.kinds, size);
+        indexes = Arrays.copyOf(data.indexes, size);
         stringValue = data.stringValue;
         hashValue = data.hashValue;
     }
@@ -58,19 +101,57 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * elements from the end are removed
      */
     public PathRep(PathRep data, int x) {
-        int k = data.segments.size();
-        segments = new ArrayList<>(k);
+        int k = data.size;
         int n;
         if (x >= 0) {
             n = k > x ? x : k;
         } else {
             n = k + x;
         }
-        for (String s: data.segments) {
-            if (n <= 0)
-                break;
-            segments.add(s);
-            n--;
+        if (n < 0) {
+            n = 0;
+        }
+        size = n;
+        segments = Arrays.copyOf(data.segments, n);
+        kinds = Arrays.copyOf(data.kinds, n);
+        indexes = Arrays.copyOf(data.indexes, n);
+    }
+
+    /**
+     * Interns the segment strings of this path
+     */
+    void internSegments() {
+        for (int i = 0; i < size; i++) {
+            segments[i] = intern(segments[i]);
+        }
+    }
+
+    /**
+     * Returns the interned instance of the segment string
+     */
+    private static String intern(String s) {
+        String x = SEGMENTS.get(s);
+        if (x == null) {
+            if (SEGMENTS.size() < MAX_INTERNED_SEGMENTS) {
+                x = SEGMENTS.putIfAbsent(s, s);
+                if (x == null) {
+                    x = s;
+                }
+            } else {
+                x = s;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Returns the string for the array index
+     */
+    static String indexString(int i) {
+        if (i >= 0 && i < INDEX_STRINGS.length) {
+            return INDEX_STRINGS[i];
+        } else {
+            return Integer.toString(i);
         }
     }
 
@@ -78,7 +159,7 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Clears the path
      */
     public void clear() {
-        segments.clear();
+        size = 0;
         resetState();
     }
 
@@ -94,21 +175,51 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Returns the number of segments
      */
     public int size() {
-        return segments.size();
+        return size;
     }
 
     /**
      * Returns the element at the index
      */
     public String get(int index) {
-        return segments.get(index);
+        checkIndex(index);
+        return segments[index];
+    }
+
+    /**
+     * Returns the kind of the segment at index
+     */
+    public byte kind(int index) {
+        checkIndex(index);
+        return kinds[index];
+    }
+
+    /**
+     * Returns the integer value of an index segment
+     */
+    public int index(int index) {
+        checkIndex(index);
+        if (kinds[index] == KIND_INDEX) {
+            return indexes[index];
+        } else {
+            // Not an index, fails the same way as before
+            return Integer.valueOf(segments[index]);
+        }
     }
 
     /**
      * Removes the element at index
      */
     public void remove(int index) {
-        segments.remove(index);
+        checkIndex(index);
+        int n = size - index - 1;
+        if (n > 0) {
+            System.arraycopy(segments, index + 1, segments, index, n);
+            System.arraycopy(kinds, index + 1, kinds, index, n);
+            System.arraycopy(indexes, index + 1, indexes, index, n);
+        }
+        size--;
+        segments[size] = null;
         resetState();
     }
 
@@ -116,7 +227,19 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Sets the element at index
      */
     public void set(int index, String x) {
-        segments.set(index, x);
+        checkIndex(index);
+        setSegment(index, x);
+        resetState();
+    }
+
+    /**
+     * Sets the element at index to an array index
+     */
+    public void set(int index, int x) {
+        checkIndex(index);
+        segments[index] = indexString(x);
+        kinds[index] = KIND_INDEX;
+        indexes[index] = x;
         resetState();
     }
 
@@ -124,13 +247,38 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Returns an iterator over segments
      */
     public Iterator<String> iterator() {
-        return segments.iterator();
+        return new Iterator<String>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return segments[next++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     @Override
     public int hashCode() {
         if (hashValue == 0) {
-            hashValue = segments.hashCode();
+            // Same as List.hashCode
+            int h = 1;
+            for (int i = 0; i < size; i++) {
+                h = 31 * h + segments[i].hashCode();
+            }
+            hashValue = h;
         }
         return hashValue;
     }
@@ -139,7 +287,23 @@ class PathRep implements Serializable, Comparable<PathRep> {
     public boolean equals(Object o) {
         if (o instanceof PathRep) {
             PathRep r = (PathRep) o;
-            return r.segments.equals(segments);
+            if (r == this) {
+                return true;
+            }
+            if (r.size != size) {
+                return false;
+            }
+            if (hashValue != 0 && r.hashValue != 0 && hashValue != r.hashValue) {
+                return false;
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                String s1 = segments[i];
+                String s2 = r.segments[i];
+                if (s1 != s2 && !s1.equals(s2)) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
@@ -149,20 +313,17 @@ class PathRep implements Serializable, Comparable<PathRep> {
      */
     public void shiftLeft(final int from) {
         if (from > 0) {
-            int n = segments.size();
-            if (from >= n) {
-                segments.clear();
+            if (from >= size) {
+                clear();
             } else {
-                int iFrom = from;
-                int k = n - iFrom;
-                int to = 0;
-                for (int i = 0; i < k; i++) {
-                    segments.set(to++, segments.get(iFrom++));
-                }
-                k = n - k;
-                for (int i = 0; i < k; i++) {
-                    segments.remove(--n);
+                int k = size - from;
+                System.arraycopy(segments, from, segments, 0, k);
+                System.arraycopy(kinds, from, kinds, 0, k);
+                System.arraycopy(indexes, from, indexes, 0, k);
+                for (int i = k; i < size; i++) {
+                    segments[i] = null;
                 }
+                size = k;
             }
             resetState();
         }
@@ -172,7 +333,12 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Appends p to the end of this
      */
     public void append(PathRep p) {
-        append(p.segments);
+        int n = p.size;
+        ensureCapacity(size + n);
+        System.arraycopy(p.segments, 0, segments, size, n);
+        System.arraycopy(p.kinds, 0, kinds, size, n);
+        System.arraycopy(p.indexes, 0, indexes, size, n);
+        size += n;
         resetState();
     }
 
@@ -180,18 +346,30 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Appends the string segments to the end of this
      */
     public void append(List<String> x) {
-        segments.addAll(x);
+        ensureCapacity(size + x.size());
+        for (String s : x) {
+            setSegment(size++, s);
+        }
         resetState();
     }
 
+    /**
+     * Appends an array index to the end of this
+     */
+    public void append(int x) {
+        ensureCapacity(size + 1);
+        size++;
+        set(size - 1, x);
+    }
+
     @Override
     public int compareTo(PathRep x) {
-        int tn = segments.size();
-        int xn = x.segments.size();
+        int tn = size;
+        int xn = x.size;
         int n = tn > xn ? xn : tn;
         int index = 0;
         while (index < n) {
-            int cmp = segments.get(index).compareTo(x.segments.get(index));
+            int cmp = segments[index].compareTo(x.segments[index]);
             if (cmp != 0) {
                 return cmp;
             }
@@ -203,18 +381,75 @@ class PathRep implements Serializable, Comparable<PathRep> {
     @Override
     public String toString() {
         if (stringValue == null) {
-            StringBuilder buf = new StringBuilder(segments.size() * 8);
-            boolean first = true;
-            for (String x : segments) {
-                if (first) {
-                    first = false;
-                } else {
+            StringBuilder buf = new StringBuilder(size * 8);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
                     buf.append('.');
                 }
-                buf.append(x);
+                buf.append(segments[i]);
             }
             stringValue = buf.toString();
         }
         return stringValue;
     }
+
+    private void setSegment(int index, String s) {
+        segments[index] = s;
+        indexes[index] = 0;
+        if (Path.ANY.equals(s)) {
+            kinds[index] = KIND_ANY;
+        } else if (Path.THIS.equals(s)) {
+            kinds[index] = KIND_THIS;
+        } else if (Path.PARENT.equals(s)) {
+            kinds[index] = KIND_PARENT;
+        } else if (Util.isNumber(s)) {
+            try {
+                indexes[index] = Integer.parseInt(s.charAt(0) == '+' ? s.substring(1) : s);
+                kinds[index] = KIND_INDEX;
+            } catch (NumberFormatException e) {
+                // Looks like a number, but does not fit in an int
+                kinds[index] = KIND_NAME;
+            }
+        } else {
+            kinds[index] = KIND_NAME;
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (segments.length < n) {
+            int cap = Math.max(n, segments.length * 2);
+            if (cap < 4) {
+                cap = 4;
+            }
+            segments = Arrays.copyOf(segments, cap);
+            kinds = Arrays.copyOf(kinds, cap);
+            indexes = Arrays.copyOf(indexes, cap);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(segments[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        segments = new String[n];
+        kinds = new byte[n];
+        indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            setSegment(i, in.readUTF());
+        }
+        size = n;
+    }
 }
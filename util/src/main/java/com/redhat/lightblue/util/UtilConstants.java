@@ -34,6 +34,7 @@ public final class UtilConstants {
     public static final String ERR_UNEXPECTED_WHITESPACE = "util:UnexpectedWhitespace";
     public static final String ERR_UNEXPECTED_CHARACTER = "util:UnexpectedCharacter";
     public static final String ERR_JSON_SCHEMA_INVALID = "util:JsonSchemaInvalid";
+    public static final String ERR_READ_ONLY_DOC = "util:ReadOnlyDocument";
 
     private UtilConstants() {
 
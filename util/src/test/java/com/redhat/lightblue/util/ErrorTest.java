@@ -262,4 +262,42 @@ public class ErrorTest {
         Assert.assertEquals("b", fromJson.getErrorCode());
         Assert.assertEquals("c", fromJson.getMsg());
     }
+
+    @Test
+    public void objectFramesAreRenderedWhenErrorIsConstructed() {
+        final int[] rendered = new int[1];
+        Object frame = new Object() {
+            @Override
+            public String toString() {
+                rendered[0]++;
+                return "frame";
+            }
+        };
+        Error.push("a");
+        Error.push(frame);
+        Error.push(new Path("x.y"));
+        Assert.assertEquals(0, rendered[0]);
+        Assert.assertEquals("a/frame/x.y", Error.get("code").getContext());
+        Assert.assertEquals(1, rendered[0]);
+        Assert.assertEquals("[a, frame, x.y]", Error.getThreadContext().toString());
+        Error.pop();
+        Error.pop();
+        Error.pop();
+        Assert.assertEquals("", Error.get("code").getContext());
+    }
+
+    @Test
+    public void logPolicy() {
+        Error.LogPolicy p = Error.getLogPolicy();
+        try {
+            Error.setLogPolicy(Error.LogPolicy.NONE);
+            Assert.assertEquals(Error.LogPolicy.NONE, Error.getLogPolicy());
+            Error e = Error.get("ctx", "code", new RuntimeException("msg"));
+            Assert.assertEquals("msg", e.getMsg());
+            Error.setLogPolicy(null);
+            Assert.assertEquals(Error.LogPolicy.ERROR, Error.getLogPolicy());
+        } finally {
+            Error.setLogPolicy(p);
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+public class JsonDocSnapshotTest {
+
+    private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+    private JsonDoc doc() throws Exception {
+        return new JsonDoc(JsonUtils.json("{\"a\":{\"b\":1,\"c\":[1,2,{\"d\":\"x\"}]},\"e\":{\"f\":\"y\"},\"g\":[{\"h\":1},{\"h\":2}]}"));
+    }
+
+    @Test
+    public void snapshotIsIndependentOfDoc() throws Exception {
+        JsonDoc doc = doc();
+        JsonDocSnapshot snapshot = doc.snapshot();
+        doc.modify(new Path("a.b"), factory.numberNode(5), false);
+        Assert.assertEquals(1, snapshot.get(new Path("a.b")).asInt());
+        Assert.assertEquals(5, doc.get(new Path("a.b")).asInt());
+    }
+
+    @Test
+    public void snapshotOfSnapshotIsShared() throws Exception {
+        JsonDocSnapshot snapshot = doc().snapshot();
+        Assert.assertSame(snapshot, snapshot.snapshot());
+        Assert.assertSame(snapshot, snapshot.snapshot(doc().snapshot()));
+    }
+
+    @Test
+    public void snapshotIsReadOnly() throws Exception {
+        try {
+            doc().snapshot().modify(new Path("a.b"), factory.numberNode(5), false);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(UtilConstants.ERR_READ_ONLY_DOC + ": a.b", e.getMessage());
+        }
+    }
+
+    @Test
+    public void unchangedDocIsShared() throws Exception {
+        JsonDoc doc = doc();
+        JsonDocSnapshot base = doc.snapshot();
+        Assert.assertSame(base.getRoot(), doc.snapshot(base).getRoot());
+    }
+
+    @Test
+    public void unchangedSubtreesAreShared() throws Exception {
+        JsonDoc doc = doc();
+        JsonDocSnapshot base = doc.snapshot();
+        doc.modify(new Path("a.c.2.d"), factory.textNode("z"), false);
+        JsonDocSnapshot post = doc.snapshot(base);
+
+        Assert.assertEquals("z", post.get(new Path("a.c.2.d")).asText());
+        Assert.assertEquals("x", base.get(new Path("a.c.2.d")).asText());
+        Assert.assertEquals(doc.getRoot(), post.getRoot());
+        // Modified path is copied
+        Assert.assertNotSame(base.getRoot(), post.getRoot());
+        Assert.assertNotSame(base.get(new Path("a")), post.get(new Path("a")));
+        Assert.assertNotSame(base.get(new Path("a.c")), post.get(new Path("a.c")));
+        // Everything else is shared
+        Assert.assertSame(base.get(new Path("e")), post.get(new Path("e")));
+        Assert.assertSame(base.get(new Path("g")), post.get(new Path("g")));
+        Assert.assertSame(base.get(new Path("a.c.0")), post.get(new Path("a.c.0")));
+        // The snapshot does not share nodes with the document
+        Assert.assertNotSame(doc.get(new Path("e")), post.get(new Path("e")));
+    }
+
+    @Test
+    public void addedAndRemovedFields() throws Exception {
+        JsonDoc doc = doc();
+        JsonDocSnapshot base = doc.snapshot();
+        doc.modify(new Path("e"), null, false);
+        doc.modify(new Path("x"), factory.textNode("new"), false);
+        doc.modify(new Path("g.2"), factory.objectNode().put("h", 3), false);
+        JsonDocSnapshot post = doc.snapshot(base);
+        Assert.assertEquals(doc.getRoot(), post.getRoot());
+        Assert.assertNull(post.get(new Path("e")));
+        Assert.assertNotNull(base.get(new Path("e")));
+        Assert.assertEquals(2, base.get(new Path("g")).size());
+        Assert.assertSame(base.get(new Path("g.1")), post.get(new Path("g.1")));
+        JsonNode g2 = post.get(new Path("g.2"));
+        Assert.assertNotSame(doc.get(new Path("g.2")), g2);
+    }
+}
@@ -58,6 +58,17 @@ public class JsonUtilsTest {
         fail("The test case is a prototype.");
     }
 
+    @Test
+    public void testParseBytes() throws Exception {
+        String s = "{\"test\":\"${java.vm.version}\",\"d\":1.10,\"u\":\"\u00e7\"}";
+        JsonNode result = JsonUtils.parse(s.getBytes("UTF-8"));
+        // No system property expansion for parsed documents
+        Assert.assertEquals("${java.vm.version}", result.get("test").asText());
+        Assert.assertTrue(result.get("d").isBigDecimal());
+        Assert.assertEquals("\u00e7", result.get("u").asText());
+        Assert.assertEquals(result, JsonUtils.parse(new java.io.ByteArrayInputStream(s.getBytes("UTF-16"))));
+    }
+
     @Test
     public void testJson_system_properties() throws Exception {
         String jvmVersion = System.getProperty("java.vm.version");
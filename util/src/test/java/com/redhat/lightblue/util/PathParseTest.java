@@ -99,4 +99,55 @@ public class PathParseTest extends Path {
         Assert.assertEquals(expected, super.parse("good.path.with.1.array"));
     }
 
+    @Test
+    public void segment_kinds_are_recognized() {
+        Path p = new Path("a.1.*.$parent.$this.-2.99999999999");
+        Assert.assertFalse(p.isIndex(0));
+        Assert.assertTrue(p.isIndex(1));
+        Assert.assertEquals(1, p.getIndex(1));
+        Assert.assertTrue(p.isAny(2));
+        Assert.assertFalse(p.isAny(0));
+        Assert.assertFalse(p.isIndex(3));
+        Assert.assertFalse(p.isIndex(4));
+        Assert.assertTrue(p.isIndex(5));
+        Assert.assertEquals(-2, p.getIndex(5));
+        Assert.assertFalse(p.isIndex(6));
+        Assert.assertEquals(1, p.nAnys());
+    }
+
+    @Test
+    public void mutable_path_int_segments() {
+        MutablePath p = new MutablePath("a.*.b");
+        p.set(1, 5);
+        p.push(12);
+        Assert.assertEquals("a.5.b.12", p.toString());
+        Assert.assertTrue(p.isIndex(1));
+        Assert.assertEquals(5, p.getIndex(1));
+        Assert.assertEquals(12, p.getIndex(3));
+        p.setLast(3);
+        Assert.assertEquals(3, p.getIndex(3));
+        Assert.assertEquals(new Path("a.5.b.3"), p.immutableCopy());
+        Assert.assertEquals(new Path("a.5.b.3").hashCode(), p.hashCode());
+        p.set(1, "*");
+        Assert.assertTrue(p.isAny(1));
+        Assert.assertEquals(1, p.nAnys());
+    }
+
+    @Test
+    public void intern_returns_canonical_immutable_path() {
+        Path p1 = Path.intern(new MutablePath("x.y.*.z"));
+        Path p2 = Path.intern(new Path("x.y.*.z"));
+        Assert.assertSame(p1, p2);
+        Assert.assertFalse(p1 instanceof MutablePath);
+        Assert.assertEquals(new Path("x.y.*.z"), p1);
+    }
+
+    @Test
+    public void only_interned_paths_share_segments() {
+        // Paths built from request data keep their own strings
+        Assert.assertNotSame(new Path(new String("data1.value")).head(0), new Path(new String("data1.value")).head(0));
+        Assert.assertSame(Path.intern(new Path(new String("md1.field"))).head(0),
+                Path.intern(new MutablePath(new String("md1.field")).push("x")).head(0));
+    }
+
 }